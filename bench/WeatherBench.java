@@ -0,0 +1,135 @@
+import java.time.LocalDate;
+
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.weather.Bench;
+
+/**
+ * Benchmarks the hot paths of the {@code Weather} map of days to conditions:
+ * {@code isDateFormatted}, {@code addWeather} and {@code hasDate}, at map
+ * sizes from a thousand to three million days. There are only about 3.65
+ * million days in "YYYY-MM-DD" form, so the largest size is three million
+ * rather than ten million. {@code Weather} is in the default package, so this
+ * driver is too.
+ *
+ * <p>
+ * Argument, optional: a comma-separated list of sizes.
+ */
+public final class WeatherBench {
+
+    /**
+     * Operations in one batch.
+     */
+    private static final int BATCH = 1000;
+
+    /**
+     * Sizes measured when none are given.
+     */
+    private static final int[] SIZES = { 1_000, 10_000, 100_000, 1_000_000,
+            3_000_000 };
+
+    /**
+     * The first day used.
+     */
+    private static final LocalDate FIRST = LocalDate.of(1, 1, 1);
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private WeatherBench() {
+    }
+
+    /**
+     * Reports the day {@code i} days after {@code FIRST} in "YYYY-MM-DD" form.
+     *
+     * @param i
+     *            the number of days after FIRST
+     * @return the day in "YYYY-MM-DD" form
+     */
+    private static String day(int i) {
+        return FIRST.plusDays(i).toString();
+    }
+
+    /**
+     * Measures every operation at {@code size} days and writes one row per
+     * operation to {@code out}.
+     *
+     * @param size
+     *            the number of days in the map
+     * @param out
+     *            the output stream
+     */
+    private static void run(int size, SimpleWriter out) {
+        final Weather<String, String> map = new Weather<>();
+        for (int i = 0; i < size; i++) {
+            map.addWeather(day(i), "Sunny");
+        }
+        int n = Math.min(BATCH, size);
+        final String[] probes = new String[n];
+        final String[] fresh = new String[n];
+        final String[] mixed = new String[n];
+        for (int k = 0; k < n; k++) {
+            probes[k] = day(k * (size / n));
+            fresh[k] = day(size + k);
+            /*
+             * Every fourth string is not a real day, so the rejecting paths
+             * are measured too.
+             */
+            final int every = 4;
+            if (k % every == 0) {
+                mixed[k] = probes[k].substring(0, probes[k].length() - 2)
+                        + "32";
+            } else {
+                mixed[k] = probes[k];
+            }
+        }
+
+        out.println(Bench.measure("Weather", "isDateFormatted", size, n,
+                () -> {
+                    for (String d : mixed) {
+                        Bench.consume(map.isDateFormatted(d));
+                    }
+                }, () -> {
+                }));
+        out.println(Bench.measure("Weather", "addWeather", size, n, () -> {
+            for (String d : fresh) {
+                map.addWeather(d, "Rainy");
+            }
+        }, () -> {
+            for (String d : fresh) {
+                map.removeWeather(d);
+            }
+        }));
+        out.println(Bench.measure("Weather", "hasDate", size, n, () -> {
+            for (String d : probes) {
+                Bench.consume(map.hasDate(d));
+            }
+        }, () -> {
+        }));
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments: the sizes to measure,
+     *            comma-separated, optional
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+        int[] sizes = SIZES;
+        if (args.length > 0) {
+            String[] values = args[0].split(",");
+            sizes = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                sizes[i] = Integer.parseInt(values[i].trim());
+            }
+        }
+        out.println(Bench.header());
+        for (int size : sizes) {
+            run(size, out);
+        }
+        out.close();
+    }
+
+}
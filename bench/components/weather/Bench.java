@@ -0,0 +1,181 @@
+package components.weather;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Measurement loop shared by the benchmark drivers. A case is a batch of
+ * operations, timed and charged for the bytes it allocates on the calling
+ * thread, plus an untimed reset that puts the state back so the next batch
+ * sees the same input. Each case is warmed up before it is measured, and the
+ * result is one table row: time per operation, bytes allocated per operation,
+ * allocation rate, and the number of collections during the measurement.
+ */
+public final class Bench {
+
+    /**
+     * Nanoseconds each case warms up for before it is measured.
+     */
+    private static final long WARMUP = 300_000_000L;
+
+    /**
+     * Nanoseconds of batches each case is measured for, at least.
+     */
+    private static final long MEASURE = 1_000_000_000L;
+
+    /**
+     * Nanoseconds, resets included, after which a case stops being measured
+     * even if its batches have not yet added up to {@code MEASURE}.
+     */
+    private static final long LIMIT = 5_000_000_000L;
+
+    /**
+     * Fewest batches each case is measured for, however long they take.
+     */
+    private static final int MIN_BATCHES = 3;
+
+    /**
+     * Bytes in a megabyte.
+     */
+    private static final double MB = 1024.0 * 1024.0;
+
+    /**
+     * Nanoseconds in a second.
+     */
+    private static final double SECOND = 1e9;
+
+    /**
+     * Reads the bytes each thread has allocated.
+     */
+    private static final ThreadMXBean THREADS =
+            (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Last value passed to {@code consume}; it is volatile so the JIT cannot
+     * drop the work that produced the value.
+     */
+    private static volatile Object sink;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private Bench() {
+    }
+
+    /**
+     * Sum of the collection counts of every collector.
+     *
+     * @return the number of collections so far
+     */
+    private static long collections() {
+        long result = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory
+                .getGarbageCollectorMXBeans()) {
+            result += Math.max(0, gc.getCollectionCount());
+        }
+        return result;
+    }
+
+    /**
+     * Keeps {@code x} alive so the work that produced it is not optimized
+     * away.
+     *
+     * @param x
+     *            the result to keep
+     */
+    public static void consume(Object x) {
+        sink = x;
+    }
+
+    /**
+     * Reports the header of the table {@code measure} writes rows of.
+     *
+     * @return the table header
+     */
+    public static String header() {
+        return String.format("%-8s %-16s %9s %14s %12s %10s %5s", "impl",
+                "operation", "size", "ns/op", "B/op", "MB/s", "gcs");
+    }
+
+    /**
+     * Reports a table row saying why a case was not measured.
+     *
+     * @param impl
+     *            the implementation measured
+     * @param operation
+     *            the operation measured
+     * @param size
+     *            the size of the input
+     * @param why
+     *            the reason
+     * @return the table row
+     */
+    public static String skipped(String impl, String operation, int size,
+            String why) {
+        return String.format("%-8s %-16s %9d   %s", impl, operation, size,
+                why);
+    }
+
+    /**
+     * Warms up and measures one case, and reports it as a table row. If a
+     * batch throws, the row reports the failure instead.
+     *
+     * @param impl
+     *            the implementation measured
+     * @param operation
+     *            the operation measured
+     * @param size
+     *            the size of the input
+     * @param ops
+     *            the number of operations in one batch
+     * @param batch
+     *            runs one batch of operations
+     * @param reset
+     *            puts the state back after a batch
+     * @return the table row
+     * @requires ops > 0
+     */
+    public static String measure(String impl, String operation, int size,
+            int ops, Runnable batch, Runnable reset) {
+        assert ops > 0 : "Violation of: ops > 0";
+
+        String result;
+        try {
+            long begin = System.nanoTime();
+            while (System.nanoTime() - begin < WARMUP) {
+                batch.run();
+                reset.run();
+            }
+            long self = Thread.currentThread().getId();
+            long gcs = collections();
+            long nanos = 0;
+            long bytes = 0;
+            long batches = 0;
+            begin = System.nanoTime();
+            while (batches < MIN_BATCHES || (nanos < MEASURE
+                    && System.nanoTime() - begin < LIMIT)) {
+                long allocated = THREADS.getThreadAllocatedBytes(self);
+                long start = System.nanoTime();
+                batch.run();
+                nanos += System.nanoTime() - start;
+                bytes += THREADS.getThreadAllocatedBytes(self)
+                        - allocated;
+                batches++;
+                reset.run();
+            }
+            gcs = collections() - gcs;
+            double count = (double) batches * ops;
+            result = String.format("%-8s %-16s %9d %14.1f %12.1f %10.1f %5d",
+                    impl, operation, size, nanos / count, bytes / count,
+                    bytes / MB / (nanos / SECOND), gcs);
+        } catch (RuntimeException | StackOverflowError
+                | OutOfMemoryError e) {
+            result = skipped(impl, operation, size,
+                    "failed: " + e.getClass().getSimpleName());
+        }
+        return result;
+    }
+
+}
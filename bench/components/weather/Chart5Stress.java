@@ -0,0 +1,260 @@
+package components.weather;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Stress and scaling run for {@code Chart5}: threads that add, remove, look
+ * up and iterate records hammer one chart, then the chart is checked for lost
+ * or duplicated records and its size and fingerprint against a full scan,
+ * and the throughput at each thread count is compared with one thread and
+ * with {@code Chart2} behind a single global lock.
+ */
+public final class Chart5Stress {
+
+    /**
+     * Operations per thread in each run.
+     */
+    private static final int OPS = 400_000;
+
+    /**
+     * Percentage of operations that add a record.
+     */
+    private static final int WRITE_PERCENT = 30;
+
+    /**
+     * Percentage of operations that remove a record.
+     */
+    private static final int REMOVE_PERCENT = 10;
+
+    /**
+     * Percentage of operations that iterate over a short range; the rest
+     * look a record up.
+     */
+    private static final int ITERATE_PERCENT = 2;
+
+    /**
+     * Length of the ranges iterated over, in milliseconds.
+     */
+    private static final long SPAN = 256;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private Chart5Stress() {
+    }
+
+    /**
+     * Creates a record at time {@code t}.
+     *
+     * @param t
+     *            the time in epoch milliseconds
+     * @return a new record at time t
+     */
+    private static Weather record(long t) {
+        Weather w = new Weather1();
+        w.setTime(new Date(t));
+        Condition[] all = Condition.values();
+        w.setCondition(all[(int) (t % all.length)]);
+        w.setTemp(0f, 1f);
+        return w;
+    }
+
+    /**
+     * Runs {@code action}, holding {@code lock} if it is not null.
+     *
+     * @param lock
+     *            the lock, or null for none
+     * @param action
+     *            the action
+     */
+    private static void locked(Object lock, Runnable action) {
+        if (lock == null) {
+            action.run();
+        } else {
+            synchronized (lock) {
+                action.run();
+            }
+        }
+    }
+
+    /**
+     * Iterates over the records of {@code chart} in [{@code from},
+     * {@code from + SPAN}] and checks that they come in increasing order of
+     * time.
+     *
+     * @param chart
+     *            the chart
+     * @param from
+     *            the start of the range
+     */
+    private static void iterate(Chart chart, long from) {
+        long previous = Long.MIN_VALUE;
+        for (Weather w : chart.between(new Date(from),
+                new Date(from + SPAN))) {
+            long t = w.time().getTime();
+            if (t <= previous || t < from || t > from + SPAN) {
+                throw new IllegalStateException("range out of order");
+            }
+            previous = t;
+        }
+    }
+
+    /**
+     * Runs {@code threads} threads against {@code chart} and reports the
+     * number of operations per second. Thread i adds the times congruent to i
+     * modulo threads, so every thread writes across the whole key range,
+     * removes its own records oldest first, and looks up and iterates over
+     * times any thread may have added. At the end the records seen by
+     * iterating over the chart, its size and its fingerprint must all agree
+     * with the adds and removes made.
+     *
+     * @param chart
+     *            the chart to run against
+     * @param threads
+     *            the number of threads
+     * @param lock
+     *            the lock to hold around every operation, or null for none
+     * @return operations per second
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads
+     */
+    private static double run(Chart chart, int threads, Object lock)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        final int[] added = new int[threads];
+        final int[] removed = new int[threads];
+        final AtomicReference<Throwable> failure =
+                new AtomicReference<Throwable>();
+        for (int i = 0; i < threads; i++) {
+            final int id = i;
+            Thread th = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    for (int k = 0; k < OPS; k++) {
+                        int op = random.nextInt(100);
+                        /*
+                         * Every thread has added about as many records, so
+                         * the times added so far are about [0, next)
+                         */
+                        long next = id + (long) added[id] * threads;
+                        if (op < WRITE_PERCENT) {
+                            Weather w = record(next);
+                            locked(lock, () -> chart.add(w));
+                            added[id]++;
+                        } else if (op < WRITE_PERCENT + REMOVE_PERCENT) {
+                            if (removed[id] < added[id]) {
+                                Date t = new Date(
+                                        id + (long) removed[id] * threads);
+                                locked(lock, () -> chart.remove(t));
+                                removed[id]++;
+                            }
+                        } else if (op < WRITE_PERCENT + REMOVE_PERCENT
+                                + ITERATE_PERCENT) {
+                            long from = random.nextLong(Math.max(1, next));
+                            locked(lock, () -> iterate(chart, from));
+                        } else {
+                            /*
+                             * hasTime followed by condition could lose a
+                             * race with a remover; a one-time range reads
+                             * the chart once
+                             */
+                            Date t = new Date(
+                                    random.nextLong(Math.max(1, next)));
+                            locked(lock, () -> {
+                                for (Weather w : chart.between(t, t)) {
+                                    w.condition();
+                                }
+                            });
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            });
+            th.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        if (failure.get() != null) {
+            throw new IllegalStateException("a thread failed", failure.get());
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        int expected = 0;
+        for (int i = 0; i < threads; i++) {
+            expected += added[i] - removed[i];
+        }
+        int seen = 0;
+        long sum = 0;
+        long previous = Long.MIN_VALUE;
+        for (Weather w : chart) {
+            long t = w.time().getTime();
+            if (t <= previous) {
+                throw new IllegalStateException("iteration out of order");
+            }
+            previous = t;
+            seen++;
+            sum += ChartSecondary.fingerprintOf(w);
+        }
+        if (chart.size() != expected || seen != expected) {
+            throw new IllegalStateException("expected " + expected
+                    + " records, size " + chart.size() + ", saw " + seen);
+        }
+        if (chart.fingerprint() != sum) {
+            throw new IllegalStateException("fingerprint "
+                    + chart.fingerprint() + ", scan " + sum);
+        }
+        return (double) threads * OPS / seconds;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments; the first, if any, is the most
+     *            threads to run with
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads
+     */
+    public static void main(String[] args) throws InterruptedException {
+        SimpleWriter out = new SimpleWriter1L();
+        int cores = Runtime.getRuntime().availableProcessors();
+        int max = Math.max(16, 2 * cores);
+        if (args.length > 0) {
+            max = Integer.parseInt(args[0]);
+        }
+        // Warm up both paths before measuring
+        run(new Chart5(), 2, null);
+        Chart2 warm = new Chart2();
+        run(warm, 2, warm);
+        out.println(cores + " processors, " + OPS + " ops/thread, "
+                + WRITE_PERCENT + "% adds, " + REMOVE_PERCENT
+                + "% removes, " + ITERATE_PERCENT + "% ranges");
+        out.println("threads  Chart5 ops/s  speedup  locked Chart2 ops/s");
+        double base = 0;
+        for (int threads = 1; threads <= max; threads *= 2) {
+            double lockFree = run(new Chart5(), threads, null);
+            Chart2 locked = new Chart2();
+            double global = run(locked, threads, locked);
+            if (threads == 1) {
+                base = lockFree;
+            }
+            out.println(String.format("%7d  %12.0f  %7.2f  %19.0f", threads,
+                    lockFree, lockFree / base, global));
+        }
+        out.close();
+    }
+
+}
@@ -0,0 +1,364 @@
+package components.weather;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import components.set.Set;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Benchmarks the hot paths of every {@code Chart} implementation at chart
+ * sizes from a thousand to ten million records: {@code add},
+ * {@code hasTime}, {@code condition}, {@code remove}, {@code removeAny},
+ * {@code setOfCondition}, {@code toString}, {@code equals} and
+ * {@code hashCode}. Each row reports time and bytes allocated per operation,
+ * so implementations can be compared with each other and with earlier runs.
+ *
+ * <p>
+ * Arguments, both optional: a comma-separated list of implementations (for
+ * example {@code CHART1,CHART6}) and a comma-separated list of sizes. The
+ * largest sizes hold two charts of ten million records each, so run with a
+ * large heap, for example {@code java -ea -Xmx8g}.
+ */
+public final class ChartBench {
+
+    /**
+     * Operations in one batch of a per-record operation.
+     */
+    private static final int BATCH = 1000;
+
+    /**
+     * Milliseconds between consecutive records.
+     */
+    private static final long STEP = 3_600_000L;
+
+    /**
+     * Sizes measured when none are given.
+     */
+    private static final int[] SIZES = { 1_000, 10_000, 100_000, 1_000_000,
+            10_000_000 };
+
+    /**
+     * Chart implementations measured.
+     */
+    private enum Impl {
+
+        /**
+         * The original {@code Set1L} chart.
+         */
+        CHART1(10_000) {
+            @Override
+            Chart create() {
+                return new Weather1().new Chart1();
+            }
+
+            @Override
+            Set<Weather> setOfCondition(Chart c, Condition x) {
+                return ((WeatherSecondary.Chart1) c).setOfCondition(x);
+            }
+        },
+
+        /**
+         * The tree-map chart.
+         */
+        CHART2(Integer.MAX_VALUE) {
+            @Override
+            Chart create() {
+                return new Chart2();
+            }
+
+            @Override
+            Set<Weather> setOfCondition(Chart c, Condition x) {
+                return ((Chart2) c).setOfCondition(x);
+            }
+        },
+
+        /**
+         * The columnar chart.
+         */
+        CHART3(Integer.MAX_VALUE) {
+            @Override
+            Chart create() {
+                return new Chart3();
+            }
+
+            @Override
+            Set<Weather> setOfCondition(Chart c, Condition x) {
+                return ((Chart3) c).setOfCondition(x);
+            }
+        },
+
+        /**
+         * The memory-mapped chart, in a temporary file.
+         */
+        CHART4(Integer.MAX_VALUE) {
+            @Override
+            Chart create() {
+                try {
+                    Path file = Files.createTempFile("chart", ".bin");
+                    Files.delete(file);
+                    file.toFile().deleteOnExit();
+                    return new Chart4(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        },
+
+        /**
+         * The concurrent skip-list chart.
+         */
+        CHART5(Integer.MAX_VALUE) {
+            @Override
+            Chart create() {
+                return new Chart5();
+            }
+        },
+
+        /**
+         * The persistent tree chart.
+         */
+        CHART6(Integer.MAX_VALUE) {
+            @Override
+            Chart create() {
+                return new Chart6();
+            }
+        };
+
+        /**
+         * Largest size measured; larger charts take too long to build.
+         */
+        private final int limit;
+
+        /**
+         * Constructor from the largest size measured.
+         *
+         * @param limit
+         *            the largest size measured
+         */
+        Impl(int limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * Creates an empty chart of this implementation.
+         *
+         * @return a new empty chart
+         */
+        abstract Chart create();
+
+        /**
+         * Reports the records of {@code c} whose condition is {@code x}, or
+         * null if this implementation has no {@code setOfCondition}.
+         *
+         * @param c
+         *            a chart of this implementation
+         * @param x
+         *            the condition
+         * @return the records of c whose condition is x, or null
+         */
+        Set<Weather> setOfCondition(Chart c, Condition x) {
+            return null;
+        }
+
+    }
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ChartBench() {
+    }
+
+    /**
+     * Creates the record with index {@code i}.
+     *
+     * @param i
+     *            the index of the record
+     * @return a new record at time i * STEP
+     */
+    private static Weather record(long i) {
+        Weather w = new Weather1();
+        w.setTime(new Date(i * STEP));
+        Condition[] all = Condition.values();
+        w.setCondition(all[(int) (i % all.length)]);
+        final int spread = 40;
+        w.setTemp(i % spread, spread + i % spread);
+        return w;
+    }
+
+    /**
+     * Creates a chart of {@code impl} holding the records with indices 0 to
+     * {@code size} - 1.
+     *
+     * @param impl
+     *            the implementation
+     * @param size
+     *            the number of records
+     * @return the new chart
+     */
+    private static Chart build(Impl impl, int size) {
+        Chart c = impl.create();
+        final int chunk = 1 << 16;
+        List<Weather> batch = new ArrayList<Weather>(chunk);
+        for (int i = 0; i < size; i++) {
+            batch.add(record(i));
+            if (batch.size() == chunk || i == size - 1) {
+                c.addAll(batch);
+                batch.clear();
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Closes {@code c} if it holds a resource.
+     *
+     * @param c
+     *            the chart
+     */
+    private static void release(Chart c) {
+        if (c instanceof Closeable) {
+            try {
+                ((Closeable) c).close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Measures every operation on {@code impl} at {@code size} records and
+     * writes one row per operation to {@code out}.
+     *
+     * @param impl
+     *            the implementation
+     * @param size
+     *            the number of records
+     * @param out
+     *            the output stream
+     */
+    private static void run(Impl impl, int size, SimpleWriter out) {
+        String name = impl.name();
+        final Chart c = build(impl, size);
+        final Chart copy = build(impl, size);
+        int n = Math.min(BATCH, size);
+        /*
+         * Probes are spread evenly over the chart so they are distinct, and
+         * the new records go past its end so they never collide with it.
+         */
+        final Date[] probes = new Date[n];
+        for (int k = 0; k < n; k++) {
+            probes[k] = new Date((long) k * (size / n) * STEP);
+        }
+        final Weather[] fresh = new Weather[n];
+        for (int k = 0; k < n; k++) {
+            fresh[k] = record((long) size + k);
+        }
+        final Weather[] taken = new Weather[n];
+
+        out.println(Bench.measure(name, "add", size, n, () -> {
+            for (Weather w : fresh) {
+                c.add(w);
+            }
+        }, () -> {
+            for (Weather w : fresh) {
+                c.remove(w.time());
+            }
+        }));
+        out.println(Bench.measure(name, "hasTime", size, n, () -> {
+            for (Date t : probes) {
+                Bench.consume(c.hasTime(t));
+            }
+        }, () -> {
+        }));
+        out.println(Bench.measure(name, "condition", size, n, () -> {
+            for (Date t : probes) {
+                Bench.consume(c.condition(t));
+            }
+        }, () -> {
+        }));
+        out.println(Bench.measure(name, "remove", size, n, () -> {
+            for (int k = 0; k < n; k++) {
+                taken[k] = c.remove(probes[k]);
+            }
+        }, () -> {
+            c.addAll(Arrays.asList(taken));
+        }));
+        out.println(Bench.measure(name, "removeAny", size, n, () -> {
+            for (int k = 0; k < n; k++) {
+                taken[k] = c.removeAny();
+            }
+        }, () -> {
+            c.addAll(Arrays.asList(taken));
+        }));
+        if (impl.setOfCondition(c, Condition.values()[0]) == null) {
+            out.println(Bench.skipped(name, "setOfCondition", size,
+                    "not implemented"));
+        } else {
+            out.println(Bench.measure(name, "setOfCondition", size, 1,
+                    () -> Bench.consume(
+                            impl.setOfCondition(c, Condition.values()[0])),
+                    () -> {
+                    }));
+        }
+        out.println(Bench.measure(name, "toString", size, 1,
+                () -> Bench.consume(c.toString()), () -> {
+                }));
+        out.println(Bench.measure(name, "equals", size, 1,
+                () -> Bench.consume(c.equals(copy)), () -> {
+                }));
+        out.println(Bench.measure(name, "hashCode", size, 1,
+                () -> Bench.consume(c.hashCode()), () -> {
+                }));
+        release(c);
+        release(copy);
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments: the implementations and the
+     *            sizes to measure, each comma-separated, both optional
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+        Impl[] impls = Impl.values();
+        if (args.length > 0) {
+            String[] names = args[0].split(",");
+            impls = new Impl[names.length];
+            for (int i = 0; i < names.length; i++) {
+                impls[i] = Impl.valueOf(names[i].trim().toUpperCase());
+            }
+        }
+        int[] sizes = SIZES;
+        if (args.length > 1) {
+            String[] values = args[1].split(",");
+            sizes = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                sizes[i] = Integer.parseInt(values[i].trim());
+            }
+        }
+        out.println(Bench.header());
+        for (Impl impl : impls) {
+            for (int size : sizes) {
+                if (size > impl.limit) {
+                    out.println(Bench.skipped(impl.name(), "*", size,
+                            "skipped: over " + impl.limit + " records"));
+                } else {
+                    run(impl, size, out);
+                }
+            }
+        }
+        out.close();
+    }
+
+}
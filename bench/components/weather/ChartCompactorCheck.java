@@ -0,0 +1,329 @@
+package components.weather;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Rerunnable check and timing for {@code ChartCompactor}: a year of readings
+ * is compacted in small steps and must end up as the rollups a plain model of
+ * the retention policy gives; compacting again must change nothing; the
+ * model is applied again after the chart ages, so days fold into months; and
+ * once most of the chart is rolled up, one step with a budget of one must
+ * still reach a new reading in the newest day old enough, past every period
+ * already folded. Then the compaction of years of readings is timed.
+ */
+public final class ChartCompactorCheck {
+
+    /**
+     * Age past which readings are folded into days.
+     */
+    private static final Duration RAW = Duration.ofDays(7);
+
+    /**
+     * Age past which days are folded into months.
+     */
+    private static final Duration DAILY = Duration.ofDays(60);
+
+    /**
+     * Zone whose calendar is used.
+     */
+    private static final ZoneId ZONE = ZoneOffset.UTC;
+
+    /**
+     * Budget of each step in the check.
+     */
+    private static final int STEP = 3;
+
+    /**
+     * Milliseconds in a minute.
+     */
+    private static final long MINUTE = 60L * 1000;
+
+    /**
+     * Days of readings in the check.
+     */
+    private static final int DAYS = 365;
+
+    /**
+     * Days of readings in the timing run.
+     */
+    private static final int YEARS_OF_DAYS = 3 * 365;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ChartCompactorCheck() {
+    }
+
+    /**
+     * Creates a record at time {@code t} with random temperatures and
+     * condition.
+     *
+     * @param t
+     *            the time in epoch milliseconds
+     * @param random
+     *            the source of the temperatures and condition
+     * @return a new record at time t
+     */
+    private static Weather record(long t, Random random) {
+        final int range = 40;
+        float low = random.nextInt(range) - range / 2;
+        float high = low + random.nextInt(range / 2);
+        Condition[] all = Condition.values();
+        return new Weather2(t, all[random.nextInt(all.length)], low, high);
+    }
+
+    /**
+     * Fills {@code chart} and {@code reference} with a reading every few
+     * hours over {@code days} days before {@code now}.
+     *
+     * @param chart
+     *            the chart
+     * @param reference
+     *            the records, by time
+     * @param now
+     *            the end of the readings
+     * @param days
+     *            the number of days of readings
+     * @param random
+     *            the source of the readings
+     */
+    private static void fill(Chart chart, TreeMap<Long, Weather> reference,
+            Instant now, int days, Random random) {
+        final int gap = 180;
+        long end = now.toEpochMilli();
+        long t = now.minus(Duration.ofDays(days)).toEpochMilli();
+        while (t < end) {
+            Weather w = record(t, random);
+            chart.add(w);
+            reference.put(t, w);
+            t += (1 + random.nextInt(gap)) * MINUTE;
+        }
+    }
+
+    /**
+     * Reports the start of the day or month containing {@code t}.
+     *
+     * @param t
+     *            the time in epoch milliseconds
+     * @param month
+     *            whether the month is wanted
+     * @return the start of its day or month, in epoch milliseconds
+     */
+    private static long startOf(long t, boolean month) {
+        LocalDate day = Instant.ofEpochMilli(t).atZone(ZONE).toLocalDate();
+        if (month) {
+            day = day.withDayOfMonth(1);
+        }
+        return day.atStartOfDay(ZONE).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Reports the records {@code reference} should hold once compacted as of
+     * {@code now}: each period old enough folded into one rollup, by a scan.
+     *
+     * @param reference
+     *            the records, by time
+     * @param now
+     *            the time ages are measured from
+     * @return the compacted records, by time
+     */
+    private static TreeMap<Long, Weather> model(
+            TreeMap<Long, Weather> reference, Instant now) {
+        long days = startOf(now.minus(RAW).toEpochMilli(), false);
+        long months = startOf(now.minus(DAILY).toEpochMilli(), true);
+        Map<Long, List<Weather>> periods = new TreeMap<Long, List<Weather>>();
+        TreeMap<Long, Weather> result = new TreeMap<Long, Weather>();
+        for (Weather w : reference.values()) {
+            long t = WeatherSecondary.epochMillis(w);
+            long start = startOf(t, t < months);
+            long end = Instant.ofEpochMilli(start).atZone(ZONE).plusDays(1)
+                    .toInstant().toEpochMilli();
+            if (t < months || end <= days) {
+                periods.computeIfAbsent(start, s -> new ArrayList<Weather>())
+                        .add(w);
+            } else {
+                result.put(t, w);
+            }
+        }
+        for (Map.Entry<Long, List<Weather>> p : periods.entrySet()) {
+            int[] votes = new int[Condition.values().length];
+            float low = Float.POSITIVE_INFINITY;
+            float high = Float.NEGATIVE_INFINITY;
+            for (Weather w : p.getValue()) {
+                votes[w.condition().ordinal()]++;
+                low = Math.min(low, w.lowTemp());
+                high = Math.max(high, w.highTemp());
+            }
+            Condition dominant = Condition.UNDEFINED;
+            for (Condition c : Condition.values()) {
+                if (c != Condition.UNDEFINED && votes[c.ordinal()] > 0
+                        && (dominant == Condition.UNDEFINED
+                                || votes[c.ordinal()] > votes[dominant
+                                        .ordinal()])) {
+                    dominant = c;
+                }
+            }
+            result.put(p.getKey(),
+                    new Weather2(p.getKey(), dominant, low, high));
+        }
+        return result;
+    }
+
+    /**
+     * Checks that {@code chart} holds exactly the records of
+     * {@code expected}.
+     *
+     * @param chart
+     *            the chart
+     * @param expected
+     *            the records, by time
+     * @param when
+     *            what was just done, for the message
+     */
+    private static void verify(Chart chart, TreeMap<Long, Weather> expected,
+            String when) {
+        boolean same = chart.size() == expected.size();
+        for (Weather w : chart) {
+            Weather e = expected.get(WeatherSecondary.epochMillis(w));
+            same = same && e != null && e.condition() == w.condition()
+                    && e.lowTemp() == w.lowTemp()
+                    && e.highTemp() == w.highTemp();
+        }
+        if (!same) {
+            throw new IllegalStateException(when + ": chart has "
+                    + chart.size() + " records, expected " + expected.size());
+        }
+    }
+
+    /**
+     * Compacts the chart of {@code compactor} as of {@code now} in steps of
+     * {@code budget} until a step leaves it unchanged. Every step that folds
+     * a period changes the chart, so a step that does not has found nothing
+     * left to fold.
+     *
+     * @param compactor
+     *            the compactor
+     * @param chart
+     *            the chart it compacts
+     * @param now
+     *            the time ages are measured from
+     * @param budget
+     *            the most periods to fold in a step
+     * @return the number of steps taken
+     */
+    private static int settle(ChartCompactor compactor, Chart chart,
+            Instant now, int budget) {
+        int steps = 0;
+        long before;
+        do {
+            before = chart.fingerprint();
+            compactor.compact(now, budget);
+            steps++;
+        } while (chart.fingerprint() != before);
+        return steps;
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param seed
+     *            the seed of the readings
+     * @param out
+     *            the stream the progress is reported to
+     */
+    private static void check(long seed, SimpleWriter out) {
+        Random random = new Random(seed);
+        Instant now = Instant.parse("2026-06-15T12:00:00Z");
+        Chart chart = new Chart2();
+        TreeMap<Long, Weather> reference = new TreeMap<Long, Weather>();
+        fill(chart, reference, now, DAYS, random);
+        int before = chart.size();
+        ChartCompactor compactor = new ChartCompactor(chart, RAW, DAILY,
+                ZONE);
+        int steps = settle(compactor, chart, now, STEP);
+        TreeMap<Long, Weather> expected = model(reference, now);
+        verify(chart, expected, "first compaction");
+        out.println("seed " + seed + ": " + before + " readings folded to "
+                + chart.size() + " records in " + steps + " steps of "
+                + STEP);
+
+        long fingerprint = chart.fingerprint();
+        int removed = 0;
+        for (int i = 0; i < steps; i++) {
+            removed += compactor.compact(now, STEP);
+        }
+        if (removed != 0 || chart.fingerprint() != fingerprint) {
+            throw new IllegalStateException("compacting again removed "
+                    + removed + " records");
+        }
+
+        Instant later = now.plus(Duration.ofDays(45));
+        settle(compactor, chart, later, STEP);
+        verify(chart, model(expected, later), "compaction 45 days later");
+        out.println("45 days later: " + chart.size() + " records, months "
+                + "fold days and the readings not yet folded");
+
+        /*
+         * Every period before the newest day old enough is rolled up; one
+         * step must pass over them all to fold a late reading in that day.
+         */
+        expected = model(expected, later);
+        long day = startOf(later.minus(RAW).toEpochMilli(), false)
+                - Duration.ofDays(1).toMillis();
+        long t = day + 1 + random.nextInt((int) (60 * MINUTE));
+        Weather w = record(t, random);
+        chart.add(w);
+        expected.put(t, w);
+        compactor.compact(later, 1);
+        verify(chart, model(expected, later), "one step after a late reading");
+        out.println("a late reading is folded by one step of budget 1");
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments; the first, if any, is the seed
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+        long seed = 1;
+        if (args.length > 0) {
+            seed = Long.parseLong(args[0]);
+        }
+        check(seed, out);
+
+        Random random = new Random(seed);
+        Instant now = Instant.parse("2026-06-15T12:00:00Z");
+        Chart chart = new Chart2();
+        fill(chart, new TreeMap<Long, Weather>(), now, YEARS_OF_DAYS,
+                random);
+        int before = chart.size();
+        ChartCompactor compactor = new ChartCompactor(chart, RAW, DAILY,
+                ZONE);
+        long begin = System.nanoTime();
+        int steps = settle(compactor, chart, now, Integer.MAX_VALUE);
+        double first = (System.nanoTime() - begin) / 1e6;
+        begin = System.nanoTime();
+        compactor.compact(now, Integer.MAX_VALUE);
+        double again = (System.nanoTime() - begin) / 1e6;
+        out.println(String.format(
+                "%d readings to %d records: %.1f ms in %d passes, "
+                        + "%.2f ms for a pass with nothing to fold",
+                before, chart.size(), first, steps, again));
+        out.close();
+    }
+
+}
@@ -0,0 +1,409 @@
+package components.weather;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Load run for {@code ChartServer}: opens many keep-alive connections at
+ * once from a single selector thread, and only when every one of them is open
+ * has each post batches of records and look one of them up again, round after
+ * round, so the server holds every connection for the whole run. Each
+ * response is checked, and the run reports connect time, requests per second
+ * and request latency percentiles.
+ *
+ * <p>
+ * Each connection takes a file descriptor on both sides, so with the server
+ * in the same process the open-file limit caps the run at about half of it.
+ * For more connections, start the server in a second process with
+ * {@code ChartServerLoad serve PORT} and pass that port to the run. The JDK
+ * server keeps only 200 idle connections by default, so this driver raises
+ * {@code sun.net.httpserver.maxIdleConnections} before it starts a server,
+ * unless it is set on the command line.
+ */
+public final class ChartServerLoad {
+
+    /**
+     * Most idle keep-alive connections a server started here keeps open.
+     */
+    private static final String MAX_IDLE = "65536";
+
+    /**
+     * Default number of connections.
+     */
+    private static final int CONNECTIONS = 8_000;
+
+    /**
+     * Default number of rounds; each round is one post and one lookup.
+     */
+    private static final int ROUNDS = 5;
+
+    /**
+     * Records in each post.
+     */
+    private static final int BATCH = 20;
+
+    /**
+     * Bytes of response a connection can hold.
+     */
+    private static final int RESPONSE = 4096;
+
+    /**
+     * Nanoseconds in a millisecond.
+     */
+    private static final double MILLI = 1e6;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ChartServerLoad() {
+    }
+
+    /**
+     * One client connection and where it is in its run.
+     */
+    private static final class Connection {
+
+        /**
+         * The channel.
+         */
+        private final SocketChannel channel;
+
+        /**
+         * Index of the connection, which picks the times it posts.
+         */
+        private final int id;
+
+        /**
+         * Requests completed: even ones are posts, odd ones lookups.
+         */
+        private int step;
+
+        /**
+         * The request being sent.
+         */
+        private ByteBuffer request;
+
+        /**
+         * The response being received.
+         */
+        private final ByteBuffer response = ByteBuffer.allocate(RESPONSE);
+
+        /**
+         * Time the request being sent was started, from
+         * {@code System.nanoTime}.
+         */
+        private long sent;
+
+        /**
+         * Constructor from every field.
+         *
+         * @param channel
+         *            the channel
+         * @param id
+         *            the index of the connection
+         */
+        Connection(SocketChannel channel, int id) {
+            this.channel = channel;
+            this.id = id;
+        }
+
+    }
+
+    /**
+     * Reports the time of record {@code k} of round {@code round} of
+     * connection {@code id}; every such time is distinct.
+     *
+     * @param id
+     *            the connection
+     * @param round
+     *            the round
+     * @param k
+     *            the index of the record in its batch
+     * @param rounds
+     *            the number of rounds
+     * @return the time in epoch milliseconds
+     */
+    private static long timeOf(int id, int round, int k, int rounds) {
+        return ((long) id * rounds + round) * BATCH + k;
+    }
+
+    /**
+     * Reports the condition posted with time {@code t}.
+     *
+     * @param t
+     *            the time
+     * @return its condition
+     */
+    private static Condition conditionOf(long t) {
+        Condition[] all = Condition.values();
+        return all[1 + (int) (t % (all.length - 1))];
+    }
+
+    /**
+     * Builds the next request of {@code c}: a post of the batch of its round,
+     * or a lookup of one record of that batch.
+     *
+     * @param c
+     *            the connection
+     * @param rounds
+     *            the number of rounds
+     * @return the request
+     */
+    private static ByteBuffer request(Connection c, int rounds) {
+        int round = c.step / 2;
+        String text;
+        if (c.step % 2 == 0) {
+            StringBuilder body = new StringBuilder();
+            for (int k = 0; k < BATCH; k++) {
+                long t = timeOf(c.id, round, k, rounds);
+                body.append(t).append(',').append(conditionOf(t).name())
+                        .append(",1.5,").append(k + 2).append('\n');
+            }
+            text = "POST /records?format=csv HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Content-Length: " + body.length() + "\r\n\r\n" + body;
+        } else {
+            long t = timeOf(c.id, round, c.id % BATCH, rounds);
+            text = "GET /condition?time=" + t + " HTTP/1.1\r\n"
+                    + "Host: localhost\r\n\r\n";
+        }
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Reports the body of the response in {@code c} if all of it has
+     * arrived.
+     *
+     * @param c
+     *            the connection
+     * @return the status line and body, separated by a newline, or null if
+     *         the response is not complete
+     */
+    private static String complete(Connection c) {
+        String result = null;
+        String text = new String(c.response.array(), 0,
+                c.response.position(), StandardCharsets.US_ASCII);
+        int end = text.indexOf("\r\n\r\n");
+        if (end >= 0) {
+            int length = 0;
+            for (String line : text.substring(0, end).split("\r\n")) {
+                if (line.toLowerCase(Locale.ROOT)
+                        .startsWith("content-length:")) {
+                    length = Integer.parseInt(line.substring(
+                            "content-length:".length()).trim());
+                }
+            }
+            if (text.length() >= end + 4 + length) {
+                result = text.substring(0, text.indexOf("\r\n")) + "\n"
+                        + text.substring(end + 4, end + 4 + length);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks {@code response} to the request just completed by {@code c}.
+     *
+     * @param c
+     *            the connection
+     * @param response
+     *            the status line and body
+     * @param rounds
+     *            the number of rounds
+     */
+    private static void check(Connection c, String response, int rounds) {
+        String expected;
+        if (c.step % 2 == 0) {
+            expected = "added " + BATCH + "\n";
+        } else {
+            expected = conditionOf(
+                    timeOf(c.id, c.step / 2, c.id % BATCH, rounds)).name()
+                    + "\n";
+        }
+        if (!response.startsWith("HTTP/1.1 200")
+                || !response.endsWith("\n" + expected)) {
+            throw new IllegalStateException("connection " + c.id + " step "
+                    + c.step + ": expected " + expected.trim() + ", got "
+                    + response.replace('\n', ' '));
+        }
+    }
+
+    /**
+     * Runs {@code connections} connections of {@code rounds} rounds each
+     * against the server on {@code port}.
+     *
+     * @param port
+     *            the port of the server
+     * @param connections
+     *            the number of connections
+     * @param rounds
+     *            the number of rounds
+     * @return the results, one per line
+     * @throws IOException
+     *             if a connection fails
+     */
+    private static String run(int port, int connections, int rounds)
+            throws IOException {
+        InetSocketAddress address = new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port);
+        Connection[] all = new Connection[connections];
+        LatencyHistogram latency = new LatencyHistogram();
+        String result;
+        try (Selector selector = Selector.open()) {
+            long begin = System.nanoTime();
+            int open = 0;
+            for (int i = 0; i < connections; i++) {
+                SocketChannel ch = SocketChannel.open();
+                ch.configureBlocking(false);
+                ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                all[i] = new Connection(ch, i);
+                if (ch.connect(address)) {
+                    open++;
+                    ch.register(selector, 0, all[i]);
+                } else {
+                    ch.register(selector, SelectionKey.OP_CONNECT, all[i]);
+                }
+            }
+            while (open < connections) {
+                selector.select();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Connection c = (Connection) key.attachment();
+                    if (c.channel.finishConnect()) {
+                        key.interestOps(0);
+                        open++;
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+            double connectMs = (System.nanoTime() - begin) / MILLI;
+            begin = System.nanoTime();
+            for (Connection c : all) {
+                c.request = request(c, rounds);
+                c.sent = System.nanoTime();
+                c.channel.keyFor(selector).interestOps(SelectionKey.OP_WRITE);
+            }
+            int done = 0;
+            while (done < connections) {
+                selector.select();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Connection c = (Connection) key.attachment();
+                    if (key.isWritable()) {
+                        c.channel.write(c.request);
+                        if (!c.request.hasRemaining()) {
+                            key.interestOps(SelectionKey.OP_READ);
+                        }
+                    } else if (key.isReadable()) {
+                        if (c.channel.read(c.response) < 0) {
+                            throw new IOException("connection " + c.id
+                                    + " closed by the server");
+                        }
+                        String response = complete(c);
+                        if (response != null) {
+                            latency.record(System.nanoTime() - c.sent);
+                            check(c, response, rounds);
+                            c.response.clear();
+                            c.step++;
+                            if (c.step < 2 * rounds) {
+                                c.request = request(c, rounds);
+                                c.sent = System.nanoTime();
+                                key.interestOps(SelectionKey.OP_WRITE);
+                            } else {
+                                key.interestOps(0);
+                                done++;
+                            }
+                        }
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+            double seconds = (System.nanoTime() - begin) / (MILLI * 1e3);
+            result = String.format(
+                    "%d connections open at once, opened in %.0f ms%n"
+                            + "%d requests (%d records) in %.2f s:"
+                            + " %.0f requests/s%n"
+                            + "latency ms: p50 %.2f  p99 %.2f  max %.2f",
+                    connections, connectMs, latency.count(),
+                    (long) connections * rounds * BATCH, seconds,
+                    latency.count() / seconds, latency.percentile(50) / MILLI,
+                    latency.percentile(99) / MILLI, latency.max() / MILLI);
+        } finally {
+            for (Connection c : all) {
+                if (c != null) {
+                    c.channel.close();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments: either {@code serve PORT}, to
+     *            serve an empty {@code Chart2} on PORT until killed, or the
+     *            number of connections, the number of rounds and the port of
+     *            a running server, each optional; without a port a server is
+     *            started in this process
+     * @throws IOException
+     *             if the server cannot start or a connection fails
+     * @throws InterruptedException
+     *             if interrupted while serving
+     */
+    public static void main(String[] args)
+            throws IOException, InterruptedException {
+        SimpleWriter out = new SimpleWriter1L();
+        // Read once, when the first HttpServer in this JVM starts
+        if (System.getProperty("sun.net.httpserver.maxIdleConnections")
+                == null) {
+            System.setProperty("sun.net.httpserver.maxIdleConnections",
+                    MAX_IDLE);
+        }
+        if (args.length > 0 && args[0].equals("serve")) {
+            ChartServer server = new ChartServer(new Chart2(),
+                    Integer.parseInt(args[1]));
+            out.println("serving on port " + server.port());
+            out.close();
+            Thread.sleep(Long.MAX_VALUE);
+        } else {
+            int connections = CONNECTIONS;
+            int rounds = ROUNDS;
+            if (args.length > 0) {
+                connections = Integer.parseInt(args[0]);
+            }
+            if (args.length > 1) {
+                rounds = Integer.parseInt(args[1]);
+            }
+            if (args.length > 2) {
+                out.println(
+                        run(Integer.parseInt(args[2]), connections, rounds));
+            } else {
+                // Warm up on a few connections before measuring
+                try (ChartServer warm = new ChartServer(new Chart2(), 0)) {
+                    run(warm.port(), 100, rounds);
+                }
+                Chart chart = new Chart2();
+                try (ChartServer server = new ChartServer(chart, 0)) {
+                    out.println(run(server.port(), connections, rounds));
+                    long expected = (long) connections * rounds * BATCH;
+                    if (chart.size() != expected) {
+                        throw new IllegalStateException("expected " + expected
+                                + " records, chart has " + chart.size());
+                    }
+                }
+            }
+            out.close();
+        }
+    }
+
+}
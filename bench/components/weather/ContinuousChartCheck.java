@@ -0,0 +1,239 @@
+package components.weather;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Differential check and timing for {@code ContinuousChart}: a feed of
+ * records, mostly in order with some late ones, batches that each list one
+ * record twice, and removes, is made to a continuous chart with windows of
+ * an hour, a day and a week and to a plain map of the same records, and
+ * after each change every window must hold the count, temperature summary
+ * and condition counts a scan of the map gives for its span. Then an
+ * in-order feed is timed with and without the windows.
+ */
+public final class ContinuousChartCheck {
+
+    /**
+     * Changes made in the differential check.
+     */
+    private static final int CHANGES = 20_000;
+
+    /**
+     * Percentage of changes that add a record later than every other.
+     */
+    private static final int APPEND_PERCENT = 80;
+
+    /**
+     * Percentage of changes that add a record at an earlier time.
+     */
+    private static final int LATE_PERCENT = 8;
+
+    /**
+     * Percentage of changes that add a batch of records.
+     */
+    private static final int BATCH_PERCENT = 4;
+
+    /**
+     * Records in a batch, at most.
+     */
+    private static final int BATCH = 10;
+
+    /**
+     * Milliseconds in a minute.
+     */
+    private static final long MINUTE = 60L * 1000;
+
+    /**
+     * Records in the timed feed.
+     */
+    private static final int FEED = 1_000_000;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ContinuousChartCheck() {
+    }
+
+    /**
+     * Creates a record at time {@code t} with random whole temperatures, so
+     * the running sums of the windows are exact.
+     *
+     * @param t
+     *            the time in epoch milliseconds
+     * @param random
+     *            the source of the temperatures and condition
+     * @return a new record at time t
+     */
+    private static Weather record(long t, Random random) {
+        final int range = 40;
+        final int spread = 15;
+        float low = random.nextInt(range) - range / 2;
+        float high = low + random.nextInt(spread);
+        Condition[] all = Condition.values();
+        return new Weather2(t, all[random.nextInt(all.length)], low, high);
+    }
+
+    /**
+     * Checks that {@code window} summarizes the records of
+     * {@code reference} in its span.
+     *
+     * @param window
+     *            the window
+     * @param reference
+     *            the records, by time
+     * @param change
+     *            the number of the change just made, for the message
+     */
+    private static void verify(RollingWindow window,
+            TreeMap<Long, Weather> reference, int change) {
+        TemperatureStats.Accumulator acc = new TemperatureStats.Accumulator();
+        int[] counts = new int[Condition.values().length];
+        if (!reference.isEmpty()) {
+            long end = reference.lastKey();
+            long start = end - window.length().toMillis();
+            for (Weather w : reference.subMap(start, false, end, true)
+                    .values()) {
+                acc.add(w.lowTemp(), w.highTemp());
+                counts[w.condition().ordinal()]++;
+            }
+        }
+        String expected = acc.toStats().toString();
+        String actual = window.stats().toString();
+        boolean same = expected.equals(actual);
+        for (Condition c : Condition.values()) {
+            same = same && window.count(c) == counts[c.ordinal()];
+        }
+        if (!same) {
+            throw new IllegalStateException("change " + change + ", window "
+                    + window.length() + ": expected " + expected + ", got "
+                    + window);
+        }
+    }
+
+    /**
+     * Runs the differential check.
+     *
+     * @param seed
+     *            the seed of the random changes
+     * @return the number of times a listener was told of a change
+     */
+    private static int check(long seed) {
+        Random random = new Random(seed);
+        ContinuousChart chart = new ContinuousChart(new Chart2());
+        TreeMap<Long, Weather> reference = new TreeMap<Long, Weather>();
+        List<RollingWindow> windows = new ArrayList<RollingWindow>();
+        windows.add(chart.window(Duration.ofHours(1)));
+        windows.add(chart.window(Duration.ofDays(1)));
+        windows.add(chart.window(Duration.ofDays(7)));
+        final int[] fired = new int[1];
+        for (RollingWindow window : windows) {
+            window.addListener(w -> fired[0]++);
+        }
+        long now = 0;
+        for (int k = 0; k < CHANGES; k++) {
+            int op = random.nextInt(100);
+            if (op < APPEND_PERCENT) {
+                now += 1 + random.nextInt((int) (30 * MINUTE));
+                Weather w = record(now, random);
+                chart.add(w);
+                reference.put(now, w);
+            } else if (op < APPEND_PERCENT + LATE_PERCENT) {
+                long t = now - random.nextLong(Duration.ofDays(2).toMillis());
+                if (!reference.containsKey(t)) {
+                    Weather w = record(t, random);
+                    chart.add(w);
+                    reference.put(t, w);
+                }
+            } else if (op < APPEND_PERCENT + LATE_PERCENT + BATCH_PERCENT) {
+                List<Weather> batch = new ArrayList<Weather>();
+                int n = 1 + random.nextInt(BATCH);
+                for (int i = 0; i < n; i++) {
+                    long t = now - Duration.ofDays(1).toMillis()
+                            + random.nextLong(Duration.ofDays(2).toMillis());
+                    batch.add(record(t, random));
+                }
+                // A batch may list the same reference more than once
+                batch.add(batch.get(random.nextInt(batch.size())));
+                chart.addAll(batch);
+                for (Weather w : batch) {
+                    long t = WeatherSecondary.epochMillis(w);
+                    reference.putIfAbsent(t, w);
+                    now = Math.max(now, t);
+                }
+            } else if (!reference.isEmpty()) {
+                Long t = reference.floorKey(
+                        now - random.nextLong(Duration.ofDays(8).toMillis()));
+                if (t == null) {
+                    t = reference.firstKey();
+                }
+                chart.remove(new Date(t));
+                reference.remove(t);
+            }
+            for (RollingWindow window : windows) {
+                verify(window, reference, k);
+            }
+        }
+        return fired[0];
+    }
+
+    /**
+     * Adds {@code FEED} records a minute apart to {@code chart} and reports
+     * the time each took.
+     *
+     * @param chart
+     *            the chart to feed
+     * @param seed
+     *            the seed of the temperatures and conditions
+     * @return nanoseconds per record
+     */
+    private static double feed(Chart chart, long seed) {
+        Random random = new Random(seed);
+        long begin = System.nanoTime();
+        for (int i = 0; i < FEED; i++) {
+            chart.add(record(i * MINUTE, random));
+        }
+        return (double) (System.nanoTime() - begin) / FEED;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments; the first, if any, is the seed
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+        long seed = 1;
+        if (args.length > 0) {
+            seed = Long.parseLong(args[0]);
+        }
+        int fired = check(seed);
+        out.println("seed " + seed + ": " + CHANGES + " changes, 3 windows "
+                + "equal to a scan after each, " + fired + " notifications");
+
+        double plain = 0;
+        double watched = 0;
+        // The first pass warms up both paths
+        for (int pass = 0; pass < 2; pass++) {
+            plain = feed(new Chart2(), seed);
+            ContinuousChart chart = new ContinuousChart(new Chart2());
+            chart.window(Duration.ofHours(1));
+            chart.window(Duration.ofDays(1));
+            chart.window(Duration.ofDays(7));
+            watched = feed(chart, seed);
+        }
+        out.println(String.format(
+                "%d records in order: %.0f ns each, %.0f ns with 3 windows",
+                FEED, plain, watched));
+        out.close();
+    }
+
+}
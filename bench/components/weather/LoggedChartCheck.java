@@ -0,0 +1,387 @@
+package components.weather;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Recovery check and write rate for {@code LoggedChart}: random adds,
+ * batches and removes are made to a logged chart and to a plain map, with
+ * checkpoints and reopenings along the way, and every reopened chart must
+ * hold exactly the records of the map. A crash in the middle of a checkpoint
+ * is staged by putting the old log back beside the new snapshot, and a crash
+ * in the middle of a write by cutting the log inside its last record; the
+ * first must replay to the same chart and the second must drop only the cut
+ * change. Then the rate of {@code SYNCED} adds is measured with one thread
+ * and with several.
+ */
+public final class LoggedChartCheck {
+
+    /**
+     * Changes made in the recovery check.
+     */
+    private static final int CHANGES = 20_000;
+
+    /**
+     * Percentage of changes that add a record.
+     */
+    private static final int ADD_PERCENT = 60;
+
+    /**
+     * Percentage of changes that add a batch of records.
+     */
+    private static final int BATCH_PERCENT = 5;
+
+    /**
+     * Records in a batch, at most.
+     */
+    private static final int BATCH = 20;
+
+    /**
+     * Distinct times in the recovery check, so times are often reused.
+     */
+    private static final int TIMES = 5_000;
+
+    /**
+     * Changes between two checkpoints, on average.
+     */
+    private static final int CHECKPOINT_EVERY = 1_500;
+
+    /**
+     * Changes between two reopenings, on average.
+     */
+    private static final int REOPEN_EVERY = 700;
+
+    /**
+     * Name of the log in the directory, as {@code LoggedChart} names it.
+     */
+    private static final String LOG = "wal.log";
+
+    /**
+     * Bytes in one record of the log, as {@code ChartLog} lays it out.
+     */
+    private static final int RECORD = 22;
+
+    /**
+     * Milliseconds each write-rate run lasts.
+     */
+    private static final long RATE_MILLIS = 2_000;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private LoggedChartCheck() {
+    }
+
+    /**
+     * Creates a record at time {@code t}.
+     *
+     * @param t
+     *            the time in epoch milliseconds
+     * @param random
+     *            the source of the temperatures and condition
+     * @return a new record at time t
+     */
+    private static Weather record(long t, Random random) {
+        final int range = 40;
+        float low = random.nextInt(range) - range / 2;
+        float high = low + random.nextInt(range / 2);
+        Condition[] all = Condition.values();
+        return new Weather2(t, all[random.nextInt(all.length)], low, high);
+    }
+
+    /**
+     * Checks that {@code chart} holds exactly the records of
+     * {@code reference}.
+     *
+     * @param chart
+     *            the chart
+     * @param reference
+     *            the records, by time
+     * @param when
+     *            what was just done, for the message
+     */
+    private static void verify(Chart chart, TreeMap<Long, Weather> reference,
+            String when) {
+        boolean same = chart.size() == reference.size();
+        for (Weather w : chart) {
+            Weather r = reference.get(WeatherSecondary.epochMillis(w));
+            same = same && r != null && r.condition() == w.condition()
+                    && r.lowTemp() == w.lowTemp()
+                    && r.highTemp() == w.highTemp();
+        }
+        if (!same) {
+            throw new IllegalStateException(when + ": chart has "
+                    + chart.size() + " records, expected " + reference.size());
+        }
+    }
+
+    /**
+     * Deletes {@code directory} and the files in it.
+     *
+     * @param directory
+     *            the directory
+     * @throws IOException
+     *             if a file cannot be deleted
+     */
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path f : (Iterable<Path>) files::iterator) {
+                Files.delete(f);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Makes one random change to {@code chart} and to {@code reference}.
+     *
+     * @param chart
+     *            the chart
+     * @param reference
+     *            the records, by time
+     * @param random
+     *            the source of the change
+     */
+    private static void change(Chart chart, TreeMap<Long, Weather> reference,
+            Random random) {
+        int op = random.nextInt(100);
+        if (op < ADD_PERCENT) {
+            long t = random.nextInt(TIMES);
+            if (!reference.containsKey(t)) {
+                Weather w = record(t, random);
+                chart.add(w);
+                reference.put(t, w);
+            }
+        } else if (op < ADD_PERCENT + BATCH_PERCENT) {
+            List<Weather> batch = new ArrayList<Weather>();
+            int n = 1 + random.nextInt(BATCH);
+            for (int i = 0; i < n; i++) {
+                batch.add(record(random.nextInt(TIMES), random));
+            }
+            chart.addAll(batch);
+            for (Weather w : batch) {
+                reference.putIfAbsent(WeatherSecondary.epochMillis(w), w);
+            }
+        } else if (!reference.isEmpty() && random.nextBoolean()) {
+            Weather w = chart.removeAny();
+            reference.remove(WeatherSecondary.epochMillis(w));
+        } else if (!reference.isEmpty()) {
+            Long t = reference.ceilingKey((long) random.nextInt(TIMES));
+            if (t == null) {
+                t = reference.firstKey();
+            }
+            chart.remove(new Date(t));
+            reference.remove(t);
+        }
+    }
+
+    /**
+     * Runs the recovery check in {@code directory}.
+     *
+     * @param directory
+     *            an empty directory
+     * @param seed
+     *            the seed of the random changes
+     * @return the number of reopenings checked
+     * @throws IOException
+     *             if the directory cannot be used
+     */
+    private static int recover(Path directory, long seed)
+            throws IOException {
+        Random random = new Random(seed);
+        TreeMap<Long, Weather> reference = new TreeMap<Long, Weather>();
+        LoggedChart.Durability[] durabilities = LoggedChart.Durability
+                .values();
+        LoggedChart chart = new LoggedChart(directory, new Chart2(),
+                LoggedChart.Durability.WRITTEN);
+        int reopened = 0;
+        for (int k = 0; k < CHANGES; k++) {
+            change(chart, reference, random);
+            if (random.nextInt(CHECKPOINT_EVERY) == 0) {
+                chart.checkpoint();
+            }
+            if (random.nextInt(REOPEN_EVERY) == 0) {
+                chart.close();
+                chart = new LoggedChart(directory, new Chart2(),
+                        durabilities[random.nextInt(durabilities.length)]);
+                verify(chart, reference, "reopening after change " + k);
+                reopened++;
+            }
+        }
+        chart.close();
+
+        /*
+         * A crash after the new snapshot is moved into place but before the
+         * log is emptied leaves both; replaying the whole log over the new
+         * snapshot must give the same chart.
+         */
+        chart = new LoggedChart(directory, new Chart2(),
+                LoggedChart.Durability.WRITTEN);
+        for (int k = 0; k < REOPEN_EVERY; k++) {
+            change(chart, reference, random);
+        }
+        Path log = directory.resolve(LOG);
+        byte[] before = Files.readAllBytes(log);
+        chart.checkpoint();
+        chart.close();
+        Files.write(log, before);
+        chart = new LoggedChart(directory, new Chart2(),
+                LoggedChart.Durability.WRITTEN);
+        verify(chart, reference, "replaying a log over its own checkpoint");
+        reopened++;
+
+        /*
+         * A crash in the middle of a write leaves the last record cut short;
+         * it must be dropped, with the change it held, and the log must take
+         * new changes after the records kept.
+         */
+        for (int k = 0; k < REOPEN_EVERY; k++) {
+            change(chart, reference, random);
+        }
+        TreeMap<Long, Weather> kept = new TreeMap<Long, Weather>(reference);
+        long t = TIMES + random.nextInt(TIMES);
+        chart.add(record(t, random));
+        chart.close();
+        try (FileChannel file = FileChannel.open(log,
+                StandardOpenOption.WRITE)) {
+            file.truncate(file.size() - RECORD / 2);
+        }
+        chart = new LoggedChart(directory, new Chart2(),
+                LoggedChart.Durability.WRITTEN);
+        verify(chart, kept, "reopening a log cut in its last record");
+        Weather w = record(t, random);
+        chart.add(w);
+        kept.put(t, w);
+        chart.close();
+        chart = new LoggedChart(directory, new Chart2(),
+                LoggedChart.Durability.WRITTEN);
+        verify(chart, kept, "appending after a cut record");
+        chart.close();
+        reopened += 2;
+        return reopened;
+    }
+
+    /**
+     * Adds records under {@code SYNCED} from {@code threads} threads for
+     * {@code RATE_MILLIS} and reports the adds per second.
+     *
+     * @param directory
+     *            an empty directory
+     * @param threads
+     *            the number of threads
+     * @return adds per second
+     * @throws IOException
+     *             if the directory cannot be used
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads
+     */
+    private static double rate(Path directory, int threads)
+            throws IOException, InterruptedException {
+        LoggedChart chart = new LoggedChart(directory, new Chart5(),
+                LoggedChart.Durability.SYNCED);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        long[] added = new long[threads];
+        long stop = System.nanoTime() + RATE_MILLIS * 1_000_000;
+        for (int i = 0; i < threads; i++) {
+            final int id = i;
+            Thread th = new Thread(() -> {
+                Random random = new Random(id);
+                try {
+                    long next = id;
+                    while (System.nanoTime() < stop) {
+                        chart.add(record(next, random));
+                        next += threads;
+                        added[id]++;
+                    }
+                } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            });
+            th.start();
+        }
+        long begin = System.nanoTime();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        chart.close();
+        if (failure.get() != null) {
+            throw new IllegalStateException("a thread failed", failure.get());
+        }
+        long total = 0;
+        for (long a : added) {
+            total += a;
+        }
+        LoggedChart reopened = new LoggedChart(directory, new Chart5(),
+                LoggedChart.Durability.SYNCED);
+        if (reopened.size() != total) {
+            throw new IllegalStateException("added " + total
+                    + " records, reopened " + reopened.size());
+        }
+        reopened.close();
+        return total / seconds;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments; the first, if any, is the seed
+     *            and the second the most threads to measure the write rate
+     *            with
+     * @throws IOException
+     *             if a temporary directory cannot be used
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads
+     */
+    public static void main(String[] args)
+            throws IOException, InterruptedException {
+        SimpleWriter out = new SimpleWriter1L();
+        long seed = 1;
+        int max = Math.max(8, Runtime.getRuntime().availableProcessors());
+        if (args.length > 0) {
+            seed = Long.parseLong(args[0]);
+        }
+        if (args.length > 1) {
+            max = Integer.parseInt(args[1]);
+        }
+        Path directory = Files.createTempDirectory("logged-chart");
+        try {
+            int reopened = recover(directory, seed);
+            out.println("seed " + seed + ": " + CHANGES + " changes, "
+                    + reopened + " reopenings equal to a map");
+        } finally {
+            delete(directory);
+        }
+        out.println("threads  SYNCED adds/s");
+        Map<Integer, Double> rates = new TreeMap<Integer, Double>();
+        for (int threads = 1; threads <= max; threads *= 2) {
+            directory = Files.createTempDirectory("logged-chart");
+            try {
+                rates.put(threads, rate(directory, threads));
+            } finally {
+                delete(directory);
+            }
+            out.println(String.format("%7d  %13.0f", threads,
+                    rates.get(threads)));
+        }
+        out.close();
+    }
+
+}
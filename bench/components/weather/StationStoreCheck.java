@@ -0,0 +1,313 @@
+package components.weather;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Differential check for {@code StationStore}: random adds, batches, removes
+ * and condition lookups are made to a store of many stations and to a plain
+ * map of each station's records, without waiting for the changes to apply,
+ * and every result must be the one the map gives. Every few changes,
+ * {@code stationsWith}, {@code maxHighByRegion} and {@code size} must give
+ * what a scan of the maps gives.
+ */
+public final class StationStoreCheck {
+
+    /**
+     * Changes made in the check.
+     */
+    private static final int CHANGES = 50_000;
+
+    /**
+     * Changes between two queries across stations.
+     */
+    private static final int QUERY_EVERY = 100;
+
+    /**
+     * Percentage of changes that add a record.
+     */
+    private static final int ADD_PERCENT = 50;
+
+    /**
+     * Percentage of changes that add a batch of records.
+     */
+    private static final int BATCH_PERCENT = 5;
+
+    /**
+     * Percentage of changes that remove a record.
+     */
+    private static final int REMOVE_PERCENT = 25;
+
+    /**
+     * Records in a batch, at most.
+     */
+    private static final int BATCH = 20;
+
+    /**
+     * Number of stations.
+     */
+    private static final int STATIONS = 40;
+
+    /**
+     * Number of regions; every fifth station has none.
+     */
+    private static final int REGIONS = 4;
+
+    /**
+     * Number of shards of the store.
+     */
+    private static final int SHARDS = 4;
+
+    /**
+     * Span of the times: sixty days, in buckets of a day.
+     */
+    private static final long SPAN = Duration.ofDays(60).toMillis();
+
+    /**
+     * Length of a time bucket of the store.
+     */
+    private static final long BUCKET = Duration.ofDays(1).toMillis();
+
+    /**
+     * Granularity of the times, so times are often reused.
+     */
+    private static final long STEP = Duration.ofMinutes(10).toMillis();
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private StationStoreCheck() {
+    }
+
+    /**
+     * Creates a record at time {@code t}.
+     *
+     * @param t
+     *            the time in epoch milliseconds
+     * @param random
+     *            the source of the temperatures and condition
+     * @return a new record at time t
+     */
+    private static Weather record(long t, Random random) {
+        final int range = 40;
+        float low = random.nextInt(range) - range / 2;
+        float high = low + random.nextInt(range / 2);
+        Condition[] all = Condition.values();
+        return new Weather2(t, all[random.nextInt(all.length)], low, high);
+    }
+
+    /**
+     * Reports a random time in the span, a multiple of {@code STEP}.
+     *
+     * @param random
+     *            the source of the time
+     * @return the time in epoch milliseconds
+     */
+    private static long time(Random random) {
+        return random.nextLong(SPAN / STEP) * STEP;
+    }
+
+    /**
+     * Reports the name of station number {@code i}.
+     *
+     * @param i
+     *            the number of the station
+     * @return its name
+     */
+    private static String station(int i) {
+        return "ST" + i;
+    }
+
+    /**
+     * Throws if {@code actual} is not {@code expected}.
+     *
+     * @param what
+     *            what was asked, for the message
+     * @param expected
+     *            the result of the maps
+     * @param actual
+     *            the result of the store
+     */
+    private static void same(String what, Object expected, Object actual) {
+        if (!Objects.equals(expected, actual)) {
+            throw new IllegalStateException(what + ": expected " + expected
+                    + ", got " + actual);
+        }
+    }
+
+    /**
+     * Checks the queries across stations over [{@code from}, {@code to}]
+     * against a scan of {@code reference}.
+     *
+     * @param store
+     *            the store
+     * @param reference
+     *            the records of each station, by time
+     * @param from
+     *            the earliest time
+     * @param to
+     *            the latest time
+     * @param c
+     *            the condition asked for
+     */
+    private static void scan(StationStore store,
+            Map<String, TreeMap<Long, Weather>> reference, long from, long to,
+            Condition c) {
+        Set<String> with = new TreeSet<String>();
+        Map<String, Float> maxHigh = new TreeMap<String, Float>();
+        long size = 0;
+        for (Map.Entry<String, TreeMap<Long, Weather>> e : reference
+                .entrySet()) {
+            String region = store.region(e.getKey());
+            size += e.getValue().size();
+            for (Weather w : e.getValue().subMap(from, true, to, true)
+                    .values()) {
+                if (w.condition() == c) {
+                    with.add(e.getKey());
+                }
+                if (region != null) {
+                    maxHigh.merge(region, w.highTemp(), Math::max);
+                }
+            }
+        }
+        Date start = new Date(from);
+        Date end = new Date(to);
+        same("stationsWith " + c, with,
+                store.stationsWith(c, start, end).join());
+        same("maxHighByRegion", maxHigh,
+                store.maxHighByRegion(start, end).join());
+        same("size", size, store.size().join());
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param seed
+     *            the seed of the random changes
+     * @return the number of results compared
+     */
+    private static int check(long seed) {
+        Random random = new Random(seed);
+        Map<String, TreeMap<Long, Weather>> reference =
+                new TreeMap<String, TreeMap<Long, Weather>>();
+        List<CompletableFuture<Void>> pending =
+                new ArrayList<CompletableFuture<Void>>();
+        int compared = 0;
+        StationStore store = new StationStore(SHARDS, BUCKET, Chart2::new);
+        try {
+            for (int i = 0; i < STATIONS; i++) {
+                if (i % (REGIONS + 1) != 0) {
+                    store.register(station(i), "R" + i % REGIONS);
+                }
+                reference.put(station(i), new TreeMap<Long, Weather>());
+            }
+            for (int k = 0; k < CHANGES; k++) {
+                final String what = "change " + k;
+                String s = station(random.nextInt(STATIONS));
+                TreeMap<Long, Weather> mine = reference.get(s);
+                long t = time(random);
+                int op = random.nextInt(100);
+                if (op < ADD_PERCENT) {
+                    if (!mine.containsKey(t)) {
+                        Weather w = record(t, random);
+                        pending.add(store.add(s, w));
+                        mine.put(t, w);
+                    }
+                } else if (op < ADD_PERCENT + BATCH_PERCENT) {
+                    List<Weather> batch = new ArrayList<Weather>();
+                    int n = 1 + random.nextInt(BATCH);
+                    int added = 0;
+                    for (int i = 0; i < n; i++) {
+                        Weather w = record(time(random), random);
+                        batch.add(w);
+                        if (mine.putIfAbsent(WeatherSecondary.epochMillis(w),
+                                w) == null) {
+                            added++;
+                        }
+                    }
+                    final int expected = added;
+                    pending.add(store.addAll(s, batch).thenAccept(
+                            actual -> same(what + " addAll", expected,
+                                    actual)));
+                } else if (op < ADD_PERCENT + BATCH_PERCENT
+                        + REMOVE_PERCENT) {
+                    Long at = t;
+                    if (!mine.isEmpty() && random.nextBoolean()) {
+                        at = mine.ceilingKey(t);
+                        if (at == null) {
+                            at = mine.firstKey();
+                        }
+                    }
+                    final Weather expected = mine.remove(at);
+                    pending.add(store.remove(s, new Date(at)).thenAccept(
+                            actual -> same(what + " remove", expected,
+                                    actual)));
+                } else {
+                    Weather w = mine.get(t);
+                    Condition expected = null;
+                    if (w != null) {
+                        expected = w.condition();
+                    }
+                    final Condition c = expected;
+                    pending.add(store.condition(s, new Date(t)).thenAccept(
+                            actual -> same(what + " condition", c, actual)));
+                }
+                if (k % QUERY_EVERY == 0) {
+                    for (CompletableFuture<Void> f : pending) {
+                        f.join();
+                    }
+                    compared += pending.size();
+                    pending.clear();
+                    long from = time(random);
+                    long to = from + random.nextLong(SPAN / 2);
+                    Condition[] all = Condition.values();
+                    scan(store, reference, from, to,
+                            all[random.nextInt(all.length)]);
+                    compared += 3;
+                }
+            }
+            for (CompletableFuture<Void> f : pending) {
+                f.join();
+            }
+            compared += pending.size();
+            scan(store, reference, Long.MIN_VALUE, Long.MAX_VALUE,
+                    Condition.SUNNY);
+            compared += 3;
+        } finally {
+            store.close();
+        }
+        return compared;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments; the first, if any, is the seed
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+        long seed = 1;
+        if (args.length > 0) {
+            seed = Long.parseLong(args[0]);
+        }
+        int compared = check(seed);
+        out.println("seed " + seed + ": " + CHANGES + " changes over "
+                + STATIONS + " stations, " + compared
+                + " results equal to the maps");
+        out.close();
+    }
+
+}
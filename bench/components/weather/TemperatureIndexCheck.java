@@ -0,0 +1,285 @@
+package components.weather;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Differential check and timing for {@code TemperatureIndexedChart}: random
+ * adds, batches, each listing one record twice, and removes are made to an
+ * indexed chart and to a plain map of the same records, and every few
+ * changes a random band, with or without a time range, must give exactly the
+ * records a scan of the map gives, in the same order. Then years of hourly
+ * readings are indexed, and queries for freezing over windows from a day to
+ * a year are timed against a scan of the records in the window.
+ */
+public final class TemperatureIndexCheck {
+
+    /**
+     * Changes made in the differential check.
+     */
+    private static final int CHANGES = 50_000;
+
+    /**
+     * Changes between two queries in the differential check.
+     */
+    private static final int QUERY_EVERY = 5;
+
+    /**
+     * Percentage of changes that add a record.
+     */
+    private static final int ADD_PERCENT = 55;
+
+    /**
+     * Percentage of changes that add a batch of records.
+     */
+    private static final int BATCH_PERCENT = 5;
+
+    /**
+     * Records in a batch, at most.
+     */
+    private static final int BATCH = 20;
+
+    /**
+     * Span of the times in the differential check: a little over two years,
+     * so ranges cross many months.
+     */
+    private static final long SPAN = 800L * 24 * 60 * 60 * 1000;
+
+    /**
+     * Milliseconds in an hour.
+     */
+    private static final long HOUR = 60L * 60 * 1000;
+
+    /**
+     * Hours of readings in the timing run: five years.
+     */
+    private static final int HOURS = 5 * 365 * 24;
+
+    /**
+     * Queries in the timing run.
+     */
+    private static final int QUERIES = 2000;
+
+    /**
+     * Order the index reports records in.
+     */
+    private static final Comparator<Weather> BY_LOW = Comparator
+            .comparingDouble(Weather::lowTemp)
+            .thenComparingLong(WeatherSecondary::epochMillis);
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private TemperatureIndexCheck() {
+    }
+
+    /**
+     * Creates a record at time {@code t} whose temperatures follow the
+     * seasons, with noise from {@code random}.
+     *
+     * @param t
+     *            the time in epoch milliseconds
+     * @param random
+     *            the source of noise
+     * @return a new record at time t
+     */
+    private static Weather record(long t, Random random) {
+        final double year = 365.25 * 24 * HOUR;
+        final float mean = 10f;
+        final float swing = 15f;
+        final int spread = 12;
+        float low = mean
+                + swing * (float) Math.sin(2 * Math.PI * t / year)
+                + random.nextInt(2 * spread) - spread;
+        float high = low + random.nextInt(spread);
+        Condition[] all = Condition.values();
+        return new Weather2(t, all[random.nextInt(all.length)], low, high);
+    }
+
+    /**
+     * Reports the records of {@code reference} that overlap [{@code lo},
+     * {@code hi}] with times in [{@code from}, {@code to}], by a scan.
+     *
+     * @param reference
+     *            the records, by time
+     * @param lo
+     *            the bottom of the band
+     * @param hi
+     *            the top of the band
+     * @param from
+     *            the earliest time
+     * @param to
+     *            the latest time
+     * @return the matching records, in the order of the index
+     */
+    private static List<Weather> scan(TreeMap<Long, Weather> reference,
+            float lo, float hi, long from, long to) {
+        List<Weather> result = new ArrayList<Weather>();
+        for (Weather w : reference.subMap(from, true, to, true).values()) {
+            if (w.lowTemp() <= hi && w.highTemp() >= lo) {
+                result.add(w);
+            }
+        }
+        result.sort(BY_LOW);
+        return result;
+    }
+
+    /**
+     * Copies {@code records} into a list.
+     *
+     * @param records
+     *            the records
+     * @return the list of records, in the same order
+     */
+    private static List<Weather> list(Iterable<Weather> records) {
+        List<Weather> result = new ArrayList<Weather>();
+        for (Weather w : records) {
+            result.add(w);
+        }
+        return result;
+    }
+
+    /**
+     * Runs the differential check.
+     *
+     * @param seed
+     *            the seed of the random changes
+     * @return the number of queries compared
+     */
+    private static int check(long seed) {
+        Random random = new Random(seed);
+        TemperatureIndexedChart chart = new TemperatureIndexedChart(
+                new Chart2());
+        TreeMap<Long, Weather> reference = new TreeMap<Long, Weather>();
+        int queries = 0;
+        for (int k = 0; k < CHANGES; k++) {
+            int op = random.nextInt(100);
+            if (op < ADD_PERCENT) {
+                long t = random.nextLong(SPAN);
+                if (!reference.containsKey(t)) {
+                    Weather w = record(t, random);
+                    chart.add(w);
+                    reference.put(t, w);
+                }
+            } else if (op < ADD_PERCENT + BATCH_PERCENT) {
+                List<Weather> batch = new ArrayList<Weather>();
+                int n = 1 + random.nextInt(BATCH);
+                for (int i = 0; i < n; i++) {
+                    batch.add(record(random.nextLong(SPAN), random));
+                }
+                // A batch may list the same reference more than once
+                batch.add(batch.get(random.nextInt(batch.size())));
+                chart.addAll(batch);
+                for (Weather w : batch) {
+                    reference.putIfAbsent(WeatherSecondary.epochMillis(w), w);
+                }
+            } else if (!reference.isEmpty()) {
+                Long t = reference.ceilingKey(random.nextLong(SPAN));
+                if (t == null) {
+                    t = reference.firstKey();
+                }
+                chart.remove(new Date(t));
+                reference.remove(t);
+            }
+            if (k % QUERY_EVERY != 0) {
+                continue;
+            }
+            float lo = random.nextInt(60) - 20;
+            float hi = lo + random.nextInt(10);
+            List<Weather> expected;
+            List<Weather> actual;
+            if (random.nextBoolean()) {
+                expected = scan(reference, lo, hi, Long.MIN_VALUE,
+                        Long.MAX_VALUE);
+                actual = list(chart.overlapping(lo, hi));
+            } else {
+                long from = random.nextLong(SPAN);
+                long to = from + random.nextLong(SPAN / 4);
+                expected = scan(reference, lo, hi, from, to);
+                actual = list(chart.overlapping(lo, hi, new Date(from),
+                        new Date(to)));
+            }
+            if (!actual.equals(expected)) {
+                throw new IllegalStateException("change " + k + ": expected "
+                        + expected.size() + " records, got " + actual.size());
+            }
+            queries++;
+        }
+        if (chart.size() != reference.size()) {
+            throw new IllegalStateException("size " + chart.size()
+                    + ", expected " + reference.size());
+        }
+        return queries;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments; the first, if any, is the seed
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+        long seed = 1;
+        if (args.length > 0) {
+            seed = Long.parseLong(args[0]);
+        }
+        int queries = check(seed);
+        out.println("seed " + seed + ": " + CHANGES + " changes, " + queries
+                + " queries, all equal to a scan");
+
+        Random random = new Random(seed);
+        TemperatureIndexedChart chart = new TemperatureIndexedChart(
+                new Chart2());
+        TreeMap<Long, Weather> reference = new TreeMap<Long, Weather>();
+        for (int h = 0; h < HOURS; h++) {
+            Weather w = record(h * HOUR, random);
+            chart.add(w);
+            reference.put(h * HOUR, w);
+        }
+        out.println(HOURS + " hourly records, queries for freezing:");
+        out.println("window  index us  scan us");
+        final String[] names = { "day", "week", "month", "year" };
+        final long[] windows = { 24 * HOUR, 7 * 24 * HOUR, 30 * 24 * HOUR,
+            365 * 24 * HOUR };
+        for (int n = 0; n < windows.length; n++) {
+            long window = windows[n];
+            long[] froms = new long[QUERIES];
+            for (int i = 0; i < QUERIES; i++) {
+                froms[i] = random.nextLong(HOURS * HOUR - window);
+            }
+            long indexed = 0;
+            long scanned = 0;
+            // The first pass warms up both paths
+            for (int pass = 0; pass < 2; pass++) {
+                long found = 0;
+                long begin = System.nanoTime();
+                for (long from : froms) {
+                    found += list(chart.containing(0f, new Date(from),
+                            new Date(from + window))).size();
+                }
+                indexed = System.nanoTime() - begin;
+                begin = System.nanoTime();
+                for (long from : froms) {
+                    found -= scan(reference, 0f, 0f, from, from + window)
+                            .size();
+                }
+                scanned = System.nanoTime() - begin;
+                if (found != 0) {
+                    throw new IllegalStateException("timed queries differ");
+                }
+            }
+            out.println(String.format("%6s  %8.1f  %7.1f", names[n],
+                    indexed / 1e3 / QUERIES, scanned / 1e3 / QUERIES));
+        }
+        out.close();
+    }
+
+}
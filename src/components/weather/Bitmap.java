@@ -0,0 +1,286 @@
+package components.weather;
+
+import java.util.Arrays;
+
+/**
+ * Growable bit set over record positions, packed 64 to a word, that can open
+ * and close gaps when records are inserted into or removed from the middle of
+ * a positional store.
+ *
+ * @convention <pre>
+ * [every bit of $this.words at or beyond the store length is 0] and
+ * $this.cardinality = [number of 1 bits in $this.words]
+ * </pre>
+ * @correspondence this = {i: integer | bit i of $this.words is 1}
+ */
+final class Bitmap {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of bits in a word.
+     */
+    private static final int WORD = 64;
+
+    /**
+     * Number of bits to shift a position by to get its word index.
+     */
+    private static final int LOG_WORD = 6;
+
+    /**
+     * Mask giving the offset of a position within its word.
+     */
+    private static final int OFFSET = WORD - 1;
+
+    /**
+     * Bits of {@code this}; bit i is bit (i mod 64) of word (i div 64).
+     */
+    private long[] words;
+
+    /**
+     * Number of 1 bits in {@code this}.
+     */
+    private int cardinality;
+
+    /**
+     * Reports the number of words needed to hold {@code n} bits.
+     *
+     * @param n
+     *            the number of bits
+     * @return ceiling(n / 64)
+     */
+    private static int wordsFor(int n) {
+        return (n + OFFSET) >>> LOG_WORD;
+    }
+
+    /**
+     * Reports a mask of the bits below {@code offset} in a word.
+     *
+     * @param offset
+     *            the offset within the word
+     * @return the mask 2^offset - 1
+     * @requires 0 <= offset < 64
+     */
+    private static long below(int offset) {
+        return (1L << offset) - 1;
+    }
+
+    /**
+     * Makes room for at least {@code n} bits.
+     *
+     * @param n
+     *            the number of bits needed
+     */
+    private void ensureCapacity(int n) {
+        int needed = wordsFor(n);
+        if (needed > this.words.length) {
+            this.words = Arrays.copyOf(this.words,
+                    Math.max(needed, this.words.length * 2));
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    Bitmap() {
+        this.words = new long[0];
+        this.cardinality = 0;
+    }
+
+    /*
+     * Methods ----------------------------------------------------------------
+     */
+
+    /**
+     * Reports whether {@code i} is in {@code this}.
+     *
+     * @param i
+     *            the position
+     * @return true iff i is in this
+     */
+    boolean get(int i) {
+        int w = i >>> LOG_WORD;
+        return w < this.words.length && (this.words[w] & (1L << i)) != 0;
+    }
+
+    /**
+     * Reports the number of positions in {@code this}.
+     *
+     * @return |this|
+     */
+    int cardinality() {
+        return this.cardinality;
+    }
+
+    /**
+     * Reports the number of positions of {@code this} in [{@code from},
+     * {@code to}).
+     *
+     * @param from
+     *            the first position, inclusive
+     * @param to
+     *            the last position, exclusive
+     * @return |{i in this | from <= i < to}|
+     * @requires 0 <= from
+     */
+    int count(int from, int to) {
+        int end = Math.min(to, this.words.length * WORD);
+        int result = 0;
+        if (from < end) {
+            int first = from >>> LOG_WORD;
+            int last = (end - 1) >>> LOG_WORD;
+            long lowMask = ~below(from & OFFSET);
+            long highMask = -1L >>> (OFFSET - ((end - 1) & OFFSET));
+            if (first == last) {
+                result = Long.bitCount(this.words[first] & lowMask & highMask);
+            } else {
+                result = Long.bitCount(this.words[first] & lowMask);
+                for (int w = first + 1; w < last; w++) {
+                    result += Long.bitCount(this.words[w]);
+                }
+                result += Long.bitCount(this.words[last] & highMask);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports the smallest position of {@code this} at or after {@code from}.
+     *
+     * @param from
+     *            the position to start from
+     * @return the smallest i in this with i >= from, or -1 if there is none
+     * @requires 0 <= from
+     */
+    int next(int from) {
+        int w = from >>> LOG_WORD;
+        int result = -1;
+        if (w < this.words.length) {
+            long word = this.words[w] & ~below(from & OFFSET);
+            while (word == 0 && w + 1 < this.words.length) {
+                w++;
+                word = this.words[w];
+            }
+            if (word != 0) {
+                result = (w << LOG_WORD) + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds {@code i} to {@code this}.
+     *
+     * @param i
+     *            the position
+     * @updates this
+     * @ensures this = #this union {i}
+     */
+    void set(int i) {
+        this.ensureCapacity(i + 1);
+        int w = i >>> LOG_WORD;
+        long bit = 1L << i;
+        if ((this.words[w] & bit) == 0) {
+            this.words[w] |= bit;
+            this.cardinality++;
+        }
+    }
+
+    /**
+     * Removes {@code i} from {@code this}.
+     *
+     * @param i
+     *            the position
+     * @updates this
+     * @ensures this = #this \ {i}
+     */
+    void clear(int i) {
+        int w = i >>> LOG_WORD;
+        long bit = 1L << i;
+        if (w < this.words.length && (this.words[w] & bit) != 0) {
+            this.words[w] &= ~bit;
+            this.cardinality--;
+        }
+    }
+
+    /**
+     * Removes every position from {@code this}.
+     *
+     * @clears this
+     */
+    void clear() {
+        Arrays.fill(this.words, 0L);
+        this.cardinality = 0;
+    }
+
+    /**
+     * Opens a gap at position {@code i} of a store of {@code n} records:
+     * every position at or after {@code i} moves up by one, and {@code i} is
+     * then in {@code this} iff {@code bit}.
+     *
+     * @param i
+     *            the position of the inserted record
+     * @param n
+     *            the number of records before the insertion
+     * @param bit
+     *            whether the inserted record belongs to {@code this}
+     * @updates this
+     * @requires 0 <= i <= n
+     * @ensures this = {j in #this | j < i} union {j + 1 | j in #this and
+     *          j >= i} union [{i} if bit]
+     */
+    void insert(int i, int n, boolean bit) {
+        this.ensureCapacity(n + 1);
+        int first = i >>> LOG_WORD;
+        int last = wordsFor(n + 1) - 1;
+        if (this.cardinality > 0) {
+            for (int w = last; w > first; w--) {
+                this.words[w] = (this.words[w] << 1)
+                        | (this.words[w - 1] >>> OFFSET);
+            }
+            long keep = below(i & OFFSET);
+            long word = this.words[first];
+            this.words[first] = (word & keep) | ((word & ~keep) << 1);
+        }
+        if (bit) {
+            this.words[first] |= 1L << i;
+            this.cardinality++;
+        }
+    }
+
+    /**
+     * Closes the gap left by removing position {@code i} from a store of
+     * {@code n} records: {@code i} leaves {@code this}, and every position
+     * after it moves down by one.
+     *
+     * @param i
+     *            the position of the removed record
+     * @param n
+     *            the number of records before the removal
+     * @updates this
+     * @requires 0 <= i < n
+     * @ensures this = {j in #this | j < i} union {j - 1 | j in #this and
+     *          j > i}
+     */
+    void delete(int i, int n) {
+        this.clear(i);
+        int first = i >>> LOG_WORD;
+        int last = Math.min(wordsFor(n), this.words.length) - 1;
+        if (this.cardinality > 0 && first <= last) {
+            long keep = below(i & OFFSET);
+            long word = this.words[first];
+            this.words[first] = (word & keep) | ((word >>> 1) & ~keep);
+            for (int w = first; w < last; w++) {
+                this.words[w] |= this.words[w + 1] << OFFSET;
+                this.words[w + 1] >>>= 1;
+            }
+        }
+    }
+
+}
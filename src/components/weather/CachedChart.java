@@ -0,0 +1,276 @@
+package components.weather;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import components.sequence.Sequence;
+
+/**
+ * {@code Chart} decorator that keeps the answers to recent point lookups,
+ * {@code hasTime} and {@code condition}, in a bounded least-recently-used
+ * cache in front of any backing chart, typically a disk-backed one such as
+ * {@code Chart4}. A lookup that misses reads through to the backing chart and
+ * caches the record found there, or the fact that there is none, so hot
+ * times are answered from memory and cold ones still work. Every change made
+ * through the decorator invalidates the cached times it touches; changes made
+ * to the backing chart directly are not seen, so once it is decorated it
+ * should only be changed through the decorator. Every other method is passed
+ * straight to the backing chart.
+ *
+ * @convention <pre>
+ * 0 <= |$this.cache| <= $this.capacity and
+ * [for every (key, w) in $this.cache,
+ *   if w = null then key is not in DOMAIN($this.backing)
+ *   else w is the record of $this.backing with time key]
+ * </pre>
+ * @correspondence this = $this.backing
+ */
+public class CachedChart extends ChartDecorator {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Most entries kept.
+     */
+    private final int capacity;
+
+    /**
+     * Recent lookups by time in epoch milliseconds, least recently used
+     * first, with null standing for a time not in the backing chart.
+     */
+    private final LinkedHashMap<Long, Weather> cache;
+
+    /**
+     * Number of lookups answered from the cache.
+     */
+    private long hits;
+
+    /**
+     * Number of lookups read through to the backing chart.
+     */
+    private long misses;
+
+    /**
+     * Number of entries dropped to make room for newer ones.
+     */
+    private long evictions;
+
+    /**
+     * Looks {@code t} up, in the cache if it is there and in the backing
+     * chart otherwise, caching the answer.
+     *
+     * @param t
+     *            the time to look up
+     * @return the record of this with time t, or null if there is none
+     */
+    private Weather lookup(Date t) {
+        assert t != null : "Violation of: t is not null";
+
+        Long key = t.getTime();
+        Weather result = this.cache.get(key);
+        if (result != null || this.cache.containsKey(key)) {
+            this.hits++;
+        } else {
+            this.misses++;
+            if (this.backing().hasTime(t)) {
+                result = this.backing().floor(t);
+            }
+            this.cache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Drops whatever is cached for time {@code t}.
+     *
+     * @param t
+     *            the time in epoch milliseconds
+     */
+    private void invalidate(long t) {
+        this.cache.remove(t);
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from the chart to cache and the most lookups to keep.
+     *
+     * @param backing
+     *            the chart to cache
+     * @param capacity
+     *            the most lookups to keep
+     * @requires capacity > 0
+     * @ensures this = backing
+     */
+    public CachedChart(Chart backing, int capacity) {
+        super(backing);
+        assert capacity > 0 : "Violation of: capacity > 0";
+
+        this.capacity = capacity;
+        final float loadFactor = 0.75f;
+        this.cache = new LinkedHashMap<Long, Weather>(
+                (int) (capacity / loadFactor) + 1, loadFactor, true) {
+
+            /**
+             * Serial version of the cache map.
+             */
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Long, Weather> eldest) {
+                boolean full = this.size() > CachedChart.this.capacity;
+                if (full) {
+                    CachedChart.this.evictions++;
+                }
+                return full;
+            }
+        };
+    }
+
+    /*
+     * Cache methods ----------------------------------------------------------
+     */
+
+    /**
+     * Reports the number of lookups answered from the cache.
+     *
+     * @return the number of hits
+     */
+    public final long hits() {
+        return this.hits;
+    }
+
+    /**
+     * Reports the number of lookups read through to the backing chart.
+     *
+     * @return the number of misses
+     */
+    public final long misses() {
+        return this.misses;
+    }
+
+    /**
+     * Reports the number of entries dropped to make room for newer ones.
+     *
+     * @return the number of evictions
+     */
+    public final long evictions() {
+        return this.evictions;
+    }
+
+    /**
+     * Reports the number of lookups cached now.
+     *
+     * @return the number of entries in the cache
+     */
+    public final int cached() {
+        return this.cache.size();
+    }
+
+    /**
+     * Empties the cache, leaving the counts as they are.
+     *
+     * @updates cache
+     */
+    public final void invalidateAll() {
+        this.cache.clear();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(Weather w) {
+        assert w != null : "Violation of: w is not null";
+
+        this.backing().add(w);
+        this.invalidate(WeatherSecondary.epochMillis(w));
+    }
+
+    @Override
+    public final Weather remove(Date t) {
+        assert t != null : "Violation of: t is not null";
+
+        Weather result = this.backing().remove(t);
+        this.invalidate(t.getTime());
+        return result;
+    }
+
+    @Override
+    public final Weather removeAny() {
+        Weather result = this.backing().removeAny();
+        this.invalidate(WeatherSecondary.epochMillis(result));
+        return result;
+    }
+
+    /**
+     * Reports the condition associated with {@code t} in {@code this}, from
+     * the cache if {@code t} was looked up recently.
+     *
+     * @param t
+     *            the time whose associated condition is to be reported
+     * @return the condition associated with {@code t}
+     * @requires t is in DOMAIN(this)
+     * @ensures (t, condition) is in this
+     */
+    @Override
+    public final Condition condition(Date t) {
+        Weather w = this.lookup(t);
+        assert w != null : "Violation of t is in DOMAIN(this)";
+
+        return w.condition();
+    }
+
+    /**
+     * Reports whether there is a {@code Weather} in {@code this} whose first
+     * component is {@code t}, from the cache if {@code t} was looked up
+     * recently.
+     *
+     * @param t
+     *            the time to be checked
+     * @return true iff there is a {@code Weather} in this whose first
+     *         component is {@code t}
+     * @ensures hasTime = (t is in DOMAIN(this))
+     */
+    @Override
+    public final boolean hasTime(Date t) {
+        return this.lookup(t) != null;
+    }
+
+    /*
+     * Bulk methods -----------------------------------------------------------
+     */
+
+    @Override
+    public final Sequence<Weather> addAll(Iterable<Weather> ws) {
+        assert ws != null : "Violation of: ws is not null";
+
+        /*
+         * ws may only be iterable once, as it is when it comes from a stream,
+         * and it is needed twice.
+         */
+        List<Weather> batch = new ArrayList<Weather>();
+        for (Weather w : ws) {
+            batch.add(w);
+        }
+        Sequence<Weather> rejected = this.backing().addAll(batch);
+        /*
+         * Only absent times were cached for the records added, but telling
+         * them from the rejected ones costs more than dropping them all.
+         */
+        for (Weather w : batch) {
+            this.invalidate(WeatherSecondary.epochMillis(w));
+        }
+        return rejected;
+    }
+
+}
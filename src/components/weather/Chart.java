@@ -0,0 +1,439 @@
+package components.weather;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Date;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+
+import components.sequence.Sequence;
+import components.simplewriter.SimpleWriter;
+
+/**
+ * A chart of {@code Weather} records, at most one per time.
+ *
+ * @mathmodel type Chart is finite set of Weather
+ * @mathdefinitions <pre>
+ * DOMAIN(c: Chart): finite set of Date satisfying
+ *  for every t: Date, t is in DOMAIN(c) iff (there is w: Weather in c
+ *   such that w.time = t)
+ * </pre>
+ * @initially <pre>
+ * ():
+ *  ensures
+ *   this = {}
+ * </pre>
+ * @iterator ~this.seen * ~this.unseen = [records of this in increasing order
+ *           of time, or in an arbitrary order if the implementation is
+ *           unordered]
+ */
+public interface Chart extends Iterable<Weather> {
+
+    /**
+     * Text forms a chart can be written in.
+     */
+    enum Format {
+
+        /**
+         * The form of {@code toString}:
+         * {@code (<time, condition, low, high>, ...)}.
+         */
+        TEXT,
+
+        /**
+         * A {@code time,condition,low,high} header line, then one line per
+         * record with the time in epoch milliseconds, in the form
+         * {@code ChartLoader} reads back.
+         */
+        CSV
+
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    /**
+     * Adds the Weather {@code w} to this.
+     *
+     * @param w
+     *            the {@code Weather} to add
+     * @updates this
+     * @aliases reference {@code w}
+     * @requires w.time is not in DOMAIN(this)
+     * @ensures this = #this union {w}
+     */
+    void add(Weather w);
+
+    /**
+     * Removes the {@code Weather} whose first component is {@code t} and
+     * returns it.
+     *
+     * @param t
+     *            the time to be checked
+     * @return {@code Weather} removed
+     * @updates this
+     * @requires t is in DOMAIN(this)
+     * @ensures <pre>
+     * remove.time = t  and
+     * remove is in #this  and
+     * this = #this \ {remove}
+     * </pre>
+     */
+    Weather remove(Date t);
+
+    /**
+     * Removes and returns an arbitrary {@code Weather} from {@code this}.
+     *
+     * @return the {@code Weather} removed from {@code this}
+     * @updates this
+     * @requires |this| > 0
+     * @ensures <pre>
+     * removeAny is in #this and
+     * this = #this \ {removeAny}
+     * </pre>
+     */
+    Weather removeAny();
+
+    /**
+     * Reports the condition associated with {@code t} in {@code this}.
+     *
+     * @param t
+     *            the time whose associated condition is to be reported
+     * @return the condition associated with {@code t}
+     * @aliases reference returned by {@code condition}
+     * @requires t is in DOMAIN(this)
+     * @ensures (t, condition) is in this
+     */
+    Condition condition(Date t);
+
+    /**
+     * Reports whether there is a {@code Weather} in {@code this} whose first
+     * component is {@code t}.
+     *
+     * @param t
+     *            the time to be checked
+     * @return true iff there is a {@code Weather} in this whose first
+     *         component is {@code t}
+     * @ensures hasTime = (t is in DOMAIN(this))
+     */
+    boolean hasTime(Date t);
+
+    /**
+     * Reports size of {@code this}.
+     *
+     * @return the number of {@code Weather} in {@code this}
+     * @ensures size = |this|
+     */
+    int size();
+
+    /*
+     * Bulk methods -----------------------------------------------------------
+     */
+
+    /**
+     * Adds every record of {@code ws} whose time is not yet in {@code this},
+     * keeping the first of any records in {@code ws} that share a time, and
+     * reports the rest instead of failing on them.
+     *
+     * @param ws
+     *            the records to add
+     * @return the records of {@code ws} that were not added
+     * @updates this
+     * @aliases references in {@code ws}
+     * @ensures <pre>
+     * [this = #this union {w in ws | w.time is not in DOMAIN(#this) and
+     *   w is the first record of ws with time w.time}] and
+     * [addAll = the other records of ws]
+     * </pre>
+     */
+    Sequence<Weather> addAll(Iterable<Weather> ws);
+
+    /**
+     * Adds every record of {@code ws} whose time is not yet in {@code this},
+     * keeping the first of any records in {@code ws} that share a time, and
+     * reports the rest instead of failing on them. {@code ws} is consumed.
+     *
+     * @param ws
+     *            the records to add
+     * @return the records of {@code ws} that were not added
+     * @updates this
+     * @aliases references in {@code ws}
+     * @ensures <pre>
+     * [this = #this union {w in ws | w.time is not in DOMAIN(#this) and
+     *   w is the first record of ws with time w.time}] and
+     * [addAll = the other records of ws]
+     * </pre>
+     */
+    Sequence<Weather> addAll(Stream<Weather> ws);
+
+    /*
+     * Range methods ----------------------------------------------------------
+     */
+
+    /**
+     * Reports the records of {@code this} whose time falls in
+     * [{@code from}, {@code to}], in increasing order of time. The result is a
+     * view of {@code this}, not a copy: nothing is read until it is iterated.
+     *
+     * @param from
+     *            the earliest time to report, inclusive
+     * @param to
+     *            the latest time to report, inclusive
+     * @return the records of {@code this} between {@code from} and {@code to}
+     * @aliases references in {@code between}
+     * @requires from <= to
+     * @ensures between = [records w of this such that from <= w.time <= to,
+     *          in increasing order of time]
+     */
+    Iterable<Weather> between(Date from, Date to);
+
+    /**
+     * Reports the latest record of {@code this} at or before {@code t}.
+     *
+     * @param t
+     *            the time to search from
+     * @return the record of {@code this} closest to {@code t} from below
+     * @aliases reference returned by {@code floor}
+     * @requires there is a w in this such that w.time <= t
+     * @ensures floor is in this and floor.time <= t and [there is no w in
+     *          this such that floor.time < w.time <= t]
+     */
+    Weather floor(Date t);
+
+    /**
+     * Reports the earliest record of {@code this} at or after {@code t}.
+     *
+     * @param t
+     *            the time to search from
+     * @return the record of {@code this} closest to {@code t} from above
+     * @aliases reference returned by {@code ceiling}
+     * @requires there is a w in this such that t <= w.time
+     * @ensures ceiling is in this and t <= ceiling.time and [there is no w in
+     *          this such that t <= w.time < ceiling.time]
+     */
+    Weather ceiling(Date t);
+
+    /**
+     * Reports the record of {@code this} whose time is closest to {@code t}.
+     * Ties go to the earlier record.
+     *
+     * @param t
+     *            the time to search from
+     * @return the record of {@code this} closest to {@code t}
+     * @aliases reference returned by {@code nearest}
+     * @requires |this| > 0
+     * @ensures nearest is in this and [there is no w in this such that
+     *          |w.time - t| < |nearest.time - t|]
+     */
+    Weather nearest(Date t);
+
+    /**
+     * Reports the earliest record of {@code this}.
+     *
+     * @return the record of {@code this} with the smallest time
+     * @aliases reference returned by {@code first}
+     * @requires |this| > 0
+     * @ensures first is in this and [first.time = min(DOMAIN(this))]
+     */
+    Weather first();
+
+    /**
+     * Reports the latest record of {@code this}.
+     *
+     * @return the record of {@code this} with the largest time
+     * @aliases reference returned by {@code last}
+     * @requires |this| > 0
+     * @ensures last is in this and [last.time = max(DOMAIN(this))]
+     */
+    Weather last();
+
+    /*
+     * Condition methods ------------------------------------------------------
+     */
+
+    /**
+     * Reports the number of records of {@code this} whose condition is
+     * {@code c}.
+     *
+     * @param c
+     *            the condition to be counted
+     * @return the number of records of {@code this} with condition {@code c}
+     * @ensures count = |{w in this | w.condition = c}|
+     */
+    int count(Condition c);
+
+    /**
+     * Reports the number of records of {@code this} whose condition is
+     * {@code c} and whose time falls in [{@code from}, {@code to}].
+     *
+     * @param c
+     *            the condition to be counted
+     * @param from
+     *            the earliest time to count, inclusive
+     * @param to
+     *            the latest time to count, inclusive
+     * @return the number of matching records of {@code this}
+     * @requires from <= to
+     * @ensures count = |{w in this | w.condition = c and
+     *          from <= w.time <= to}|
+     */
+    int count(Condition c, Date from, Date to);
+
+    /**
+     * Reports the records of {@code this} whose condition is {@code c} and
+     * whose time falls in [{@code from}, {@code to}], in increasing order of
+     * time. Like {@code between}, the result is a view of {@code this}.
+     *
+     * @param c
+     *            the condition to be matched
+     * @param from
+     *            the earliest time to report, inclusive
+     * @param to
+     *            the latest time to report, inclusive
+     * @return the matching records of {@code this}
+     * @aliases references in {@code withCondition}
+     * @requires from <= to
+     * @ensures withCondition = [records w of this such that w.condition = c
+     *          and from <= w.time <= to, in increasing order of time]
+     */
+    Iterable<Weather> withCondition(Condition c, Date from, Date to);
+
+    /*
+     * Aggregate methods ------------------------------------------------------
+     */
+
+    /**
+     * Reports the count and the smallest, largest, total and mean lowest and
+     * highest temperatures of the records of {@code this} whose time falls in
+     * [{@code from}, {@code to}].
+     *
+     * @param from
+     *            the earliest time to summarize, inclusive
+     * @param to
+     *            the latest time to summarize, inclusive
+     * @return the summary of the records between {@code from} and {@code to}
+     * @requires from <= to
+     * @ensures stats = [summary of the temperatures of the records w of this
+     *          such that from <= w.time <= to]
+     */
+    TemperatureStats stats(Date from, Date to);
+
+    /*
+     * Identity methods -------------------------------------------------------
+     */
+
+    /**
+     * Reports a 64-bit digest of the times and conditions of the records of
+     * {@code this}, independent of their order. Equal charts have equal
+     * fingerprints, so charts with different fingerprints are known to differ
+     * without comparing their records. Temperatures are left out because
+     * {@code equals} lets them differ slightly.
+     *
+     * @return the fingerprint of {@code this}
+     * @ensures fingerprint = [sum, modulo 2^64, of a mix of w.time and
+     *          w.condition over the records w of this]
+     */
+    long fingerprint();
+
+    /*
+     * Snapshot methods -------------------------------------------------------
+     */
+
+    /**
+     * Reports an unchangeable chart equal to {@code this} as it is now. Later
+     * changes to {@code this} do not show in the snapshot, and every method
+     * of the snapshot that would change it throws
+     * {@code UnsupportedOperationException}. The records themselves are
+     * shared, not copied.
+     *
+     * @return a snapshot of {@code this}
+     * @aliases references in {@code this}
+     * @ensures snapshot = this and [snapshot cannot be changed]
+     */
+    Chart snapshot();
+
+    /*
+     * Output methods ---------------------------------------------------------
+     */
+
+    /**
+     * Writes the records of {@code this} to {@code out} in {@code format},
+     * in chunks built in one reused buffer, so the memory used does not grow
+     * with the size of {@code this}.
+     *
+     * @param out
+     *            the destination
+     * @param format
+     *            the form to write the records in
+     * @throws IOException
+     *             if {@code out} cannot be written
+     * @updates out
+     * @ensures out = #out * [the records of this in format]
+     */
+    void writeTo(Appendable out, Format format) throws IOException;
+
+    /**
+     * Writes the records of {@code this} to {@code out} in {@code format},
+     * in chunks built in one reused buffer, so the memory used does not grow
+     * with the size of {@code this}.
+     *
+     * @param out
+     *            the destination
+     * @param format
+     *            the form to write the records in
+     * @updates out.content
+     * @requires out.is_open
+     * @ensures out.content = #out.content * [the records of this in format]
+     */
+    void writeTo(SimpleWriter out, Format format);
+
+    /**
+     * Writes the records of {@code this} to {@code out} in {@code format},
+     * encoded as UTF-8 through one reused buffer, so the memory used does not
+     * grow with the size of {@code this}. {@code out} is left open.
+     *
+     * @param out
+     *            the destination
+     * @param format
+     *            the form to write the records in
+     * @throws IOException
+     *             if {@code out} cannot be written
+     * @updates out
+     * @ensures out = #out * [the records of this in format, in UTF-8]
+     */
+    void writeTo(WritableByteChannel out, Format format) throws IOException;
+
+    /*
+     * Stream methods ---------------------------------------------------------
+     */
+
+    /**
+     * Returns an {@code ORDERED} spliterator over {@code this} that splits
+     * into balanced halves wherever the representation makes that possible,
+     * so parallel streams spread a scan over every worker.
+     * {@code this} must not be changed while the spliterator is in use,
+     * unless the implementation says otherwise.
+     *
+     * @return a spliterator over {@code this} in increasing order of time
+     */
+    @Override
+    Spliterator<Weather> spliterator();
+
+    /**
+     * Returns a sequential stream over {@code this} in increasing order of
+     * time.
+     *
+     * @return a stream over {@code this}
+     */
+    Stream<Weather> stream();
+
+    /**
+     * Returns a parallel stream over {@code this}, split by
+     * {@code spliterator} and run on the common fork-join pool.
+     *
+     * @return a parallel stream over {@code this}
+     */
+    Stream<Weather> parallelStream();
+
+}
@@ -0,0 +1,279 @@
+package components.weather;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import components.set.Set;
+import components.set.Set1L;
+
+/**
+ * {@code Chart} represented as a balanced search tree keyed by time, with
+ * implementations of primary methods.
+ *
+ * @convention <pre>
+ * [$this.chart is a red-black tree] and
+ * [for every (key, w) in $this.chart, key = w.time.getTime()] and
+ * [$this.fingerprint = sum of fingerprintOf(w) over the values w of
+ *   $this.chart]
+ * </pre>
+ * @correspondence this = [set of values in $this.chart]
+ */
+public class Chart2 extends ChartSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Records of {@code this}, ordered by their time in epoch milliseconds.
+     */
+    private TreeMap<Long, Weather> chart;
+
+    /**
+     * Fingerprint of {@code this}, kept up to date by every change.
+     */
+    private long fingerprint;
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.chart = new TreeMap<Long, Weather>();
+        this.fingerprint = 0;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public Chart2() {
+        this.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    /**
+     * Adds the Weather {@code w} to this.
+     *
+     * @param w
+     *            the {@code Weather} to add
+     * @updates this
+     * @aliases reference {@code w}
+     * @requires w.time is not in DOMAIN(this)
+     * @ensures this = #this union {w}
+     */
+    @Override
+    public final void add(Weather w) {
+        assert w != null : "Violation of: w is not null";
+        assert !this.hasTime(
+                w.time()) : "Violation of w.time is not in DOMAIN(this)";
+
+        this.chart.put(WeatherSecondary.epochMillis(w), w);
+        this.fingerprint += fingerprintOf(w);
+    }
+
+    /**
+     * Removes the {@code Weather} whose first component is {@code time} and
+     * returns it.
+     *
+     * @param t
+     *            the time to be checked
+     * @return {@code Weather} removed
+     * @updates this
+     * @requires t is in DOMAIN(this)
+     * @ensures <pre>
+     * remove.time = t  and
+     * remove is in #this  and
+     * this = #this \ {remove}
+     * </pre>
+     */
+    @Override
+    public final Weather remove(Date t) {
+        assert t != null : "Violation of: t is not null";
+        assert this.hasTime(t) : "Violation of t is in DOMAIN(this)";
+
+        Weather result = this.chart.remove(t.getTime());
+        this.fingerprint -= fingerprintOf(result);
+        return result;
+    }
+
+    /**
+     * Removes and returns an arbitrary {@code Weather} from {@code this}.
+     *
+     * @return the {@code Weather} removed from {@code this}
+     * @updates this
+     * @requires |this| > 0
+     * @ensures <pre>
+     * removeAny is in #this and
+     * this = #this \ {removeAny}
+     * </pre>
+     */
+    @Override
+    public final Weather removeAny() {
+        assert this.chart.size() > 0 : "Violation of: |this| > 0";
+
+        /*
+         * The latest record is the cheapest one to take off the tree.
+         */
+        Map.Entry<Long, Weather> last = this.chart.pollLastEntry();
+        this.fingerprint -= fingerprintOf(last.getValue());
+        return last.getValue();
+    }
+
+    /**
+     * Reports the condition associated with {@code t} in {@code this}.
+     *
+     * @param t
+     *            the time whose associated condition is to be reported
+     * @return the condition associated with key
+     * @aliases reference returned by {@code condition}
+     * @requires t is in DOMAIN(this)
+     * @ensures (time, condition) is in this
+     */
+    @Override
+    public final Condition condition(Date t) {
+        assert t != null : "Violation of: t is not null";
+        assert this.hasTime(t) : "Violation of t is in DOMAIN(this)";
+
+        return this.chart.get(t.getTime()).condition();
+    }
+
+    /**
+     * Reports whether there is a {@code Weather} in {@code this} whose first
+     * component is {@code t}.
+     *
+     * @param t
+     *            the time to be checked
+     * @return true iff there is a {@code Weather} in this whose first
+     *         component is {@code t}
+     * @ensures hasTime = (t is in DOMAIN(this))
+     */
+    @Override
+    public final boolean hasTime(Date t) {
+        assert t != null : "Violation of: t is not null";
+
+        return this.chart.containsKey(t.getTime());
+    }
+
+    /**
+     * Reports size of {@code this}.
+     *
+     * @return the number of {@code Weather} in {@code this}
+     * @ensures size = |this|
+     */
+    @Override
+    public final int size() {
+        return this.chart.size();
+    }
+
+    /**
+     * Creates and return a set of {@code Weather} in {@code this} whose
+     * condition is {@code c}.
+     *
+     * @param c
+     *            the condition to be checked
+     * @return a new {@code Set<Weather>} whose condition is {@code c}
+     * @ensures setOfCondition = {w in this | w.condition = c}
+     */
+    final Set<Weather> setOfCondition(Condition c) {
+        assert c != null : "Violation of: c is not null";
+
+        Set<Weather> s = new Set1L<Weather>();
+        List<Weather> matches = this.scan()
+                .filter(w -> w.condition().equals(c))
+                .collect(Collectors.toList());
+        for (Weather w : matches) {
+            s.add(w);
+        }
+        return s;
+    }
+
+    @Override
+    public final long fingerprint() {
+        return this.fingerprint;
+    }
+
+    /**
+     * Returns an iterator over {@code this} in increasing order of time. Its
+     * {@code remove} throws {@code UnsupportedOperationException}.
+     *
+     * @return an iterator over {@code this}
+     */
+    @Override
+    public final Iterator<Weather> iterator() {
+        return Collections.unmodifiableCollection(this.chart.values())
+                .iterator();
+    }
+
+    /**
+     * Returns a spliterator over {@code this} in increasing order of time
+     * that splits the tree at its root and then at the roots of its
+     * subtrees, so the halves are balanced to within the tree's own balance.
+     *
+     * @return a spliterator over {@code this}
+     */
+    @Override
+    public final Spliterator<Weather> spliterator() {
+        return this.chart.values().spliterator();
+    }
+
+    /*
+     * Range methods ----------------------------------------------------------
+     */
+
+    @Override
+    public final Iterable<Weather> between(Date from, Date to) {
+        assert from != null : "Violation of: from is not null";
+        assert to != null : "Violation of: to is not null";
+        assert from.compareTo(to) <= 0 : "Violation of: from <= to";
+
+        return Collections.unmodifiableCollection(this.chart
+                .subMap(from.getTime(), true, to.getTime(), true).values());
+    }
+
+    @Override
+    public final Weather floor(Date t) {
+        assert t != null : "Violation of: t is not null";
+        Map.Entry<Long, Weather> e = this.chart.floorEntry(t.getTime());
+        assert e != null : ""
+                + "Violation of: there is a w in this such that w.time <= t";
+
+        return e.getValue();
+    }
+
+    @Override
+    public final Weather ceiling(Date t) {
+        assert t != null : "Violation of: t is not null";
+        Map.Entry<Long, Weather> e = this.chart.ceilingEntry(t.getTime());
+        assert e != null : ""
+                + "Violation of: there is a w in this such that t <= w.time";
+
+        return e.getValue();
+    }
+
+    @Override
+    public final Weather first() {
+        assert this.chart.size() > 0 : "Violation of: |this| > 0";
+
+        return this.chart.firstEntry().getValue();
+    }
+
+    @Override
+    public final Weather last() {
+        assert this.chart.size() > 0 : "Violation of: |this| > 0";
+
+        return this.chart.lastEntry().getValue();
+    }
+
+}
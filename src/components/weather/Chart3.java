@@ -0,0 +1,670 @@
+package components.weather;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+
+import components.sequence.Sequence;
+import components.sequence.Sequence1L;
+import components.set.Set;
+import components.set.Set1L;
+
+/**
+ * {@code Chart} represented as parallel primitive arrays sorted by time, with
+ * implementations of primary methods. No {@code Weather} object is kept per
+ * record; one is created only when a record is handed out.
+ *
+ * @convention <pre>
+ * 0 <= $this.length <= |$this.times| and
+ * |$this.times| = |$this.conditions| = |$this.lows| = |$this.highs| and
+ * [$this.times[0, $this.length) is strictly increasing] and
+ * [for every i in [0, $this.length),
+ *   0 <= $this.conditions[i] < |Condition.values()|] and
+ * |$this.byCondition| = |Condition.values()| and
+ * [for every k, $this.byCondition[k] =
+ *   {i in [0, $this.length) | $this.conditions[i] = k}] and
+ * [$this.fingerprint = sum of fingerprintOf($this.times[i],
+ *   $this.conditions[i]) over i in [0, $this.length)]
+ * </pre>
+ * @correspondence <pre>
+ * this = {w: Weather | there is i in [0, $this.length) such that
+ *   w.time.getTime() = $this.times[i] and
+ *   w.condition = Condition.values()[$this.conditions[i]] and
+ *   w.lowTemp = $this.lows[i] and w.highTemp = $this.highs[i]}
+ * </pre>
+ */
+public class Chart3 extends ChartSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of records the arrays grow by at a time, at least.
+     */
+    private static final int CHUNK = 1024;
+
+    /**
+     * Conditions indexed by ordinal.
+     */
+    private static final Condition[] CONDITIONS = Condition.values();
+
+    /**
+     * Times of the records in epoch milliseconds, in increasing order.
+     */
+    private long[] times;
+
+    /**
+     * Condition ordinals of the records.
+     */
+    private byte[] conditions;
+
+    /**
+     * Lowest temperatures of the records.
+     */
+    private float[] lows;
+
+    /**
+     * Highest temperatures of the records.
+     */
+    private float[] highs;
+
+    /**
+     * Number of records in use at the front of the arrays.
+     */
+    private int length;
+
+    /**
+     * Positions of the records of each condition, indexed by ordinal.
+     */
+    private Bitmap[] byCondition;
+
+    /**
+     * Fingerprint of {@code this}, kept up to date by every change.
+     */
+    private long fingerprint;
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.times = new long[0];
+        this.conditions = new byte[0];
+        this.lows = new float[0];
+        this.highs = new float[0];
+        this.length = 0;
+        this.byCondition = new Bitmap[CONDITIONS.length];
+        for (int k = 0; k < CONDITIONS.length; k++) {
+            this.byCondition[k] = new Bitmap();
+        }
+        this.fingerprint = 0;
+    }
+
+    /**
+     * Makes room for at least {@code n} records, growing the arrays by whole
+     * chunks and at least doubling them so appends stay amortized O(1).
+     *
+     * @param n
+     *            the number of records needed
+     * @ensures |$this.times| >= n
+     */
+    private void ensureCapacity(int n) {
+        int capacity = this.times.length;
+        if (n > capacity) {
+            int grown = chunksFor(Math.max(n, Math.max(capacity * 2, CHUNK)));
+            this.times = Arrays.copyOf(this.times, grown);
+            this.conditions = Arrays.copyOf(this.conditions, grown);
+            this.lows = Arrays.copyOf(this.lows, grown);
+            this.highs = Arrays.copyOf(this.highs, grown);
+        }
+    }
+
+    /**
+     * Reports the capacity, a whole number of chunks, to use for {@code n}
+     * records.
+     *
+     * @param n
+     *            the number of records needed
+     * @return the smallest multiple of CHUNK that is at least n
+     */
+    private static int chunksFor(int n) {
+        return ((n + CHUNK - 1) / CHUNK) * CHUNK;
+    }
+
+    /**
+     * Searches for {@code t} among the records.
+     *
+     * @param t
+     *            the time, in epoch milliseconds, to search for
+     * @return the index of {@code t} if present; otherwise
+     *         {@code -(insertion point) - 1}
+     */
+    private int search(long t) {
+        return Arrays.binarySearch(this.times, 0, this.length, t);
+    }
+
+    /**
+     * Reports the index of the first record at or after {@code t}.
+     *
+     * @param t
+     *            the time, in epoch milliseconds
+     * @return the smallest i such that $this.times[i] >= t, or $this.length
+     */
+    private int ceilingIndex(long t) {
+        int i = this.search(t);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return i;
+    }
+
+    /**
+     * Reports the index of the last record at or before {@code t}.
+     *
+     * @param t
+     *            the time, in epoch milliseconds
+     * @return the largest i such that $this.times[i] <= t, or -1
+     */
+    private int floorIndex(long t) {
+        int i = this.search(t);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        return i;
+    }
+
+    /**
+     * Creates a {@code Weather} holding the record at index {@code i}.
+     *
+     * @param i
+     *            the index of the record
+     * @return a new immutable {@code Weather} equal to the record at
+     *         {@code i}
+     * @requires 0 <= i < $this.length
+     */
+    private Weather weatherAt(int i) {
+        return new Weather2(this.times[i], CONDITIONS[this.conditions[i]],
+                this.lows[i], this.highs[i]);
+    }
+
+    /**
+     * Removes the record at index {@code i}, closing the gap it leaves.
+     *
+     * @param i
+     *            the index of the record
+     * @requires 0 <= i < $this.length
+     */
+    private void removeAt(int i) {
+        this.fingerprint -= fingerprintOf(this.times[i], this.conditions[i]);
+        int tail = this.length - i - 1;
+        System.arraycopy(this.times, i + 1, this.times, i, tail);
+        System.arraycopy(this.conditions, i + 1, this.conditions, i, tail);
+        System.arraycopy(this.lows, i + 1, this.lows, i, tail);
+        System.arraycopy(this.highs, i + 1, this.highs, i, tail);
+        for (Bitmap b : this.byCondition) {
+            b.delete(i, this.length);
+        }
+        this.length--;
+    }
+
+    /**
+     * Iterator over the records at indices [{@code next}, {@code end}).
+     */
+    private final class Range implements Iterator<Weather> {
+
+        /**
+         * Index of the next record to report.
+         */
+        private int next;
+
+        /**
+         * Index one past the last record to report.
+         */
+        private final int end;
+
+        /**
+         * Constructor from index bounds.
+         *
+         * @param start
+         *            the index of the first record, inclusive
+         * @param end
+         *            the index of the last record, exclusive
+         */
+        Range(int start, int end) {
+            this.next = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next < this.end;
+        }
+
+        @Override
+        public Weather next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Weather w = Chart3.this.weatherAt(this.next);
+            this.next++;
+            return w;
+        }
+
+    }
+
+    /**
+     * Iterator over the positions of one condition in [{@code next},
+     * {@code end}).
+     */
+    private final class Matches implements Iterator<Weather> {
+
+        /**
+         * Positions of the condition being reported.
+         */
+        private final Bitmap bits;
+
+        /**
+         * Position of the next record to report, or -1 if there is none.
+         */
+        private int next;
+
+        /**
+         * Position one past the last record to report.
+         */
+        private final int end;
+
+        /**
+         * Constructor from a bitmap and position bounds.
+         *
+         * @param bits
+         *            the positions to report
+         * @param start
+         *            the first position, inclusive
+         * @param end
+         *            the last position, exclusive
+         */
+        Matches(Bitmap bits, int start, int end) {
+            this.bits = bits;
+            this.next = bits.next(start);
+            this.end = end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next >= 0 && this.next < this.end;
+        }
+
+        @Override
+        public Weather next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Weather w = Chart3.this.weatherAt(this.next);
+            this.next = this.bits.next(this.next + 1);
+            return w;
+        }
+
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public Chart3() {
+        this.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    /**
+     * Adds the Weather {@code w} to this. Only the values of {@code w} are
+     * kept, so later changes to {@code w} do not affect {@code this}.
+     *
+     * @param w
+     *            the {@code Weather} to add
+     * @updates this
+     * @requires w.time is not in DOMAIN(this)
+     * @ensures this = #this union {w}
+     */
+    @Override
+    public final void add(Weather w) {
+        assert w != null : "Violation of: w is not null";
+        long t = WeatherSecondary.epochMillis(w);
+        int i = this.search(t);
+        assert i < 0 : "Violation of w.time is not in DOMAIN(this)";
+
+        i = -i - 1;
+        this.ensureCapacity(this.length + 1);
+        int tail = this.length - i;
+        System.arraycopy(this.times, i, this.times, i + 1, tail);
+        System.arraycopy(this.conditions, i, this.conditions, i + 1, tail);
+        System.arraycopy(this.lows, i, this.lows, i + 1, tail);
+        System.arraycopy(this.highs, i, this.highs, i + 1, tail);
+        this.times[i] = t;
+        this.conditions[i] = (byte) w.condition().ordinal();
+        this.lows[i] = w.lowTemp();
+        this.highs[i] = w.highTemp();
+        int ordinal = w.condition().ordinal();
+        for (int k = 0; k < CONDITIONS.length; k++) {
+            this.byCondition[k].insert(i, this.length, k == ordinal);
+        }
+        this.fingerprint += fingerprintOf(t, ordinal);
+        this.length++;
+    }
+
+    /**
+     * Removes the {@code Weather} whose first component is {@code t} and
+     * returns it.
+     *
+     * @param t
+     *            the time to be checked
+     * @return {@code Weather} removed
+     * @updates this
+     * @requires t is in DOMAIN(this)
+     * @ensures <pre>
+     * remove.time = t  and
+     * remove is in #this  and
+     * this = #this \ {remove}
+     * </pre>
+     */
+    @Override
+    public final Weather remove(Date t) {
+        assert t != null : "Violation of: t is not null";
+        int i = this.search(t.getTime());
+        assert i >= 0 : "Violation of t is in DOMAIN(this)";
+
+        Weather result = this.weatherAt(i);
+        this.removeAt(i);
+        return result;
+    }
+
+    /**
+     * Removes and returns an arbitrary {@code Weather} from {@code this}.
+     *
+     * @return the {@code Weather} removed from {@code this}
+     * @updates this
+     * @requires |this| > 0
+     * @ensures <pre>
+     * removeAny is in #this and
+     * this = #this \ {removeAny}
+     * </pre>
+     */
+    @Override
+    public final Weather removeAny() {
+        assert this.length > 0 : "Violation of: |this| > 0";
+
+        /*
+         * The latest record is the only one that leaves no gap behind.
+         */
+        int i = this.length - 1;
+        Weather result = this.weatherAt(i);
+        this.byCondition[this.conditions[i]].clear(i);
+        this.fingerprint -= fingerprintOf(this.times[i], this.conditions[i]);
+        this.length--;
+        return result;
+    }
+
+    /**
+     * Reports the condition associated with {@code t} in {@code this}.
+     *
+     * @param t
+     *            the time whose associated condition is to be reported
+     * @return the condition associated with {@code t}
+     * @requires t is in DOMAIN(this)
+     * @ensures (t, condition) is in this
+     */
+    @Override
+    public final Condition condition(Date t) {
+        assert t != null : "Violation of: t is not null";
+        int i = this.search(t.getTime());
+        assert i >= 0 : "Violation of t is in DOMAIN(this)";
+
+        return CONDITIONS[this.conditions[i]];
+    }
+
+    /**
+     * Reports whether there is a {@code Weather} in {@code this} whose first
+     * component is {@code t}.
+     *
+     * @param t
+     *            the time to be checked
+     * @return true iff there is a {@code Weather} in this whose first
+     *         component is {@code t}
+     * @ensures hasTime = (t is in DOMAIN(this))
+     */
+    @Override
+    public final boolean hasTime(Date t) {
+        assert t != null : "Violation of: t is not null";
+
+        return this.search(t.getTime()) >= 0;
+    }
+
+    /**
+     * Reports size of {@code this}.
+     *
+     * @return the number of {@code Weather} in {@code this}
+     * @ensures size = |this|
+     */
+    @Override
+    public final int size() {
+        return this.length;
+    }
+
+    /**
+     * Creates and return a set of {@code Weather} in {@code this} whose
+     * condition is {@code c}.
+     *
+     * @param c
+     *            the condition to be checked
+     * @return a new {@code Set<Weather>} whose condition is {@code c}
+     * @ensures setOfCondition = {w in this | w.condition = c}
+     */
+    final Set<Weather> setOfCondition(Condition c) {
+        assert c != null : "Violation of: c is not null";
+
+        Set<Weather> s = new Set1L<Weather>();
+        Bitmap bits = this.byCondition[c.ordinal()];
+        for (int i = bits.next(0); i >= 0; i = bits.next(i + 1)) {
+            s.add(this.weatherAt(i));
+        }
+        return s;
+    }
+
+    @Override
+    public final long fingerprint() {
+        return this.fingerprint;
+    }
+
+    /**
+     * Returns an iterator over {@code this} in increasing order of time. Each
+     * call to {@code next} creates a new immutable {@code Weather}.
+     *
+     * @return an iterator over {@code this}
+     */
+    @Override
+    public final Iterator<Weather> iterator() {
+        return new Range(0, this.length);
+    }
+
+    /**
+     * Returns a spliterator over {@code this} in increasing order of time
+     * that splits the positions of the records exactly in half, so it is
+     * {@code SIZED} and {@code SUBSIZED}. Each record reported is a new
+     * {@code Weather}.
+     *
+     * @return a spliterator over {@code this}
+     */
+    @Override
+    public final Spliterator<Weather> spliterator() {
+        return new IndexedSpliterator(this::weatherAt, 0, this.length);
+    }
+
+    /*
+     * Bulk methods -----------------------------------------------------------
+     */
+
+    /**
+     * Adds every record of {@code ws} whose time is not yet in {@code this},
+     * in one merge of the sorted batch with the existing columns.
+     *
+     * @param ws
+     *            the records to add
+     * @return the records of {@code ws} that were not added
+     * @updates this
+     * @ensures <pre>
+     * [this = #this union {w in ws | w.time is not in DOMAIN(#this) and
+     *   w is the first record of ws with time w.time}] and
+     * [addAll = the other records of ws]
+     * </pre>
+     */
+    @Override
+    public final Sequence<Weather> addAll(Iterable<Weather> ws) {
+        assert ws != null : "Violation of: ws is not null";
+
+        Sequence<Weather> rejected = new Sequence1L<Weather>();
+        List<Weather> batch = distinctByTime(ws, rejected);
+        int m = batch.size();
+        int capacity = chunksFor(this.length + m);
+        long[] newTimes = new long[capacity];
+        byte[] newConditions = new byte[capacity];
+        float[] newLows = new float[capacity];
+        float[] newHighs = new float[capacity];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < this.length || j < m) {
+            long t = Long.MAX_VALUE;
+            if (j < m) {
+                t = WeatherSecondary.epochMillis(batch.get(j));
+            }
+            if (i < this.length && this.times[i] <= t) {
+                if (j < m && this.times[i] == t) {
+                    rejected.add(rejected.length(), batch.get(j));
+                    j++;
+                }
+                newTimes[n] = this.times[i];
+                newConditions[n] = this.conditions[i];
+                newLows[n] = this.lows[i];
+                newHighs[n] = this.highs[i];
+                i++;
+            } else {
+                Weather w = batch.get(j);
+                newTimes[n] = t;
+                newConditions[n] = (byte) w.condition().ordinal();
+                newLows[n] = w.lowTemp();
+                newHighs[n] = w.highTemp();
+                this.fingerprint += fingerprintOf(t, newConditions[n]);
+                j++;
+            }
+            n++;
+        }
+        this.times = newTimes;
+        this.conditions = newConditions;
+        this.lows = newLows;
+        this.highs = newHighs;
+        this.length = n;
+        for (Bitmap b : this.byCondition) {
+            b.clear();
+        }
+        for (int k = 0; k < n; k++) {
+            this.byCondition[newConditions[k]].set(k);
+        }
+        return rejected;
+    }
+
+    /*
+     * Range methods ----------------------------------------------------------
+     */
+
+    @Override
+    public final Iterable<Weather> between(Date from, Date to) {
+        assert from != null : "Violation of: from is not null";
+        assert to != null : "Violation of: to is not null";
+        assert from.compareTo(to) <= 0 : "Violation of: from <= to";
+
+        final long lo = from.getTime();
+        final long hi = to.getTime();
+        return () -> new Range(this.ceilingIndex(lo), this.floorIndex(hi) + 1);
+    }
+
+    @Override
+    public final Weather floor(Date t) {
+        assert t != null : "Violation of: t is not null";
+        int i = this.floorIndex(t.getTime());
+        assert i >= 0 : ""
+                + "Violation of: there is a w in this such that w.time <= t";
+
+        return this.weatherAt(i);
+    }
+
+    @Override
+    public final Weather ceiling(Date t) {
+        assert t != null : "Violation of: t is not null";
+        int i = this.ceilingIndex(t.getTime());
+        assert i < this.length : ""
+                + "Violation of: there is a w in this such that t <= w.time";
+
+        return this.weatherAt(i);
+    }
+
+    @Override
+    public final Weather first() {
+        assert this.length > 0 : "Violation of: |this| > 0";
+
+        return this.weatherAt(0);
+    }
+
+    @Override
+    public final Weather last() {
+        assert this.length > 0 : "Violation of: |this| > 0";
+
+        return this.weatherAt(this.length - 1);
+    }
+
+    /*
+     * Condition methods ------------------------------------------------------
+     */
+
+    @Override
+    public final int count(Condition c) {
+        assert c != null : "Violation of: c is not null";
+
+        return this.byCondition[c.ordinal()].cardinality();
+    }
+
+    @Override
+    public final int count(Condition c, Date from, Date to) {
+        assert c != null : "Violation of: c is not null";
+        assert from != null : "Violation of: from is not null";
+        assert to != null : "Violation of: to is not null";
+        assert from.compareTo(to) <= 0 : "Violation of: from <= to";
+
+        return this.byCondition[c.ordinal()].count(
+                this.ceilingIndex(from.getTime()),
+                this.floorIndex(to.getTime()) + 1);
+    }
+
+    @Override
+    public final Iterable<Weather> withCondition(Condition c, Date from,
+            Date to) {
+        assert c != null : "Violation of: c is not null";
+        assert from != null : "Violation of: from is not null";
+        assert to != null : "Violation of: to is not null";
+        assert from.compareTo(to) <= 0 : "Violation of: from <= to";
+
+        final Bitmap bits = this.byCondition[c.ordinal()];
+        final long lo = from.getTime();
+        final long hi = to.getTime();
+        return () -> new Matches(bits, this.ceilingIndex(lo),
+                this.floorIndex(hi) + 1);
+    }
+
+}
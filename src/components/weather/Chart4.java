@@ -0,0 +1,734 @@
+package components.weather;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+
+/**
+ * {@code Chart} kept in a file of fixed-width binary records sorted by time,
+ * read and written in place through memory mapping, with implementations of
+ * primary methods. Opening a file reads only its header, so a chart of any
+ * size opens in constant time; records are looked up by binary search over
+ * the mapped file and a {@code Weather} is created only when one is handed
+ * out.
+ *
+ * <p>
+ * The file is a 16-byte header followed by one 17-byte record per
+ * {@code Weather}, all big-endian:
+ *
+ * <pre>
+ * header: magic  int   0x57434854 ("WCHT")
+ *         version int  1
+ *         count  long  number of records in use
+ * record: time   long  epoch milliseconds, strictly increasing
+ *         cond   byte  Condition ordinal
+ *         low    float lowest temperature
+ *         high   float highest temperature
+ * </pre>
+ *
+ * Space past the last record in use is reserved for growth and ignored.
+ *
+ * @convention <pre>
+ * 0 <= $this.length <= $this.capacity and
+ * [$this.segments map the $this.capacity record slots of the file] and
+ * [header.count = $this.length] and
+ * [the times of records [0, $this.length) are strictly increasing] and
+ * [if $this.fingerprinted then $this.fingerprint = sum of
+ *   fingerprintOf(time, condition) over records [0, $this.length)]
+ * </pre>
+ * @correspondence this = [records [0, $this.length) of the file]
+ */
+public class Chart4 extends ChartSecondary implements Closeable {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * First word of every chart file.
+     */
+    static final int MAGIC = 0x57434854;
+
+    /**
+     * Version of the layout described above.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Size of the header in bytes.
+     */
+    static final int HEADER = 16;
+
+    /**
+     * Size of a record in bytes.
+     */
+    static final int RECORD = 17;
+
+    /**
+     * Offset of the record count in the header.
+     */
+    private static final int COUNT = 8;
+
+    /**
+     * Offset of the time in a record.
+     */
+    private static final int TIME = 0;
+
+    /**
+     * Offset of the condition ordinal in a record.
+     */
+    private static final int CONDITION = 8;
+
+    /**
+     * Offset of the lowest temperature in a record.
+     */
+    private static final int LOW = 9;
+
+    /**
+     * Offset of the highest temperature in a record.
+     */
+    private static final int HIGH = 13;
+
+    /**
+     * Number of records per mapped segment; a segment stays under the 2 GB
+     * limit of a single mapping.
+     */
+    private static final int SEGMENT = 1 << 26;
+
+    /**
+     * Number of record slots the file grows by at a time, at least.
+     */
+    private static final int CHUNK = 4096;
+
+    /**
+     * Number of records moved at a time when opening or closing a gap.
+     */
+    private static final int MOVE = 4096;
+
+    /**
+     * Conditions indexed by ordinal.
+     */
+    private static final Condition[] CONDITIONS = Condition.values();
+
+    /**
+     * Channel of the file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Mapping of the header.
+     */
+    private final MappedByteBuffer header;
+
+    /**
+     * Mappings of the record slots, SEGMENT slots each but the last.
+     */
+    private MappedByteBuffer[] segments;
+
+    /**
+     * Number of record slots mapped.
+     */
+    private long capacity;
+
+    /**
+     * Number of records in use.
+     */
+    private int length;
+
+    /**
+     * Fingerprint of {@code this}, once computed. It is not stored in the
+     * file: the first call to {@code fingerprint} computes it from every
+     * record, so that opening a file stays O(1), and every change keeps it up
+     * to date from then on.
+     */
+    private long fingerprint;
+
+    /**
+     * Whether {@code fingerprint} has been computed.
+     */
+    private boolean fingerprinted;
+
+    /**
+     * Buffer records pass through when they are moved.
+     */
+    private final byte[] scratch = new byte[MOVE * RECORD];
+
+    /**
+     * Maps the first {@code slots} record slots of the file, growing the file
+     * as needed.
+     *
+     * @param slots
+     *            the number of record slots to map
+     * @throws IOException
+     *             if the file cannot be mapped
+     */
+    private void map(long slots) throws IOException {
+        int count = (int) ((slots + SEGMENT - 1) / SEGMENT);
+        MappedByteBuffer[] mapped = new MappedByteBuffer[count];
+        for (int s = 0; s < count; s++) {
+            long first = (long) s * SEGMENT;
+            long records = Math.min(SEGMENT, slots - first);
+            mapped[s] = this.channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER + first * RECORD, records * RECORD);
+        }
+        this.segments = mapped;
+        this.capacity = slots;
+    }
+
+    /**
+     * Makes room for at least {@code n} records.
+     *
+     * @param n
+     *            the number of records needed
+     * @ensures $this.capacity >= n
+     */
+    private void ensureCapacity(int n) {
+        if (n > this.capacity) {
+            long grown = Math.max(n, Math.max(this.capacity * 2, CHUNK));
+            grown = ((grown + CHUNK - 1) / CHUNK) * CHUNK;
+            try {
+                this.map(grown);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Reports the segment holding record {@code i}.
+     *
+     * @param i
+     *            the index of the record
+     * @return the mapping holding record i
+     */
+    private MappedByteBuffer segment(long i) {
+        return this.segments[(int) (i / SEGMENT)];
+    }
+
+    /**
+     * Reports the offset of record {@code i} within its segment.
+     *
+     * @param i
+     *            the index of the record
+     * @return the byte offset of record i in segment(i)
+     */
+    private static int offset(long i) {
+        return (int) (i % SEGMENT) * RECORD;
+    }
+
+    /**
+     * Reports the time of record {@code i}.
+     *
+     * @param i
+     *            the index of the record
+     * @return the time of record i in epoch milliseconds
+     */
+    private long timeAt(int i) {
+        return this.segment(i).getLong(offset(i) + TIME);
+    }
+
+    /**
+     * Searches for {@code t} among the records.
+     *
+     * @param t
+     *            the time, in epoch milliseconds, to search for
+     * @return the index of {@code t} if present; otherwise
+     *         {@code -(insertion point) - 1}
+     */
+    private int search(long t) {
+        int lo = 0;
+        int hi = this.length - 1;
+        int result = -1;
+        while (lo <= hi && result < 0) {
+            int mid = (lo + hi) >>> 1;
+            long x = this.timeAt(mid);
+            if (x < t) {
+                lo = mid + 1;
+            } else if (x > t) {
+                hi = mid - 1;
+            } else {
+                result = mid;
+            }
+        }
+        if (result < 0) {
+            result = -(lo + 1);
+        }
+        return result;
+    }
+
+    /**
+     * Reports the index of the first record at or after {@code t}.
+     *
+     * @param t
+     *            the time, in epoch milliseconds
+     * @return the smallest i such that time of record i >= t, or $this.length
+     */
+    private int ceilingIndex(long t) {
+        int i = this.search(t);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return i;
+    }
+
+    /**
+     * Reports the index of the last record at or before {@code t}.
+     *
+     * @param t
+     *            the time, in epoch milliseconds
+     * @return the largest i such that time of record i <= t, or -1
+     */
+    private int floorIndex(long t) {
+        int i = this.search(t);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        return i;
+    }
+
+    /**
+     * Creates a {@code Weather} holding the record at index {@code i}.
+     *
+     * @param i
+     *            the index of the record
+     * @return a new immutable {@code Weather} equal to the record at
+     *         {@code i}
+     * @requires 0 <= i < $this.length
+     */
+    private Weather weatherAt(int i) {
+        MappedByteBuffer b = this.segment(i);
+        int at = offset(i);
+        return new Weather2(b.getLong(at + TIME),
+                CONDITIONS[b.get(at + CONDITION)], b.getFloat(at + LOW),
+                b.getFloat(at + HIGH));
+    }
+
+    /**
+     * Writes {@code w} into record slot {@code i}.
+     *
+     * @param i
+     *            the index of the slot
+     * @param w
+     *            the record to write
+     * @requires 0 <= i < $this.capacity
+     */
+    private void writeAt(int i, Weather w) {
+        MappedByteBuffer b = this.segment(i);
+        int at = offset(i);
+        b.putLong(at + TIME, WeatherSecondary.epochMillis(w));
+        b.put(at + CONDITION, (byte) w.condition().ordinal());
+        b.putFloat(at + LOW, w.lowTemp());
+        b.putFloat(at + HIGH, w.highTemp());
+    }
+
+    /**
+     * Copies {@code count} records starting at slot {@code from} to the slots
+     * starting at {@code to}, through the scratch buffer and in the direction
+     * that keeps overlapping ranges intact.
+     *
+     * @param from
+     *            the first source slot
+     * @param to
+     *            the first destination slot
+     * @param count
+     *            the number of records to copy
+     * @requires from + count <= $this.capacity and to + count <=
+     *           $this.capacity
+     */
+    private void move(long from, long to, long count) {
+        long done = 0;
+        while (done < count) {
+            long left = count - done;
+            long src;
+            long dst;
+            long n;
+            if (to > from) {
+                // Copy the highest records first
+                long srcEnd = from + left;
+                long dstEnd = to + left;
+                n = Math.min(left, MOVE);
+                n = Math.min(n, (srcEnd - 1) % SEGMENT + 1);
+                n = Math.min(n, (dstEnd - 1) % SEGMENT + 1);
+                src = srcEnd - n;
+                dst = dstEnd - n;
+            } else {
+                // Copy the lowest records first
+                src = from + done;
+                dst = to + done;
+                n = Math.min(left, MOVE);
+                n = Math.min(n, SEGMENT - src % SEGMENT);
+                n = Math.min(n, SEGMENT - dst % SEGMENT);
+            }
+            int bytes = (int) n * RECORD;
+            this.segment(src).get(offset(src), this.scratch, 0, bytes);
+            this.segment(dst).put(offset(dst), this.scratch, 0, bytes);
+            done += n;
+        }
+    }
+
+    /**
+     * Records the number of records in use in the header.
+     *
+     * @param n
+     *            the number of records in use
+     * @ensures $this.length = n and header.count = n
+     */
+    private void setLength(int n) {
+        this.length = n;
+        this.header.putLong(COUNT, n);
+    }
+
+    /**
+     * Iterator over the records at indices [{@code next}, {@code end}).
+     */
+    private final class Range implements Iterator<Weather> {
+
+        /**
+         * Index of the next record to report.
+         */
+        private int next;
+
+        /**
+         * Index one past the last record to report.
+         */
+        private final int end;
+
+        /**
+         * Constructor from index bounds.
+         *
+         * @param start
+         *            the index of the first record, inclusive
+         * @param end
+         *            the index of the last record, exclusive
+         */
+        Range(int start, int end) {
+            this.next = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next < this.end;
+        }
+
+        @Override
+        public Weather next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Weather w = Chart4.this.weatherAt(this.next);
+            this.next++;
+            return w;
+        }
+
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from the path of a chart file, which is created empty if it
+     * does not exist.
+     *
+     * @param file
+     *            the path of the chart file
+     * @throws IOException
+     *             if the file cannot be opened or is not a chart file
+     */
+    public Chart4(Path file) throws IOException {
+        assert file != null : "Violation of: file is not null";
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean fresh = this.channel.size() == 0;
+        this.header = this.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER);
+        long count = 0;
+        if (fresh) {
+            this.header.putInt(0, MAGIC);
+            this.header.putInt(Integer.BYTES, VERSION);
+            this.header.putLong(COUNT, 0);
+        } else {
+            count = this.header.getLong(COUNT);
+            long slots = (this.channel.size() - HEADER) / RECORD;
+            if (this.header.getInt(0) != MAGIC
+                    || this.header.getInt(Integer.BYTES) != VERSION
+                    || count < 0 || count > slots
+                    || count > Integer.MAX_VALUE) {
+                this.channel.close();
+                throw new IOException(file + " is not a chart file");
+            }
+        }
+        this.map((this.channel.size() - HEADER) / RECORD);
+        this.length = (int) count;
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    /**
+     * Adds the Weather {@code w} to this. Only the values of {@code w} are
+     * kept, so later changes to {@code w} do not affect {@code this}.
+     *
+     * @param w
+     *            the {@code Weather} to add
+     * @updates this
+     * @requires w.time is not in DOMAIN(this)
+     * @ensures this = #this union {w}
+     */
+    @Override
+    public final void add(Weather w) {
+        assert w != null : "Violation of: w is not null";
+        int i = this.search(WeatherSecondary.epochMillis(w));
+        assert i < 0 : "Violation of w.time is not in DOMAIN(this)";
+
+        i = -i - 1;
+        this.ensureCapacity(this.length + 1);
+        this.move(i, i + 1, this.length - i);
+        this.writeAt(i, w);
+        this.setLength(this.length + 1);
+        if (this.fingerprinted) {
+            this.fingerprint += fingerprintOf(w);
+        }
+    }
+
+    /**
+     * Removes the {@code Weather} whose first component is {@code t} and
+     * returns it.
+     *
+     * @param t
+     *            the time to be checked
+     * @return {@code Weather} removed
+     * @updates this
+     * @requires t is in DOMAIN(this)
+     * @ensures <pre>
+     * remove.time = t  and
+     * remove is in #this  and
+     * this = #this \ {remove}
+     * </pre>
+     */
+    @Override
+    public final Weather remove(Date t) {
+        assert t != null : "Violation of: t is not null";
+        int i = this.search(t.getTime());
+        assert i >= 0 : "Violation of t is in DOMAIN(this)";
+
+        Weather result = this.weatherAt(i);
+        this.move(i + 1, i, this.length - i - 1);
+        this.setLength(this.length - 1);
+        if (this.fingerprinted) {
+            this.fingerprint -= fingerprintOf(result);
+        }
+        return result;
+    }
+
+    /**
+     * Removes and returns an arbitrary {@code Weather} from {@code this}.
+     *
+     * @return the {@code Weather} removed from {@code this}
+     * @updates this
+     * @requires |this| > 0
+     * @ensures <pre>
+     * removeAny is in #this and
+     * this = #this \ {removeAny}
+     * </pre>
+     */
+    @Override
+    public final Weather removeAny() {
+        assert this.length > 0 : "Violation of: |this| > 0";
+
+        /*
+         * The latest record is the only one that leaves no gap behind.
+         */
+        Weather result = this.weatherAt(this.length - 1);
+        this.setLength(this.length - 1);
+        if (this.fingerprinted) {
+            this.fingerprint -= fingerprintOf(result);
+        }
+        return result;
+    }
+
+    /**
+     * Reports the condition associated with {@code t} in {@code this}.
+     *
+     * @param t
+     *            the time whose associated condition is to be reported
+     * @return the condition associated with {@code t}
+     * @requires t is in DOMAIN(this)
+     * @ensures (t, condition) is in this
+     */
+    @Override
+    public final Condition condition(Date t) {
+        assert t != null : "Violation of: t is not null";
+        int i = this.search(t.getTime());
+        assert i >= 0 : "Violation of t is in DOMAIN(this)";
+
+        return CONDITIONS[this.segment(i).get(offset(i) + CONDITION)];
+    }
+
+    /**
+     * Reports whether there is a {@code Weather} in {@code this} whose first
+     * component is {@code t}.
+     *
+     * @param t
+     *            the time to be checked
+     * @return true iff there is a {@code Weather} in this whose first
+     *         component is {@code t}
+     * @ensures hasTime = (t is in DOMAIN(this))
+     */
+    @Override
+    public final boolean hasTime(Date t) {
+        assert t != null : "Violation of: t is not null";
+
+        return this.search(t.getTime()) >= 0;
+    }
+
+    /**
+     * Reports size of {@code this}.
+     *
+     * @return the number of {@code Weather} in {@code this}
+     * @ensures size = |this|
+     */
+    @Override
+    public final int size() {
+        return this.length;
+    }
+
+    /**
+     * Reports the fingerprint of {@code this}. The first call reads every
+     * record, in O(n); later calls take O(1).
+     *
+     * @return the fingerprint of this
+     * @ensures fingerprint = [sum of fingerprintOf(w) over the records w of
+     *          this]
+     */
+    @Override
+    public final long fingerprint() {
+        if (!this.fingerprinted) {
+            long sum = 0;
+            for (int i = 0; i < this.length; i++) {
+                MappedByteBuffer b = this.segment(i);
+                int at = offset(i);
+                sum += fingerprintOf(b.getLong(at + TIME),
+                        b.get(at + CONDITION));
+            }
+            this.fingerprint = sum;
+            this.fingerprinted = true;
+        }
+        return this.fingerprint;
+    }
+
+    /**
+     * Returns an iterator over {@code this} in increasing order of time. Each
+     * call to {@code next} creates a new immutable {@code Weather}.
+     *
+     * @return an iterator over {@code this}
+     */
+    @Override
+    public final Iterator<Weather> iterator() {
+        return new Range(0, this.length);
+    }
+
+    /**
+     * Returns a spliterator over {@code this} in increasing order of time
+     * that splits the positions of the records exactly in half, so it is
+     * {@code SIZED} and {@code SUBSIZED}. Each record reported is a new
+     * {@code Weather}.
+     *
+     * @return a spliterator over {@code this}
+     */
+    @Override
+    public final Spliterator<Weather> spliterator() {
+        return new IndexedSpliterator(this::weatherAt, 0, this.length);
+    }
+
+    /*
+     * Range methods ----------------------------------------------------------
+     */
+
+    @Override
+    public final Iterable<Weather> between(Date from, Date to) {
+        assert from != null : "Violation of: from is not null";
+        assert to != null : "Violation of: to is not null";
+        assert from.compareTo(to) <= 0 : "Violation of: from <= to";
+
+        final long lo = from.getTime();
+        final long hi = to.getTime();
+        return () -> new Range(this.ceilingIndex(lo), this.floorIndex(hi) + 1);
+    }
+
+    @Override
+    public final Weather floor(Date t) {
+        assert t != null : "Violation of: t is not null";
+        int i = this.floorIndex(t.getTime());
+        assert i >= 0 : ""
+                + "Violation of: there is a w in this such that w.time <= t";
+
+        return this.weatherAt(i);
+    }
+
+    @Override
+    public final Weather ceiling(Date t) {
+        assert t != null : "Violation of: t is not null";
+        int i = this.ceilingIndex(t.getTime());
+        assert i < this.length : ""
+                + "Violation of: there is a w in this such that t <= w.time";
+
+        return this.weatherAt(i);
+    }
+
+    @Override
+    public final Weather first() {
+        assert this.length > 0 : "Violation of: |this| > 0";
+
+        return this.weatherAt(0);
+    }
+
+    @Override
+    public final Weather last() {
+        assert this.length > 0 : "Violation of: |this| > 0";
+
+        return this.weatherAt(this.length - 1);
+    }
+
+    /*
+     * File methods -----------------------------------------------------------
+     */
+
+    /**
+     * Writes every change made to {@code this} through to the storage device.
+     *
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public final void force() throws IOException {
+        for (MappedByteBuffer b : this.segments) {
+            b.force();
+        }
+        this.header.force();
+    }
+
+    /**
+     * Writes every change through and closes the file. {@code this} must not
+     * be used afterwards.
+     *
+     * @throws IOException
+     *             if the file cannot be written or closed
+     */
+    @Override
+    public final void close() throws IOException {
+        this.force();
+        this.channel.close();
+    }
+
+}
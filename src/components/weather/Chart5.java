@@ -0,0 +1,380 @@
+package components.weather;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import components.sequence.Sequence;
+import components.sequence.Sequence1L;
+
+/**
+ * {@code Chart} represented as a lock-free concurrent skip list keyed by time,
+ * with implementations of primary methods. Any number of threads may add,
+ * remove and look records up at once without locking: each
+ * {@code add}, {@code remove} and {@code removeAny} takes effect atomically,
+ * and iterators and range views are weakly consistent, meaning they never
+ * fail because of concurrent changes and see every record that is present for
+ * the whole iteration.
+ *
+ * <p>
+ * A check such as {@code hasTime} can be out of date by the time its caller
+ * acts on it, so threads that race on the same times should rely on the
+ * result of {@code addAll}, which checks and adds each record in one atomic
+ * step, rather than on {@code hasTime} followed by {@code add}. If such a
+ * race breaks the precondition of {@code add}, {@code remove},
+ * {@code removeAny} or {@code condition} while assertions are off, the losing
+ * call leaves {@code this} unchanged, and {@code remove}, {@code removeAny}
+ * and {@code condition} return null. {@code size} and {@code fingerprint}
+ * stay exact in every case.
+ *
+ * @convention <pre>
+ * [for every (key, w) in $this.chart, key = w.time.getTime()] and
+ * [when no update is in progress, $this.count = |$this.chart| and
+ *   $this.fingerprint = sum of fingerprintOf(w) over the values w of
+ *   $this.chart]
+ * </pre>
+ * @correspondence this = [set of values in $this.chart]
+ */
+public class Chart5 extends ChartSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Records of {@code this}, ordered by their time in epoch milliseconds.
+     */
+    private ConcurrentSkipListMap<Long, Weather> chart;
+
+    /**
+     * Number of records of {@code this}. The size of a skip list takes a full
+     * traversal, so it is counted separately, in a counter that does not
+     * become a point of contention between writers.
+     */
+    private LongAdder count;
+
+    /**
+     * Fingerprint of {@code this}, kept up to date by every change in a
+     * counter of its own for the same reason as {@code count}.
+     */
+    private LongAdder fingerprint;
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.chart = new ConcurrentSkipListMap<Long, Weather>();
+        this.count = new LongAdder();
+        this.fingerprint = new LongAdder();
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public Chart5() {
+        this.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    /**
+     * Adds the Weather {@code w} to this.
+     *
+     * @param w
+     *            the {@code Weather} to add
+     * @updates this
+     * @aliases reference {@code w}
+     * @requires w.time is not in DOMAIN(this)
+     * @ensures this = #this union {w}
+     */
+    @Override
+    public final void add(Weather w) {
+        assert w != null : "Violation of: w is not null";
+
+        Weather previous = this.chart
+                .putIfAbsent(WeatherSecondary.epochMillis(w), w);
+        assert previous == null : "Violation of w.time is not in DOMAIN(this)";
+        /*
+         * Another thread may have added the same time first; only the add
+         * that changed the map may count it, or the counters would drift
+         * when assertions are off
+         */
+        if (previous == null) {
+            this.count.increment();
+            this.fingerprint.add(fingerprintOf(w));
+        }
+    }
+
+    /**
+     * Removes the {@code Weather} whose first component is {@code t} and
+     * returns it.
+     *
+     * @param t
+     *            the time to be checked
+     * @return {@code Weather} removed
+     * @updates this
+     * @requires t is in DOMAIN(this)
+     * @ensures <pre>
+     * remove.time = t  and
+     * remove is in #this  and
+     * this = #this \ {remove}
+     * </pre>
+     */
+    @Override
+    public final Weather remove(Date t) {
+        assert t != null : "Violation of: t is not null";
+
+        Weather result = this.chart.remove(t.getTime());
+        assert result != null : "Violation of t is in DOMAIN(this)";
+        if (result != null) {
+            this.count.decrement();
+            this.fingerprint.add(-fingerprintOf(result));
+        }
+        return result;
+    }
+
+    /**
+     * Removes and returns an arbitrary {@code Weather} from {@code this}.
+     *
+     * @return the {@code Weather} removed from {@code this}
+     * @updates this
+     * @requires |this| > 0
+     * @ensures <pre>
+     * removeAny is in #this and
+     * this = #this \ {removeAny}
+     * </pre>
+     */
+    @Override
+    public final Weather removeAny() {
+        Map.Entry<Long, Weather> last = this.chart.pollLastEntry();
+        assert last != null : "Violation of: |this| > 0";
+        Weather result = null;
+        if (last != null) {
+            this.count.decrement();
+            this.fingerprint.add(-fingerprintOf(last.getValue()));
+            result = last.getValue();
+        }
+        return result;
+    }
+
+    /**
+     * Reports the condition associated with {@code t} in {@code this}.
+     *
+     * @param t
+     *            the time whose associated condition is to be reported
+     * @return the condition associated with {@code t}
+     * @aliases reference returned by {@code condition}
+     * @requires t is in DOMAIN(this)
+     * @ensures (t, condition) is in this
+     */
+    @Override
+    public final Condition condition(Date t) {
+        assert t != null : "Violation of: t is not null";
+
+        Weather w = this.chart.get(t.getTime());
+        assert w != null : "Violation of t is in DOMAIN(this)";
+        Condition result = null;
+        if (w != null) {
+            result = w.condition();
+        }
+        return result;
+    }
+
+    /**
+     * Reports whether there is a {@code Weather} in {@code this} whose first
+     * component is {@code t}.
+     *
+     * @param t
+     *            the time to be checked
+     * @return true iff there is a {@code Weather} in this whose first
+     *         component is {@code t}
+     * @ensures hasTime = (t is in DOMAIN(this))
+     */
+    @Override
+    public final boolean hasTime(Date t) {
+        assert t != null : "Violation of: t is not null";
+
+        return this.chart.containsKey(t.getTime());
+    }
+
+    /**
+     * Reports size of {@code this}. While updates are in progress the result
+     * may be off by the number of updates not yet finished.
+     *
+     * @return the number of {@code Weather} in {@code this}
+     * @ensures size = |this|
+     */
+    @Override
+    public final int size() {
+        return (int) Math.max(0, this.count.sum());
+    }
+
+    /**
+     * Reports the fingerprint of {@code this}. While updates are in progress
+     * the result may leave out the updates not yet finished.
+     *
+     * @return the fingerprint of {@code this}
+     */
+    @Override
+    public final long fingerprint() {
+        return this.fingerprint.sum();
+    }
+
+    /**
+     * Returns a weakly consistent iterator over {@code this} in increasing
+     * order of time. Its {@code remove} throws
+     * {@code UnsupportedOperationException}.
+     *
+     * @return an iterator over {@code this}
+     */
+    @Override
+    public final Iterator<Weather> iterator() {
+        return Collections.unmodifiableCollection(this.chart.values())
+                .iterator();
+    }
+
+    /**
+     * Returns a weakly consistent spliterator over {@code this} in increasing
+     * order of time. It is {@code CONCURRENT}, so {@code this} may change
+     * while a stream over it runs, and it splits the skip list at its top
+     * levels into roughly even halves.
+     *
+     * @return a spliterator over {@code this}
+     */
+    @Override
+    public final Spliterator<Weather> spliterator() {
+        return this.chart.values().spliterator();
+    }
+
+    /*
+     * Bulk methods -----------------------------------------------------------
+     */
+
+    /**
+     * Adds every record of {@code ws} whose time is not yet in {@code this},
+     * checking and adding each record in one atomic step, so records racing
+     * in from other threads are rejected rather than overwritten.
+     *
+     * @param ws
+     *            the records to add
+     * @return the records of {@code ws} that were not added
+     * @updates this
+     * @aliases references in {@code ws}
+     * @ensures <pre>
+     * [this = #this union {w in ws | w.time is not in DOMAIN(#this) and
+     *   w is the first record of ws with time w.time}] and
+     * [addAll = the other records of ws]
+     * </pre>
+     */
+    @Override
+    public final Sequence<Weather> addAll(Iterable<Weather> ws) {
+        assert ws != null : "Violation of: ws is not null";
+
+        Sequence<Weather> rejected = new Sequence1L<Weather>();
+        for (Weather w : distinctByTime(ws, rejected)) {
+            long t = WeatherSecondary.epochMillis(w);
+            if (this.chart.putIfAbsent(t, w) == null) {
+                this.count.increment();
+                this.fingerprint.add(fingerprintOf(w));
+            } else {
+                rejected.add(rejected.length(), w);
+            }
+        }
+        return rejected;
+    }
+
+    /*
+     * Range methods ----------------------------------------------------------
+     */
+
+    @Override
+    public final Iterable<Weather> between(Date from, Date to) {
+        assert from != null : "Violation of: from is not null";
+        assert to != null : "Violation of: to is not null";
+        assert from.compareTo(to) <= 0 : "Violation of: from <= to";
+
+        return Collections.unmodifiableCollection(this.chart
+                .subMap(from.getTime(), true, to.getTime(), true).values());
+    }
+
+    @Override
+    public final Weather floor(Date t) {
+        assert t != null : "Violation of: t is not null";
+        Map.Entry<Long, Weather> e = this.chart.floorEntry(t.getTime());
+        assert e != null : ""
+                + "Violation of: there is a w in this such that w.time <= t";
+
+        return e.getValue();
+    }
+
+    @Override
+    public final Weather ceiling(Date t) {
+        assert t != null : "Violation of: t is not null";
+        Map.Entry<Long, Weather> e = this.chart.ceilingEntry(t.getTime());
+        assert e != null : ""
+                + "Violation of: there is a w in this such that t <= w.time";
+
+        return e.getValue();
+    }
+
+    /**
+     * Reports the record of {@code this} whose time is closest to {@code t}.
+     * Ties go to the earlier record. The neighbours of {@code t} below and
+     * above are looked up one after the other, so while other threads change
+     * {@code this} the result is a record present during the call, but one
+     * added or removed between the two lookups can make it not the nearest.
+     *
+     * @param t
+     *            the time to search from
+     * @return the record of {@code this} closest to {@code t}
+     * @requires |this| > 0
+     * @ensures nearest is in this and [there is no w in this such that
+     *          |w.time - t| < |nearest.time - t|]
+     */
+    @Override
+    public final Weather nearest(Date t) {
+        assert t != null : "Violation of: t is not null";
+
+        long key = t.getTime();
+        Map.Entry<Long, Weather> below = this.chart.floorEntry(key);
+        Map.Entry<Long, Weather> above = this.chart.ceilingEntry(key);
+        assert below != null || above != null : "Violation of: |this| > 0";
+        Weather result;
+        if (below == null) {
+            result = above.getValue();
+        } else if (above == null
+                || key - below.getKey() <= above.getKey() - key) {
+            result = below.getValue();
+        } else {
+            result = above.getValue();
+        }
+        return result;
+    }
+
+    @Override
+    public final Weather first() {
+        Map.Entry<Long, Weather> e = this.chart.firstEntry();
+        assert e != null : "Violation of: |this| > 0";
+
+        return e.getValue();
+    }
+
+    @Override
+    public final Weather last() {
+        Map.Entry<Long, Weather> e = this.chart.lastEntry();
+        assert e != null : "Violation of: |this| > 0";
+
+        return e.getValue();
+    }
+
+}
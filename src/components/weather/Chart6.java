@@ -0,0 +1,1054 @@
+package components.weather;
+
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import components.sequence.Sequence;
+
+/**
+ * {@code Chart} represented as a persistent AVL tree keyed by time, with
+ * implementations of primary methods. Nodes are never changed once built: an
+ * update copies only the O(log n) nodes on the path it touches and shares the
+ * rest with the previous version, then publishes the new root. A
+ * {@code snapshot} is therefore just the current root, taken in O(1), and
+ * stays the same however {@code this} changes afterwards.
+ *
+ * <p>
+ * Every node also summarizes the temperatures of its subtree, so the
+ * {@code stats} of any time range are assembled from O(log n) nodes instead
+ * of from every record in the range.
+ *
+ * <p>
+ * Updates are serialized on {@code this}; reads never lock. Every read sees
+ * one published version in full, and every iterator walks the version that
+ * was current when it was created, so long-running readers neither block
+ * writers nor observe a chart mid-update.
+ *
+ * @convention <pre>
+ * [$this.root is an AVL tree ordered by key] and
+ * [for every node n in $this.root, n.key = n.value.time.getTime() and
+ *   n.height and n.size are the height and size of the subtree at n] and
+ * [for every node n in $this.root, n.minLow, n.maxLow, n.minHigh,
+ *   n.maxHigh, n.sumLow and n.sumHigh summarize the temperatures of the
+ *   records of the subtree at n] and
+ * [for every node n in $this.root, n.fingerprint = sum of fingerprintOf(w)
+ *   over the records w of the subtree at n] and
+ * [if $this.frozen then $this.root never changes]
+ * </pre>
+ * @correspondence this = [set of values of the nodes of $this.root]
+ */
+public class Chart6 extends ChartSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Immutable tree node.
+     */
+    private static final class Node {
+
+        /**
+         * Time of the record in epoch milliseconds.
+         */
+        private final long key;
+
+        /**
+         * The record.
+         */
+        private final Weather value;
+
+        /**
+         * Subtree of records with smaller times.
+         */
+        private final Node left;
+
+        /**
+         * Subtree of records with larger times.
+         */
+        private final Node right;
+
+        /**
+         * Height of this subtree.
+         */
+        private final int height;
+
+        /**
+         * Number of records in this subtree.
+         */
+        private final int size;
+
+        /**
+         * Smallest lowest temperature in this subtree.
+         */
+        private final float minLow;
+
+        /**
+         * Largest lowest temperature in this subtree.
+         */
+        private final float maxLow;
+
+        /**
+         * Smallest highest temperature in this subtree.
+         */
+        private final float minHigh;
+
+        /**
+         * Largest highest temperature in this subtree.
+         */
+        private final float maxHigh;
+
+        /**
+         * Sum of the lowest temperatures in this subtree.
+         */
+        private final double sumLow;
+
+        /**
+         * Sum of the highest temperatures in this subtree.
+         */
+        private final double sumHigh;
+
+        /**
+         * Sum of the fingerprints of the records in this subtree.
+         */
+        private final long fingerprint;
+
+        /**
+         * Constructor from a record and its subtrees.
+         *
+         * @param key
+         *            the time of the record
+         * @param value
+         *            the record
+         * @param left
+         *            the subtree of smaller times
+         * @param right
+         *            the subtree of larger times
+         */
+        Node(long key, Weather value, Node left, Node right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+            this.size = 1 + size(left) + size(right);
+            float low = value.lowTemp();
+            float high = value.highTemp();
+            float lowMin = low;
+            float lowMax = low;
+            float highMin = high;
+            float highMax = high;
+            double lowSum = low;
+            double highSum = high;
+            long sum = fingerprintOf(value);
+            if (left != null) {
+                lowMin = Math.min(lowMin, left.minLow);
+                lowMax = Math.max(lowMax, left.maxLow);
+                highMin = Math.min(highMin, left.minHigh);
+                highMax = Math.max(highMax, left.maxHigh);
+                lowSum += left.sumLow;
+                highSum += left.sumHigh;
+                sum += left.fingerprint;
+            }
+            if (right != null) {
+                lowMin = Math.min(lowMin, right.minLow);
+                lowMax = Math.max(lowMax, right.maxLow);
+                highMin = Math.min(highMin, right.minHigh);
+                highMax = Math.max(highMax, right.maxHigh);
+                lowSum += right.sumLow;
+                highSum += right.sumHigh;
+                sum += right.fingerprint;
+            }
+            this.minLow = lowMin;
+            this.maxLow = lowMax;
+            this.minHigh = highMin;
+            this.maxHigh = highMax;
+            this.sumLow = lowSum;
+            this.sumHigh = highSum;
+            this.fingerprint = sum;
+        }
+
+        /**
+         * Folds the summary of this subtree into {@code acc}.
+         *
+         * @param acc
+         *            the running summary
+         */
+        void addTo(TemperatureStats.Accumulator acc) {
+            acc.add(this.size, this.minLow, this.maxLow, this.minHigh,
+                    this.maxHigh, this.sumLow, this.sumHigh);
+        }
+
+        /**
+         * Folds the record of this node alone into {@code acc}.
+         *
+         * @param acc
+         *            the running summary
+         */
+        void addRecordTo(TemperatureStats.Accumulator acc) {
+            acc.add(this.value.lowTemp(), this.value.highTemp());
+        }
+
+    }
+
+    /**
+     * Current version of the tree.
+     */
+    private volatile Node root;
+
+    /**
+     * Whether {@code this} is a snapshot, which cannot be changed.
+     */
+    private final boolean frozen;
+
+    /**
+     * Reports the height of {@code n}.
+     *
+     * @param n
+     *            the subtree, possibly empty
+     * @return the height of n
+     */
+    private static int height(Node n) {
+        int result = 0;
+        if (n != null) {
+            result = n.height;
+        }
+        return result;
+    }
+
+    /**
+     * Reports the size of {@code n}.
+     *
+     * @param n
+     *            the subtree, possibly empty
+     * @return the number of records in n
+     */
+    private static int size(Node n) {
+        int result = 0;
+        if (n != null) {
+            result = n.size;
+        }
+        return result;
+    }
+
+    /**
+     * Builds a balanced node from a record and two subtrees whose heights
+     * differ by at most two, rotating once or twice as needed.
+     *
+     * @param key
+     *            the time of the record
+     * @param value
+     *            the record
+     * @param l
+     *            the subtree of smaller times
+     * @param r
+     *            the subtree of larger times
+     * @return an AVL tree holding l, the record and r
+     */
+    private static Node balance(long key, Weather value, Node l, Node r) {
+        int hl = height(l);
+        int hr = height(r);
+        Node result;
+        if (hl > hr + 1) {
+            if (height(l.left) >= height(l.right)) {
+                result = new Node(l.key, l.value, l.left,
+                        new Node(key, value, l.right, r));
+            } else {
+                Node lr = l.right;
+                result = new Node(lr.key, lr.value,
+                        new Node(l.key, l.value, l.left, lr.left),
+                        new Node(key, value, lr.right, r));
+            }
+        } else if (hr > hl + 1) {
+            if (height(r.right) >= height(r.left)) {
+                result = new Node(r.key, r.value,
+                        new Node(key, value, l, r.left), r.right);
+            } else {
+                Node rl = r.left;
+                result = new Node(rl.key, rl.value,
+                        new Node(key, value, l, rl.left),
+                        new Node(r.key, r.value, rl.right, r.right));
+            }
+        } else {
+            result = new Node(key, value, l, r);
+        }
+        return result;
+    }
+
+    /**
+     * Reports the tree with a record added.
+     *
+     * @param n
+     *            the tree
+     * @param key
+     *            the time of the record
+     * @param value
+     *            the record
+     * @return n with (key, value) added
+     * @requires key is not in n
+     */
+    private static Node insert(Node n, long key, Weather value) {
+        Node result;
+        if (n == null) {
+            result = new Node(key, value, null, null);
+        } else if (key < n.key) {
+            result = balance(n.key, n.value, insert(n.left, key, value),
+                    n.right);
+        } else {
+            result = balance(n.key, n.value, n.left,
+                    insert(n.right, key, value));
+        }
+        return result;
+    }
+
+    /**
+     * Reports the tree without its first record.
+     *
+     * @param n
+     *            the tree
+     * @return n without its smallest key
+     * @requires n is not empty
+     */
+    private static Node deleteFirst(Node n) {
+        Node result;
+        if (n.left == null) {
+            result = n.right;
+        } else {
+            result = balance(n.key, n.value, deleteFirst(n.left), n.right);
+        }
+        return result;
+    }
+
+    /**
+     * Reports the tree without its last record.
+     *
+     * @param n
+     *            the tree
+     * @return n without its largest key
+     * @requires n is not empty
+     */
+    private static Node deleteLast(Node n) {
+        Node result;
+        if (n.right == null) {
+            result = n.left;
+        } else {
+            result = balance(n.key, n.value, n.left, deleteLast(n.right));
+        }
+        return result;
+    }
+
+    /**
+     * Reports the tree without the record at {@code key}.
+     *
+     * @param n
+     *            the tree
+     * @param key
+     *            the time of the record
+     * @return n without key
+     * @requires key is in n
+     */
+    private static Node delete(Node n, long key) {
+        Node result;
+        if (key < n.key) {
+            result = balance(n.key, n.value, delete(n.left, key), n.right);
+        } else if (key > n.key) {
+            result = balance(n.key, n.value, n.left, delete(n.right, key));
+        } else if (n.left == null) {
+            result = n.right;
+        } else if (n.right == null) {
+            result = n.left;
+        } else {
+            Node next = first(n.right);
+            result = balance(next.key, next.value, n.left,
+                    deleteFirst(n.right));
+        }
+        return result;
+    }
+
+    /**
+     * Reports the node of {@code key}.
+     *
+     * @param n
+     *            the tree
+     * @param key
+     *            the time to find
+     * @return the node of n with key, or null
+     */
+    private static Node find(Node n, long key) {
+        Node p = n;
+        while (p != null && p.key != key) {
+            if (key < p.key) {
+                p = p.left;
+            } else {
+                p = p.right;
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Reports the node with the largest key at or below {@code key}.
+     *
+     * @param n
+     *            the tree
+     * @param key
+     *            the time to search from
+     * @return that node, or null
+     */
+    private static Node floor(Node n, long key) {
+        Node result = null;
+        Node p = n;
+        while (p != null) {
+            if (p.key <= key) {
+                result = p;
+                p = p.right;
+            } else {
+                p = p.left;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports the node with the smallest key at or above {@code key}.
+     *
+     * @param n
+     *            the tree
+     * @param key
+     *            the time to search from
+     * @return that node, or null
+     */
+    private static Node ceiling(Node n, long key) {
+        Node result = null;
+        Node p = n;
+        while (p != null) {
+            if (p.key >= key) {
+                result = p;
+                p = p.left;
+            } else {
+                p = p.right;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports the node with the smallest key.
+     *
+     * @param n
+     *            the tree
+     * @return that node
+     * @requires n is not empty
+     */
+    private static Node first(Node n) {
+        Node p = n;
+        while (p.left != null) {
+            p = p.left;
+        }
+        return p;
+    }
+
+    /**
+     * Reports the node with the largest key.
+     *
+     * @param n
+     *            the tree
+     * @return that node
+     * @requires n is not empty
+     */
+    private static Node last(Node n) {
+        Node p = n;
+        while (p.right != null) {
+            p = p.right;
+        }
+        return p;
+    }
+
+    /**
+     * Builds a balanced tree from records in increasing order of time.
+     *
+     * @param sorted
+     *            the records
+     * @param from
+     *            the index of the first record, inclusive
+     * @param to
+     *            the index of the last record, exclusive
+     * @return a tree of sorted[from, to)
+     * @requires [sorted[from, to) is in strictly increasing order of time]
+     */
+    private static Node build(List<Weather> sorted, int from, int to) {
+        Node result = null;
+        if (from < to) {
+            int mid = (from + to) >>> 1;
+            Weather w = sorted.get(mid);
+            result = new Node(WeatherSecondary.epochMillis(w), w,
+                    build(sorted, from, mid), build(sorted, mid + 1, to));
+        }
+        return result;
+    }
+
+    /**
+     * In-order walk over the records of one version of the tree whose times
+     * fall in [{@code lo}, {@code hi}].
+     */
+    private static final class Walk implements Iterator<Weather> {
+
+        /**
+         * Nodes whose record and right subtree are still to be visited.
+         */
+        private final ArrayDeque<Node> stack = new ArrayDeque<Node>();
+
+        /**
+         * Largest time to report.
+         */
+        private final long hi;
+
+        /**
+         * Constructor from a tree and time bounds.
+         *
+         * @param n
+         *            the tree
+         * @param lo
+         *            the smallest time to report
+         * @param hi
+         *            the largest time to report
+         */
+        Walk(Node n, long lo, long hi) {
+            this.hi = hi;
+            Node p = n;
+            while (p != null) {
+                if (p.key >= lo) {
+                    this.stack.push(p);
+                    p = p.left;
+                } else {
+                    p = p.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !this.stack.isEmpty() && this.stack.peek().key <= this.hi;
+        }
+
+        @Override
+        public Weather next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Node n = this.stack.pop();
+            for (Node p = n.right; p != null; p = p.left) {
+                this.stack.push(p);
+            }
+            return n.value;
+        }
+
+    }
+
+    /**
+     * Spliterator over the records of one version of the tree whose in-order
+     * positions fall in [{@code index}, {@code fence}). Subtree sizes locate
+     * any position in O(log n), so it splits exactly in half by position
+     * until its walk starts, and the version it reads never changes.
+     */
+    private static final class Slice implements Spliterator<Weather> {
+
+        /**
+         * Characteristics of every {@code Slice}.
+         */
+        private static final int CHARACTERISTICS = Spliterator.ORDERED
+                | Spliterator.DISTINCT | Spliterator.NONNULL
+                | Spliterator.IMMUTABLE | Spliterator.SIZED
+                | Spliterator.SUBSIZED;
+
+        /**
+         * The version of the tree read.
+         */
+        private final Node root;
+
+        /**
+         * Position of the next record to report.
+         */
+        private int index;
+
+        /**
+         * Position just past the last record to report.
+         */
+        private final int fence;
+
+        /**
+         * Nodes whose record and right subtree are still to be visited, or
+         * null until the walk starts.
+         */
+        private ArrayDeque<Node> stack;
+
+        /**
+         * Constructor from a tree and a range of positions.
+         *
+         * @param root
+         *            the tree
+         * @param index
+         *            the first position, inclusive
+         * @param fence
+         *            the last position, exclusive
+         */
+        Slice(Node root, int index, int fence) {
+            this.root = root;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        /**
+         * Starts the walk at position {@code index}.
+         */
+        private void start() {
+            this.stack = new ArrayDeque<Node>();
+            Node p = this.root;
+            int i = this.index;
+            while (p != null) {
+                int left = size(p.left);
+                if (i < left) {
+                    this.stack.push(p);
+                    p = p.left;
+                } else if (i == left) {
+                    this.stack.push(p);
+                    p = null;
+                } else {
+                    i -= left + 1;
+                    p = p.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Weather> action) {
+            assert action != null : "Violation of: action is not null";
+
+            boolean result = this.index < this.fence;
+            if (result) {
+                if (this.stack == null) {
+                    this.start();
+                }
+                Node n = this.stack.pop();
+                for (Node p = n.right; p != null; p = p.left) {
+                    this.stack.push(p);
+                }
+                this.index++;
+                action.accept(n.value);
+            }
+            return result;
+        }
+
+        @Override
+        public Spliterator<Weather> trySplit() {
+            int mid = (this.index + this.fence) >>> 1;
+            Slice result = null;
+            if (this.stack == null && this.index < mid) {
+                result = new Slice(this.root, this.index, mid);
+                this.index = mid;
+            }
+            return result;
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.fence - this.index;
+        }
+
+        @Override
+        public int characteristics() {
+            return CHARACTERISTICS;
+        }
+
+    }
+
+    /**
+     * Reports that {@code this} cannot be changed, if it is a snapshot.
+     *
+     * @throws UnsupportedOperationException
+     *             if this is a snapshot
+     */
+    private void checkNotFrozen() {
+        if (this.frozen) {
+            throw new UnsupportedOperationException(
+                    "a Chart snapshot cannot be changed");
+        }
+    }
+
+    /**
+     * Constructor of a snapshot of the tree {@code root}.
+     *
+     * @param root
+     *            the version of the tree to hold
+     */
+    private Chart6(Node root) {
+        this.root = root;
+        this.frozen = true;
+    }
+
+    /**
+     * Creates a snapshot holding {@code sorted}, in O(|sorted|).
+     *
+     * @param sorted
+     *            the records, in strictly increasing order of time
+     * @return an unchangeable chart of the records
+     */
+    static Chart6 frozen(List<Weather> sorted) {
+        return new Chart6(build(sorted, 0, sorted.size()));
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public Chart6() {
+        this.root = null;
+        this.frozen = false;
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    /**
+     * Adds the Weather {@code w} to this.
+     *
+     * @param w
+     *            the {@code Weather} to add
+     * @updates this
+     * @aliases reference {@code w}
+     * @requires w.time is not in DOMAIN(this)
+     * @ensures this = #this union {w}
+     */
+    @Override
+    public final synchronized void add(Weather w) {
+        assert w != null : "Violation of: w is not null";
+        this.checkNotFrozen();
+        long key = WeatherSecondary.epochMillis(w);
+        assert find(this.root,
+                key) == null : "Violation of w.time is not in DOMAIN(this)";
+
+        this.root = insert(this.root, key, w);
+    }
+
+    /**
+     * Removes the {@code Weather} whose first component is {@code t} and
+     * returns it.
+     *
+     * @param t
+     *            the time to be checked
+     * @return {@code Weather} removed
+     * @updates this
+     * @requires t is in DOMAIN(this)
+     * @ensures <pre>
+     * remove.time = t  and
+     * remove is in #this  and
+     * this = #this \ {remove}
+     * </pre>
+     */
+    @Override
+    public final synchronized Weather remove(Date t) {
+        assert t != null : "Violation of: t is not null";
+        this.checkNotFrozen();
+        Node n = find(this.root, t.getTime());
+        assert n != null : "Violation of t is in DOMAIN(this)";
+
+        this.root = delete(this.root, n.key);
+        return n.value;
+    }
+
+    /**
+     * Removes and returns an arbitrary {@code Weather} from {@code this}.
+     *
+     * @return the {@code Weather} removed from {@code this}
+     * @updates this
+     * @requires |this| > 0
+     * @ensures <pre>
+     * removeAny is in #this and
+     * this = #this \ {removeAny}
+     * </pre>
+     */
+    @Override
+    public final synchronized Weather removeAny() {
+        this.checkNotFrozen();
+        assert this.root != null : "Violation of: |this| > 0";
+
+        Weather result = last(this.root).value;
+        this.root = deleteLast(this.root);
+        return result;
+    }
+
+    /**
+     * Reports the condition associated with {@code t} in {@code this}.
+     *
+     * @param t
+     *            the time whose associated condition is to be reported
+     * @return the condition associated with {@code t}
+     * @aliases reference returned by {@code condition}
+     * @requires t is in DOMAIN(this)
+     * @ensures (t, condition) is in this
+     */
+    @Override
+    public final Condition condition(Date t) {
+        assert t != null : "Violation of: t is not null";
+        Node n = find(this.root, t.getTime());
+        assert n != null : "Violation of t is in DOMAIN(this)";
+
+        return n.value.condition();
+    }
+
+    /**
+     * Reports whether there is a {@code Weather} in {@code this} whose first
+     * component is {@code t}.
+     *
+     * @param t
+     *            the time to be checked
+     * @return true iff there is a {@code Weather} in this whose first
+     *         component is {@code t}
+     * @ensures hasTime = (t is in DOMAIN(this))
+     */
+    @Override
+    public final boolean hasTime(Date t) {
+        assert t != null : "Violation of: t is not null";
+
+        return find(this.root, t.getTime()) != null;
+    }
+
+    /**
+     * Reports size of {@code this}.
+     *
+     * @return the number of {@code Weather} in {@code this}
+     * @ensures size = |this|
+     */
+    @Override
+    public final int size() {
+        return size(this.root);
+    }
+
+    /**
+     * Returns an iterator over {@code this} in increasing order of time, as
+     * {@code this} was when the iterator was created.
+     *
+     * @return an iterator over {@code this}
+     */
+    @Override
+    public final Iterator<Weather> iterator() {
+        return new Walk(this.root, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns a spliterator over {@code this} in increasing order of time, as
+     * {@code this} was when the spliterator was created. It splits exactly in
+     * half by position, and it is {@code IMMUTABLE}: {@code this} may change
+     * while a stream over it runs without the stream seeing the change.
+     *
+     * @return a spliterator over {@code this}
+     */
+    @Override
+    public final Spliterator<Weather> spliterator() {
+        Node n = this.root;
+        return new Slice(n, 0, size(n));
+    }
+
+    /*
+     * Bulk methods -----------------------------------------------------------
+     */
+
+    @Override
+    public final synchronized Sequence<Weather> addAll(Iterable<Weather> ws) {
+        this.checkNotFrozen();
+
+        return super.addAll(ws);
+    }
+
+    /*
+     * Range methods ----------------------------------------------------------
+     */
+
+    @Override
+    public final Iterable<Weather> between(Date from, Date to) {
+        assert from != null : "Violation of: from is not null";
+        assert to != null : "Violation of: to is not null";
+        assert from.compareTo(to) <= 0 : "Violation of: from <= to";
+
+        final long lo = from.getTime();
+        final long hi = to.getTime();
+        return () -> new Walk(this.root, lo, hi);
+    }
+
+    @Override
+    public final Weather floor(Date t) {
+        assert t != null : "Violation of: t is not null";
+        Node n = floor(this.root, t.getTime());
+        assert n != null : ""
+                + "Violation of: there is a w in this such that w.time <= t";
+
+        return n.value;
+    }
+
+    @Override
+    public final Weather ceiling(Date t) {
+        assert t != null : "Violation of: t is not null";
+        Node n = ceiling(this.root, t.getTime());
+        assert n != null : ""
+                + "Violation of: there is a w in this such that t <= w.time";
+
+        return n.value;
+    }
+
+    /**
+     * Reports the record of {@code this} whose time is closest to {@code t},
+     * from one version of the tree. Ties go to the earlier record.
+     *
+     * @param t
+     *            the time to search from
+     * @return the record of {@code this} closest to {@code t}
+     * @requires |this| > 0
+     * @ensures nearest is in this and [there is no w in this such that
+     *          |w.time - t| < |nearest.time - t|]
+     */
+    @Override
+    public final Weather nearest(Date t) {
+        assert t != null : "Violation of: t is not null";
+        Node r = this.root;
+        assert r != null : "Violation of: |this| > 0";
+
+        long key = t.getTime();
+        Node below = floor(r, key);
+        Node above = ceiling(r, key);
+        Node result;
+        if (below == null) {
+            result = above;
+        } else if (above == null || key - below.key <= above.key - key) {
+            result = below;
+        } else {
+            result = above;
+        }
+        return result.value;
+    }
+
+    @Override
+    public final Weather first() {
+        Node r = this.root;
+        assert r != null : "Violation of: |this| > 0";
+
+        return first(r).value;
+    }
+
+    @Override
+    public final Weather last() {
+        Node r = this.root;
+        assert r != null : "Violation of: |this| > 0";
+
+        return last(r).value;
+    }
+
+    /*
+     * Identity methods -------------------------------------------------------
+     */
+
+    @Override
+    public final long fingerprint() {
+        Node n = this.root;
+        long result = 0;
+        if (n != null) {
+            result = n.fingerprint;
+        }
+        return result;
+    }
+
+    /*
+     * Aggregate methods ------------------------------------------------------
+     */
+
+    /**
+     * Reports the summary of the temperatures of the records whose time falls
+     * in [{@code from}, {@code to}], in O(log n): below the node where the
+     * paths to {@code from} and {@code to} split, every subtree hanging
+     * inside the range is folded in whole from its stored summary.
+     *
+     * @param from
+     *            the earliest time to summarize, inclusive
+     * @param to
+     *            the latest time to summarize, inclusive
+     * @return the summary of the records between {@code from} and {@code to}
+     * @requires from <= to
+     * @ensures stats = [summary of the temperatures of the records w of this
+     *          such that from <= w.time <= to]
+     */
+    @Override
+    public final TemperatureStats stats(Date from, Date to) {
+        assert from != null : "Violation of: from is not null";
+        assert to != null : "Violation of: to is not null";
+        assert from.compareTo(to) <= 0 : "Violation of: from <= to";
+
+        long lo = from.getTime();
+        long hi = to.getTime();
+        TemperatureStats.Accumulator acc = new TemperatureStats.Accumulator();
+        Node split = this.root;
+        while (split != null && (split.key < lo || split.key > hi)) {
+            if (split.key < lo) {
+                split = split.right;
+            } else {
+                split = split.left;
+            }
+        }
+        if (split != null) {
+            split.addRecordTo(acc);
+            for (Node p = split.left; p != null;) {
+                if (p.key >= lo) {
+                    p.addRecordTo(acc);
+                    if (p.right != null) {
+                        p.right.addTo(acc);
+                    }
+                    p = p.left;
+                } else {
+                    p = p.right;
+                }
+            }
+            for (Node p = split.right; p != null;) {
+                if (p.key <= hi) {
+                    p.addRecordTo(acc);
+                    if (p.left != null) {
+                        p.left.addTo(acc);
+                    }
+                    p = p.right;
+                } else {
+                    p = p.left;
+                }
+            }
+        }
+        return acc.toStats();
+    }
+
+    /*
+     * Snapshot methods -------------------------------------------------------
+     */
+
+    /**
+     * Reports an unchangeable chart equal to {@code this}, in O(1): the
+     * snapshot shares the current version of the tree, which no later update
+     * modifies.
+     *
+     * @return a snapshot of {@code this}
+     * @aliases references in {@code this}
+     * @ensures snapshot = this and [snapshot cannot be changed]
+     */
+    @Override
+    public final Chart snapshot() {
+        Chart result = this;
+        if (!this.frozen) {
+            result = new Chart6(this.root);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,864 @@
+package components.weather;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * {@code Chart} kept in two tiers, with implementations of primary methods:
+ * recent records in a balanced search tree, and older ones, once
+ * {@code seal} moves them there, in compressed {@code ChartBlock}s of up to
+ * {@code ChartBlock.CAPACITY} records each, so years of history take a
+ * fraction of the memory. Blocks cover disjoint spans of time; a scan skips
+ * the blocks outside its range and takes counts and summaries of the blocks
+ * wholly inside it from their headers. Changing a sealed record re-encodes
+ * its block, so sealed data should be old enough to change rarely.
+ *
+ * @convention <pre>
+ * [the spans [first, last] of the blocks in $this.cold are disjoint, and
+ *   each block is keyed by its first time] and
+ * [no time of $this.hot falls within the span of a block] and
+ * [for every (key, w) in $this.hot, key = w.time.getTime()] and
+ * [$this.hotCounts[c] = |{w in $this.hot | w.condition ordinal = c}|] and
+ * $this.size = |$this.hot| + [sum of the sizes of the blocks] and
+ * [$this.fingerprint = sum of fingerprintOf over every record]
+ * </pre>
+ * @correspondence this = [values of $this.hot] union [records of the blocks
+ *                 of $this.cold]
+ */
+public class Chart7 extends ChartSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Records not sealed yet, by time in epoch milliseconds.
+     */
+    private TreeMap<Long, Weather> hot;
+
+    /**
+     * Number of records of {@code hot} with each condition, by ordinal.
+     */
+    private int[] hotCounts;
+
+    /**
+     * Sealed blocks, by the time of their first record.
+     */
+    private TreeMap<Long, ChartBlock> cold;
+
+    /**
+     * Number of records of {@code this}.
+     */
+    private int size;
+
+    /**
+     * Fingerprint of {@code this}, kept up to date by every change.
+     */
+    private long fingerprint;
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.hot = new TreeMap<Long, Weather>();
+        this.hotCounts = new int[Condition.values().length];
+        this.cold = new TreeMap<Long, ChartBlock>();
+        this.size = 0;
+        this.fingerprint = 0;
+    }
+
+    /**
+     * Reports the block whose span covers {@code t}.
+     *
+     * @param t
+     *            the time in epoch milliseconds
+     * @return the entry of the block covering t, or null if there is none
+     */
+    private Map.Entry<Long, ChartBlock> covering(long t) {
+        Map.Entry<Long, ChartBlock> e = this.cold.floorEntry(t);
+        if (e != null && e.getValue().last() < t) {
+            e = null;
+        }
+        return e;
+    }
+
+    /**
+     * Replaces the block keyed by {@code key} with blocks of
+     * {@code records}, none if it is empty.
+     *
+     * @param key
+     *            the key of the block to replace, or null to replace none
+     * @param records
+     *            the records, in increasing order of time
+     */
+    private void reseal(Long key, List<Weather> records) {
+        if (key != null) {
+            this.cold.remove(key);
+        }
+        for (int i = 0; i < records.size(); i += ChartBlock.CAPACITY) {
+            ChartBlock b = new ChartBlock(records.subList(i,
+                    Math.min(records.size(), i + ChartBlock.CAPACITY)));
+            this.cold.put(b.first(), b);
+        }
+    }
+
+    /**
+     * Decodes {@code b} into a list that can be changed.
+     *
+     * @param b
+     *            the block
+     * @return the records of b, in increasing order of time
+     */
+    private static List<Weather> unpack(ChartBlock b) {
+        return new ArrayList<Weather>(Arrays.<Weather>asList(b.decode()));
+    }
+
+    /**
+     * Reports the position of the record with time {@code t} in
+     * {@code records}, or where it would go.
+     *
+     * @param records
+     *            the records, in increasing order of time
+     * @param t
+     *            the time in epoch milliseconds
+     * @return the position of t in records if it is there, and otherwise
+     *         -(insertion point) - 1
+     */
+    private static int search(List<Weather> records, long t) {
+        int low = 0;
+        int high = records.size() - 1;
+        int result = -1;
+        while (result < 0 && low <= high) {
+            int mid = (low + high) >>> 1;
+            long m = WeatherSecondary.epochMillis(records.get(mid));
+            if (m < t) {
+                low = mid + 1;
+            } else if (m > t) {
+                high = mid - 1;
+            } else {
+                result = mid;
+            }
+        }
+        if (result < 0) {
+            result = -low - 1;
+        }
+        return result;
+    }
+
+    /**
+     * Adds {@code w} to {@code hot}.
+     *
+     * @param w
+     *            the record
+     */
+    private void addHot(Weather w) {
+        this.hot.put(WeatherSecondary.epochMillis(w), w);
+        this.hotCounts[w.condition().ordinal()]++;
+    }
+
+    /**
+     * Removes the record with time {@code t} from {@code hot}.
+     *
+     * @param t
+     *            the time in epoch milliseconds
+     * @return the record removed, or null if there was none
+     */
+    private Weather removeHot(long t) {
+        Weather result = this.hot.remove(t);
+        if (result != null) {
+            this.hotCounts[result.condition().ordinal()]--;
+        }
+        return result;
+    }
+
+    /**
+     * Removes the record with time {@code t} from the block {@code e}.
+     *
+     * @param e
+     *            the entry of the block
+     * @param t
+     *            the time in epoch milliseconds
+     * @return the record removed
+     */
+    private Weather removeCold(Map.Entry<Long, ChartBlock> e, long t) {
+        List<Weather> records = unpack(e.getValue());
+        Weather result = records.remove(search(records, t));
+        this.reseal(e.getKey(), records);
+        return result;
+    }
+
+    /**
+     * Iterator over the records of {@code this} in [{@code from}, {@code to}]
+     * in increasing order of time, merging the two tiers.
+     */
+    private final class Window implements Iterator<Weather> {
+
+        /**
+         * Earliest time reported.
+         */
+        private final long from;
+
+        /**
+         * Latest time reported.
+         */
+        private final long to;
+
+        /**
+         * Records of {@code hot} in the window not yet looked at.
+         */
+        private final Iterator<Weather> hots;
+
+        /**
+         * Blocks that may hold records of the window not yet looked at.
+         */
+        private final Iterator<ChartBlock> blocks;
+
+        /**
+         * Records of the current block not yet looked at.
+         */
+        private Iterator<Weather> colds = Collections.emptyIterator();
+
+        /**
+         * Next unsealed record in the window, or null if there is none.
+         */
+        private Weather hotNext;
+
+        /**
+         * Next sealed record in the window, or null if there is none.
+         */
+        private Weather coldNext;
+
+        /**
+         * Constructor from the bounds of the window.
+         *
+         * @param from
+         *            the earliest time, inclusive
+         * @param to
+         *            the latest time, inclusive
+         */
+        Window(long from, long to) {
+            this.from = from;
+            this.to = to;
+            this.hots = Chart7.this.hot.subMap(from, true, to, true).values()
+                    .iterator();
+            Long start = Chart7.this.cold.floorKey(from);
+            if (start == null) {
+                start = from;
+            }
+            this.blocks = Chart7.this.cold.subMap(start, true, to, true)
+                    .values().iterator();
+            this.hotNext = this.nextHot();
+            this.coldNext = this.nextCold();
+        }
+
+        /**
+         * Reports the next record of {@code hot} in the window.
+         *
+         * @return the next record, or null if there is none
+         */
+        private Weather nextHot() {
+            Weather result = null;
+            if (this.hots.hasNext()) {
+                result = this.hots.next();
+            }
+            return result;
+        }
+
+        /**
+         * Reports the next sealed record in the window.
+         *
+         * @return the next record, or null if there is none
+         */
+        private Weather nextCold() {
+            Weather result = null;
+            while (result == null
+                    && (this.colds.hasNext() || this.blocks.hasNext())) {
+                if (!this.colds.hasNext()) {
+                    ChartBlock b = this.blocks.next();
+                    if (b.last() >= this.from) {
+                        this.colds = b.iterator();
+                    }
+                }
+                if (!this.colds.hasNext()) {
+                    continue;
+                }
+                Weather w = this.colds.next();
+                long t = WeatherSecondary.epochMillis(w);
+                if (t > this.to) {
+                    this.colds = Collections.emptyIterator();
+                } else if (t >= this.from) {
+                    result = w;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.hotNext != null || this.coldNext != null;
+        }
+
+        @Override
+        public Weather next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Weather result;
+            if (this.coldNext == null || this.hotNext != null
+                    && WeatherSecondary.epochMillis(
+                            this.hotNext) < WeatherSecondary
+                                    .epochMillis(this.coldNext)) {
+                result = this.hotNext;
+                this.hotNext = this.nextHot();
+            } else {
+                result = this.coldNext;
+                this.coldNext = this.nextCold();
+            }
+            return result;
+        }
+
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public Chart7() {
+        this.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    /**
+     * Adds the Weather {@code w} to this. If {@code w.time} falls within a
+     * sealed block, only the values of {@code w} are kept, in that block.
+     *
+     * @param w
+     *            the {@code Weather} to add
+     * @updates this
+     * @aliases reference {@code w}, unless it falls within a sealed block
+     * @requires w.time is not in DOMAIN(this)
+     * @ensures this = #this union {w}
+     */
+    @Override
+    public final void add(Weather w) {
+        assert w != null : "Violation of: w is not null";
+        assert !this.hasTime(
+                w.time()) : "Violation of w.time is not in DOMAIN(this)";
+
+        long t = WeatherSecondary.epochMillis(w);
+        Map.Entry<Long, ChartBlock> e = this.covering(t);
+        if (e == null) {
+            this.addHot(w);
+        } else {
+            List<Weather> records = unpack(e.getValue());
+            records.add(-search(records, t) - 1, Weather2.of(w));
+            this.reseal(e.getKey(), records);
+        }
+        this.size++;
+        this.fingerprint += fingerprintOf(w);
+    }
+
+    /**
+     * Removes the {@code Weather} whose first component is {@code t} and
+     * returns it. Removing a sealed record re-encodes its block.
+     *
+     * @param t
+     *            the time to be checked
+     * @return {@code Weather} removed
+     * @updates this
+     * @requires t is in DOMAIN(this)
+     * @ensures <pre>
+     * remove.time = t  and
+     * remove is in #this  and
+     * this = #this \ {remove}
+     * </pre>
+     */
+    @Override
+    public final Weather remove(Date t) {
+        assert t != null : "Violation of: t is not null";
+        assert this.hasTime(t) : "Violation of t is in DOMAIN(this)";
+
+        long time = t.getTime();
+        Weather result = this.removeHot(time);
+        if (result == null) {
+            result = this.removeCold(this.covering(time), time);
+        }
+        this.size--;
+        this.fingerprint -= fingerprintOf(result);
+        return result;
+    }
+
+    /**
+     * Removes and returns an arbitrary {@code Weather} from {@code this}: the
+     * latest unsealed record if there is one, and the last record of the last
+     * block otherwise.
+     *
+     * @return the {@code Weather} removed from {@code this}
+     * @updates this
+     * @requires |this| > 0
+     * @ensures <pre>
+     * removeAny is in #this and
+     * this = #this \ {removeAny}
+     * </pre>
+     */
+    @Override
+    public final Weather removeAny() {
+        assert this.size > 0 : "Violation of: |this| > 0";
+
+        /*
+         * An unsealed record is the cheapest to take; failing that, the last
+         * record of the last block, which is re-encoded without it.
+         */
+        Weather result;
+        if (this.hot.size() > 0) {
+            result = this.removeHot(this.hot.lastKey());
+        } else {
+            Map.Entry<Long, ChartBlock> e = this.cold.lastEntry();
+            result = this.removeCold(e, e.getValue().last());
+        }
+        this.size--;
+        this.fingerprint -= fingerprintOf(result);
+        return result;
+    }
+
+    /**
+     * Reports the condition associated with {@code t} in {@code this}.
+     *
+     * @param t
+     *            the time whose associated condition is to be reported
+     * @return the condition associated with {@code t}
+     * @aliases reference returned by {@code condition}
+     * @requires t is in DOMAIN(this)
+     * @ensures (t, condition) is in this
+     */
+    @Override
+    public final Condition condition(Date t) {
+        assert t != null : "Violation of: t is not null";
+        assert this.hasTime(t) : "Violation of t is in DOMAIN(this)";
+
+        long time = t.getTime();
+        Weather w = this.hot.get(time);
+        if (w == null) {
+            w = this.covering(time).getValue().ceiling(time);
+        }
+        return w.condition();
+    }
+
+    /**
+     * Reports whether there is a {@code Weather} in {@code this} whose first
+     * component is {@code t}. Only the one block whose span covers {@code t}
+     * is searched, decoding its times only as far as needed.
+     *
+     * @param t
+     *            the time to be checked
+     * @return true iff there is a {@code Weather} in this whose first
+     *         component is {@code t}
+     * @ensures hasTime = (t is in DOMAIN(this))
+     */
+    @Override
+    public final boolean hasTime(Date t) {
+        assert t != null : "Violation of: t is not null";
+
+        long time = t.getTime();
+        boolean result = this.hot.containsKey(time);
+        if (!result) {
+            Map.Entry<Long, ChartBlock> e = this.covering(time);
+            result = e != null && e.getValue().indexOf(time) >= 0;
+        }
+        return result;
+    }
+
+    /**
+     * Reports size of {@code this}.
+     *
+     * @return the number of {@code Weather} in {@code this}
+     * @ensures size = |this|
+     */
+    @Override
+    public final int size() {
+        return this.size;
+    }
+
+    /**
+     * Reports the fingerprint of {@code this}, kept up to date by every
+     * change, in O(1).
+     *
+     * @return the fingerprint of {@code this}
+     * @ensures fingerprint = [sum of fingerprintOf(w) over the records w of
+     *          this]
+     */
+    @Override
+    public final long fingerprint() {
+        return this.fingerprint;
+    }
+
+    /**
+     * Returns an iterator over {@code this} in increasing order of time.
+     * Sealed records are decoded as they are reached.
+     *
+     * @return an iterator over {@code this}
+     */
+    @Override
+    public final Iterator<Weather> iterator() {
+        return new Window(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /*
+     * Range methods ----------------------------------------------------------
+     */
+
+    /**
+     * Reports the records of {@code this} whose time falls in
+     * [{@code from}, {@code to}], in increasing order of time. Blocks outside
+     * the range are skipped, and sealed records are decoded as they are
+     * reached.
+     *
+     * @param from
+     *            the earliest time to report, inclusive
+     * @param to
+     *            the latest time to report, inclusive
+     * @return the records of {@code this} between {@code from} and {@code to}
+     * @aliases references in {@code between}
+     * @requires from <= to
+     * @ensures between = [records w of this such that from <= w.time <= to,
+     *          in increasing order of time]
+     */
+    @Override
+    public final Iterable<Weather> between(Date from, Date to) {
+        assert from != null : "Violation of: from is not null";
+        assert to != null : "Violation of: to is not null";
+        assert from.compareTo(to) <= 0 : "Violation of: from <= to";
+
+        final long start = from.getTime();
+        final long end = to.getTime();
+        return () -> new Window(start, end);
+    }
+
+    /**
+     * Reports the latest record of {@code this} at or before {@code t}, the
+     * later of the latest unsealed one and the one found in the last block
+     * starting at or before {@code t}.
+     *
+     * @param t
+     *            the time to search from
+     * @return the record of {@code this} closest to {@code t} from below
+     * @aliases reference returned by {@code floor}
+     * @requires there is a w in this such that w.time <= t
+     * @ensures floor is in this and floor.time <= t and [there is no w in
+     *          this such that floor.time < w.time <= t]
+     */
+    @Override
+    public final Weather floor(Date t) {
+        assert t != null : "Violation of: t is not null";
+
+        long time = t.getTime();
+        Map.Entry<Long, Weather> h = this.hot.floorEntry(time);
+        Weather result = null;
+        if (h != null) {
+            result = h.getValue();
+        }
+        Map.Entry<Long, ChartBlock> c = this.cold.floorEntry(time);
+        if (c != null && (result == null || c.getValue()
+                .last() > WeatherSecondary.epochMillis(result))) {
+            result = c.getValue().floor(time);
+        }
+        assert result != null : ""
+                + "Violation of: there is a w in this such that w.time <= t";
+
+        return result;
+    }
+
+    /**
+     * Reports the earliest record of {@code this} at or after {@code t}, the
+     * earlier of the earliest unsealed one and the one found in the block
+     * covering {@code t} or, failing that, the first block after it.
+     *
+     * @param t
+     *            the time to search from
+     * @return the record of {@code this} closest to {@code t} from above
+     * @aliases reference returned by {@code ceiling}
+     * @requires there is a w in this such that t <= w.time
+     * @ensures ceiling is in this and t <= ceiling.time and [there is no w in
+     *          this such that t <= w.time < ceiling.time]
+     */
+    @Override
+    public final Weather ceiling(Date t) {
+        assert t != null : "Violation of: t is not null";
+
+        long time = t.getTime();
+        Map.Entry<Long, Weather> h = this.hot.ceilingEntry(time);
+        Weather result = null;
+        if (h != null) {
+            result = h.getValue();
+        }
+        Map.Entry<Long, ChartBlock> c = this.covering(time);
+        if (c == null) {
+            c = this.cold.ceilingEntry(time);
+        }
+        if (c != null && (result == null
+                || c.getKey() < WeatherSecondary.epochMillis(result))) {
+            result = c.getValue().ceiling(time);
+        }
+        assert result != null : ""
+                + "Violation of: there is a w in this such that t <= w.time";
+
+        return result;
+    }
+
+    /**
+     * Reports the earliest record of {@code this}.
+     *
+     * @return the record of {@code this} with the smallest time
+     * @aliases reference returned by {@code first}
+     * @requires |this| > 0
+     * @ensures first is in this and [first.time = min(DOMAIN(this))]
+     */
+    @Override
+    public final Weather first() {
+        assert this.size > 0 : "Violation of: |this| > 0";
+
+        return this.ceiling(new Date(Long.MIN_VALUE));
+    }
+
+    /**
+     * Reports the latest record of {@code this}.
+     *
+     * @return the record of {@code this} with the largest time
+     * @aliases reference returned by {@code last}
+     * @requires |this| > 0
+     * @ensures last is in this and [last.time = max(DOMAIN(this))]
+     */
+    @Override
+    public final Weather last() {
+        assert this.size > 0 : "Violation of: |this| > 0";
+
+        return this.floor(new Date(Long.MAX_VALUE));
+    }
+
+    /*
+     * Condition and aggregate methods ----------------------------------------
+     */
+
+    /**
+     * Reports the number of records of {@code this} whose condition is
+     * {@code c}, from the counts of the unsealed records and the header of
+     * each block, without decoding any.
+     *
+     * @param c
+     *            the condition to be counted
+     * @return the number of records of {@code this} with condition {@code c}
+     * @ensures count = |{w in this | w.condition = c}|
+     */
+    @Override
+    public final int count(Condition c) {
+        assert c != null : "Violation of: c is not null";
+
+        int result = this.hotCounts[c.ordinal()];
+        for (ChartBlock b : this.cold.values()) {
+            result += b.count(c);
+        }
+        return result;
+    }
+
+    /**
+     * Reports the number of records of {@code this} whose condition is
+     * {@code c} and whose time falls in [{@code from}, {@code to}]. Blocks
+     * wholly inside the range are counted from their headers; only the
+     * blocks at its ends, if they hold {@code c} at all, are decoded.
+     *
+     * @param c
+     *            the condition to be counted
+     * @param from
+     *            the earliest time to count, inclusive
+     * @param to
+     *            the latest time to count, inclusive
+     * @return the number of matching records of {@code this}
+     * @requires from <= to
+     * @ensures count = |{w in this | w.condition = c and
+     *          from <= w.time <= to}|
+     */
+    @Override
+    public final int count(Condition c, Date from, Date to) {
+        assert c != null : "Violation of: c is not null";
+        assert from != null : "Violation of: from is not null";
+        assert to != null : "Violation of: to is not null";
+        assert from.compareTo(to) <= 0 : "Violation of: from <= to";
+
+        long start = from.getTime();
+        long end = to.getTime();
+        int result = 0;
+        for (Weather w : this.hot.subMap(start, true, end, true).values()) {
+            if (w.condition() == c) {
+                result++;
+            }
+        }
+        Long key = this.cold.floorKey(start);
+        if (key == null) {
+            key = start;
+        }
+        for (ChartBlock b : this.cold.subMap(key, true, end, true)
+                .values()) {
+            if (start <= b.first() && b.last() <= end) {
+                result += b.count(c);
+            } else if (b.count(c) > 0) {
+                for (Weather w : b) {
+                    long t = WeatherSecondary.epochMillis(w);
+                    if (start <= t && t <= end && w.condition() == c) {
+                        result++;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports the count and the smallest, largest, total and mean lowest and
+     * highest temperatures of the records of {@code this} whose time falls in
+     * [{@code from}, {@code to}]. Blocks wholly inside the range add their
+     * summaries from their headers; only the blocks at its ends are decoded.
+     *
+     * @param from
+     *            the earliest time to summarize, inclusive
+     * @param to
+     *            the latest time to summarize, inclusive
+     * @return the summary of the records between {@code from} and {@code to}
+     * @requires from <= to
+     * @ensures stats = [summary of the temperatures of the records w of this
+     *          such that from <= w.time <= to]
+     */
+    @Override
+    public final TemperatureStats stats(Date from, Date to) {
+        assert from != null : "Violation of: from is not null";
+        assert to != null : "Violation of: to is not null";
+        assert from.compareTo(to) <= 0 : "Violation of: from <= to";
+
+        long start = from.getTime();
+        long end = to.getTime();
+        TemperatureStats.Accumulator acc = new TemperatureStats.Accumulator();
+        for (Weather w : this.hot.subMap(start, true, end, true).values()) {
+            acc.add(w.lowTemp(), w.highTemp());
+        }
+        Long key = this.cold.floorKey(start);
+        if (key == null) {
+            key = start;
+        }
+        for (ChartBlock b : this.cold.subMap(key, true, end, true)
+                .values()) {
+            if (start <= b.first() && b.last() <= end) {
+                b.addTo(acc);
+            } else {
+                for (Weather w : b) {
+                    long t = WeatherSecondary.epochMillis(w);
+                    if (start <= t && t <= end) {
+                        acc.add(w.lowTemp(), w.highTemp());
+                    }
+                }
+            }
+        }
+        return acc.toStats();
+    }
+
+    /*
+     * Tier methods -----------------------------------------------------------
+     */
+
+    /**
+     * Moves every unsealed record earlier than {@code before} into
+     * compressed blocks. Records between two blocks are sealed together,
+     * with the block before them if it has room, so repeated seals do not
+     * leave many small blocks.
+     *
+     * @param before
+     *            the time before which records are sealed
+     * @return the number of records sealed
+     * @updates this
+     * @ensures this = #this and [no unsealed record is earlier than before]
+     */
+    public final int seal(Date before) {
+        assert before != null : "Violation of: before is not null";
+
+        List<Weather> run = new ArrayList<Weather>();
+        Long gap = null;
+        Long previous = null;
+        int result = 0;
+        Iterator<Weather> it = this.hot.headMap(before.getTime(), false)
+                .values().iterator();
+        while (it.hasNext() || !run.isEmpty()) {
+            Weather w = null;
+            Long next = null;
+            if (it.hasNext()) {
+                w = it.next();
+                next = this.cold.higherKey(WeatherSecondary.epochMillis(w));
+            }
+            /*
+             * A run is the unsealed records between two blocks; it ends when
+             * the next record lies beyond the next block, or there is none.
+             */
+            boolean sameGap = Objects.equals(next, gap);
+            if (!run.isEmpty() && (w == null || !sameGap)) {
+                result += run.size();
+                List<Weather> records = run;
+                if (previous != null && this.cold.get(previous)
+                        .size() < ChartBlock.CAPACITY) {
+                    records = unpack(this.cold.get(previous));
+                    records.addAll(run);
+                } else {
+                    previous = null;
+                }
+                this.reseal(previous, records);
+                run = new ArrayList<Weather>();
+            }
+            if (w != null) {
+                if (run.isEmpty()) {
+                    gap = next;
+                    previous = this.cold
+                            .lowerKey(WeatherSecondary.epochMillis(w));
+                }
+                run.add(Weather2.of(w));
+            }
+        }
+        for (Weather w : this.hot.headMap(before.getTime(), false).values()) {
+            this.hotCounts[w.condition().ordinal()]--;
+        }
+        this.hot.headMap(before.getTime(), false).clear();
+        return result;
+    }
+
+    /**
+     * Reports the number of sealed records.
+     *
+     * @return the number of records in blocks
+     */
+    public final int sealed() {
+        return this.size - this.hot.size();
+    }
+
+    /**
+     * Reports roughly how many bytes the sealed records take.
+     *
+     * @return the approximate size of the blocks in bytes
+     */
+    public final long sealedBytes() {
+        long result = 0;
+        for (ChartBlock b : this.cold.values()) {
+            result += b.bytes();
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,790 @@
+package components.weather;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable, compressed run of up to {@code CAPACITY} records in increasing
+ * order of time, sealed once and never changed. Each column is packed into
+ * one bit stream the way Gorilla packs time series:
+ *
+ * <ul>
+ * <li>times: the first in full, then each delta-of-delta in a prefix-coded
+ * bucket of 0, 7, 9, 12, 20 or 64 bits, so regularly spaced times take one
+ * bit each;</li>
+ * <li>lows and highs: the first in full, then each XOR with the one before,
+ * as one bit when it is unchanged and otherwise as its meaningful bits,
+ * inside the previous leading and trailing zeros when they fit;</li>
+ * <li>conditions: runs of one ordinal, each as the ordinal and the run
+ * length.</li>
+ * </ul>
+ *
+ * A header kept unpacked holds the first and last times, the temperature
+ * bounds and sums, the number of records with each condition and the
+ * fingerprint, so a scan can skip a block that is out of range, and a count
+ * or summary can take a block that is wholly in range without decoding it.
+ *
+ * @convention <pre>
+ * 0 < $this.count <= CAPACITY and
+ * [$this.bits holds the time, low, high and condition streams, starting at
+ *   bit 0, $this.lowAt, $this.highAt and $this.conditionAt] and
+ * [the header fields summarize the records the streams decode to]
+ * </pre>
+ * @correspondence this = [the records the streams of $this.bits decode to]
+ */
+final class ChartBlock implements Iterable<Weather> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Most records in a block.
+     */
+    static final int CAPACITY = 4096;
+
+    /**
+     * Bits in a run length, which is stored less one.
+     */
+    private static final int RUN = 12;
+
+    /**
+     * Every condition, by ordinal.
+     */
+    private static final Condition[] CONDITIONS = Condition.values();
+
+    /**
+     * Bits in a condition ordinal.
+     */
+    private static final int ORDINAL = Integer.SIZE
+            - Integer.numberOfLeadingZeros(CONDITIONS.length - 1);
+
+    /**
+     * Bits in a count of leading zeros or a length of meaningful bits.
+     */
+    private static final int ZEROS = 5;
+
+    /**
+     * Bits in the buckets of a delta-of-delta, after its prefix of ones and
+     * a zero; the last bucket takes a whole {@code long} after its prefix of
+     * ones alone.
+     */
+    private static final int[] BUCKETS = { 7, 9, 12, 20 };
+
+    /**
+     * Packed streams.
+     */
+    private final long[] bits;
+
+    /**
+     * Bit offset of the stream of lowest temperatures.
+     */
+    private final int lowAt;
+
+    /**
+     * Bit offset of the stream of highest temperatures.
+     */
+    private final int highAt;
+
+    /**
+     * Bit offset of the stream of conditions.
+     */
+    private final int conditionAt;
+
+    /**
+     * Number of records.
+     */
+    private final int count;
+
+    /**
+     * Earliest time, in epoch milliseconds.
+     */
+    private final long first;
+
+    /**
+     * Latest time, in epoch milliseconds.
+     */
+    private final long last;
+
+    /**
+     * Smallest lowest temperature.
+     */
+    private final float minLow;
+
+    /**
+     * Largest lowest temperature.
+     */
+    private final float maxLow;
+
+    /**
+     * Smallest highest temperature.
+     */
+    private final float minHigh;
+
+    /**
+     * Largest highest temperature.
+     */
+    private final float maxHigh;
+
+    /**
+     * Sum of the lowest temperatures.
+     */
+    private final double sumLow;
+
+    /**
+     * Sum of the highest temperatures.
+     */
+    private final double sumHigh;
+
+    /**
+     * Number of records with each condition, by ordinal.
+     */
+    private final int[] counts;
+
+    /**
+     * Sum of fingerprintOf over the records.
+     */
+    private final long fingerprint;
+
+    /**
+     * Growable bit stream, written most significant bit first.
+     */
+    private static final class Writer {
+
+        /**
+         * Bits written.
+         */
+        private long[] words = new long[Long.SIZE];
+
+        /**
+         * Number of bits written.
+         */
+        private int length;
+
+        /**
+         * Writes the low {@code n} bits of {@code value}.
+         *
+         * @param value
+         *            the bits
+         * @param n
+         *            the number of bits, 0 to 64
+         */
+        void write(long value, int n) {
+            if (n > 0) {
+                int word = this.length >>> 6;
+                if (word + 1 >= this.words.length) {
+                    this.words = Arrays.copyOf(this.words,
+                            2 * this.words.length);
+                }
+                long v = value;
+                if (n < Long.SIZE) {
+                    v &= (1L << n) - 1;
+                }
+                int free = Long.SIZE - (this.length & (Long.SIZE - 1));
+                if (n <= free) {
+                    this.words[word] |= v << (free - n);
+                } else {
+                    this.words[word] |= v >>> (n - free);
+                    this.words[word + 1] |= v << (Long.SIZE - (n - free));
+                }
+                this.length += n;
+            }
+        }
+
+        /**
+         * Reports the bits written, trimmed to the words in use.
+         *
+         * @return the bits written
+         */
+        long[] toWords() {
+            return Arrays.copyOf(this.words,
+                    (this.length + Long.SIZE - 1) >>> 6);
+        }
+
+    }
+
+    /**
+     * Bit stream reader over {@code bits}.
+     */
+    private final class Reader {
+
+        /**
+         * Bit offset of the next bit.
+         */
+        private int position;
+
+        /**
+         * Constructor from the bit offset to start at.
+         *
+         * @param position
+         *            the offset of the first bit to read
+         */
+        Reader(int position) {
+            this.position = position;
+        }
+
+        /**
+         * Reads {@code n} bits as an unsigned value.
+         *
+         * @param n
+         *            the number of bits, 1 to 64
+         * @return the bits read
+         */
+        long read(int n) {
+            long[] words = ChartBlock.this.bits;
+            int word = this.position >>> 6;
+            int used = this.position & (Long.SIZE - 1);
+            long v = words[word] << used;
+            if (used + n > Long.SIZE) {
+                v |= words[word + 1] >>> (Long.SIZE - used);
+            }
+            this.position += n;
+            return v >>> (Long.SIZE - n);
+        }
+
+        /**
+         * Reads {@code n} bits as a two's complement value.
+         *
+         * @param n
+         *            the number of bits, 1 to 64
+         * @return the value read
+         */
+        long readSigned(int n) {
+            return (this.read(n) << (Long.SIZE - n)) >> (Long.SIZE - n);
+        }
+
+        /**
+         * Reads one bit.
+         *
+         * @return whether the bit is 1
+         */
+        boolean bit() {
+            return this.read(1) != 0;
+        }
+
+    }
+
+    /**
+     * Writes the delta-of-delta {@code dod} in its bucket.
+     *
+     * @param out
+     *            the stream
+     * @param dod
+     *            the delta-of-delta
+     */
+    private static void writeDod(Writer out, long dod) {
+        if (dod == 0) {
+            out.write(0, 1);
+        } else {
+            int b = 0;
+            while (b < BUCKETS.length && (dod < -(1L << (BUCKETS[b] - 1))
+                    || dod >= 1L << (BUCKETS[b] - 1))) {
+                b++;
+            }
+            /*
+             * Bucket b has b + 1 ones, then a zero unless it is the last.
+             */
+            if (b < BUCKETS.length) {
+                out.write(((1L << (b + 1)) - 1) << 1, b + 2);
+                out.write(dod, BUCKETS[b]);
+            } else {
+                out.write((1L << (b + 1)) - 1, b + 1);
+                out.write(dod, Long.SIZE);
+            }
+        }
+    }
+
+    /**
+     * Reads a delta-of-delta written by {@code writeDod}.
+     *
+     * @param in
+     *            the stream
+     * @return the delta-of-delta
+     */
+    private static long readDod(Reader in) {
+        int b = 0;
+        while (b <= BUCKETS.length && in.bit()) {
+            b++;
+        }
+        long result;
+        if (b == 0) {
+            result = 0;
+        } else if (b <= BUCKETS.length) {
+            result = in.readSigned(BUCKETS[b - 1]);
+        } else {
+            result = in.read(Long.SIZE);
+        }
+        return result;
+    }
+
+    /**
+     * Writes the temperatures of {@code records} selected by {@code high}
+     * as a stream of XORs.
+     *
+     * @param out
+     *            the stream
+     * @param records
+     *            the records
+     * @param high
+     *            whether to write the highs rather than the lows
+     */
+    private static void writeFloats(Writer out, List<Weather> records,
+            boolean high) {
+        int previous = 0;
+        int leading = -1;
+        int trailing = 0;
+        boolean first = true;
+        for (Weather w : records) {
+            float f = w.lowTemp();
+            if (high) {
+                f = w.highTemp();
+            }
+            int v = Float.floatToIntBits(f);
+            if (first) {
+                out.write(v, Integer.SIZE);
+                first = false;
+            } else {
+                int x = v ^ previous;
+                if (x == 0) {
+                    out.write(0, 1);
+                } else {
+                    int lz = Integer.numberOfLeadingZeros(x);
+                    int tz = Integer.numberOfTrailingZeros(x);
+                    if (leading >= 0 && lz >= leading && tz >= trailing) {
+                        out.write(2, 2);
+                        out.write(x >>> trailing,
+                                Integer.SIZE - leading - trailing);
+                    } else {
+                        int meaningful = Integer.SIZE - lz - tz;
+                        out.write(3, 2);
+                        out.write(lz, ZEROS);
+                        out.write(meaningful - 1, ZEROS);
+                        out.write(x >>> tz, meaningful);
+                        leading = lz;
+                        trailing = tz;
+                    }
+                }
+            }
+            previous = v;
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from the records to seal.
+     *
+     * @param records
+     *            the records, in increasing order of time
+     * @requires 0 < |records| <= CAPACITY and [the times of records are
+     *           strictly increasing]
+     * @ensures this = records
+     */
+    ChartBlock(List<Weather> records) {
+        assert records != null : "Violation of: records is not null";
+        assert records.size() > 0
+                && records.size() <= CAPACITY : "Violation of: "
+                        + "0 < |records| <= CAPACITY";
+
+        this.count = records.size();
+        this.counts = new int[CONDITIONS.length];
+        Writer out = new Writer();
+        long previous = 0;
+        long delta = 0;
+        float lo = Float.POSITIVE_INFINITY;
+        float hi = Float.NEGATIVE_INFINITY;
+        float loHigh = Float.POSITIVE_INFINITY;
+        float hiLow = Float.NEGATIVE_INFINITY;
+        double sLow = 0;
+        double sHigh = 0;
+        long f = 0;
+        boolean start = true;
+        for (Weather w : records) {
+            long t = WeatherSecondary.epochMillis(w);
+            if (start) {
+                out.write(t, Long.SIZE);
+                start = false;
+            } else {
+                assert t > previous : "Violation of: [the times of records"
+                        + " are strictly increasing]";
+                writeDod(out, (t - previous) - delta);
+                delta = t - previous;
+            }
+            previous = t;
+            lo = Math.min(lo, w.lowTemp());
+            hiLow = Math.max(hiLow, w.lowTemp());
+            loHigh = Math.min(loHigh, w.highTemp());
+            hi = Math.max(hi, w.highTemp());
+            sLow += w.lowTemp();
+            sHigh += w.highTemp();
+            this.counts[w.condition().ordinal()]++;
+            f += ChartSecondary.fingerprintOf(w);
+        }
+        this.lowAt = out.length;
+        writeFloats(out, records, false);
+        this.highAt = out.length;
+        writeFloats(out, records, true);
+        this.conditionAt = out.length;
+        int run = 0;
+        Condition current = records.get(0).condition();
+        for (Weather w : records) {
+            if (w.condition() != current || run == 1 << RUN) {
+                out.write(current.ordinal(), ORDINAL);
+                out.write(run - 1, RUN);
+                current = w.condition();
+                run = 0;
+            }
+            run++;
+        }
+        out.write(current.ordinal(), ORDINAL);
+        out.write(run - 1, RUN);
+        this.bits = out.toWords();
+        this.first = WeatherSecondary.epochMillis(records.get(0));
+        this.last = previous;
+        this.minLow = lo;
+        this.maxLow = hiLow;
+        this.minHigh = loHigh;
+        this.maxHigh = hi;
+        this.sumLow = sLow;
+        this.sumHigh = sHigh;
+        this.fingerprint = f;
+    }
+
+    /*
+     * Header methods ---------------------------------------------------------
+     */
+
+    /**
+     * Reports the number of records in {@code this}.
+     *
+     * @return |this|
+     */
+    int size() {
+        return this.count;
+    }
+
+    /**
+     * Reports the earliest time in {@code this}, in epoch milliseconds.
+     *
+     * @return min(DOMAIN(this))
+     */
+    long first() {
+        return this.first;
+    }
+
+    /**
+     * Reports the latest time in {@code this}, in epoch milliseconds.
+     *
+     * @return max(DOMAIN(this))
+     */
+    long last() {
+        return this.last;
+    }
+
+    /**
+     * Reports the number of records in {@code this} with condition {@code c}.
+     *
+     * @param c
+     *            the condition
+     * @return |{w in this | w.condition = c}|
+     */
+    int count(Condition c) {
+        return this.counts[c.ordinal()];
+    }
+
+    /**
+     * Reports the sum of {@code fingerprintOf} over the records of
+     * {@code this}.
+     *
+     * @return the fingerprint of this
+     */
+    long fingerprint() {
+        return this.fingerprint;
+    }
+
+    /**
+     * Adds every record of {@code this} to {@code acc}, from the header.
+     *
+     * @param acc
+     *            the accumulator
+     * @updates acc
+     */
+    void addTo(TemperatureStats.Accumulator acc) {
+        acc.add(this.count, this.minLow, this.maxLow, this.minHigh,
+                this.maxHigh, this.sumLow, this.sumHigh);
+    }
+
+    /**
+     * Reports the bytes {@code this} takes, roughly: the packed streams and
+     * the header.
+     *
+     * @return the approximate size of this in bytes
+     */
+    long bytes() {
+        final int header = 128;
+        return (long) this.bits.length * Long.BYTES
+                + (long) this.counts.length * Integer.BYTES + header;
+    }
+
+    /*
+     * Decoding methods -------------------------------------------------------
+     */
+
+    /**
+     * Decodes the times of {@code this}, in epoch milliseconds.
+     *
+     * @return the times of this, in increasing order
+     */
+    long[] times() {
+        long[] result = new long[this.count];
+        Reader in = new Reader(0);
+        long t = in.read(Long.SIZE);
+        long delta = 0;
+        result[0] = t;
+        for (int i = 1; i < this.count; i++) {
+            delta += readDod(in);
+            t += delta;
+            result[i] = t;
+        }
+        return result;
+    }
+
+    /**
+     * Reports the position of the record with time {@code t} in
+     * {@code this}, decoding times only as far as needed.
+     *
+     * @param t
+     *            the time in epoch milliseconds
+     * @return the position of the record with time t, or -1 if there is none
+     */
+    int indexOf(long t) {
+        int result = -1;
+        if (this.first <= t && t <= this.last) {
+            Reader in = new Reader(0);
+            long time = in.read(Long.SIZE);
+            long delta = 0;
+            int i = 0;
+            while (time < t && i + 1 < this.count) {
+                delta += readDod(in);
+                time += delta;
+                i++;
+            }
+            if (time == t) {
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports the latest record of {@code this} at or before {@code t}.
+     *
+     * @param t
+     *            the time in epoch milliseconds
+     * @return the latest record at or before t, or null if there is none
+     */
+    Weather floor(long t) {
+        Weather result = null;
+        Iterator<Weather> it = this.iterator();
+        while (it.hasNext()) {
+            Weather w = it.next();
+            if (WeatherSecondary.epochMillis(w) > t) {
+                break;
+            }
+            result = w;
+        }
+        return result;
+    }
+
+    /**
+     * Reports the earliest record of {@code this} at or after {@code t}.
+     *
+     * @param t
+     *            the time in epoch milliseconds
+     * @return the earliest record at or after t, or null if there is none
+     */
+    Weather ceiling(long t) {
+        Weather result = null;
+        if (t <= this.last) {
+            Iterator<Weather> it = this.iterator();
+            do {
+                result = it.next();
+            } while (WeatherSecondary.epochMillis(result) < t);
+        }
+        return result;
+    }
+
+    /**
+     * Decodes every record of {@code this}, in increasing order of time.
+     *
+     * @return the records of this
+     */
+    Weather2[] decode() {
+        Weather2[] result = new Weather2[this.count];
+        Iterator<Weather> it = this.iterator();
+        for (int i = 0; i < this.count; i++) {
+            result[i] = (Weather2) it.next();
+        }
+        return result;
+    }
+
+    /**
+     * Decoder of a stream of temperatures written by {@code writeFloats}.
+     */
+    private final class Floats {
+
+        /**
+         * Reader of the stream.
+         */
+        private final Reader in;
+
+        /**
+         * Bits of the last temperature decoded.
+         */
+        private int value;
+
+        /**
+         * Leading zeros of the current window.
+         */
+        private int leading;
+
+        /**
+         * Trailing zeros of the current window.
+         */
+        private int trailing;
+
+        /**
+         * Constructor from the bit offset of the stream.
+         *
+         * @param position
+         *            the offset of the stream
+         */
+        Floats(int position) {
+            this.in = new Reader(position);
+        }
+
+        /**
+         * Decodes the next temperature.
+         *
+         * @param first
+         *            whether it is the first of the stream
+         * @return the next temperature
+         */
+        float next(boolean first) {
+            if (first) {
+                this.value = (int) this.in.read(Integer.SIZE);
+            } else if (this.in.bit()) {
+                if (this.in.bit()) {
+                    this.leading = (int) this.in.read(ZEROS);
+                    this.trailing = Integer.SIZE - this.leading
+                            - ((int) this.in.read(ZEROS) + 1);
+                }
+                int meaningful = Integer.SIZE - this.leading - this.trailing;
+                this.value ^= (int) this.in.read(meaningful) << this.trailing;
+            }
+            return Float.intBitsToFloat(this.value);
+        }
+
+    }
+
+    /**
+     * Iterator that decodes the four streams in step, one record at a time.
+     */
+    private final class Cursor implements Iterator<Weather> {
+
+        /**
+         * Reader of the times.
+         */
+        private final Reader times;
+
+        /**
+         * Reader of the conditions.
+         */
+        private final Reader conditions;
+
+        /**
+         * Decoder of the lowest temperatures.
+         */
+        private final Floats lows;
+
+        /**
+         * Decoder of the highest temperatures.
+         */
+        private final Floats highs;
+
+        /**
+         * Number of records decoded.
+         */
+        private int next;
+
+        /**
+         * Last time decoded.
+         */
+        private long time;
+
+        /**
+         * Delta between the last time decoded and the one before it.
+         */
+        private long delta;
+
+        /**
+         * Ordinal of the current run of conditions.
+         */
+        private int ordinal;
+
+        /**
+         * Records left in the current run of conditions.
+         */
+        private int run;
+
+        /**
+         * No-argument constructor.
+         */
+        Cursor() {
+            this.times = new Reader(0);
+            this.conditions = new Reader(ChartBlock.this.conditionAt);
+            this.lows = new Floats(ChartBlock.this.lowAt);
+            this.highs = new Floats(ChartBlock.this.highAt);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next < ChartBlock.this.count;
+        }
+
+        @Override
+        public Weather next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            boolean first = this.next == 0;
+            if (first) {
+                this.time = this.times.read(Long.SIZE);
+            } else {
+                this.delta += readDod(this.times);
+                this.time += this.delta;
+            }
+            float low = this.lows.next(first);
+            float high = this.highs.next(first);
+            if (this.run == 0) {
+                this.ordinal = (int) this.conditions.read(ORDINAL);
+                this.run = (int) this.conditions.read(RUN) + 1;
+            }
+            this.run--;
+            this.next++;
+            return new Weather2(this.time, CONDITIONS[this.ordinal], low,
+                    high);
+        }
+
+    }
+
+    @Override
+    public Iterator<Weather> iterator() {
+        return new Cursor();
+    }
+
+}
@@ -0,0 +1,370 @@
+package components.weather;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retention policy for a {@code Chart}: readings are kept as they are while
+ * they are younger than {@code raw}, folded into one rollup record per day
+ * once they are older, and into one per month once they are older than
+ * {@code daily}. A rollup record has the time of the start of its day or
+ * month, the lowest low and highest high of the records it replaces, and
+ * their dominant condition: the defined condition most of them have, the one
+ * first in {@code Condition} on a tie, or {@code UNDEFINED} if none has one.
+ * A monthly rollup folds whatever its month holds, one vote per record: its
+ * daily rollups, so its condition is the one most of its days had, but also
+ * any readings never folded into days, as when a chart is first compacted
+ * after its readings are already older than {@code daily}, and then its
+ * condition is the one most of those readings had.
+ *
+ * <p>
+ * Only days and months that lie wholly before their cutoff are folded, and
+ * a period that already holds a single record at its start is left as it
+ * is, so compacting again is harmless. {@code compact} folds at most
+ * {@code budget} periods, oldest first, not counting the ones it leaves as
+ * they are, and resumes where it stopped on the next call, so a compactor
+ * scheduled on a {@code ScheduledExecutorService} keeps a chart bounded in
+ * small steps while range queries over it keep working. A period is folded
+ * by adding its rollup first and only then removing its readings, skipping
+ * any another thread has already removed, so a concurrent reader never finds
+ * a folded period empty, though it may see the rollup beside readings not
+ * yet removed, and, when a reading sat at the very start of the period, that
+ * period without its first reading for the moment it takes to swap in the
+ * rollup. A chart compacted in the background while other threads use it
+ * must be safe for concurrent use, as {@code Chart5} is.
+ *
+ * @convention <pre>
+ * $this.raw <= $this.daily and
+ * [$this.resume is the end of the last period folded, or null to start
+ *   over from the earliest record]
+ * </pre>
+ */
+public final class ChartCompactor implements Runnable {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Periods folded by one scheduled run.
+     */
+    private static final int BUDGET = 64;
+
+    /**
+     * The chart compacted.
+     */
+    private final Chart chart;
+
+    /**
+     * Age past which readings are folded into days.
+     */
+    private final Duration raw;
+
+    /**
+     * Age past which days are folded into months.
+     */
+    private final Duration daily;
+
+    /**
+     * Zone whose calendar days and months are used.
+     */
+    private final ZoneId zone;
+
+    /**
+     * Where the next call to {@code compact} starts, or null to start from
+     * the earliest record.
+     */
+    private Long resume;
+
+    /**
+     * Reports the start of the day containing {@code t}, in epoch
+     * milliseconds.
+     *
+     * @param t
+     *            the time in epoch milliseconds
+     * @return the start of its day
+     */
+    private long dayOf(long t) {
+        return Instant.ofEpochMilli(t).atZone(this.zone).toLocalDate()
+                .atStartOfDay(this.zone).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Reports the start of the month containing {@code t}, in epoch
+     * milliseconds.
+     *
+     * @param t
+     *            the time in epoch milliseconds
+     * @return the start of its month
+     */
+    private long monthOf(long t) {
+        LocalDate day = Instant.ofEpochMilli(t).atZone(this.zone)
+                .toLocalDate();
+        return day.withDayOfMonth(1).atStartOfDay(this.zone).toInstant()
+                .toEpochMilli();
+    }
+
+    /**
+     * Reports the start of the day or month after the one starting at
+     * {@code start}, in epoch milliseconds.
+     *
+     * @param start
+     *            the start of a day or month, in epoch milliseconds
+     * @param month
+     *            whether it is a month
+     * @return the start of the next one
+     */
+    private long after(long start, boolean month) {
+        ZonedDateTime at = Instant.ofEpochMilli(start).atZone(this.zone);
+        if (month) {
+            at = at.plusMonths(1);
+        } else {
+            at = at.plusDays(1);
+        }
+        return at.toLocalDate().atStartOfDay(this.zone).toInstant()
+                .toEpochMilli();
+    }
+
+    /**
+     * Reports the earliest record of {@code chart} at or after {@code t}, or
+     * null if there is none.
+     *
+     * @param t
+     *            the time in epoch milliseconds
+     * @return the earliest record at or after t, or null
+     */
+    private Weather next(long t) {
+        Weather result = null;
+        if (this.chart.size() > 0
+                && WeatherSecondary.epochMillis(this.chart.last()) >= t) {
+            result = this.chart.ceiling(new Date(t));
+        }
+        return result;
+    }
+
+    /**
+     * Reports whether the records of {@code chart} in [{@code start},
+     * {@code end}) are one record at {@code start}, as a rollup leaves them.
+     *
+     * @param start
+     *            the start of the period, in epoch milliseconds
+     * @param end
+     *            the end of the period, exclusive, in epoch milliseconds
+     * @return whether the period holds a single record, at start
+     */
+    private boolean isRolledUp(long start, long end) {
+        Weather second = this.next(start + 1);
+        return this.chart.hasTime(new Date(start)) && (second == null
+                || WeatherSecondary.epochMillis(second) >= end);
+    }
+
+    /**
+     * Replaces the records of {@code chart} in [{@code start}, {@code end})
+     * with one rollup record at {@code start}.
+     *
+     * @param start
+     *            the start of the period, in epoch milliseconds
+     * @param end
+     *            the end of the period, exclusive, in epoch milliseconds
+     * @return the number of records the chart shrank by
+     */
+    private int fold(long start, long end) {
+        List<Weather> period = new ArrayList<Weather>();
+        for (Weather w : this.chart.between(new Date(start),
+                new Date(end - 1))) {
+            period.add(w);
+        }
+        int removed = 0;
+        if (period.size() > 1 || period.size() == 1
+                && WeatherSecondary.epochMillis(period.get(0)) != start) {
+            Condition[] conditions = Condition.values();
+            int[] votes = new int[conditions.length];
+            float low = Float.POSITIVE_INFINITY;
+            float high = Float.NEGATIVE_INFINITY;
+            for (Weather w : period) {
+                votes[w.condition().ordinal()]++;
+                low = Math.min(low, w.lowTemp());
+                high = Math.max(high, w.highTemp());
+            }
+            Condition dominant = Condition.UNDEFINED;
+            for (Condition c : conditions) {
+                if (c != Condition.UNDEFINED && votes[c.ordinal()] > 0
+                        && (dominant == Condition.UNDEFINED
+                                || votes[c.ordinal()] > votes[dominant
+                                        .ordinal()])) {
+                    dominant = c;
+                }
+            }
+            /*
+             * The rollup goes in before any reading comes out, so a reader
+             * never finds the period empty. A reading already at start has to
+             * make way for it first; addAll, unlike add, rejects a record
+             * whose time another thread has just taken instead of failing.
+             */
+            Date at = new Date(start);
+            Weather first = null;
+            if (this.chart.hasTime(at)) {
+                first = this.chart.remove(at);
+            }
+            List<Weather> rollup = new ArrayList<Weather>();
+            rollup.add(new Weather2(start, dominant, low, high));
+            if (this.chart.addAll(rollup).length() == 0) {
+                if (first != null) {
+                    removed++;
+                }
+                for (Weather w : period) {
+                    long t = WeatherSecondary.epochMillis(w);
+                    if (t != start && this.chart.hasTime(w.time())
+                            && this.chart.remove(w.time()) != null) {
+                        removed++;
+                    }
+                }
+                removed--;
+            } else if (first != null) {
+                // Lost a race for start: put the reading back, fold later
+                rollup.set(0, first);
+                this.chart.addAll(rollup);
+            }
+        }
+        return removed;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from the chart to compact, the ages past which readings
+     * are folded into days and days into months, and the zone whose calendar
+     * is used.
+     *
+     * @param chart
+     *            the chart to compact
+     * @param raw
+     *            the age past which readings are folded into days
+     * @param daily
+     *            the age past which days are folded into months
+     * @param zone
+     *            the zone whose calendar days and months are used
+     * @requires 0 <= raw <= daily
+     */
+    public ChartCompactor(Chart chart, Duration raw, Duration daily,
+            ZoneId zone) {
+        assert chart != null : "Violation of: chart is not null";
+        assert raw != null : "Violation of: raw is not null";
+        assert daily != null : "Violation of: daily is not null";
+        assert zone != null : "Violation of: zone is not null";
+        assert !raw.isNegative() : "Violation of: 0 <= raw";
+        assert raw.compareTo(daily) <= 0 : "Violation of: raw <= daily";
+
+        this.chart = chart;
+        this.raw = raw;
+        this.daily = daily;
+        this.zone = zone;
+    }
+
+    /*
+     * Compaction methods -----------------------------------------------------
+     */
+
+    /**
+     * Folds at most {@code budget} days or months that are old enough, as
+     * of {@code now}, starting where the last call stopped. Periods already
+     * folded are passed over at the cost of two lookups each and are not
+     * counted against {@code budget}.
+     *
+     * @param now
+     *            the time ages are measured from
+     * @param budget
+     *            the most periods to fold
+     * @return the number of records the chart shrank by
+     * @updates chart
+     * @requires budget > 0
+     */
+    public synchronized int compact(Instant now, int budget) {
+        assert now != null : "Violation of: now is not null";
+        assert budget > 0 : "Violation of: budget > 0";
+
+        long days = this.dayOf(now.minus(this.raw).toEpochMilli());
+        long months = this.monthOf(now.minus(this.daily).toEpochMilli());
+        long from = Long.MIN_VALUE;
+        if (this.resume != null) {
+            from = this.resume;
+        }
+        int removed = 0;
+        int folded = 0;
+        Weather w = this.next(from);
+        while (w != null && folded < budget) {
+            long t = WeatherSecondary.epochMillis(w);
+            boolean month = t < months;
+            long start;
+            if (month) {
+                start = this.monthOf(t);
+            } else {
+                start = this.dayOf(t);
+            }
+            long end = this.after(start, month);
+            if (end > days) {
+                w = null;
+            } else {
+                // A period folded on an earlier pass costs no budget
+                if (!this.isRolledUp(start, end)) {
+                    removed += this.fold(start, end);
+                    folded++;
+                }
+                this.resume = end;
+                w = this.next(end);
+            }
+        }
+        if (w == null) {
+            /*
+             * Every period old enough was reached, so the next call starts
+             * over: days folded before have aged into months meanwhile.
+             */
+            this.resume = null;
+        }
+        return removed;
+    }
+
+    /**
+     * Folds a step of days and months old enough as of now.
+     */
+    @Override
+    public void run() {
+        this.compact(Instant.now(), BUDGET);
+    }
+
+    /**
+     * Runs {@code this} on {@code executor} every {@code period}, starting
+     * one {@code period} from now, until the returned future is cancelled.
+     *
+     * @param executor
+     *            the executor to run on
+     * @param period
+     *            the delay between the end of one run and the start of the
+     *            next
+     * @return the future of the repeated runs
+     * @requires period > 0
+     */
+    public ScheduledFuture<?> schedule(ScheduledExecutorService executor,
+            Duration period) {
+        assert executor != null : "Violation of: executor is not null";
+        assert period != null : "Violation of: period is not null";
+        assert !period.isNegative()
+                && !period.isZero() : "Violation of: period > 0";
+
+        long millis = period.toMillis();
+        return executor.scheduleWithFixedDelay(this, millis, millis,
+                TimeUnit.MILLISECONDS);
+    }
+
+}
@@ -0,0 +1,237 @@
+package components.weather;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+
+import components.sequence.Sequence;
+
+/**
+ * {@code Chart} that passes every method to a backing chart. Decorators such
+ * as {@code CachedChart} extend it and override only the methods they add
+ * behavior to.
+ *
+ * @correspondence this = $this.backing
+ */
+public abstract class ChartDecorator extends ChartSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * The chart decorated.
+     */
+    private final Chart backing;
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from the chart to decorate.
+     *
+     * @param backing
+     *            the chart to decorate
+     * @ensures this = backing
+     */
+    protected ChartDecorator(Chart backing) {
+        assert backing != null : "Violation of: backing is not null";
+
+        this.backing = backing;
+    }
+
+    /**
+     * Returns the chart decorated.
+     *
+     * @return the chart decorated
+     * @aliases reference returned by {@code backing}
+     */
+    protected final Chart backing() {
+        return this.backing;
+    }
+
+    /**
+     * Reports the records of {@code batch} that {@code addAll} added, given
+     * the records it rejected. Each rejection leaves out one occurrence of
+     * the same reference, the last one not yet left out, so a reference
+     * listed twice in a batch, added once and rejected once, is reported
+     * once.
+     *
+     * @param batch
+     *            the records passed to {@code addAll}, in order
+     * @param rejected
+     *            the records {@code addAll} returned
+     * @return the records of batch that were added, in order
+     */
+    protected static List<Weather> added(List<Weather> batch,
+            Sequence<Weather> rejected) {
+        Map<Weather, Integer> left = new IdentityHashMap<Weather, Integer>();
+        for (Weather w : rejected) {
+            left.merge(w, 1, Integer::sum);
+        }
+        List<Weather> result = new ArrayList<Weather>(batch.size());
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            Weather w = batch.get(i);
+            Integer n = left.get(w);
+            if (n == null) {
+                result.add(w);
+            } else if (n == 1) {
+                left.remove(w);
+            } else {
+                left.put(w, n - 1);
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public void add(Weather w) {
+        this.backing.add(w);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Weather remove(Date t) {
+        return this.backing.remove(t);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Weather removeAny() {
+        return this.backing.removeAny();
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Condition condition(Date t) {
+        return this.backing.condition(t);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public boolean hasTime(Date t) {
+        return this.backing.hasTime(t);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public int size() {
+        return this.backing.size();
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Iterator<Weather> iterator() {
+        return this.backing.iterator();
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Spliterator<Weather> spliterator() {
+        return this.backing.spliterator();
+    }
+
+    /*
+     * Bulk methods -----------------------------------------------------------
+     */
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Sequence<Weather> addAll(Iterable<Weather> ws) {
+        return this.backing.addAll(ws);
+    }
+
+    /*
+     * Range methods ----------------------------------------------------------
+     */
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Iterable<Weather> between(Date from, Date to) {
+        return this.backing.between(from, to);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Weather floor(Date t) {
+        return this.backing.floor(t);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Weather ceiling(Date t) {
+        return this.backing.ceiling(t);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Weather nearest(Date t) {
+        return this.backing.nearest(t);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Weather first() {
+        return this.backing.first();
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Weather last() {
+        return this.backing.last();
+    }
+
+    /*
+     * Condition and aggregate methods ----------------------------------------
+     */
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public int count(Condition c) {
+        return this.backing.count(c);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public int count(Condition c, Date from, Date to) {
+        return this.backing.count(c, from, to);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Iterable<Weather> withCondition(Condition c, Date from,
+            Date to) {
+        return this.backing.withCondition(c, from, to);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public TemperatureStats stats(Date from, Date to) {
+        return this.backing.stats(from, to);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public long fingerprint() {
+        return this.backing.fingerprint();
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Chart snapshot() {
+        return this.backing.snapshot();
+    }
+
+}
@@ -0,0 +1,547 @@
+package components.weather;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import components.sequence.Sequence;
+
+/**
+ * Loads station dumps into a {@code Chart}. The file is read in large blocks
+ * on the calling thread, each block of whole lines is parsed into
+ * {@code Weather2} records on a pool of workers, and the parsed batches are
+ * handed to {@link Chart#addAll(Iterable)} on the calling thread in file
+ * order. At most a fixed number of blocks are in flight at once, so reading
+ * waits for parsing and memory use stays bounded however large the file is.
+ *
+ * <p>
+ * Two line formats are understood, one record per line:
+ *
+ * <pre>
+ * CSV:    time,condition,low,high
+ * NDJSON: {"time": ..., "condition": "...", "low": ..., "high": ...}
+ * </pre>
+ *
+ * A time is epoch milliseconds, an ISO-8601 instant such as
+ * {@code 2024-03-01T06:00:00Z}, or an ISO-8601 date, which stands for
+ * midnight UTC. A condition is the name of a {@code Condition}, in any case.
+ * Blank lines and a CSV header line whose first field is {@code time} are
+ * skipped. Every other line that cannot be parsed, and every record the chart
+ * rejects as a duplicate time, is reported with its line number instead of
+ * stopping the load.
+ */
+public final class ChartLoader {
+
+    /**
+     * Line format of a dump.
+     */
+    public enum Format {
+        /**
+         * Comma-separated {@code time,condition,low,high}.
+         */
+        CSV,
+
+        /**
+         * One flat JSON object per line.
+         */
+        NDJSON
+    }
+
+    /**
+     * Receiver of lines that could not be loaded.
+     */
+    public interface Errors {
+
+        /**
+         * Reports that line {@code line} of the dump was not loaded. Called on
+         * the thread running {@code load}, in increasing order of line.
+         *
+         * @param line
+         *            the 1-based line number
+         * @param text
+         *            the text of the line
+         * @param message
+         *            why the line was not loaded
+         */
+        void report(long line, String text, String message);
+
+    }
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Default size of a read block in bytes.
+     */
+    private static final int BLOCK = 1 << 20;
+
+    /**
+     * Lowest temperature allowed by the {@code Weather1} convention,
+     * exclusive.
+     */
+    private static final float MIN_TEMP = -200f;
+
+    /**
+     * Highest temperature allowed by the {@code Weather1} convention,
+     * exclusive.
+     */
+    private static final float MAX_TEMP = 200f;
+
+    /**
+     * Number of parsing threads.
+     */
+    private final int threads;
+
+    /**
+     * Size of a read block in bytes.
+     */
+    private final int blockSize;
+
+    /**
+     * Most blocks read but not yet added to the chart.
+     */
+    private final int maxInFlight;
+
+    /**
+     * Result of parsing one block of lines.
+     */
+    static final class Batch {
+
+        /**
+         * Number of lines in the block.
+         */
+        private int lines = 0;
+
+        /**
+         * Records parsed from the block, in line order.
+         */
+        private final List<Weather> records = new ArrayList<Weather>();
+
+        /**
+         * Block-relative line number of each record.
+         */
+        private final List<Integer> recordLines = new ArrayList<Integer>();
+
+        /**
+         * Block-relative line numbers of the lines that failed to parse.
+         */
+        private final List<Integer> errorLines = new ArrayList<Integer>();
+
+        /**
+         * Texts of the lines that failed to parse.
+         */
+        private final List<String> errorTexts = new ArrayList<String>();
+
+        /**
+         * Reasons the lines failed to parse.
+         */
+        private final List<String> errorMessages = new ArrayList<String>();
+
+    }
+
+    /**
+     * Parses every line of {@code block}.
+     *
+     * @param block
+     *            whole lines of the dump, each ended by a newline except
+     *            possibly the last
+     * @param format
+     *            the line format
+     * @return the records and errors of the block
+     */
+    static Batch parse(byte[] block, Format format) {
+        Batch batch = new Batch();
+        int start = 0;
+        while (start < block.length) {
+            int end = start;
+            while (end < block.length && block[end] != '\n') {
+                end++;
+            }
+            batch.lines++;
+            int stop = end;
+            if (stop > start && block[stop - 1] == '\r') {
+                stop--;
+            }
+            String line = new String(block, start, stop - start,
+                    StandardCharsets.UTF_8);
+            try {
+                Weather w;
+                if (format == Format.CSV) {
+                    w = parseCsv(line);
+                } else {
+                    w = parseJson(line);
+                }
+                if (w != null) {
+                    batch.records.add(w);
+                    batch.recordLines.add(batch.lines);
+                }
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                batch.errorLines.add(batch.lines);
+                batch.errorTexts.add(line);
+                batch.errorMessages.add(e.getMessage());
+            }
+            start = end + 1;
+        }
+        return batch;
+    }
+
+    /**
+     * Parses a CSV line.
+     *
+     * @param line
+     *            the line
+     * @return the record on the line, or null if the line holds none
+     * @throws IllegalArgumentException
+     *             if the line is malformed
+     */
+    private static Weather parseCsv(String line) {
+        Weather result = null;
+        if (!line.isBlank()) {
+            final int fields = 4;
+            String[] field = new String[fields];
+            int start = 0;
+            for (int k = 0; k < fields; k++) {
+                int comma = line.indexOf(',', start);
+                if (k < fields - 1 && comma < 0) {
+                    throw new IllegalArgumentException(
+                            "expected 4 comma-separated fields");
+                }
+                if (k == fields - 1) {
+                    if (comma >= 0) {
+                        throw new IllegalArgumentException(
+                                "expected 4 comma-separated fields");
+                    }
+                    comma = line.length();
+                }
+                field[k] = line.substring(start, comma).trim();
+                start = comma + 1;
+            }
+            if (!field[0].equalsIgnoreCase("time")) {
+                result = record(field[0], field[1], field[2], field[3]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses an NDJSON line.
+     *
+     * @param line
+     *            the line
+     * @return the record on the line, or null if the line holds none
+     * @throws IllegalArgumentException
+     *             if the line is malformed
+     */
+    private static Weather parseJson(String line) {
+        Weather result = null;
+        String object = line.trim();
+        if (!object.isEmpty()) {
+            if (!object.startsWith("{") || !object.endsWith("}")) {
+                throw new IllegalArgumentException("expected a JSON object");
+            }
+            result = record(member(object, "time"),
+                    member(object, "condition"), member(object, "low"),
+                    member(object, "high"));
+        }
+        return result;
+    }
+
+    /**
+     * Reports the value of member {@code name} of a flat JSON object, without
+     * quotes if it is a string.
+     *
+     * @param object
+     *            the JSON object
+     * @param name
+     *            the member name
+     * @return the text of the value
+     * @throws IllegalArgumentException
+     *             if the member is missing
+     */
+    private static String member(String object, String name) {
+        String key = "\"" + name + "\"";
+        int at = object.indexOf(key);
+        if (at < 0) {
+            throw new IllegalArgumentException("missing \"" + name + "\"");
+        }
+        int colon = object.indexOf(':', at + key.length());
+        if (colon < 0) {
+            throw new IllegalArgumentException("missing value of " + key);
+        }
+        int start = colon + 1;
+        while (start < object.length()
+                && Character.isWhitespace(object.charAt(start))) {
+            start++;
+        }
+        int end;
+        if (start < object.length() && object.charAt(start) == '"') {
+            start++;
+            end = object.indexOf('"', start);
+            if (end < 0) {
+                throw new IllegalArgumentException(
+                        "unterminated value of " + key);
+            }
+        } else {
+            end = start;
+            while (end < object.length() && object.charAt(end) != ','
+                    && object.charAt(end) != '}') {
+                end++;
+            }
+        }
+        return object.substring(start, end).trim();
+    }
+
+    /**
+     * Creates the record described by the given field texts.
+     *
+     * @param time
+     *            the time text
+     * @param condition
+     *            the condition name
+     * @param low
+     *            the lowest temperature text
+     * @param high
+     *            the highest temperature text
+     * @return the record
+     * @throws IllegalArgumentException
+     *             if a field is malformed or out of range
+     */
+    private static Weather record(String time, String condition, String low,
+            String high) {
+        Condition c;
+        try {
+            c = Condition.valueOf(condition.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                    "unknown condition \"" + condition + "\"", e);
+        }
+        float lo = Float.parseFloat(low);
+        float hi = Float.parseFloat(high);
+        if (!(MIN_TEMP < lo && lo <= hi && hi < MAX_TEMP)) {
+            throw new IllegalArgumentException(
+                    "temperatures must satisfy -200 < low <= high < 200");
+        }
+        return new Weather2(epochMillis(time), c, lo, hi);
+    }
+
+    /**
+     * Parses a time in any of the accepted forms.
+     *
+     * @param time
+     *            the time text
+     * @return the time in epoch milliseconds
+     * @throws IllegalArgumentException
+     *             if the time is malformed
+     */
+    static long epochMillis(String time) {
+        long result;
+        if (!time.isEmpty() && time.chars().allMatch(Character::isDigit)) {
+            result = Long.parseLong(time);
+        } else if (time.indexOf('T') >= 0) {
+            result = Instant.parse(time).toEpochMilli();
+        } else {
+            result = LocalDate.parse(time).atStartOfDay(ZoneOffset.UTC)
+                    .toInstant().toEpochMilli();
+        }
+        return result;
+    }
+
+    /**
+     * Adds the records of {@code batch} to {@code chart} and reports its
+     * errors and rejected duplicates.
+     *
+     * @param batch
+     *            the parsed block
+     * @param base
+     *            the number of lines before the block
+     * @param chart
+     *            the chart to load into
+     * @param errors
+     *            the receiver of unloaded lines
+     * @return the number of records added
+     */
+    static long apply(Batch batch, long base, Chart chart,
+            Errors errors) {
+        Sequence<Weather> rejected = chart.addAll(batch.records);
+        /*
+         * Merge parse errors and rejected duplicates so they are reported in
+         * line order.
+         */
+        long[] lines = new long[batch.errorLines.size() + rejected.length()];
+        String[] texts = new String[lines.length];
+        String[] messages = new String[lines.length];
+        int n = 0;
+        for (int k = 0; k < batch.errorLines.size(); k++) {
+            lines[n] = base + batch.errorLines.get(k);
+            texts[n] = batch.errorTexts.get(k);
+            messages[n] = batch.errorMessages.get(k);
+            n++;
+        }
+        if (rejected.length() > 0) {
+            Map<Weather, Integer> lineOf = new IdentityHashMap<>();
+            for (int k = 0; k < batch.records.size(); k++) {
+                lineOf.put(batch.records.get(k), batch.recordLines.get(k));
+            }
+            for (Weather w : rejected) {
+                lines[n] = base + lineOf.get(w);
+                texts[n] = w.toString();
+                messages[n] = "time " + WeatherSecondary.epochMillis(w)
+                        + " is already in the chart";
+                n++;
+            }
+        }
+        Integer[] order = new Integer[n];
+        for (int k = 0; k < n; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(lines[a], lines[b]));
+        for (int k : order) {
+            errors.report(lines[k], texts[k], messages[k]);
+        }
+        return batch.records.size() - rejected.length();
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor with one parsing thread per processor, 1 MiB blocks, and
+     * two blocks in flight per thread.
+     */
+    public ChartLoader() {
+        this(Runtime.getRuntime().availableProcessors(), BLOCK,
+                2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor from the pipeline sizes.
+     *
+     * @param threads
+     *            the number of parsing threads
+     * @param blockSize
+     *            the size of a read block in bytes
+     * @param maxInFlight
+     *            the most blocks read but not yet added to the chart
+     */
+    public ChartLoader(int threads, int blockSize, int maxInFlight) {
+        assert threads > 0 : "Violation of: threads > 0";
+        assert blockSize > 0 : "Violation of: blockSize > 0";
+        assert maxInFlight > 0 : "Violation of: maxInFlight > 0";
+
+        this.threads = threads;
+        this.blockSize = blockSize;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /*
+     * Public methods ---------------------------------------------------------
+     */
+
+    /**
+     * Loads every record of the dump {@code file} into {@code chart}.
+     *
+     * @param file
+     *            the path of the dump
+     * @param format
+     *            the line format of the dump
+     * @param chart
+     *            the chart to load into
+     * @param errors
+     *            the receiver of lines that could not be loaded
+     * @return the number of records added to {@code chart}
+     * @throws IOException
+     *             if the file cannot be read
+     * @updates chart
+     * @ensures chart = #chart union [the records of file whose time was not
+     *          in DOMAIN(#chart) or on an earlier line of file]
+     */
+    public long load(Path file, Format format, Chart chart, Errors errors)
+            throws IOException {
+        assert file != null : "Violation of: file is not null";
+        assert format != null : "Violation of: format is not null";
+        assert chart != null : "Violation of: chart is not null";
+        assert errors != null : "Violation of: errors is not null";
+
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        ArrayDeque<Future<Batch>> inFlight = new ArrayDeque<>();
+        long added = 0;
+        long base = 0;
+        try (FileChannel in = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(this.blockSize);
+            boolean eof = false;
+            while (!eof) {
+                eof = in.read(buffer) < 0;
+                byte[] block = null;
+                if (eof) {
+                    if (buffer.position() > 0) {
+                        block = Arrays.copyOf(buffer.array(),
+                                buffer.position());
+                    }
+                } else {
+                    int end = buffer.position() - 1;
+                    while (end >= 0 && buffer.get(end) != '\n') {
+                        end--;
+                    }
+                    if (end >= 0) {
+                        block = Arrays.copyOf(buffer.array(), end + 1);
+                        buffer.flip();
+                        buffer.position(end + 1);
+                        buffer.compact();
+                    } else if (!buffer.hasRemaining()) {
+                        // A single line longer than the buffer
+                        ByteBuffer bigger = ByteBuffer
+                                .allocate(buffer.capacity() * 2);
+                        buffer.flip();
+                        bigger.put(buffer);
+                        buffer = bigger;
+                    }
+                }
+                if (block != null) {
+                    if (inFlight.size() >= this.maxInFlight) {
+                        Batch done = inFlight.removeFirst().get();
+                        added += apply(done, base, chart, errors);
+                        base += done.lines;
+                    }
+                    final byte[] lines = block;
+                    inFlight.addLast(pool.submit(() -> parse(lines, format)));
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                Batch done = inFlight.removeFirst().get();
+                added += apply(done, base, chart, errors);
+                base += done.lines;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted loading " + file);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return added;
+    }
+
+}
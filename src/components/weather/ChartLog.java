@@ -0,0 +1,483 @@
+package components.weather;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the changes made to a chart, with group commit: records
+ * are appended to a buffer in memory, and a thread that needs its record on
+ * disk writes, and if asked forces, everything buffered so far on behalf of
+ * every thread waiting with it, so many concurrent changes share one
+ * {@code write} and one {@code force}.
+ *
+ * <p>
+ * The file is an 8-byte header followed by one 22-byte record per change,
+ * all big-endian:
+ *
+ * <pre>
+ * header: magic   int   0x5743574C ("WCWL")
+ *         version int   1
+ * record: op      byte  ADD or REMOVE
+ *         time    long  epoch milliseconds
+ *         cond    byte  Condition ordinal, 0 for REMOVE
+ *         low     float lowest temperature, 0 for REMOVE
+ *         high    float highest temperature, 0 for REMOVE
+ *         crc     int   CRC-32 of the 18 bytes before it
+ * </pre>
+ *
+ * A record cut short or failing its check, as a crash in the middle of a
+ * write leaves it, ends the log; {@code replay} drops it and everything after
+ * it. Replaying applies an {@code ADD} only if its time is absent and a
+ * {@code REMOVE} only if its time is present, so replaying a log over a chart
+ * that already holds some or all of its changes gives the same chart as
+ * replaying it over the chart it started from: the changes to one time
+ * alternate between adding and removing, so the first of them brings the
+ * time into step and the rest apply as they did.
+ *
+ * @convention <pre>
+ * $this.synced <= $this.written <= $this.appended and
+ * [records [0, $this.written) of the log are in the file] and
+ * [records [$this.written, $this.appended) are in $this.pending, or in the
+ *   buffer being written if $this.flushing] and
+ * [records [0, $this.synced) are on the storage device]
+ * </pre>
+ */
+final class ChartLog implements Closeable {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Marks a file as a chart log.
+     */
+    private static final int MAGIC = 0x5743574C;
+
+    /**
+     * Version of the file layout.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Bytes in the header.
+     */
+    private static final int HEADER = 2 * Integer.BYTES;
+
+    /**
+     * Bytes in one record covered by its check.
+     */
+    private static final int BODY = 2 + Long.BYTES + 2 * Float.BYTES;
+
+    /**
+     * Bytes in one record.
+     */
+    private static final int RECORD = BODY + Integer.BYTES;
+
+    /**
+     * Records buffered before an append has to wait for a write.
+     */
+    private static final int BUFFERED = 4096;
+
+    /**
+     * Operation of a record that adds a {@code Weather}.
+     */
+    private static final byte ADD = 1;
+
+    /**
+     * Operation of a record that removes a {@code Weather}.
+     */
+    private static final byte REMOVE = 2;
+
+    /**
+     * The log file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Guards every field below it, and is waited on for a write to finish.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Scratch space a record is built and checked in.
+     */
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD);
+
+    /**
+     * Check of the record being built.
+     */
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Records appended and not yet handed to a write.
+     */
+    private ByteBuffer pending = ByteBuffer.allocate(BUFFERED * RECORD);
+
+    /**
+     * The other buffer, which {@code pending} is swapped with when it is
+     * written; null while it is being written.
+     */
+    private ByteBuffer spare = ByteBuffer.allocate(BUFFERED * RECORD);
+
+    /**
+     * Number of records appended.
+     */
+    private long appended;
+
+    /**
+     * Number of records written to the file.
+     */
+    private long written;
+
+    /**
+     * Number of records forced to the storage device.
+     */
+    private long synced;
+
+    /**
+     * Whether some thread is writing.
+     */
+    private boolean flushing;
+
+    /**
+     * The failure of the last write, if it failed; once set, every later
+     * append and wait fails with it.
+     */
+    private IOException failure;
+
+    /**
+     * Throws the failure of an earlier write, if there was one.
+     *
+     * @throws IOException
+     *             if an earlier write failed
+     */
+    private void checkFailure() throws IOException {
+        assert Thread.holdsLock(this.lock) : "Violation of: lock is held";
+
+        if (this.failure != null) {
+            throw new IOException("chart log failed earlier", this.failure);
+        }
+    }
+
+    /**
+     * Reads and checks the record at {@code position}.
+     *
+     * @param position
+     *            the offset of the record in the file
+     * @return true iff a whole record that passes its check is there, in
+     *         which case it is in {@code record}
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private boolean read(long position) throws IOException {
+        this.record.clear();
+        long at = position;
+        while (this.record.hasRemaining()) {
+            int n = this.channel.read(this.record, at);
+            if (n < 0) {
+                return false;
+            }
+            at += n;
+        }
+        this.crc.reset();
+        this.crc.update(this.record.array(), 0, BODY);
+        byte op = this.record.get(0);
+        return (op == ADD || op == REMOVE)
+                && this.record.getInt(BODY) == (int) this.crc.getValue();
+    }
+
+    /**
+     * Appends one record to {@code pending}, waiting for it to be written
+     * first if it is full.
+     *
+     * @param op
+     *            the operation
+     * @param time
+     *            the time in epoch milliseconds
+     * @param condition
+     *            the Condition ordinal
+     * @param low
+     *            the lowest temperature
+     * @param high
+     *            the highest temperature
+     * @return the number of records appended, including this one
+     * @throws IOException
+     *             if the log cannot be written
+     */
+    private long append(byte op, long time, int condition, float low,
+            float high) throws IOException {
+        while (true) {
+            long full;
+            synchronized (this.lock) {
+                this.checkFailure();
+                if (this.pending.remaining() >= RECORD) {
+                    this.record.clear();
+                    this.record.put(op).putLong(time).put((byte) condition)
+                            .putFloat(low).putFloat(high);
+                    this.crc.reset();
+                    this.crc.update(this.record.array(), 0, BODY);
+                    this.record.putInt((int) this.crc.getValue());
+                    this.pending.put(this.record.array());
+                    this.appended++;
+                    return this.appended;
+                }
+                full = this.appended;
+            }
+            this.await(full, false);
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from the path of a log file, which is created empty if it
+     * does not exist. {@code replay} must be called before anything is
+     * appended.
+     *
+     * @param file
+     *            the path of the log file
+     * @throws IOException
+     *             if the file cannot be opened or is not a chart log
+     */
+    ChartLog(Path file) throws IOException {
+        assert file != null : "Violation of: file is not null";
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        if (this.channel.size() == 0) {
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            while (header.hasRemaining()) {
+                this.channel.write(header, header.position());
+            }
+            this.channel.force(false);
+        } else {
+            while (header.hasRemaining()
+                    && this.channel.read(header, header.position()) >= 0) {
+                continue;
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC
+                    || header.getInt(Integer.BYTES) != VERSION) {
+                this.channel.close();
+                throw new IOException(file + " is not a chart log");
+            }
+        }
+    }
+
+    /*
+     * Log methods ------------------------------------------------------------
+     */
+
+    /**
+     * Applies every whole record of the log to {@code target} in order, drops
+     * whatever follows the last one, and leaves the log ready for appends.
+     *
+     * @param target
+     *            the chart to apply the log to
+     * @return the number of records in the log
+     * @throws IOException
+     *             if the file cannot be read or truncated
+     * @updates target
+     * @requires nothing has been appended to this
+     */
+    long replay(Chart target) throws IOException {
+        assert target != null : "Violation of: target is not null";
+
+        long position = HEADER;
+        long count = 0;
+        Condition[] conditions = Condition.values();
+        while (this.read(position)) {
+            long time = this.record.getLong(1);
+            Date t = new Date(time);
+            if (this.record.get(0) == ADD) {
+                if (!target.hasTime(t)) {
+                    target.add(new Weather2(time,
+                            conditions[this.record.get(1 + Long.BYTES)],
+                            this.record.getFloat(2 + Long.BYTES),
+                            this.record.getFloat(2 + Long.BYTES
+                                    + Float.BYTES)));
+                }
+            } else if (target.hasTime(t)) {
+                target.remove(t);
+            }
+            position += RECORD;
+            count++;
+        }
+        if (this.channel.size() > position) {
+            this.channel.truncate(position);
+            this.channel.force(false);
+        }
+        this.channel.position(position);
+        synchronized (this.lock) {
+            this.appended = count;
+            this.written = count;
+            this.synced = count;
+        }
+        return count;
+    }
+
+    /**
+     * Appends the addition of {@code w}.
+     *
+     * @param w
+     *            the record added
+     * @return the number of records appended, including this one
+     * @throws IOException
+     *             if the log cannot be written
+     */
+    long appendAdd(Weather w) throws IOException {
+        return this.append(ADD, WeatherSecondary.epochMillis(w),
+                w.condition().ordinal(), w.lowTemp(), w.highTemp());
+    }
+
+    /**
+     * Appends the removal of the record with time {@code time}.
+     *
+     * @param time
+     *            the time in epoch milliseconds
+     * @return the number of records appended, including this one
+     * @throws IOException
+     *             if the log cannot be written
+     */
+    long appendRemove(long time) throws IOException {
+        return this.append(REMOVE, time, 0, 0f, 0f);
+    }
+
+    /**
+     * Waits until the first {@code count} records appended are in the file,
+     * and on the storage device if {@code force}. If no other thread is
+     * writing, the caller writes everything appended so far itself, for every
+     * thread waiting with it.
+     *
+     * @param count
+     *            the number of records to wait for
+     * @param force
+     *            whether they must reach the storage device
+     * @throws IOException
+     *             if the log cannot be written, or the wait is interrupted
+     */
+    void await(long count, boolean force) throws IOException {
+        ByteBuffer batch;
+        long target;
+        synchronized (this.lock) {
+            while (true) {
+                this.checkFailure();
+                long done = this.written;
+                if (force) {
+                    done = this.synced;
+                }
+                if (done >= count) {
+                    return;
+                }
+                if (!this.flushing) {
+                    break;
+                }
+                try {
+                    this.lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(
+                            "interrupted waiting for the chart log");
+                }
+            }
+            this.flushing = true;
+            batch = this.pending;
+            this.pending = this.spare;
+            this.spare = null;
+            target = this.appended;
+        }
+        /*
+         * The write and the force happen outside the lock, so other threads
+         * keep appending to the other buffer meanwhile; the next of them to
+         * wait writes all of those at once.
+         */
+        IOException failed = null;
+        try {
+            batch.flip();
+            while (batch.hasRemaining()) {
+                this.channel.write(batch);
+            }
+            if (force) {
+                this.channel.force(false);
+            }
+        } catch (IOException e) {
+            failed = e;
+        }
+        synchronized (this.lock) {
+            batch.clear();
+            this.spare = batch;
+            this.flushing = false;
+            if (failed == null) {
+                this.written = target;
+                if (force) {
+                    this.synced = target;
+                }
+            } else {
+                this.failure = failed;
+            }
+            this.lock.notifyAll();
+        }
+        if (failed != null) {
+            throw failed;
+        }
+    }
+
+    /**
+     * Empties the log, once a snapshot holds every change in it. Records
+     * still buffered are dropped with the rest.
+     *
+     * @throws IOException
+     *             if the file cannot be truncated
+     */
+    void reset() throws IOException {
+        synchronized (this.lock) {
+            while (this.flushing) {
+                try {
+                    this.lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(
+                            "interrupted waiting for the chart log");
+                }
+            }
+            this.checkFailure();
+            this.channel.truncate(HEADER);
+            this.channel.position(HEADER);
+            this.channel.force(false);
+            this.pending.clear();
+            this.written = this.appended;
+            this.synced = this.appended;
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * Writes and forces everything appended, then closes the file.
+     * {@code this} must not be used afterwards.
+     *
+     * @throws IOException
+     *             if the file cannot be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        long count;
+        synchronized (this.lock) {
+            count = this.appended;
+        }
+        try {
+            this.await(count, true);
+        } finally {
+            this.channel.close();
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+package components.weather;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import components.weather.InstrumentedChart.Operation;
+
+/**
+ * {@code InstrumentedChart.Listener} that keeps, for each operation, a count
+ * and a {@code LatencyHistogram} of its latencies in nanoseconds, and gauges
+ * of the chart's current and largest size. It is safe for concurrent use and
+ * may listen to several charts at once, in which case the gauges follow
+ * whichever reported last.
+ *
+ * @convention <pre>
+ * [$this.latencies has a histogram for every Operation] and
+ * $this.size <= $this.peak
+ * </pre>
+ */
+public final class ChartMetrics implements InstrumentedChart.Listener {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Latencies of each operation, in nanoseconds; filled at construction
+     * and never changed after, so it can be read without locking.
+     */
+    private final Map<Operation, LatencyHistogram> latencies;
+
+    /**
+     * Size of the chart after the last operation.
+     */
+    private volatile int size;
+
+    /**
+     * Largest size reported.
+     */
+    private final LongAccumulator peak = new LongAccumulator(Math::max, 0);
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public ChartMetrics() {
+        this.latencies = new EnumMap<Operation, LatencyHistogram>(
+                Operation.class);
+        for (Operation op : Operation.values()) {
+            this.latencies.put(op, new LatencyHistogram());
+        }
+    }
+
+    /*
+     * Listener methods -------------------------------------------------------
+     */
+
+    @Override
+    public void operation(Operation op, long nanos, int size) {
+        this.latencies.get(op).record(nanos);
+        this.size = size;
+        this.peak.accumulate(size);
+    }
+
+    /*
+     * Metrics methods --------------------------------------------------------
+     */
+
+    /**
+     * Reports the number of times {@code op} was reported.
+     *
+     * @param op
+     *            the operation
+     * @return the count of op
+     */
+    public long count(Operation op) {
+        return this.latencies.get(op).count();
+    }
+
+    /**
+     * Reports the histogram of the latencies of {@code op}, in nanoseconds.
+     * It is live: it goes on changing as operations are reported.
+     *
+     * @param op
+     *            the operation
+     * @return the latencies of op
+     * @aliases reference returned by {@code latency}
+     */
+    public LatencyHistogram latency(Operation op) {
+        return this.latencies.get(op);
+    }
+
+    /**
+     * Reports the size of the chart after the last operation.
+     *
+     * @return the current size gauge
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Reports the largest size of the chart reported.
+     *
+     * @return the peak size gauge
+     */
+    public int peakSize() {
+        return (int) this.peak.get();
+    }
+
+    /**
+     * Forgets every count, latency and size reported.
+     */
+    public void reset() {
+        for (LatencyHistogram h : this.latencies.values()) {
+            h.reset();
+        }
+        this.size = 0;
+        this.peak.reset();
+    }
+
+    /**
+     * Reports one line per operation reported at least once, with its
+     * latency summary in nanoseconds, then the size gauges.
+     *
+     * @return a summary of this
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<Operation, LatencyHistogram> e : this.latencies
+                .entrySet()) {
+            if (e.getValue().count() > 0) {
+                result.append(e.getKey()).append(' ').append(e.getValue())
+                        .append('\n');
+            }
+        }
+        result.append("size=").append(this.size).append(" peak=")
+                .append(this.peakSize());
+        return result.toString();
+    }
+
+}
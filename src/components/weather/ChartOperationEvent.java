@@ -0,0 +1,53 @@
+package components.weather;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder event for one operation on an
+ * {@code InstrumentedChart}, shown under Weather / Chart. There can be
+ * millions of them a second, so it is disabled unless a recording asks for
+ * it, through a settings file with
+ * {@code <event name="components.weather.ChartOperation">} set
+ * {@code enabled}, or with {@code Recording.enable}.
+ */
+@Name("components.weather.ChartOperation")
+@Label("Chart Operation")
+@Category({ "Weather", "Chart" })
+@Description("An operation on an instrumented Chart")
+@StackTrace(false)
+@Enabled(false)
+final class ChartOperationEvent extends Event {
+
+    /**
+     * Name of the operation.
+     */
+    @Label("Operation")
+    String operation;
+
+    /**
+     * Class of the chart operated on.
+     */
+    @Label("Chart")
+    String chart;
+
+    /**
+     * Time the operation took.
+     */
+    @Label("Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency;
+
+    /**
+     * Number of records in the chart afterwards.
+     */
+    @Label("Size")
+    int size;
+
+}
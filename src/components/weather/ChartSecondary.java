@@ -0,0 +1,411 @@
+package components.weather;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import components.sequence.Sequence;
+import components.sequence.Sequence1L;
+import components.simplewriter.SimpleWriter;
+
+/**
+ * Layered implementations of secondary methods for {@code Chart}.
+ */
+public abstract class ChartSecondary implements Chart {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Orders records by time.
+     */
+    private static final Comparator<Weather> BY_TIME = Comparator
+            .comparingLong(WeatherSecondary::epochMillis);
+
+    /**
+     * Size from which whole-chart scans run as parallel streams; below it the
+     * cost of splitting outweighs the work saved.
+     */
+    static final int PARALLEL_SCAN = 1 << 16;
+
+    /**
+     * Mixes the time and condition of one record into 64 well-spread bits,
+     * with the finalizer of SplitMix64. A chart's fingerprint is the sum of
+     * these over its records, so adding or removing one record updates it in
+     * O(1) whatever the order of the records.
+     *
+     * @param time
+     *            the time of the record in epoch milliseconds
+     * @param condition
+     *            the ordinal of the condition of the record
+     * @return the mix of time and condition
+     */
+    static long fingerprintOf(long time, int condition) {
+        final long golden = 0x9E3779B97F4A7C15L;
+        final long m1 = 0xBF58476D1CE4E5B9L;
+        final long m2 = 0x94D049BB133111EBL;
+        final int s1 = 30;
+        final int s2 = 27;
+        final int s3 = 31;
+        long z = time + (condition + 1) * golden;
+        z = (z ^ (z >>> s1)) * m1;
+        z = (z ^ (z >>> s2)) * m2;
+        return z ^ (z >>> s3);
+    }
+
+    /**
+     * Mixes the time and condition of {@code w} into 64 well-spread bits.
+     *
+     * @param w
+     *            the record
+     * @return the mix of w.time and w.condition
+     */
+    static long fingerprintOf(Weather w) {
+        return fingerprintOf(WeatherSecondary.epochMillis(w),
+                w.condition().ordinal());
+    }
+
+    /**
+     * Returns a stream over {@code this} for a whole-chart scan, parallel if
+     * {@code this} is large enough for that to pay.
+     *
+     * @return a stream over {@code this}
+     */
+    final Stream<Weather> scan() {
+        return StreamSupport.stream(this.spliterator(),
+                this.size() >= PARALLEL_SCAN);
+    }
+
+    /**
+     * Sorts {@code ws} by time and drops every record that shares its time
+     * with an earlier record of {@code ws}, reporting it in {@code rejected}.
+     *
+     * @param ws
+     *            the records to sort
+     * @param rejected
+     *            the sequence to report dropped records in
+     * @return the distinct records of {@code ws}, in increasing order of time
+     * @updates rejected
+     * @ensures <pre>
+     * distinctByTime = [the first record of ws for each time, in increasing
+     *   order of time] and
+     * rejected = #rejected * [the other records of ws, in increasing order of
+     *   time]
+     * </pre>
+     */
+    static List<Weather> distinctByTime(Iterable<Weather> ws,
+            Sequence<Weather> rejected) {
+        assert ws != null : "Violation of: ws is not null";
+        assert rejected != null : "Violation of: rejected is not null";
+
+        List<Weather> batch = new ArrayList<Weather>();
+        for (Weather w : ws) {
+            assert w != null : "Violation of: every w in ws is not null";
+            batch.add(w);
+        }
+        /*
+         * List.sort is stable, so the first of several records with one time
+         * stays in front of the others.
+         */
+        batch.sort(BY_TIME);
+        int kept = 0;
+        long previous = 0;
+        for (Weather w : batch) {
+            long t = WeatherSecondary.epochMillis(w);
+            if (kept > 0 && t == previous) {
+                rejected.add(rejected.length(), w);
+            } else {
+                batch.set(kept, w);
+                kept++;
+                previous = t;
+            }
+        }
+        batch.subList(kept, batch.size()).clear();
+        return batch;
+    }
+
+    /*
+     * Secondary methods ------------------------------------------------------
+     */
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Sequence<Weather> addAll(Iterable<Weather> ws) {
+        assert ws != null : "Violation of: ws is not null";
+
+        Sequence<Weather> rejected = new Sequence1L<Weather>();
+        for (Weather w : distinctByTime(ws, rejected)) {
+            if (this.hasTime(w.time())) {
+                rejected.add(rejected.length(), w);
+            } else {
+                this.add(w);
+            }
+        }
+        return rejected;
+    }
+
+    @Override
+    public final Sequence<Weather> addAll(Stream<Weather> ws) {
+        assert ws != null : "Violation of: ws is not null";
+
+        Iterable<Weather> batch = ws::iterator;
+        return this.addAll(batch);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Weather nearest(Date t) {
+        assert t != null : "Violation of: t is not null";
+        assert this.size() > 0 : "Violation of: |this| > 0";
+
+        Weather result;
+        if (t.compareTo(this.first().time()) <= 0) {
+            result = this.first();
+        } else if (t.compareTo(this.last().time()) >= 0) {
+            result = this.last();
+        } else {
+            Weather below = this.floor(t);
+            Weather above = this.ceiling(t);
+            long toBelow = t.getTime() - below.time().getTime();
+            long toAbove = above.time().getTime() - t.getTime();
+            if (toBelow <= toAbove) {
+                result = below;
+            } else {
+                result = above;
+            }
+        }
+        return result;
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public int count(Condition c) {
+        assert c != null : "Violation of: c is not null";
+
+        return (int) this.scan().filter(w -> w.condition().equals(c)).count();
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public int count(Condition c, Date from, Date to) {
+        assert c != null : "Violation of: c is not null";
+
+        int result = 0;
+        for (Weather w : this.between(from, to)) {
+            if (w.condition().equals(c)) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Iterable<Weather> withCondition(Condition c, Date from, Date to) {
+        assert c != null : "Violation of: c is not null";
+
+        final Iterable<Weather> window = this.between(from, to);
+        return () -> new Iterator<Weather>() {
+
+            /**
+             * Records of the window not yet looked at.
+             */
+            private final Iterator<Weather> it = window.iterator();
+
+            /**
+             * Next matching record, or null if not yet found.
+             */
+            private Weather next = null;
+
+            @Override
+            public boolean hasNext() {
+                while (this.next == null && this.it.hasNext()) {
+                    Weather w = this.it.next();
+                    if (w.condition().equals(c)) {
+                        this.next = w;
+                    }
+                }
+                return this.next != null;
+            }
+
+            @Override
+            public Weather next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Weather w = this.next;
+                this.next = null;
+                return w;
+            }
+
+        };
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public TemperatureStats stats(Date from, Date to) {
+        TemperatureStats.Accumulator acc = new TemperatureStats.Accumulator();
+        for (Weather w : this.between(from, to)) {
+            acc.add(w.lowTemp(), w.highTemp());
+        }
+        return acc.toStats();
+    }
+
+    /**
+     * Reports the fingerprint of {@code this}. This implementation sums the
+     * fingerprints of every record, in O(n); implementations that keep the
+     * sum up to date as they change override it to take O(1).
+     *
+     * @return the fingerprint of {@code this}
+     * @ensures fingerprint = [sum of fingerprintOf(w) over the records w of
+     *          this]
+     */
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public long fingerprint() {
+        return this.scan().mapToLong(ChartSecondary::fingerprintOf).sum();
+    }
+
+    /**
+     * Reports an unchangeable chart equal to {@code this}. This
+     * implementation copies the records into a balanced persistent tree, in
+     * O(n) after sorting; {@code Chart6} overrides it to take a snapshot in
+     * O(1) without copying.
+     *
+     * @return a snapshot of {@code this}
+     * @aliases references in {@code this}
+     * @ensures snapshot = this and [snapshot cannot be changed]
+     */
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Chart snapshot() {
+        Sequence<Weather> duplicates = new Sequence1L<Weather>();
+        List<Weather> sorted = distinctByTime(this, duplicates);
+        assert duplicates.length() == 0 : "Violation of: this is a Chart";
+
+        return Chart6.frozen(sorted);
+    }
+
+    @Override
+    public final void writeTo(Appendable out, Format format)
+            throws IOException {
+        assert out != null : "Violation of: out is not null";
+        assert format != null : "Violation of: format is not null";
+
+        ChartWriter.write(this, format, out::append);
+    }
+
+    @Override
+    public final void writeTo(SimpleWriter out, Format format) {
+        assert out != null : "Violation of: out is not null";
+        assert format != null : "Violation of: format is not null";
+        assert out.isOutputOpen() : "Violation of: out.is_open";
+
+        try {
+            ChartWriter.write(this, format,
+                    chunk -> out.print(chunk.toString()));
+        } catch (IOException e) {
+            throw new AssertionError("a SimpleWriter cannot fail", e);
+        }
+    }
+
+    @Override
+    public final void writeTo(WritableByteChannel out, Format format)
+            throws IOException {
+        assert out != null : "Violation of: out is not null";
+        assert format != null : "Violation of: format is not null";
+
+        ChartWriter.ChannelSink sink = new ChartWriter.ChannelSink(out);
+        ChartWriter.write(this, format, sink);
+        sink.close();
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Spliterator<Weather> spliterator() {
+        return Spliterators.spliterator(this.iterator(), this.size(),
+                Spliterator.ORDERED | Spliterator.DISTINCT
+                        | Spliterator.NONNULL);
+    }
+
+    @Override
+    public final Stream<Weather> stream() {
+        return StreamSupport.stream(this.spliterator(), false);
+    }
+
+    @Override
+    public final Stream<Weather> parallelStream() {
+        return StreamSupport.stream(this.spliterator(), true);
+    }
+
+    /*
+     * Common methods (from Object) -------------------------------------------
+     */
+
+    @Override
+    public final boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (!(obj instanceof Chart)) {
+            return false;
+        }
+        Chart ct = (Chart) obj;
+        if (this.size() != ct.size()) {
+            return false;
+        }
+        if (this.fingerprint() != ct.fingerprint()) {
+            return false;
+        }
+        /*
+         * Look every record of ct up by time rather than walking both charts
+         * side by side, so the result does not depend on iteration order.
+         */
+        for (Weather x2 : ct) {
+            if (!this.hasTime(x2.time())) {
+                return false;
+            }
+            Weather x1 = this.floor(x2.time());
+            if (!x1.equals(x2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public final int hashCode() {
+        /*
+         * The fingerprint is the same for equal charts of any implementation,
+         * and most implementations keep it up to date as they change.
+         */
+        long f = this.fingerprint();
+        return (int) (f ^ (f >>> Integer.SIZE));
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        try {
+            this.writeTo(result, Format.TEXT);
+        } catch (IOException e) {
+            throw new AssertionError("a StringBuilder cannot fail", e);
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,402 @@
+package components.weather;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Localhost HTTP endpoint in front of a {@code Chart}, on the JDK's
+ * {@code HttpServer}. Feeders post batches of records, and clients look up
+ * single times and ranges:
+ *
+ * <pre>
+ * POST /records?format=csv|ndjson   body: lines as ChartLoader reads them
+ * GET  /records?from=T&amp;to=T         the records in the range, as CSV
+ * GET  /has?time=T                  true or false
+ * GET  /condition?time=T            the condition, or 404
+ * </pre>
+ *
+ * A time {@code T} is in any form {@code ChartLoader} accepts. A post answers
+ * {@code added N} and then one {@code line: reason} per line not loaded;
+ * without a {@code format} the body is NDJSON if its content type mentions
+ * JSON and CSV otherwise.
+ *
+ * <p>
+ * Open connections wait in the server's selector, not on threads, so tens of
+ * thousands of idle or slow feeders cost only their sockets. Requests run on
+ * a virtual thread each where the runtime has them (Java 21 and later) and
+ * on a small pool of platform threads otherwise. Bodies are parsed outside
+ * any lock; the chart itself is only touched while holding one lock, so any
+ * {@code Chart} will do. A range is copied out under the lock and formatted
+ * and sent after it is released, in chunks, so a slow client reading a large
+ * range holds up no one else.
+ *
+ * <p>
+ * The JDK's {@code HttpServer} closes all but 200 idle keep-alive
+ * connections, so a server expecting thousands of waiting feeders should be
+ * launched with, for example,
+ * {@code -Dsun.net.httpserver.maxIdleConnections=65536}; the property is
+ * read once, when the first server in the JVM starts.
+ */
+public final class ChartServer implements Closeable {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Connections the operating system may queue before they are accepted.
+     */
+    private static final int BACKLOG = 4096;
+
+    /**
+     * Largest body accepted, in bytes.
+     */
+    private static final int MAX_BODY = 16 << 20;
+
+    /**
+     * Platform threads per processor when there are no virtual threads.
+     */
+    private static final int THREADS_PER_CPU = 4;
+
+    /**
+     * HTTP status of a request answered.
+     */
+    private static final int OK = 200;
+
+    /**
+     * HTTP status of a malformed request.
+     */
+    private static final int BAD_REQUEST = 400;
+
+    /**
+     * HTTP status of a lookup of a time with no record.
+     */
+    private static final int NOT_FOUND = 404;
+
+    /**
+     * HTTP status of a request with a method the path does not accept.
+     */
+    private static final int BAD_METHOD = 405;
+
+    /**
+     * HTTP status of a post whose body is over {@code MAX_BODY}.
+     */
+    private static final int TOO_LARGE = 413;
+
+    /**
+     * The chart served.
+     */
+    private final Chart chart;
+
+    /**
+     * Lock held around every use of {@code chart}.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The server.
+     */
+    private final HttpServer server;
+
+    /**
+     * Runner of the requests.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Creates the executor requests run on: a virtual thread per request if
+     * {@code Executors.newVirtualThreadPerTaskExecutor} exists, and a fixed
+     * pool of daemon threads otherwise.
+     *
+     * @return the executor
+     */
+    private static ExecutorService newExecutor() {
+        ExecutorService result;
+        try {
+            result = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            result = Executors.newFixedThreadPool(
+                    THREADS_PER_CPU
+                            * Runtime.getRuntime().availableProcessors(),
+                    r -> {
+                        Thread t = new Thread(r, "chart-server");
+                        t.setDaemon(true);
+                        return t;
+                    });
+        }
+        return result;
+    }
+
+    /**
+     * Reports the parameters of the query of {@code exchange}.
+     *
+     * @param exchange
+     *            the exchange
+     * @return the value of each parameter, by name
+     */
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> result = new HashMap<String, String>();
+        String q = exchange.getRequestURI().getRawQuery();
+        if (q != null) {
+            for (String pair : q.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    result.put(
+                            URLDecoder.decode(pair.substring(0, eq),
+                                    StandardCharsets.UTF_8),
+                            URLDecoder.decode(pair.substring(eq + 1),
+                                    StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports the time in parameter {@code name} of {@code query}.
+     *
+     * @param query
+     *            the parameters
+     * @param name
+     *            the name of the parameter
+     * @return the time
+     * @throws IllegalArgumentException
+     *             if the parameter is missing or malformed
+     */
+    private static Date time(Map<String, String> query, String name) {
+        String text = query.get(name);
+        if (text == null) {
+            throw new IllegalArgumentException("missing " + name);
+        }
+        return new Date(ChartLoader.epochMillis(text.trim()));
+    }
+
+    /**
+     * Sends {@code body} as the plain-text response to {@code exchange}
+     * with status {@code status}, and ends the exchange.
+     *
+     * @param exchange
+     *            the exchange
+     * @param status
+     *            the status code
+     * @param body
+     *            the body
+     * @throws IOException
+     *             if the response cannot be sent
+     */
+    private static void send(HttpExchange exchange, int status,
+            CharSequence body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type",
+                "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Handles a post to {@code /records}.
+     *
+     * @param exchange
+     *            the exchange
+     * @throws IOException
+     *             if the exchange fails
+     */
+    private void ingest(HttpExchange exchange) throws IOException {
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readNBytes(MAX_BODY + 1);
+        }
+        if (body.length > MAX_BODY) {
+            send(exchange, TOO_LARGE, "body over " + MAX_BODY + " bytes\n");
+        } else {
+            String format = query(exchange).get("format");
+            if (format == null) {
+                String type = exchange.getRequestHeaders()
+                        .getFirst("Content-Type");
+                format = "csv";
+                if (type != null && type.toLowerCase(Locale.ROOT)
+                        .contains("json")) {
+                    format = "ndjson";
+                }
+            }
+            ChartLoader.Format f = ChartLoader.Format
+                    .valueOf(format.toUpperCase(Locale.ROOT));
+            ChartLoader.Batch batch = ChartLoader.parse(body, f);
+            StringBuilder errors = new StringBuilder();
+            long added;
+            synchronized (this.lock) {
+                added = ChartLoader.apply(batch, 0, this.chart,
+                        (line, text, message) -> errors.append(line)
+                                .append(": ").append(message).append('\n'));
+            }
+            send(exchange, OK, "added " + added + "\n" + errors);
+        }
+    }
+
+    /**
+     * Handles a get of {@code /records}.
+     *
+     * @param exchange
+     *            the exchange
+     * @throws IOException
+     *             if the exchange fails
+     */
+    private void range(HttpExchange exchange) throws IOException {
+        Map<String, String> q = query(exchange);
+        Date from = time(q, "from");
+        Date to = time(q, "to");
+        if (from.after(to)) {
+            throw new IllegalArgumentException("from is after to");
+        }
+        List<Weather> records = new ArrayList<Weather>();
+        synchronized (this.lock) {
+            for (Weather w : this.chart.between(from, to)) {
+                records.add(w);
+            }
+        }
+        exchange.getResponseHeaders().set("Content-Type",
+                "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(OK, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            ChartWriter.ChannelSink sink = new ChartWriter.ChannelSink(
+                    Channels.newChannel(out));
+            ChartWriter.write(records, Chart.Format.CSV, sink);
+            sink.close();
+        }
+    }
+
+    /**
+     * Runs {@code handler} for requests of method {@code method}, answering
+     * 405 to any other method and 400 to a malformed request.
+     *
+     * @param method
+     *            the method accepted
+     * @param handler
+     *            the handler
+     * @return the checked handler
+     */
+    private static HttpHandler only(String method, HttpHandler handler) {
+        return exchange -> {
+            try {
+                if (exchange.getRequestMethod().equals(method)) {
+                    handler.handle(exchange);
+                } else {
+                    send(exchange, BAD_METHOD, method + " only\n");
+                }
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                send(exchange, BAD_REQUEST, e.getMessage() + "\n");
+            } finally {
+                exchange.close();
+            }
+        };
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from the chart to serve and the port to listen on, on the
+     * loopback address only. The server is running when this returns. How
+     * many idle connections it keeps open is set by the system property
+     * {@code sun.net.httpserver.maxIdleConnections}, which is best given on
+     * the command line.
+     *
+     * @param chart
+     *            the chart to serve
+     * @param port
+     *            the port, or 0 for any free port
+     * @throws IOException
+     *             if the port cannot be bound
+     * @aliases reference {@code chart}
+     * @requires 0 <= port <= 65535
+     */
+    public ChartServer(Chart chart, int port) throws IOException {
+        assert chart != null : "Violation of: chart is not null";
+        assert 0 <= port && port <= 65535 : "Violation of: 0 <= port <= 65535";
+
+        this.chart = chart;
+        this.server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                BACKLOG);
+        this.executor = newExecutor();
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/records", exchange -> {
+            if (exchange.getRequestMethod().equals("POST")) {
+                only("POST", this::ingest).handle(exchange);
+            } else {
+                only("GET", this::range).handle(exchange);
+            }
+        });
+        this.server.createContext("/has", only("GET", exchange -> {
+            Date t = time(query(exchange), "time");
+            boolean has;
+            synchronized (this.lock) {
+                has = this.chart.hasTime(t);
+            }
+            send(exchange, OK, has + "\n");
+        }));
+        this.server.createContext("/condition", only("GET", exchange -> {
+            Date t = time(query(exchange), "time");
+            Condition c = null;
+            synchronized (this.lock) {
+                if (this.chart.hasTime(t)) {
+                    c = this.chart.condition(t);
+                }
+            }
+            if (c == null) {
+                send(exchange, NOT_FOUND, "no record at " + t.getTime() + "\n");
+            } else {
+                send(exchange, OK, c.name() + "\n");
+            }
+        }));
+        this.server.start();
+    }
+
+    /*
+     * Server methods ---------------------------------------------------------
+     */
+
+    /**
+     * Reports the port the server listens on.
+     *
+     * @return the port
+     */
+    public int port() {
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting connections, gives the requests in progress up to a
+     * second to finish, and stops the server.
+     */
+    @Override
+    public void close() {
+        this.server.stop(1);
+        this.executor.shutdown();
+    }
+
+}
@@ -0,0 +1,200 @@
+package components.weather;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Formats the records of a chart in one of the {@code Chart.Format}s and
+ * hands the text to a sink in chunks of about {@code CHUNK} characters, all
+ * built in one reused buffer, so writing a chart takes the same memory
+ * however many records it has.
+ */
+final class ChartWriter {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Characters collected before they are handed to the sink.
+     */
+    static final int CHUNK = 8192;
+
+    /**
+     * Receiver of the formatted text.
+     */
+    interface Sink {
+
+        /**
+         * Writes {@code chunk}, which is only valid until this returns.
+         *
+         * @param chunk
+         *            the next piece of the text
+         * @throws IOException
+         *             if the text cannot be written
+         */
+        void write(CharSequence chunk) throws IOException;
+
+    }
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ChartWriter() {
+    }
+
+    /**
+     * Appends {@code w} to {@code buffer} in {@code format}.
+     *
+     * @param buffer
+     *            the buffer
+     * @param w
+     *            the record
+     * @param format
+     *            the format
+     * @param first
+     *            whether w is the first record written
+     * @updates buffer
+     */
+    private static void append(StringBuilder buffer, Weather w,
+            Chart.Format format, boolean first) {
+        switch (format) {
+            case CSV:
+                buffer.append(WeatherSecondary.epochMillis(w)).append(',')
+                        .append(w.condition().name()).append(',')
+                        .append(w.lowTemp()).append(',')
+                        .append(w.highTemp()).append('\n');
+                break;
+            default:
+                if (!first) {
+                    buffer.append(", ");
+                }
+                buffer.append('<').append(w.time()).append(", ")
+                        .append(w.condition()).append(", ")
+                        .append(w.lowTemp()).append(", ")
+                        .append(w.highTemp()).append('>');
+                break;
+        }
+    }
+
+    /**
+     * Writes {@code records} in {@code format} to {@code sink}.
+     *
+     * @param records
+     *            the records to write
+     * @param format
+     *            the format
+     * @param sink
+     *            the receiver of the text
+     * @throws IOException
+     *             if the sink cannot write
+     */
+    static void write(Iterable<Weather> records, Chart.Format format,
+            Sink sink) throws IOException {
+        assert records != null : "Violation of: records is not null";
+        assert format != null : "Violation of: format is not null";
+        assert sink != null : "Violation of: sink is not null";
+
+        StringBuilder buffer = new StringBuilder(2 * CHUNK);
+        if (format == Chart.Format.CSV) {
+            buffer.append("time,condition,low,high\n");
+        } else {
+            buffer.append('(');
+        }
+        boolean first = true;
+        for (Weather w : records) {
+            append(buffer, w, format, first);
+            first = false;
+            if (buffer.length() >= CHUNK) {
+                sink.write(buffer);
+                buffer.setLength(0);
+            }
+        }
+        if (format == Chart.Format.TEXT) {
+            buffer.append(')');
+        }
+        sink.write(buffer);
+    }
+
+    /**
+     * Sink that encodes the text as UTF-8 through one reused byte buffer and
+     * writes it to a channel. {@code close} must be called after the last
+     * chunk to write what is still buffered; it does not close the channel.
+     */
+    static final class ChannelSink implements Sink {
+
+        /**
+         * The channel written to.
+         */
+        private final WritableByteChannel channel;
+
+        /**
+         * Encoder of the text.
+         */
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8
+                .newEncoder();
+
+        /**
+         * Bytes waiting to be written.
+         */
+        private final ByteBuffer bytes = ByteBuffer.allocate(4 * CHUNK);
+
+        /**
+         * Constructor from the channel to write to.
+         *
+         * @param channel
+         *            the channel
+         */
+        ChannelSink(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Writes every byte waiting in {@code bytes} to the channel.
+         *
+         * @throws IOException
+         *             if the channel cannot be written
+         */
+        private void drain() throws IOException {
+            this.bytes.flip();
+            while (this.bytes.hasRemaining()) {
+                this.channel.write(this.bytes);
+            }
+            this.bytes.clear();
+        }
+
+        @Override
+        public void write(CharSequence chunk) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(chunk);
+            CoderResult r = this.encoder.encode(chars, this.bytes, false);
+            while (r.isOverflow()) {
+                this.drain();
+                r = this.encoder.encode(chars, this.bytes, false);
+            }
+        }
+
+        /**
+         * Writes whatever is still buffered to the channel.
+         *
+         * @throws IOException
+         *             if the channel cannot be written
+         */
+        void close() throws IOException {
+            CharBuffer none = CharBuffer.allocate(0);
+            while (this.encoder.encode(none, this.bytes, true).isOverflow()) {
+                this.drain();
+            }
+            while (this.encoder.flush(this.bytes).isOverflow()) {
+                this.drain();
+            }
+            this.drain();
+        }
+
+    }
+
+}
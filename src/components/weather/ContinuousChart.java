@@ -0,0 +1,219 @@
+package components.weather;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import components.sequence.Sequence;
+
+/**
+ * {@code Chart} decorator that runs continuous queries: each
+ * {@code RollingWindow} registered with {@code window}, such as the last 24
+ * hours or the last 7 days, keeps the temperature summary and condition
+ * counts of the records in its span up to date as records are added, and
+ * tells its listeners after each change, so a live display never scans the
+ * chart. A record later than every other costs amortized O(1) per window;
+ * see {@code RollingWindow} for the rarer changes. Only changes made through
+ * the decorator are seen; every other method is passed straight to the
+ * backing chart.
+ *
+ * @convention <pre>
+ * [every window in $this.windows is that of $this.backing]
+ * </pre>
+ * @correspondence this = $this.backing
+ */
+public class ContinuousChart extends ChartDecorator {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * The windows registered.
+     */
+    private final List<RollingWindow> windows = new ArrayList<RollingWindow>();
+
+    /**
+     * Refills {@code window} from the records of the backing chart in its
+     * span.
+     *
+     * @param window
+     *            the window
+     */
+    private void rebuild(RollingWindow window) {
+        window.reset();
+        if (this.backing().size() > 0) {
+            long end = WeatherSecondary.epochMillis(this.backing().last());
+            long start = end - window.lengthMillis() + 1;
+            for (Weather w : this.backing().between(new Date(start),
+                    new Date(end))) {
+                window.append(w, WeatherSecondary.epochMillis(w));
+            }
+        }
+    }
+
+    /**
+     * Reports whether time {@code t} is in the span of {@code window}.
+     *
+     * @param window
+     *            the window
+     * @param t
+     *            the time in epoch milliseconds
+     * @return whether t is in (end - length, end]
+     */
+    private static boolean spans(RollingWindow window, long t) {
+        long end = window.endMillis();
+        return t <= end && t > end - window.lengthMillis();
+    }
+
+    /**
+     * Brings every window up to date with the records of {@code added}, all
+     * of them just added to the backing chart, and tells the listeners of
+     * the windows that changed.
+     *
+     * @param added
+     *            the records added, in any order
+     */
+    private void added(List<Weather> added) {
+        for (RollingWindow window : this.windows) {
+            boolean changed = false;
+            boolean stale = false;
+            /*
+             * Once a record lands inside the span out of order, the window is
+             * rebuilt from the chart, which already holds the rest of added
+             */
+            Iterator<Weather> it = added.iterator();
+            while (!stale && it.hasNext()) {
+                Weather w = it.next();
+                long t = WeatherSecondary.epochMillis(w);
+                if (window.endMillis() == Long.MIN_VALUE
+                        || t > window.endMillis()) {
+                    window.append(w, t);
+                    changed = true;
+                } else if (spans(window, t)) {
+                    stale = true;
+                    changed = true;
+                }
+            }
+            if (stale) {
+                this.rebuild(window);
+            }
+            if (changed) {
+                window.fire();
+            }
+        }
+    }
+
+    /**
+     * Brings every window up to date with the removal of {@code w} from the
+     * backing chart, and tells the listeners of the windows that changed.
+     *
+     * @param w
+     *            the record removed
+     */
+    private void removed(Weather w) {
+        long t = WeatherSecondary.epochMillis(w);
+        for (RollingWindow window : this.windows) {
+            if (spans(window, t)) {
+                this.rebuild(window);
+                window.fire();
+            }
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from the chart to watch, with no windows.
+     *
+     * @param backing
+     *            the chart to watch
+     * @ensures this = backing
+     */
+    public ContinuousChart(Chart backing) {
+        super(backing);
+    }
+
+    /*
+     * Continuous query methods -----------------------------------------------
+     */
+
+    /**
+     * Registers a window of length {@code length}, filled now from the
+     * records of {@code this} in its span, and kept up to date from then on.
+     *
+     * @param length
+     *            the length of the window, such as 24 hours
+     * @return the window
+     * @requires length > 0
+     */
+    public final RollingWindow window(Duration length) {
+        RollingWindow result = new RollingWindow(length);
+        this.rebuild(result);
+        this.windows.add(result);
+        return result;
+    }
+
+    /**
+     * Stops keeping {@code window} up to date.
+     *
+     * @param window
+     *            the window
+     */
+    public final void removeWindow(RollingWindow window) {
+        this.windows.remove(window);
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(Weather w) {
+        assert w != null : "Violation of: w is not null";
+
+        this.backing().add(w);
+        this.added(Collections.singletonList(w));
+    }
+
+    @Override
+    public final Weather remove(Date t) {
+        Weather result = this.backing().remove(t);
+        this.removed(result);
+        return result;
+    }
+
+    @Override
+    public final Weather removeAny() {
+        Weather result = this.backing().removeAny();
+        this.removed(result);
+        return result;
+    }
+
+    /*
+     * Bulk methods -----------------------------------------------------------
+     */
+
+    @Override
+    public final Sequence<Weather> addAll(Iterable<Weather> ws) {
+        assert ws != null : "Violation of: ws is not null";
+
+        /*
+         * ws may only be iterable once, as it is when it comes from a stream,
+         * and it is needed twice.
+         */
+        List<Weather> batch = new ArrayList<Weather>();
+        for (Weather w : ws) {
+            batch.add(w);
+        }
+        Sequence<Weather> rejected = this.backing().addAll(batch);
+        this.added(added(batch, rejected));
+        return rejected;
+    }
+
+}
@@ -0,0 +1,119 @@
+package components.weather;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Spliterator over the records at positions [{@code index}, {@code fence})
+ * of a chart whose records can be read by position, such as a columnar or
+ * file-backed one. It splits exactly in half, so every split knows its size
+ * and a parallel stream gets balanced work however deep it splits.
+ *
+ * @convention index <= fence
+ */
+final class IndexedSpliterator implements Spliterator<Weather> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Characteristics of every {@code IndexedSpliterator}.
+     */
+    private static final int CHARACTERISTICS = Spliterator.ORDERED
+            | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.SIZED
+            | Spliterator.SUBSIZED;
+
+    /**
+     * Reads the record at a position.
+     */
+    private final IntFunction<Weather> records;
+
+    /**
+     * Position of the next record to report.
+     */
+    private int index;
+
+    /**
+     * Position just past the last record to report.
+     */
+    private final int fence;
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor over positions [{@code index}, {@code fence}).
+     *
+     * @param records
+     *            reads the record at a position
+     * @param index
+     *            the first position, inclusive
+     * @param fence
+     *            the last position, exclusive
+     * @requires 0 <= index <= fence and [records reads every position in
+     *           [index, fence) in increasing order of time]
+     */
+    IndexedSpliterator(IntFunction<Weather> records, int index, int fence) {
+        assert records != null : "Violation of: records is not null";
+        assert 0 <= index : "Violation of: 0 <= index";
+        assert index <= fence : "Violation of: index <= fence";
+
+        this.records = records;
+        this.index = index;
+        this.fence = fence;
+    }
+
+    /*
+     * Public methods ---------------------------------------------------------
+     */
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Weather> action) {
+        assert action != null : "Violation of: action is not null";
+
+        boolean result = this.index < this.fence;
+        if (result) {
+            Weather w = this.records.apply(this.index);
+            this.index++;
+            action.accept(w);
+        }
+        return result;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Weather> action) {
+        assert action != null : "Violation of: action is not null";
+
+        int i = this.index;
+        this.index = this.fence;
+        while (i < this.fence) {
+            action.accept(this.records.apply(i));
+            i++;
+        }
+    }
+
+    @Override
+    public Spliterator<Weather> trySplit() {
+        int mid = (this.index + this.fence) >>> 1;
+        IndexedSpliterator result = null;
+        if (this.index < mid) {
+            result = new IndexedSpliterator(this.records, this.index, mid);
+            this.index = mid;
+        }
+        return result;
+    }
+
+    @Override
+    public long estimateSize() {
+        return this.fence - this.index;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+
+}
@@ -0,0 +1,423 @@
+package components.weather;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import components.sequence.Sequence;
+
+/**
+ * {@code Chart} decorator that times every operation on the backing chart
+ * and reports it, with the chart's size afterwards, to each registered
+ * {@code Listener} and as a {@code ChartOperationEvent} to JDK Flight
+ * Recorder while a recording has that event enabled. {@code ChartMetrics} is
+ * a listener that keeps counts, latency histograms and size gauges.
+ *
+ * <p>
+ * Instrumentation is opt-in: a chart that is not decorated pays nothing,
+ * and a decorated one pays one volatile read per operation while
+ * {@code setEnabled(false)}. An iteration, through {@code iterator},
+ * {@code between} or {@code withCondition}, is reported once, when it runs
+ * out, with the time spent in its {@code hasNext} and {@code next} calls.
+ * Operations not listed in {@code Operation} are passed straight through.
+ *
+ * @correspondence this = $this.backing
+ */
+public final class InstrumentedChart extends ChartDecorator {
+
+    /**
+     * Operations reported.
+     */
+    public enum Operation {
+
+        /**
+         * {@code add}.
+         */
+        ADD,
+
+        /**
+         * {@code addAll}.
+         */
+        ADD_ALL,
+
+        /**
+         * {@code remove}.
+         */
+        REMOVE,
+
+        /**
+         * {@code removeAny}.
+         */
+        REMOVE_ANY,
+
+        /**
+         * {@code hasTime}.
+         */
+        HAS_TIME,
+
+        /**
+         * {@code condition}.
+         */
+        CONDITION,
+
+        /**
+         * {@code count}, with or without a range: the {@code Chart}
+         * counterpart of {@code setOfCondition}.
+         */
+        COUNT,
+
+        /**
+         * A whole iteration of {@code between}.
+         */
+        BETWEEN,
+
+        /**
+         * A whole iteration of {@code withCondition}.
+         */
+        WITH_CONDITION,
+
+        /**
+         * A whole iteration of {@code iterator}.
+         */
+        ITERATE
+
+    }
+
+    /**
+     * Receiver of the operations on an {@code InstrumentedChart}. It is
+     * called on the thread that made the operation, so it should be quick
+     * and safe for concurrent use.
+     */
+    public interface Listener {
+
+        /**
+         * Reports one operation.
+         *
+         * @param op
+         *            the operation
+         * @param nanos
+         *            the time it took, in nanoseconds
+         * @param size
+         *            the size of the chart afterwards
+         */
+        void operation(Operation op, long nanos, int size);
+
+    }
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Start time of an operation that is not being timed.
+     */
+    private static final long OFF = Long.MIN_VALUE;
+
+    /**
+     * The listeners.
+     */
+    private final List<Listener> listeners =
+            new CopyOnWriteArrayList<Listener>();
+
+    /**
+     * Name of the class of the backing chart, for events.
+     */
+    private final String name;
+
+    /**
+     * Whether operations are timed and reported.
+     */
+    private volatile boolean enabled = true;
+
+    /**
+     * Starts timing an operation.
+     *
+     * @return the start time, or OFF if instrumentation is disabled
+     */
+    private long start() {
+        long result = OFF;
+        if (this.enabled) {
+            result = System.nanoTime();
+        }
+        return result;
+    }
+
+    /**
+     * Finishes timing the operation {@code op} started at {@code start}.
+     *
+     * @param op
+     *            the operation
+     * @param start
+     *            the value {@code start} returned
+     */
+    private void finish(Operation op, long start) {
+        if (start != OFF) {
+            this.report(op, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Reports {@code op} to the listeners and to Flight Recorder.
+     *
+     * @param op
+     *            the operation
+     * @param nanos
+     *            the time it took, in nanoseconds
+     */
+    private void report(Operation op, long nanos) {
+        int size = this.backing().size();
+        for (Listener l : this.listeners) {
+            l.operation(op, nanos, size);
+        }
+        ChartOperationEvent event = new ChartOperationEvent();
+        if (event.isEnabled()) {
+            event.operation = op.name();
+            event.chart = this.name;
+            event.latency = nanos;
+            event.size = size;
+            event.commit();
+        }
+    }
+
+    /**
+     * Iterator that times the calls made on it and reports them once it
+     * runs out.
+     */
+    private final class Timed implements Iterator<Weather> {
+
+        /**
+         * The operation reported.
+         */
+        private final Operation op;
+
+        /**
+         * The iterator timed.
+         */
+        private final Iterator<Weather> it;
+
+        /**
+         * Time spent in calls so far, in nanoseconds.
+         */
+        private long nanos;
+
+        /**
+         * Whether the iteration has been reported.
+         */
+        private boolean reported;
+
+        /**
+         * Constructor from the operation and the iterator to time.
+         *
+         * @param op
+         *            the operation reported
+         * @param it
+         *            the iterator timed
+         */
+        Timed(Operation op, Iterator<Weather> it) {
+            this.op = op;
+            this.it = it;
+        }
+
+        @Override
+        public boolean hasNext() {
+            long s = System.nanoTime();
+            boolean result = this.it.hasNext();
+            this.nanos += System.nanoTime() - s;
+            if (!result && !this.reported) {
+                this.reported = true;
+                InstrumentedChart.this.report(this.op, this.nanos);
+            }
+            return result;
+        }
+
+        @Override
+        public Weather next() {
+            long s = System.nanoTime();
+            Weather result = this.it.next();
+            this.nanos += System.nanoTime() - s;
+            return result;
+        }
+
+    }
+
+    /**
+     * Wraps {@code records} so that each iteration of it is reported as
+     * {@code op}, if instrumentation is enabled now.
+     *
+     * @param op
+     *            the operation reported
+     * @param records
+     *            the records
+     * @return records, timed if instrumentation is enabled
+     */
+    private Iterable<Weather> timed(Operation op, Iterable<Weather> records) {
+        Iterable<Weather> result = records;
+        if (this.enabled) {
+            result = () -> new Timed(op, records.iterator());
+        }
+        return result;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from the chart to instrument. Instrumentation starts
+     * enabled, with no listeners.
+     *
+     * @param backing
+     *            the chart to instrument
+     * @ensures this = backing
+     */
+    public InstrumentedChart(Chart backing) {
+        super(backing);
+        this.name = backing.getClass().getName();
+    }
+
+    /*
+     * Instrumentation methods ------------------------------------------------
+     */
+
+    /**
+     * Registers {@code listener} to be told of every operation.
+     *
+     * @param listener
+     *            the listener
+     */
+    public void addListener(Listener listener) {
+        assert listener != null : "Violation of: listener is not null";
+
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Stops telling {@code listener} of operations.
+     *
+     * @param listener
+     *            the listener
+     */
+    public void removeListener(Listener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Turns timing and reporting on or off.
+     *
+     * @param on
+     *            whether operations are to be timed and reported
+     */
+    public void setEnabled(boolean on) {
+        this.enabled = on;
+    }
+
+    /**
+     * Reports whether operations are timed and reported.
+     *
+     * @return whether instrumentation is enabled
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public void add(Weather w) {
+        long start = this.start();
+        this.backing().add(w);
+        this.finish(Operation.ADD, start);
+    }
+
+    @Override
+    public Weather remove(Date t) {
+        long start = this.start();
+        Weather result = this.backing().remove(t);
+        this.finish(Operation.REMOVE, start);
+        return result;
+    }
+
+    @Override
+    public Weather removeAny() {
+        long start = this.start();
+        Weather result = this.backing().removeAny();
+        this.finish(Operation.REMOVE_ANY, start);
+        return result;
+    }
+
+    @Override
+    public Condition condition(Date t) {
+        long start = this.start();
+        Condition result = this.backing().condition(t);
+        this.finish(Operation.CONDITION, start);
+        return result;
+    }
+
+    @Override
+    public boolean hasTime(Date t) {
+        long start = this.start();
+        boolean result = this.backing().hasTime(t);
+        this.finish(Operation.HAS_TIME, start);
+        return result;
+    }
+
+    @Override
+    public Iterator<Weather> iterator() {
+        Iterator<Weather> result = this.backing().iterator();
+        if (this.enabled) {
+            result = new Timed(Operation.ITERATE, result);
+        }
+        return result;
+    }
+
+    /*
+     * Bulk methods -----------------------------------------------------------
+     */
+
+    @Override
+    public Sequence<Weather> addAll(Iterable<Weather> ws) {
+        long start = this.start();
+        Sequence<Weather> result = this.backing().addAll(ws);
+        this.finish(Operation.ADD_ALL, start);
+        return result;
+    }
+
+    /*
+     * Range methods ----------------------------------------------------------
+     */
+
+    @Override
+    public Iterable<Weather> between(Date from, Date to) {
+        return this.timed(Operation.BETWEEN, this.backing().between(from, to));
+    }
+
+    /*
+     * Condition and aggregate methods ----------------------------------------
+     */
+
+    @Override
+    public int count(Condition c) {
+        long start = this.start();
+        int result = this.backing().count(c);
+        this.finish(Operation.COUNT, start);
+        return result;
+    }
+
+    @Override
+    public int count(Condition c, Date from, Date to) {
+        long start = this.start();
+        int result = this.backing().count(c, from, to);
+        this.finish(Operation.COUNT, start);
+        return result;
+    }
+
+    @Override
+    public Iterable<Weather> withCondition(Condition c, Date from, Date to) {
+        return this.timed(Operation.WITH_CONDITION,
+                this.backing().withCondition(c, from, to));
+    }
+
+}
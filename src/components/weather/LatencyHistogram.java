@@ -0,0 +1,210 @@
+package components.weather;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non-negative values, typically latencies in nanoseconds, in
+ * log-linear buckets as HdrHistogram keeps them: values below
+ * {@code 2^(SUB + 1)} have a bucket each, and each power of two above that
+ * is split into {@code 2^SUB} buckets of equal width, so every value is kept
+ * to within about 3% whatever its size. Recording is a few shifts and one
+ * atomic increment, and is safe from many threads at once.
+ *
+ * @convention <pre>
+ * [$this.buckets[i] = number of values recorded whose bucket is i] and
+ * $this.count = [sum of $this.buckets] and
+ * $this.sum = [sum of the values recorded] and
+ * $this.max = [largest value recorded, or 0 if there is none]
+ * </pre>
+ * @correspondence this = [multiset of the values recorded]
+ */
+public final class LatencyHistogram {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Log of the number of buckets each power of two is split into.
+     */
+    private static final int SUB = 5;
+
+    /**
+     * Number of buckets: enough for any non-negative {@code long}.
+     */
+    private static final int BUCKETS = (Long.SIZE - SUB) << SUB;
+
+    /**
+     * Number of values recorded in each bucket.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Number of values recorded.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Sum of the values recorded.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Largest value recorded.
+     */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Reports the bucket of {@code value}.
+     *
+     * @param value
+     *            the value
+     * @return the index of its bucket
+     * @requires value >= 0
+     */
+    private static int bucketOf(long value) {
+        int msb = Long.SIZE - 1 - Long.numberOfLeadingZeros(value | 1);
+        int shift = Math.max(0, msb - SUB);
+        return (shift << SUB) + (int) (value >>> shift);
+    }
+
+    /**
+     * Reports the largest value in bucket {@code i}.
+     *
+     * @param i
+     *            the index of a bucket
+     * @return the largest value in it
+     */
+    private static long highestIn(int i) {
+        long result = i;
+        if (i >= 2 << SUB) {
+            int shift = (i >>> SUB) - 1;
+            result = ((long) (i - (shift << SUB)) << shift)
+                    + (1L << shift) - 1;
+        }
+        return result;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public LatencyHistogram() {
+    }
+
+    /*
+     * Histogram methods ------------------------------------------------------
+     */
+
+    /**
+     * Records {@code value}; a negative value is recorded as 0.
+     *
+     * @param value
+     *            the value to record
+     * @updates this
+     * @ensures this = #this union {max(value, 0)}
+     */
+    public void record(long value) {
+        long v = Math.max(value, 0);
+        this.buckets.incrementAndGet(bucketOf(v));
+        this.count.increment();
+        this.sum.add(v);
+        this.max.accumulate(v);
+    }
+
+    /**
+     * Reports the number of values recorded.
+     *
+     * @return |this|
+     */
+    public long count() {
+        return this.count.sum();
+    }
+
+    /**
+     * Reports the mean of the values recorded.
+     *
+     * @return the mean, or NaN if nothing was recorded
+     */
+    public double mean() {
+        long n = this.count.sum();
+        double result = Double.NaN;
+        if (n > 0) {
+            result = (double) this.sum.sum() / n;
+        }
+        return result;
+    }
+
+    /**
+     * Reports the largest value recorded.
+     *
+     * @return the largest value, or 0 if nothing was recorded
+     */
+    public long max() {
+        return this.max.get();
+    }
+
+    /**
+     * Reports the value at or below which {@code percent} percent of the
+     * values recorded fall, to the precision of its bucket.
+     *
+     * @param percent
+     *            the percentile, from 0 to 100
+     * @return the value at that percentile, or 0 if nothing was recorded
+     * @requires 0 <= percent <= 100
+     */
+    public long percentile(double percent) {
+        assert 0 <= percent
+                && percent <= 100 : "Violation of: 0 <= percent <= 100";
+
+        final double hundred = 100.0;
+        long n = this.count.sum();
+        long rank = Math.max(1, (long) Math.ceil(percent / hundred * n));
+        long result = 0;
+        long seen = 0;
+        int i = 0;
+        while (seen < rank && i < BUCKETS) {
+            seen += this.buckets.get(i);
+            if (seen >= rank) {
+                result = Math.min(highestIn(i), this.max.get());
+            }
+            i++;
+        }
+        return result;
+    }
+
+    /**
+     * Forgets every value recorded. Values recorded by other threads while
+     * it runs may be kept in part.
+     *
+     * @clears this
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.buckets.set(i, 0);
+        }
+        this.count.reset();
+        this.sum.reset();
+        this.max.reset();
+    }
+
+    /**
+     * Reports the count, mean, median, 99th percentile and maximum.
+     *
+     * @return a one-line summary of this
+     */
+    @Override
+    public String toString() {
+        final double median = 50;
+        final double tail = 99;
+        return "count=" + this.count() + " mean=" + Math.round(this.mean())
+                + " p50=" + this.percentile(median) + " p99="
+                + this.percentile(tail) + " max=" + this.max();
+    }
+
+}
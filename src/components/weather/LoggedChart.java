@@ -0,0 +1,357 @@
+package components.weather;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.List;
+
+import components.sequence.Sequence;
+import components.sequence.Sequence1L;
+
+/**
+ * {@code Chart} decorator that makes every change durable: each change is
+ * appended to a write-ahead log in a directory before it is applied to the
+ * backing chart, so a change the log could not take is not made, and
+ * {@code checkpoint} writes the whole chart to a snapshot there and empties
+ * the log. Opening a directory loads the last snapshot into the backing chart
+ * and replays the log over it, so the chart comes back as it was after the
+ * last change the log kept.
+ *
+ * <p>
+ * How soon a change is kept is chosen by a {@code Durability}. Under
+ * {@code SYNCED} a change returns only once it is on the storage device, but
+ * the log commits in groups: while one thread forces the log, the changes of
+ * every other thread collect behind it and go down together in the next
+ * force. A single thread adding one record at a time is bound by the device,
+ * at one force per change; several threads, or {@code addAll} batches, which
+ * are forced once per batch, keep tens of thousands of changes per second
+ * durable.
+ *
+ * <p>
+ * The directory holds {@code snapshot.chart}, a {@code Chart4} file, and
+ * {@code wal.log}, a {@code ChartLog}. Only the decorator should change the
+ * backing chart once it is decorated. Changes are serialized, and reads are
+ * as safe for concurrent use as the backing chart is. I/O failures are
+ * reported as {@code UncheckedIOException}.
+ *
+ * @correspondence this = $this.backing
+ */
+public final class LoggedChart extends ChartDecorator implements Closeable {
+
+    /**
+     * How soon a change is kept.
+     */
+    public enum Durability {
+
+        /**
+         * A change is written when the log buffer fills, at a checkpoint, or
+         * at {@code close}; a crash of the process can lose the changes
+         * since.
+         */
+        BUFFERED,
+
+        /**
+         * A change is written to the operating system before it returns; it
+         * survives a crash of the process but not of the machine.
+         */
+        WRITTEN,
+
+        /**
+         * A change is forced to the storage device before it returns, in a
+         * group commit with any others made meanwhile.
+         */
+        SYNCED
+
+    }
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Name of the snapshot file in the directory.
+     */
+    private static final String SNAPSHOT = "snapshot.chart";
+
+    /**
+     * Name of the snapshot file while it is being written.
+     */
+    private static final String TEMPORARY = "snapshot.tmp";
+
+    /**
+     * Name of the log file in the directory.
+     */
+    private static final String LOG = "wal.log";
+
+    /**
+     * The directory of the snapshot and the log.
+     */
+    private final Path directory;
+
+    /**
+     * How soon a change is kept.
+     */
+    private final Durability durability;
+
+    /**
+     * The log of changes since the last snapshot.
+     */
+    private final ChartLog log;
+
+    /**
+     * Waits until the first {@code count} records of the log are kept as
+     * {@code durability} asks.
+     *
+     * @param count
+     *            the number of records to wait for
+     */
+    private void commit(long count) {
+        try {
+            if (this.durability != Durability.BUFFERED) {
+                this.log.await(count,
+                        this.durability == Durability.SYNCED);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Forces the entries of {@code directory}, such as a file just moved into
+     * it, to the storage device.
+     *
+     * @param directory
+     *            the directory
+     * @throws IOException
+     *             if the directory cannot be forced
+     */
+    private static void force(Path directory) throws IOException {
+        try (FileChannel dir = FileChannel.open(directory,
+                StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (AccessDeniedException e) {
+            /*
+             * Windows cannot open a directory; its file systems keep a move
+             * in their journal instead
+             */
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from a directory, the chart to keep the records in, and
+     * the durability of changes. The directory is created if it does not
+     * exist; otherwise its snapshot is added to {@code chart} and its log
+     * replayed over it.
+     *
+     * @param directory
+     *            the directory of the snapshot and the log
+     * @param chart
+     *            the chart to keep the records in
+     * @param durability
+     *            how soon a change is kept
+     * @throws IOException
+     *             if the directory cannot be read or holds files of the
+     *             wrong kind
+     * @updates chart
+     * @requires chart is empty
+     * @ensures this = [the records kept in directory]
+     */
+    public LoggedChart(Path directory, Chart chart, Durability durability)
+            throws IOException {
+        super(chart);
+        assert directory != null : "Violation of: directory is not null";
+        assert durability != null : "Violation of: durability is not null";
+        assert chart.size() == 0 : "Violation of: chart is empty";
+
+        this.directory = directory;
+        this.durability = durability;
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(TEMPORARY));
+        Path snapshot = directory.resolve(SNAPSHOT);
+        if (Files.exists(snapshot)) {
+            try (Chart4 stored = new Chart4(snapshot)) {
+                chart.addAll(stored);
+            }
+        }
+        this.log = new ChartLog(directory.resolve(LOG));
+        try {
+            this.log.replay(chart);
+        } catch (IOException e) {
+            this.log.close();
+            throw e;
+        }
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public void add(Weather w) {
+        assert w != null : "Violation of: w is not null";
+
+        long count;
+        synchronized (this) {
+            try {
+                count = this.log.appendAdd(w);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.backing().add(w);
+        }
+        this.commit(count);
+    }
+
+    @Override
+    public Weather remove(Date t) {
+        assert t != null : "Violation of: t is not null";
+
+        Weather result;
+        long count;
+        synchronized (this) {
+            try {
+                count = this.log.appendRemove(t.getTime());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            result = this.backing().remove(t);
+        }
+        this.commit(count);
+        return result;
+    }
+
+    @Override
+    public Weather removeAny() {
+        Weather result;
+        long count;
+        synchronized (this) {
+            /*
+             * The record to remove is chosen first, so its removal can be
+             * logged before it is made
+             */
+            Weather any = this.backing().iterator().next();
+            try {
+                count = this.log
+                        .appendRemove(WeatherSecondary.epochMillis(any));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            result = this.backing().remove(any.time());
+        }
+        this.commit(count);
+        return result;
+    }
+
+    /*
+     * Bulk methods -----------------------------------------------------------
+     */
+
+    /**
+     * Adds every record of {@code ws} whose time is not yet in {@code this},
+     * as {@code Chart.addAll} does, and commits them all at once.
+     *
+     * @param ws
+     *            the records to add
+     * @return the records of {@code ws} that were not added
+     * @updates this
+     * @aliases references in {@code ws}
+     * @ensures <pre>
+     * [this = #this union {w in ws | w.time is not in DOMAIN(#this) and
+     *   w is the first record of ws with time w.time}] and
+     * [addAll = the other records of ws]
+     * </pre>
+     */
+    @Override
+    public Sequence<Weather> addAll(Iterable<Weather> ws) {
+        assert ws != null : "Violation of: ws is not null";
+
+        Sequence<Weather> rejected = new Sequence1L<Weather>();
+        long count = 0;
+        synchronized (this) {
+            /*
+             * Only the records added are logged, so those already present
+             * are set aside here rather than by the backing chart.
+             */
+            List<Weather> batch = distinctByTime(ws, rejected);
+            int kept = 0;
+            for (Weather w : batch) {
+                if (this.backing().hasTime(w.time())) {
+                    rejected.add(rejected.length(), w);
+                } else {
+                    batch.set(kept, w);
+                    kept++;
+                }
+            }
+            batch.subList(kept, batch.size()).clear();
+            try {
+                for (Weather w : batch) {
+                    count = this.log.appendAdd(w);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.backing().addAll(batch);
+        }
+        if (count > 0) {
+            this.commit(count);
+        }
+        return rejected;
+    }
+
+    /*
+     * Log methods ------------------------------------------------------------
+     */
+
+    /**
+     * Writes every record of {@code this} to a new snapshot, forced to the
+     * storage device, and empties the log. Changes wait while it runs. The
+     * snapshot replaces the old one in one atomic move, and the directory is
+     * forced before the log is emptied, so a crash leaves either the old
+     * snapshot and the whole log or the new one, with the log or without it;
+     * replaying the log over either gives the same chart.
+     *
+     * @throws UncheckedIOException
+     *             if the snapshot cannot be written or the log emptied
+     */
+    public synchronized void checkpoint() {
+        Path temporary = this.directory.resolve(TEMPORARY);
+        try {
+            Files.deleteIfExists(temporary);
+            try (Chart4 stored = new Chart4(temporary)) {
+                stored.addAll(this.backing());
+            }
+            Files.move(temporary, this.directory.resolve(SNAPSHOT),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            force(this.directory);
+            this.log.reset();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes and forces every change still buffered, then closes the log.
+     * {@code this} must not be changed afterwards; the backing chart keeps
+     * its records.
+     *
+     * @throws IOException
+     *             if the log cannot be written or closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        this.log.close();
+    }
+
+}
@@ -0,0 +1,399 @@
+package components.weather;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Continuous query over the records of a {@code ContinuousChart} whose times
+ * fall in the last {@code length} of it: the half-open span (end - length,
+ * end], end the latest time in the chart. Its temperature summary and
+ * condition counts are kept up to date as records arrive, and each
+ * {@code Listener} is told after every change that moves it, with no scan
+ * of the chart.
+ *
+ * <p>
+ * The records of the window are kept in time order, the running sums of
+ * their temperatures and counts of their conditions beside them, and the
+ * extremes in monotonic deques: the deque of smallest lowest temperatures,
+ * for instance, holds only the records not followed by a colder one, in time
+ * order, so its first is the coldest in the window, and a record leaving the
+ * window is at its front if anywhere. A record later than every other thus
+ * costs amortized O(1) however long the window is. A record that arrives out
+ * of order inside the window, or a record removed from it, is rare in a live
+ * feed; the window is then rebuilt from the chart's records in its span
+ * alone.
+ *
+ * @convention <pre>
+ * $this.length > 0 and
+ * [$this.records are the records of the chart with times in
+ *   ($this.end - $this.length, $this.end], in increasing order of time] and
+ * [$this.minLow, $this.maxLow, $this.minHigh and $this.maxHigh are the
+ *   monotonic deques of $this.records] and
+ * [$this.sumLow, $this.sumHigh and $this.counts summarize $this.records]
+ * </pre>
+ * @correspondence this = $this.records
+ */
+public final class RollingWindow {
+
+    /**
+     * Receiver of the changes to a {@code RollingWindow}. It is called on
+     * the thread that changed the chart, after the change, so it should be
+     * quick; the window must not be kept past the call.
+     */
+    public interface Listener {
+
+        /**
+         * Reports that {@code window} has changed.
+         *
+         * @param window
+         *            the window, with its new values
+         */
+        void updated(RollingWindow window);
+
+    }
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * End of an empty window.
+     */
+    private static final long NONE = Long.MIN_VALUE;
+
+    /**
+     * Length of the window, in milliseconds.
+     */
+    private final long length;
+
+    /**
+     * Latest time in the chart, or NONE if the chart is empty.
+     */
+    private long end = NONE;
+
+    /**
+     * The records of the window, in increasing order of time.
+     */
+    private final ArrayDeque<Weather> records = new ArrayDeque<Weather>();
+
+    /**
+     * Records with no later record of smaller or equal lowest temperature.
+     */
+    private final ArrayDeque<Weather> minLow = new ArrayDeque<Weather>();
+
+    /**
+     * Records with no later record of larger or equal lowest temperature.
+     */
+    private final ArrayDeque<Weather> maxLow = new ArrayDeque<Weather>();
+
+    /**
+     * Records with no later record of smaller or equal highest temperature.
+     */
+    private final ArrayDeque<Weather> minHigh = new ArrayDeque<Weather>();
+
+    /**
+     * Records with no later record of larger or equal highest temperature.
+     */
+    private final ArrayDeque<Weather> maxHigh = new ArrayDeque<Weather>();
+
+    /**
+     * Sum of the lowest temperatures in the window.
+     */
+    private double sumLow;
+
+    /**
+     * Sum of the highest temperatures in the window.
+     */
+    private double sumHigh;
+
+    /**
+     * Number of records of each condition in the window, by ordinal.
+     */
+    private final int[] counts = new int[Condition.values().length];
+
+    /**
+     * The listeners.
+     */
+    private final List<Listener> listeners =
+            new CopyOnWriteArrayList<Listener>();
+
+    /**
+     * Pushes {@code w} on the back of {@code deque}, first dropping the
+     * records at the back that {@code w} outlives and is at least as extreme
+     * as.
+     *
+     * @param deque
+     *            the monotonic deque
+     * @param w
+     *            the record
+     * @param high
+     *            whether the deque is of highest temperatures
+     * @param max
+     *            whether the deque is of largest temperatures
+     */
+    private static void push(ArrayDeque<Weather> deque, Weather w,
+            boolean high, boolean max) {
+        float v = temp(w, high);
+        boolean dominated = true;
+        while (dominated && !deque.isEmpty()) {
+            float back = temp(deque.peekLast(), high);
+            dominated = (max && back <= v) || (!max && back >= v);
+            if (dominated) {
+                deque.pollLast();
+            }
+        }
+        deque.addLast(w);
+    }
+
+    /**
+     * Reports the lowest or highest temperature of {@code w}.
+     *
+     * @param w
+     *            the record
+     * @param high
+     *            whether to report the highest temperature
+     * @return the temperature
+     */
+    private static float temp(Weather w, boolean high) {
+        float result = w.lowTemp();
+        if (high) {
+            result = w.highTemp();
+        }
+        return result;
+    }
+
+    /**
+     * Drops {@code w} from the front of {@code deque} if it is there.
+     *
+     * @param deque
+     *            the monotonic deque
+     * @param w
+     *            the record leaving the window
+     */
+    private static void expire(ArrayDeque<Weather> deque, Weather w) {
+        if (deque.peekFirst() == w) {
+            deque.pollFirst();
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from the length of the window. The window is empty until
+     * a {@code ContinuousChart} fills it.
+     *
+     * @param length
+     *            the length of the window
+     * @requires length > 0
+     * @ensures this = <>
+     */
+    RollingWindow(Duration length) {
+        assert length != null : "Violation of: length is not null";
+        assert !length.isNegative()
+                && !length.isZero() : "Violation of: length > 0";
+
+        this.length = length.toMillis();
+    }
+
+    /*
+     * Maintenance methods ----------------------------------------------------
+     */
+
+    /**
+     * Reports the latest time in the chart, as far as the window knows.
+     *
+     * @return the end of the window, or Long.MIN_VALUE if it is empty
+     */
+    long endMillis() {
+        return this.end;
+    }
+
+    /**
+     * Reports the length of the window, in milliseconds.
+     *
+     * @return the length
+     */
+    long lengthMillis() {
+        return this.length;
+    }
+
+    /**
+     * Appends {@code w}, a record at the new latest time of the chart, and
+     * drops the records the window no longer spans.
+     *
+     * @param w
+     *            the record
+     * @param t
+     *            its time in epoch milliseconds
+     * @updates this
+     * @requires t > [the end of this]
+     */
+    void append(Weather w, long t) {
+        assert this.end == NONE || t > this.end : "Violation of: t > end";
+
+        this.end = t;
+        this.records.addLast(w);
+        push(this.minLow, w, false, false);
+        push(this.maxLow, w, false, true);
+        push(this.minHigh, w, true, false);
+        push(this.maxHigh, w, true, true);
+        this.sumLow += w.lowTemp();
+        this.sumHigh += w.highTemp();
+        this.counts[w.condition().ordinal()]++;
+        long start = t - this.length;
+        while (WeatherSecondary
+                .epochMillis(this.records.peekFirst()) <= start) {
+            Weather old = this.records.pollFirst();
+            expire(this.minLow, old);
+            expire(this.maxLow, old);
+            expire(this.minHigh, old);
+            expire(this.maxHigh, old);
+            this.sumLow -= old.lowTemp();
+            this.sumHigh -= old.highTemp();
+            this.counts[old.condition().ordinal()]--;
+        }
+    }
+
+    /**
+     * Empties the window, for it to be refilled with {@code append}.
+     *
+     * @clears this
+     */
+    void reset() {
+        this.end = NONE;
+        this.records.clear();
+        this.minLow.clear();
+        this.maxLow.clear();
+        this.minHigh.clear();
+        this.maxHigh.clear();
+        this.sumLow = 0;
+        this.sumHigh = 0;
+        for (int i = 0; i < this.counts.length; i++) {
+            this.counts[i] = 0;
+        }
+    }
+
+    /**
+     * Tells every listener that the window has changed.
+     */
+    void fire() {
+        for (Listener l : this.listeners) {
+            l.updated(this);
+        }
+    }
+
+    /*
+     * Public methods ---------------------------------------------------------
+     */
+
+    /**
+     * Registers {@code listener} to be told of every change.
+     *
+     * @param listener
+     *            the listener
+     */
+    public void addListener(Listener listener) {
+        assert listener != null : "Violation of: listener is not null";
+
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Stops telling {@code listener} of changes.
+     *
+     * @param listener
+     *            the listener
+     */
+    public void removeListener(Listener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Reports the length of the window.
+     *
+     * @return the length
+     */
+    public Duration length() {
+        return Duration.ofMillis(this.length);
+    }
+
+    /**
+     * Reports the end of the window: the latest time in the chart.
+     *
+     * @return the end, or null if the chart is empty
+     */
+    public Date end() {
+        Date result = null;
+        if (this.end != NONE) {
+            result = new Date(this.end);
+        }
+        return result;
+    }
+
+    /**
+     * Reports the number of records in the window.
+     *
+     * @return |this|
+     */
+    public int size() {
+        return this.records.size();
+    }
+
+    /**
+     * Reports the number of records in the window with condition {@code c}.
+     *
+     * @param c
+     *            the condition
+     * @return the count of c, in O(1)
+     */
+    public int count(Condition c) {
+        assert c != null : "Violation of: c is not null";
+
+        return this.counts[c.ordinal()];
+    }
+
+    /**
+     * Reports the summary of the temperatures in the window, in O(1).
+     *
+     * @return the summary of this
+     */
+    public TemperatureStats stats() {
+        TemperatureStats result;
+        if (this.records.isEmpty()) {
+            result = new TemperatureStats.Accumulator().toStats();
+        } else {
+            result = new TemperatureStats(this.records.size(),
+                    this.minLow.peekFirst().lowTemp(),
+                    this.maxLow.peekFirst().lowTemp(),
+                    this.minHigh.peekFirst().highTemp(),
+                    this.maxHigh.peekFirst().highTemp(), this.sumLow,
+                    this.sumHigh);
+        }
+        return result;
+    }
+
+    /**
+     * Reports the length, end, summary and condition counts of the window.
+     *
+     * @return a one-line summary of this
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(this.length()).append(" to ").append(this.end())
+                .append(": ").append(this.stats());
+        for (Condition c : Condition.values()) {
+            if (this.counts[c.ordinal()] > 0) {
+                result.append(' ').append(c).append('=')
+                        .append(this.counts[c.ordinal()]);
+            }
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,514 @@
+package components.weather;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Store of the charts of many stations, partitioned into shards by station
+ * and time bucket. The records of one station in one bucket of
+ * {@code bucketMillis} milliseconds form one chart, and each chart belongs to
+ * one shard, which a single thread of its own owns: every change and every
+ * query of a shard's charts runs on that thread, so the charts need no
+ * locking and any {@code Chart} implementation will do. Changes return as
+ * soon as they are queued; the futures they return complete once applied,
+ * and changes to one station and bucket apply in the order they were made.
+ *
+ * <p>
+ * Queries across stations scatter one task to every shard, which the shard
+ * threads run in parallel, and gather the partial results with a merge
+ * function: {@code stationsWith} and {@code maxHighByRegion} are built this
+ * way on {@code scatter}, which takes any per-chart function and merge.
+ *
+ * @convention <pre>
+ * |$this.shards| = |$this.charts| > 0 and
+ * [every chart in $this.charts[i] is only touched on $this.shards[i]] and
+ * [every chart in $this.charts is non-empty, or was emptied by remove]
+ * </pre>
+ * @correspondence this = [for each station, the union of its charts]
+ */
+public final class StationStore implements Closeable {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * A station and a time bucket: the key of one chart.
+     */
+    private static final class Key {
+
+        /**
+         * The station.
+         */
+        private final String station;
+
+        /**
+         * The time bucket.
+         */
+        private final long bucket;
+
+        /**
+         * Constructor from every field.
+         *
+         * @param station
+         *            the station
+         * @param bucket
+         *            the time bucket
+         */
+        Key(String station, long bucket) {
+            this.station = station;
+            this.bucket = bucket;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            boolean result = o instanceof Key;
+            if (result) {
+                Key k = (Key) o;
+                result = this.bucket == k.bucket
+                        && this.station.equals(k.station);
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.station, this.bucket);
+        }
+
+    }
+
+    /**
+     * Length of a time bucket, in milliseconds.
+     */
+    private final long bucketMillis;
+
+    /**
+     * Creator of the chart of a new station and bucket.
+     */
+    private final Supplier<Chart> factory;
+
+    /**
+     * The thread of each shard.
+     */
+    private final ExecutorService[] shards;
+
+    /**
+     * The charts of each shard; {@code charts[i]} is only touched on
+     * {@code shards[i]}.
+     */
+    private final List<Map<Key, Chart>> charts;
+
+    /**
+     * Region of each station registered with one.
+     */
+    private final Map<String, String> regions =
+            new ConcurrentHashMap<String, String>();
+
+    /**
+     * Reports the key of the chart of {@code station} holding time
+     * {@code t}.
+     *
+     * @param station
+     *            the station
+     * @param t
+     *            the time in epoch milliseconds
+     * @return the key of the chart
+     */
+    private Key keyOf(String station, long t) {
+        return new Key(station, Math.floorDiv(t, this.bucketMillis));
+    }
+
+    /**
+     * Reports the shard that owns the chart with key {@code k}.
+     *
+     * @param k
+     *            the key
+     * @return the index of its shard
+     */
+    private int shardOf(Key k) {
+        return Math.floorMod(k.hashCode(), this.shards.length);
+    }
+
+    /**
+     * Runs {@code task} on the chart with key {@code k}, creating it first
+     * if {@code create} and it does not exist, on the chart's shard.
+     *
+     * @param <R>
+     *            the type of the result
+     * @param k
+     *            the key of the chart
+     * @param create
+     *            whether to create the chart if it does not exist
+     * @param task
+     *            the task, given the chart, or null if it does not exist
+     * @return the future result of the task
+     */
+    private <R> CompletableFuture<R> onChart(Key k, boolean create,
+            Function<Chart, R> task) {
+        final int i = this.shardOf(k);
+        return CompletableFuture.supplyAsync(() -> {
+            Map<Key, Chart> mine = this.charts.get(i);
+            Chart c = mine.get(k);
+            if (c == null && create) {
+                c = this.factory.get();
+                mine.put(k, c);
+            }
+            R result = task.apply(c);
+            if (c != null && c.size() == 0) {
+                mine.remove(k);
+            }
+            return result;
+        }, this.shards[i]);
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from the number of shards, the length of a time bucket and
+     * the creator of new charts.
+     *
+     * @param shards
+     *            the number of shards, each with a thread of its own
+     * @param bucketMillis
+     *            the length of a time bucket, in milliseconds
+     * @param factory
+     *            the creator of an empty chart
+     * @requires shards > 0 and bucketMillis > 0
+     * @ensures this = {}
+     */
+    public StationStore(int shards, long bucketMillis,
+            Supplier<Chart> factory) {
+        assert shards > 0 : "Violation of: shards > 0";
+        assert bucketMillis > 0 : "Violation of: bucketMillis > 0";
+        assert factory != null : "Violation of: factory is not null";
+
+        this.bucketMillis = bucketMillis;
+        this.factory = factory;
+        this.shards = new ExecutorService[shards];
+        this.charts = new ArrayList<Map<Key, Chart>>(shards);
+        for (int i = 0; i < shards; i++) {
+            final String name = "station-shard-" + i;
+            this.shards[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            });
+            this.charts.add(new HashMap<Key, Chart>());
+        }
+    }
+
+    /**
+     * Constructor with one shard per available processor, buckets of 30
+     * days and {@code Chart2} charts.
+     */
+    public StationStore() {
+        this(Runtime.getRuntime().availableProcessors(),
+                TimeUnit.DAYS.toMillis(30), Chart2::new);
+    }
+
+    /*
+     * Station methods --------------------------------------------------------
+     */
+
+    /**
+     * Puts {@code station} in {@code region}, for queries by region.
+     *
+     * @param station
+     *            the station
+     * @param region
+     *            its region
+     */
+    public void register(String station, String region) {
+        assert station != null : "Violation of: station is not null";
+        assert region != null : "Violation of: region is not null";
+
+        this.regions.put(station, region);
+    }
+
+    /**
+     * Reports the region of {@code station}.
+     *
+     * @param station
+     *            the station
+     * @return its region, or null if it has none
+     */
+    public String region(String station) {
+        return this.regions.get(station);
+    }
+
+    /**
+     * Adds {@code w} to the records of {@code station}.
+     *
+     * @param station
+     *            the station
+     * @param w
+     *            the record
+     * @return a future that completes once w is added
+     * @aliases reference {@code w}, in the chart it is added to
+     * @requires w.time is not in DOMAIN(this[station])
+     */
+    public CompletableFuture<Void> add(String station, Weather w) {
+        assert station != null : "Violation of: station is not null";
+        assert w != null : "Violation of: w is not null";
+
+        return this.onChart(
+                this.keyOf(station, WeatherSecondary.epochMillis(w)), true,
+                c -> {
+                    c.add(w);
+                    return null;
+                });
+    }
+
+    /**
+     * Adds every record of {@code ws} whose time is not yet in the records
+     * of {@code station}, as {@code Chart.addAll} does, one batch per chart.
+     *
+     * @param station
+     *            the station
+     * @param ws
+     *            the records
+     * @return a future of the number of records added
+     * @aliases references in {@code ws}
+     */
+    public CompletableFuture<Integer> addAll(String station,
+            Iterable<Weather> ws) {
+        assert station != null : "Violation of: station is not null";
+        assert ws != null : "Violation of: ws is not null";
+
+        Map<Key, List<Weather>> batches = new HashMap<Key, List<Weather>>();
+        for (Weather w : ws) {
+            batches.computeIfAbsent(
+                    this.keyOf(station, WeatherSecondary.epochMillis(w)),
+                    k -> new ArrayList<Weather>()).add(w);
+        }
+        CompletableFuture<Integer> result = CompletableFuture
+                .completedFuture(0);
+        for (Map.Entry<Key, List<Weather>> e : batches.entrySet()) {
+            final List<Weather> batch = e.getValue();
+            result = result.thenCombine(this.onChart(e.getKey(), true,
+                    c -> batch.size() - c.addAll(batch).length()),
+                    Integer::sum);
+        }
+        return result;
+    }
+
+    /**
+     * Removes the record of {@code station} with time {@code t}.
+     *
+     * @param station
+     *            the station
+     * @param t
+     *            the time
+     * @return a future of the record removed, or of null if there was none
+     */
+    public CompletableFuture<Weather> remove(String station, Date t) {
+        assert station != null : "Violation of: station is not null";
+        assert t != null : "Violation of: t is not null";
+
+        return this.onChart(this.keyOf(station, t.getTime()), false, c -> {
+            Weather result = null;
+            if (c != null && c.hasTime(t)) {
+                result = c.remove(t);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Reports the condition of {@code station} at time {@code t}.
+     *
+     * @param station
+     *            the station
+     * @param t
+     *            the time
+     * @return a future of the condition, or of null if there is no record
+     */
+    public CompletableFuture<Condition> condition(String station, Date t) {
+        assert station != null : "Violation of: station is not null";
+        assert t != null : "Violation of: t is not null";
+
+        return this.onChart(this.keyOf(station, t.getTime()), false, c -> {
+            Condition result = null;
+            if (c != null && c.hasTime(t)) {
+                result = c.condition(t);
+            }
+            return result;
+        });
+    }
+
+    /*
+     * Query methods ----------------------------------------------------------
+     */
+
+    /**
+     * Applies {@code perChart} to the chart of every station and bucket that
+     * may hold records in [{@code from}, {@code to}], on every shard in
+     * parallel, and merges the results with {@code merge}, first within each
+     * shard starting from {@code identity} and then across shards.
+     * {@code perChart} runs on the shard threads: it must not keep the chart
+     * it is given, nor change it.
+     *
+     * @param <R>
+     *            the type of the result
+     * @param from
+     *            the earliest time, inclusive
+     * @param to
+     *            the latest time, inclusive
+     * @param perChart
+     *            the function of a station and its chart
+     * @param identity
+     *            the identity of merge
+     * @param merge
+     *            the associative merge of two results, which may return
+     *            either argument changed
+     * @return a future of the merged result
+     * @requires from <= to
+     */
+    public <R> CompletableFuture<R> scatter(Date from, Date to,
+            BiFunction<String, Chart, R> perChart, Supplier<R> identity,
+            BinaryOperator<R> merge) {
+        assert from != null : "Violation of: from is not null";
+        assert to != null : "Violation of: to is not null";
+        assert from.compareTo(to) <= 0 : "Violation of: from <= to";
+
+        final long first = Math.floorDiv(from.getTime(), this.bucketMillis);
+        final long last = Math.floorDiv(to.getTime(), this.bucketMillis);
+        CompletableFuture<R> result = CompletableFuture
+                .completedFuture(identity.get());
+        for (int i = 0; i < this.shards.length; i++) {
+            final Map<Key, Chart> mine = this.charts.get(i);
+            CompletableFuture<R> partial = CompletableFuture.supplyAsync(() -> {
+                R acc = identity.get();
+                for (Map.Entry<Key, Chart> e : mine.entrySet()) {
+                    long b = e.getKey().bucket;
+                    if (first <= b && b <= last) {
+                        acc = merge.apply(acc, perChart
+                                .apply(e.getKey().station, e.getValue()));
+                    }
+                }
+                return acc;
+            }, this.shards[i]);
+            result = result.thenCombine(partial, merge);
+        }
+        return result;
+    }
+
+    /**
+     * Reports the stations with a record of condition {@code c} in
+     * [{@code from}, {@code to}], for example every station that was
+     * {@code STORMY} on a given day.
+     *
+     * @param c
+     *            the condition
+     * @param from
+     *            the earliest time, inclusive
+     * @param to
+     *            the latest time, inclusive
+     * @return a future of the stations, in increasing order
+     * @requires from <= to
+     */
+    public CompletableFuture<Set<String>> stationsWith(Condition c,
+            Date from, Date to) {
+        assert c != null : "Violation of: c is not null";
+
+        return this.scatter(from, to, (station, chart) -> {
+            Set<String> s = new TreeSet<String>();
+            if (chart.count(c, from, to) > 0) {
+                s.add(station);
+            }
+            return s;
+        }, TreeSet::new, (a, b) -> {
+            a.addAll(b);
+            return a;
+        });
+    }
+
+    /**
+     * Reports the highest temperature of each region in [{@code from},
+     * {@code to}], over the registered stations with records then.
+     *
+     * @param from
+     *            the earliest time, inclusive
+     * @param to
+     *            the latest time, inclusive
+     * @return a future of the highest temperature of each region, by region
+     * @requires from <= to
+     */
+    public CompletableFuture<Map<String, Float>> maxHighByRegion(Date from,
+            Date to) {
+        return this.scatter(from, to, (station, chart) -> {
+            Map<String, Float> m = new TreeMap<String, Float>();
+            String region = this.regions.get(station);
+            if (region != null) {
+                TemperatureStats s = chart.stats(from, to);
+                if (s.count() > 0) {
+                    m.put(region, s.maxHigh());
+                }
+            }
+            return m;
+        }, TreeMap::new, (a, b) -> {
+            for (Map.Entry<String, Float> e : b.entrySet()) {
+                a.merge(e.getKey(), e.getValue(), Math::max);
+            }
+            return a;
+        });
+    }
+
+    /**
+     * Reports the number of records of every station.
+     *
+     * @return a future of the number of records
+     */
+    public CompletableFuture<Long> size() {
+        return this.scatter(new Date(Long.MIN_VALUE),
+                new Date(Long.MAX_VALUE),
+                (station, chart) -> (long) chart.size(), () -> 0L,
+                Long::sum);
+    }
+
+    /**
+     * Lets every queued change and query finish, then stops the shard
+     * threads. {@code this} must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        for (ExecutorService s : this.shards) {
+            s.shutdown();
+        }
+        boolean interrupted = false;
+        for (ExecutorService s : this.shards) {
+            boolean done = false;
+            while (!done) {
+                try {
+                    done = s.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,420 @@
+package components.weather;
+
+import java.util.function.Consumer;
+
+/**
+ * Interval tree over the temperature ranges [{@code lowTemp}, {@code highTemp}]
+ * of a set of records: an AVL tree ordered by lowest temperature, then by time,
+ * in which every node also keeps the largest highest temperature and the
+ * earliest and latest times of its subtree. A subtree whose highest
+ * temperatures all fall below a band is skipped whole, and so is everything to
+ * the right of a node whose lowest temperature is above the band, so a query
+ * visits only the paths down to the records whose temperatures overlap the band
+ * and costs O(log n + min(n, k log n)), k the number of those records; matches
+ * that sit together in the tree share most of their paths and cost less. A
+ * subtree whose times all fall outside a time range is skipped too, but records
+ * close in time are scattered through the tree, so a time range does not lower
+ * that bound; an index that must answer narrow time ranges quickly is split by
+ * time, as {@code TemperatureIndexedChart} splits its own by month. Nodes are
+ * never changed once built, as in {@code Chart6}.
+ *
+ * @convention <pre>
+ * [$this.root is an AVL tree ordered by (low, time)] and
+ * [for every node n in $this.root, n.low, n.high and n.time are those of
+ *   n.value, n.height is the height of the subtree at n, and n.maxHigh,
+ *   n.minTime and n.maxTime are the largest high, earliest time and latest
+ *   time of the records of the subtree at n]
+ * </pre>
+ * @correspondence this = [set of values of the nodes of $this.root]
+ */
+final class TemperatureIndex {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Immutable tree node.
+     */
+    private static final class Node {
+
+        /**
+         * Lowest temperature of the record.
+         */
+        private final float low;
+
+        /**
+         * Highest temperature of the record.
+         */
+        private final float high;
+
+        /**
+         * Time of the record in epoch milliseconds.
+         */
+        private final long time;
+
+        /**
+         * The record.
+         */
+        private final Weather value;
+
+        /**
+         * Subtree of records ordered before this one.
+         */
+        private final Node left;
+
+        /**
+         * Subtree of records ordered after this one.
+         */
+        private final Node right;
+
+        /**
+         * Height of this subtree.
+         */
+        private final int height;
+
+        /**
+         * Largest highest temperature in this subtree.
+         */
+        private final float maxHigh;
+
+        /**
+         * Earliest time in this subtree.
+         */
+        private final long minTime;
+
+        /**
+         * Latest time in this subtree.
+         */
+        private final long maxTime;
+
+        /**
+         * Constructor from a record and its subtrees.
+         *
+         * @param value
+         *            the record
+         * @param time
+         *            the time of the record
+         * @param left
+         *            the subtree ordered before the record
+         * @param right
+         *            the subtree ordered after the record
+         */
+        Node(Weather value, long time, Node left, Node right) {
+            this.low = value.lowTemp();
+            this.high = value.highTemp();
+            this.time = time;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+            float highMax = this.high;
+            long timeMin = time;
+            long timeMax = time;
+            if (left != null) {
+                highMax = Math.max(highMax, left.maxHigh);
+                timeMin = Math.min(timeMin, left.minTime);
+                timeMax = Math.max(timeMax, left.maxTime);
+            }
+            if (right != null) {
+                highMax = Math.max(highMax, right.maxHigh);
+                timeMin = Math.min(timeMin, right.minTime);
+                timeMax = Math.max(timeMax, right.maxTime);
+            }
+            this.maxHigh = highMax;
+            this.minTime = timeMin;
+            this.maxTime = timeMax;
+        }
+
+        /**
+         * Reports a copy of this node with other subtrees.
+         *
+         * @param l
+         *            the new subtree ordered before the record
+         * @param r
+         *            the new subtree ordered after the record
+         * @return the copy
+         */
+        Node with(Node l, Node r) {
+            return new Node(this.value, this.time, l, r);
+        }
+
+        /**
+         * Compares the key of this node with ({@code low}, {@code time}).
+         *
+         * @param low
+         *            the lowest temperature
+         * @param time
+         *            the time
+         * @return negative, zero or positive as this node is ordered before,
+         *         at or after the key
+         */
+        int compareTo(float low, long time) {
+            int result = Float.compare(this.low, low);
+            if (result == 0) {
+                result = Long.compare(this.time, time);
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * The tree.
+     */
+    private Node root;
+
+    /**
+     * Number of records in the tree.
+     */
+    private int size;
+
+    /**
+     * Reports the height of {@code n}.
+     *
+     * @param n
+     *            the subtree, possibly empty
+     * @return the height of n
+     */
+    private static int height(Node n) {
+        int result = 0;
+        if (n != null) {
+            result = n.height;
+        }
+        return result;
+    }
+
+    /**
+     * Builds a balanced copy of {@code n} with subtrees {@code l} and
+     * {@code r}, whose heights differ by at most two, rotating once or twice
+     * as needed.
+     *
+     * @param n
+     *            the node
+     * @param l
+     *            the subtree ordered before n
+     * @param r
+     *            the subtree ordered after n
+     * @return an AVL tree holding l, the record of n and r
+     */
+    private static Node balance(Node n, Node l, Node r) {
+        int hl = height(l);
+        int hr = height(r);
+        Node result;
+        if (hl > hr + 1) {
+            if (height(l.left) >= height(l.right)) {
+                result = l.with(l.left, n.with(l.right, r));
+            } else {
+                Node lr = l.right;
+                result = lr.with(l.with(l.left, lr.left),
+                        n.with(lr.right, r));
+            }
+        } else if (hr > hl + 1) {
+            if (height(r.right) >= height(r.left)) {
+                result = r.with(n.with(l, r.left), r.right);
+            } else {
+                Node rl = r.left;
+                result = rl.with(n.with(l, rl.left),
+                        r.with(rl.right, r.right));
+            }
+        } else {
+            result = n.with(l, r);
+        }
+        return result;
+    }
+
+    /**
+     * Reports the tree with node {@code x} added.
+     *
+     * @param n
+     *            the tree
+     * @param x
+     *            a node with no subtrees
+     * @return n with x added
+     * @requires the key of x is not in n
+     */
+    private static Node insert(Node n, Node x) {
+        Node result;
+        if (n == null) {
+            result = x;
+        } else if (n.compareTo(x.low, x.time) > 0) {
+            result = balance(n, insert(n.left, x), n.right);
+        } else {
+            result = balance(n, n.left, insert(n.right, x));
+        }
+        return result;
+    }
+
+    /**
+     * Reports the first node of {@code n}.
+     *
+     * @param n
+     *            the tree
+     * @return the node with the smallest key
+     * @requires n is not empty
+     */
+    private static Node first(Node n) {
+        Node result = n;
+        while (result.left != null) {
+            result = result.left;
+        }
+        return result;
+    }
+
+    /**
+     * Reports the tree without its first node.
+     *
+     * @param n
+     *            the tree
+     * @return n without its smallest key
+     * @requires n is not empty
+     */
+    private static Node deleteFirst(Node n) {
+        Node result;
+        if (n.left == null) {
+            result = n.right;
+        } else {
+            result = balance(n, deleteFirst(n.left), n.right);
+        }
+        return result;
+    }
+
+    /**
+     * Reports the tree without the node with key ({@code low}, {@code time}).
+     *
+     * @param n
+     *            the tree
+     * @param low
+     *            the lowest temperature of the record
+     * @param time
+     *            the time of the record
+     * @return n without that key
+     * @requires the key is in n
+     */
+    private static Node delete(Node n, float low, long time) {
+        int c = n.compareTo(low, time);
+        Node result;
+        if (c > 0) {
+            result = balance(n, delete(n.left, low, time), n.right);
+        } else if (c < 0) {
+            result = balance(n, n.left, delete(n.right, low, time));
+        } else if (n.left == null) {
+            result = n.right;
+        } else if (n.right == null) {
+            result = n.left;
+        } else {
+            result = balance(first(n.right), n.left, deleteFirst(n.right));
+        }
+        return result;
+    }
+
+    /**
+     * Reports to {@code action} every record of {@code n} with
+     * {@code low <= hi}, {@code high >= lo} and time in [{@code from},
+     * {@code to}], in increasing order of (low, time).
+     *
+     * @param n
+     *            the tree
+     * @param lo
+     *            the bottom of the band
+     * @param hi
+     *            the top of the band
+     * @param from
+     *            the earliest time
+     * @param to
+     *            the latest time
+     * @param action
+     *            the receiver of the records
+     */
+    private static void overlapping(Node n, float lo, float hi, long from,
+            long to, Consumer<Weather> action) {
+        if (n != null && n.maxHigh >= lo && n.maxTime >= from
+                && n.minTime <= to) {
+            overlapping(n.left, lo, hi, from, to, action);
+            if (n.low <= hi) {
+                if (n.high >= lo && from <= n.time && n.time <= to) {
+                    action.accept(n.value);
+                }
+                overlapping(n.right, lo, hi, from, to, action);
+            }
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     *
+     * @ensures this = {}
+     */
+    TemperatureIndex() {
+    }
+
+    /*
+     * Index methods ----------------------------------------------------------
+     */
+
+    /**
+     * Adds {@code w} to the index.
+     *
+     * @param w
+     *            the record
+     * @updates this
+     * @requires w.time is not the time of any record in this
+     * @ensures this = #this union {w}
+     */
+    void add(Weather w) {
+        this.root = insert(this.root,
+                new Node(w, WeatherSecondary.epochMillis(w), null, null));
+        this.size++;
+    }
+
+    /**
+     * Removes {@code w} from the index.
+     *
+     * @param w
+     *            the record, with the temperatures and time it was added with
+     * @updates this
+     * @requires w is in this
+     * @ensures this = #this \ {w}
+     */
+    void remove(Weather w) {
+        this.root = delete(this.root, w.lowTemp(),
+                WeatherSecondary.epochMillis(w));
+        this.size--;
+    }
+
+    /**
+     * Reports the number of records in the index.
+     *
+     * @return |this|
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Reports to {@code action} every record whose temperatures overlap
+     * [{@code lo}, {@code hi}] and whose time is in [{@code from},
+     * {@code to}], in increasing order of lowest temperature, then of time.
+     *
+     * @param lo
+     *            the bottom of the band
+     * @param hi
+     *            the top of the band
+     * @param from
+     *            the earliest time, in epoch milliseconds
+     * @param to
+     *            the latest time, in epoch milliseconds
+     * @param action
+     *            the receiver of the records
+     * @requires lo <= hi and from <= to
+     */
+    void overlapping(float lo, float hi, long from, long to,
+            Consumer<Weather> action) {
+        overlapping(this.root, lo, hi, from, to, action);
+    }
+
+}
@@ -0,0 +1,275 @@
+package components.weather;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeMap;
+
+import components.sequence.Sequence;
+
+/**
+ * {@code Chart} decorator that keeps an interval index over the temperature
+ * range [{@code lowTemp}, {@code highTemp}] of every record, so alerts such as
+ * "every reading that crossed freezing" or "every reading that touched a band"
+ * take O(log n + min(n, k log n)) instead of a scan of the whole chart, k the
+ * number of records whose temperatures match. Beside the index of the whole
+ * chart, one index is kept for each month, 30 days from the epoch, so a query
+ * with a time range searches only the months the range touches, in O(m log n +
+ * k log n) for m months and k matches in them, however many matches lie outside
+ * it. The indexes are kept up to date by every change made through the
+ * decorator; changes made to the backing chart directly, or to the temperatures
+ * of records already in it, are not seen. Every other method is passed straight
+ * to the backing chart.
+ *
+ * @convention <pre>
+ * [$this.index holds exactly the records of $this.backing] and
+ * [$this.months maps each month m to a non-empty index of exactly the
+ *   records of $this.backing whose times fall in m, and holds no other
+ *   month]
+ * </pre>
+ * @correspondence this = $this.backing
+ */
+public class TemperatureIndexedChart extends ChartDecorator {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Length of a month, in milliseconds.
+     */
+    private static final long MONTH = Duration.ofDays(30).toMillis();
+
+    /**
+     * Order of the results: by lowest temperature, then by time.
+     */
+    private static final Comparator<Weather> BY_LOW = Comparator
+            .comparingDouble(Weather::lowTemp)
+            .thenComparingLong(WeatherSecondary::epochMillis);
+
+    /**
+     * Interval index of the records of the backing chart.
+     */
+    private final TemperatureIndex index = new TemperatureIndex();
+
+    /**
+     * Interval index of the records of each month, by month number.
+     */
+    private final TreeMap<Long, TemperatureIndex> months =
+            new TreeMap<Long, TemperatureIndex>();
+
+    /**
+     * Reports the number of the month holding time {@code t}.
+     *
+     * @param t
+     *            the time in epoch milliseconds
+     * @return floor(t / MONTH)
+     */
+    private static long month(long t) {
+        return Math.floorDiv(t, MONTH);
+    }
+
+    /**
+     * Adds {@code w} to the index of the whole chart and to that of its
+     * month.
+     *
+     * @param w
+     *            the record
+     */
+    private void index(Weather w) {
+        this.index.add(w);
+        this.months.computeIfAbsent(month(WeatherSecondary.epochMillis(w)),
+                m -> new TemperatureIndex()).add(w);
+    }
+
+    /**
+     * Removes {@code w} from the index of the whole chart and from that of
+     * its month, dropping the month once it is empty.
+     *
+     * @param w
+     *            the record
+     */
+    private void unindex(Weather w) {
+        this.index.remove(w);
+        long m = month(WeatherSecondary.epochMillis(w));
+        TemperatureIndex month = this.months.get(m);
+        month.remove(w);
+        if (month.size() == 0) {
+            this.months.remove(m);
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from the chart to index. Its records are indexed now, in
+     * O(n log n).
+     *
+     * @param backing
+     *            the chart to index
+     * @ensures this = backing
+     */
+    public TemperatureIndexedChart(Chart backing) {
+        super(backing);
+        for (Weather w : backing) {
+            this.index(w);
+        }
+    }
+
+    /*
+     * Temperature methods ----------------------------------------------------
+     */
+
+    /**
+     * Reports the records whose temperatures overlap [{@code lo}, {@code hi}]
+     * and whose times are in [{@code from}, {@code to}], in increasing order
+     * of lowest temperature, then of time. Only the months the range touches
+     * are searched.
+     *
+     * @param lo
+     *            the bottom of the band
+     * @param hi
+     *            the top of the band
+     * @param from
+     *            the earliest time, inclusive
+     * @param to
+     *            the latest time, inclusive
+     * @return the matching records
+     * @requires lo <= hi and from <= to
+     * @ensures overlapping = [the records w of this with w.lowTemp <= hi and
+     *          w.highTemp >= lo and from <= w.time <= to]
+     */
+    public final Iterable<Weather> overlapping(float lo, float hi, Date from,
+            Date to) {
+        assert lo <= hi : "Violation of: lo <= hi";
+        assert from != null : "Violation of: from is not null";
+        assert to != null : "Violation of: to is not null";
+        assert from.compareTo(to) <= 0 : "Violation of: from <= to";
+
+        long start = from.getTime();
+        long end = to.getTime();
+        List<Weather> result = new ArrayList<Weather>();
+        int searched = 0;
+        for (TemperatureIndex month : this.months
+                .subMap(month(start), true, month(end), true).values()) {
+            month.overlapping(lo, hi, start, end, result::add);
+            searched++;
+        }
+        if (searched > 1) {
+            result.sort(BY_LOW);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Reports the records whose temperatures overlap [{@code lo}, {@code hi}],
+     * in increasing order of lowest temperature, then of time.
+     *
+     * @param lo
+     *            the bottom of the band
+     * @param hi
+     *            the top of the band
+     * @return the matching records
+     * @requires lo <= hi
+     * @ensures overlapping = [the records w of this with w.lowTemp <= hi and
+     *          w.highTemp >= lo]
+     */
+    public final Iterable<Weather> overlapping(float lo, float hi) {
+        assert lo <= hi : "Violation of: lo <= hi";
+
+        List<Weather> result = new ArrayList<Weather>();
+        this.index.overlapping(lo, hi, Long.MIN_VALUE, Long.MAX_VALUE,
+                result::add);
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Reports the records whose temperature range contains {@code temp} and
+     * whose times are in [{@code from}, {@code to}], in increasing order of
+     * lowest temperature, then of time.
+     *
+     * @param temp
+     *            the threshold, such as freezing
+     * @param from
+     *            the earliest time, inclusive
+     * @param to
+     *            the latest time, inclusive
+     * @return the matching records
+     * @requires from <= to
+     * @ensures containing = [the records w of this with
+     *          w.lowTemp <= temp <= w.highTemp and from <= w.time <= to]
+     */
+    public final Iterable<Weather> containing(float temp, Date from,
+            Date to) {
+        return this.overlapping(temp, temp, from, to);
+    }
+
+    /**
+     * Reports the records whose temperature range contains {@code temp}, in
+     * increasing order of lowest temperature, then of time.
+     *
+     * @param temp
+     *            the threshold, such as freezing
+     * @return the matching records
+     * @ensures containing = [the records w of this with
+     *          w.lowTemp <= temp <= w.highTemp]
+     */
+    public final Iterable<Weather> containing(float temp) {
+        return this.overlapping(temp, temp);
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(Weather w) {
+        assert w != null : "Violation of: w is not null";
+
+        this.backing().add(w);
+        this.index(w);
+    }
+
+    @Override
+    public final Weather remove(Date t) {
+        Weather result = this.backing().remove(t);
+        this.unindex(result);
+        return result;
+    }
+
+    @Override
+    public final Weather removeAny() {
+        Weather result = this.backing().removeAny();
+        this.unindex(result);
+        return result;
+    }
+
+    /*
+     * Bulk methods -----------------------------------------------------------
+     */
+
+    @Override
+    public final Sequence<Weather> addAll(Iterable<Weather> ws) {
+        assert ws != null : "Violation of: ws is not null";
+
+        /*
+         * ws may only be iterable once, as it is when it comes from a stream,
+         * and it is needed twice.
+         */
+        List<Weather> batch = new ArrayList<Weather>();
+        for (Weather w : ws) {
+            batch.add(w);
+        }
+        Sequence<Weather> rejected = this.backing().addAll(batch);
+        for (Weather w : added(batch, rejected)) {
+            this.index(w);
+        }
+        return rejected;
+    }
+
+}
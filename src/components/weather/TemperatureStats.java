@@ -0,0 +1,290 @@
+package components.weather;
+
+/**
+ * Immutable summary of the temperatures of a set of {@code Weather} records:
+ * how many there are, and the smallest, largest, total and mean of their
+ * lowest and highest temperatures. The extremes and means of an empty set are
+ * {@code NaN}.
+ */
+public final class TemperatureStats {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of records.
+     */
+    private final int count;
+
+    /**
+     * Smallest lowest temperature.
+     */
+    private final float minLow;
+
+    /**
+     * Largest lowest temperature.
+     */
+    private final float maxLow;
+
+    /**
+     * Smallest highest temperature.
+     */
+    private final float minHigh;
+
+    /**
+     * Largest highest temperature.
+     */
+    private final float maxHigh;
+
+    /**
+     * Sum of the lowest temperatures.
+     */
+    private final double sumLow;
+
+    /**
+     * Sum of the highest temperatures.
+     */
+    private final double sumHigh;
+
+    /**
+     * Running summary that records are folded into one at a time or a
+     * summarized group at a time.
+     */
+    static final class Accumulator {
+
+        /**
+         * Number of records so far.
+         */
+        private int count = 0;
+
+        /**
+         * Smallest lowest temperature so far.
+         */
+        private float minLow = Float.POSITIVE_INFINITY;
+
+        /**
+         * Largest lowest temperature so far.
+         */
+        private float maxLow = Float.NEGATIVE_INFINITY;
+
+        /**
+         * Smallest highest temperature so far.
+         */
+        private float minHigh = Float.POSITIVE_INFINITY;
+
+        /**
+         * Largest highest temperature so far.
+         */
+        private float maxHigh = Float.NEGATIVE_INFINITY;
+
+        /**
+         * Sum of the lowest temperatures so far.
+         */
+        private double sumLow = 0;
+
+        /**
+         * Sum of the highest temperatures so far.
+         */
+        private double sumHigh = 0;
+
+        /**
+         * Folds in one record.
+         *
+         * @param low
+         *            its lowest temperature
+         * @param high
+         *            its highest temperature
+         */
+        void add(float low, float high) {
+            this.count++;
+            this.minLow = Math.min(this.minLow, low);
+            this.maxLow = Math.max(this.maxLow, low);
+            this.minHigh = Math.min(this.minHigh, high);
+            this.maxHigh = Math.max(this.maxHigh, high);
+            this.sumLow += low;
+            this.sumHigh += high;
+        }
+
+        /**
+         * Folds in a group of records already summarized.
+         *
+         * @param n
+         *            the number of records in the group
+         * @param groupMinLow
+         *            their smallest lowest temperature
+         * @param groupMaxLow
+         *            their largest lowest temperature
+         * @param groupMinHigh
+         *            their smallest highest temperature
+         * @param groupMaxHigh
+         *            their largest highest temperature
+         * @param groupSumLow
+         *            the sum of their lowest temperatures
+         * @param groupSumHigh
+         *            the sum of their highest temperatures
+         */
+        void add(int n, float groupMinLow, float groupMaxLow,
+                float groupMinHigh, float groupMaxHigh, double groupSumLow,
+                double groupSumHigh) {
+            if (n > 0) {
+                this.count += n;
+                this.minLow = Math.min(this.minLow, groupMinLow);
+                this.maxLow = Math.max(this.maxLow, groupMaxLow);
+                this.minHigh = Math.min(this.minHigh, groupMinHigh);
+                this.maxHigh = Math.max(this.maxHigh, groupMaxHigh);
+                this.sumLow += groupSumLow;
+                this.sumHigh += groupSumHigh;
+            }
+        }
+
+        /**
+         * Reports the summary of every record folded in so far.
+         *
+         * @return the summary
+         */
+        TemperatureStats toStats() {
+            TemperatureStats result;
+            if (this.count == 0) {
+                result = new TemperatureStats(0, Float.NaN, Float.NaN,
+                        Float.NaN, Float.NaN, 0, 0);
+            } else {
+                result = new TemperatureStats(this.count, this.minLow,
+                        this.maxLow, this.minHigh, this.maxHigh, this.sumLow,
+                        this.sumHigh);
+            }
+            return result;
+        }
+
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from every component of the summary.
+     *
+     * @param count
+     *            the number of records
+     * @param minLow
+     *            the smallest lowest temperature
+     * @param maxLow
+     *            the largest lowest temperature
+     * @param minHigh
+     *            the smallest highest temperature
+     * @param maxHigh
+     *            the largest highest temperature
+     * @param sumLow
+     *            the sum of the lowest temperatures
+     * @param sumHigh
+     *            the sum of the highest temperatures
+     */
+    TemperatureStats(int count, float minLow, float maxLow, float minHigh,
+            float maxHigh, double sumLow, double sumHigh) {
+        this.count = count;
+        this.minLow = minLow;
+        this.maxLow = maxLow;
+        this.minHigh = minHigh;
+        this.maxHigh = maxHigh;
+        this.sumLow = sumLow;
+        this.sumHigh = sumHigh;
+    }
+
+    /*
+     * Public methods ---------------------------------------------------------
+     */
+
+    /**
+     * Reports the number of records summarized.
+     *
+     * @return the number of records
+     */
+    public int count() {
+        return this.count;
+    }
+
+    /**
+     * Reports the smallest lowest temperature.
+     *
+     * @return min of w.lowTemp over the records, or NaN if there are none
+     */
+    public float minLow() {
+        return this.minLow;
+    }
+
+    /**
+     * Reports the largest lowest temperature.
+     *
+     * @return max of w.lowTemp over the records, or NaN if there are none
+     */
+    public float maxLow() {
+        return this.maxLow;
+    }
+
+    /**
+     * Reports the smallest highest temperature.
+     *
+     * @return min of w.highTemp over the records, or NaN if there are none
+     */
+    public float minHigh() {
+        return this.minHigh;
+    }
+
+    /**
+     * Reports the largest highest temperature.
+     *
+     * @return max of w.highTemp over the records, or NaN if there are none
+     */
+    public float maxHigh() {
+        return this.maxHigh;
+    }
+
+    /**
+     * Reports the sum of the lowest temperatures.
+     *
+     * @return sum of w.lowTemp over the records
+     */
+    public double sumLow() {
+        return this.sumLow;
+    }
+
+    /**
+     * Reports the sum of the highest temperatures.
+     *
+     * @return sum of w.highTemp over the records
+     */
+    public double sumHigh() {
+        return this.sumHigh;
+    }
+
+    /**
+     * Reports the mean lowest temperature.
+     *
+     * @return mean of w.lowTemp over the records, or NaN if there are none
+     */
+    public double meanLow() {
+        return this.sumLow / this.count;
+    }
+
+    /**
+     * Reports the mean highest temperature.
+     *
+     * @return mean of w.highTemp over the records, or NaN if there are none
+     */
+    public double meanHigh() {
+        return this.sumHigh / this.count;
+    }
+
+    /*
+     * Common methods (from Object) -------------------------------------------
+     */
+
+    @Override
+    public String toString() {
+        return "<" + this.count + ", low " + this.minLow + ".." + this.maxLow
+                + " (mean " + this.meanLow() + "), high " + this.minHigh
+                + ".." + this.maxHigh + " (mean " + this.meanHigh() + ")>";
+    }
+
+}
@@ -1,9 +1,6 @@
 
-import components.map.Map;
-import components.map.Map1L;
 import components.simplewriter.SimpleWriter;
 import components.simplewriter.SimpleWriter1L;
-import components.utilities.FormatChecker;
 
 /**
  * @author Haechan Jung
@@ -17,15 +14,186 @@ public class Weather<date, condition> {
      */
 
     /**
-     * Representation of {@code this}.
+     * Number of days in each month of a common year, indexed from 1.
      */
-    private Map<String, String> weather;
+    private static final int[] MONTH_LENGTHS = { 0, 31, 28, 31, 30, 31, 30,
+            31, 31, 30, 31, 30, 31 };
+
+    /**
+     * Representation of {@code this}, keyed by {@code dayKey(date)}.
+     */
+    private DayMap weather;
 
     /**
      * Creator of initial representation.
      */
     private void createNewRep() {
-        this.weather = new Map1L<String, String>();
+        this.weather = new DayMap();
+    }
+
+    /**
+     * Open-addressing hash map from day keys to conditions. Keys are kept in
+     * a plain {@code int[]}, so neither lookups nor insertions box or
+     * allocate anything.
+     *
+     * @convention <pre>
+     * [|$this.keys| = |$this.values| is a power of 2] and
+     * [$this.keys[i] = EMPTY iff slot i is free] and
+     * [every key is in the run of used slots starting at its home slot] and
+     * 0 <= $this.size < |$this.keys| / 2
+     * </pre>
+     */
+    private static final class DayMap {
+
+        /**
+         * Marker of a free slot; no valid day key is 0.
+         */
+        private static final int EMPTY = 0;
+
+        /**
+         * Initial number of slots.
+         */
+        private static final int INITIAL = 16;
+
+        /**
+         * Fibonacci hashing multiplier.
+         */
+        private static final int MIX = 0x9E3779B9;
+
+        /**
+         * Keys of the slots.
+         */
+        private int[] keys = new int[INITIAL];
+
+        /**
+         * Values of the slots.
+         */
+        private String[] values = new String[INITIAL];
+
+        /**
+         * Number of used slots.
+         */
+        private int size = 0;
+
+        /**
+         * Reports the home slot of {@code key}.
+         *
+         * @param key
+         *            the key
+         * @return the slot {@code key} hashes to
+         */
+        private int home(int key) {
+            return (key * MIX) >>> (Integer.SIZE
+                    - Integer.numberOfTrailingZeros(this.keys.length));
+        }
+
+        /**
+         * Reports the slot of {@code key}, or the free slot ending its run.
+         *
+         * @param key
+         *            the key
+         * @return the slot holding {@code key}, or a free slot if absent
+         */
+        private int slot(int key) {
+            int mask = this.keys.length - 1;
+            int i = this.home(key);
+            while (this.keys[i] != EMPTY && this.keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        /**
+         * Doubles the number of slots.
+         */
+        private void grow() {
+            int[] oldKeys = this.keys;
+            String[] oldValues = this.values;
+            this.keys = new int[oldKeys.length * 2];
+            this.values = new String[oldValues.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int j = this.slot(oldKeys[i]);
+                    this.keys[j] = oldKeys[i];
+                    this.values[j] = oldValues[i];
+                }
+            }
+        }
+
+        /**
+         * Reports whether {@code key} is in this.
+         *
+         * @param key
+         *            the key
+         * @return true iff key is in DOMAIN(this)
+         */
+        boolean hasKey(int key) {
+            return this.keys[this.slot(key)] == key;
+        }
+
+        /**
+         * Reports the value of {@code key}.
+         *
+         * @param key
+         *            the key
+         * @return the value of key, or null if key is not in DOMAIN(this)
+         */
+        String value(int key) {
+            return this.values[this.slot(key)];
+        }
+
+        /**
+         * Adds ({@code key}, {@code value}) to this.
+         *
+         * @param key
+         *            the key
+         * @param value
+         *            the value
+         * @requires key is not in DOMAIN(this) and key != EMPTY
+         */
+        void add(int key, String value) {
+            if (2 * (this.size + 1) >= this.keys.length) {
+                this.grow();
+            }
+            int i = this.slot(key);
+            this.keys[i] = key;
+            this.values[i] = value;
+            this.size++;
+        }
+
+        /**
+         * Removes {@code key} and returns its value. Later keys of the same
+         * run are shifted back, so no tombstones are left behind.
+         *
+         * @param key
+         *            the key
+         * @return the value that was associated with key
+         * @requires key is in DOMAIN(this)
+         */
+        String remove(int key) {
+            int mask = this.keys.length - 1;
+            int gap = this.slot(key);
+            String result = this.values[gap];
+            int i = (gap + 1) & mask;
+            while (this.keys[i] != EMPTY) {
+                int h = this.home(this.keys[i]);
+                /*
+                 * Move the key into the gap unless its home slot lies
+                 * cyclically in (gap, i], where it would no longer be found.
+                 */
+                if (((i - h) & mask) >= ((i - gap) & mask)) {
+                    this.keys[gap] = this.keys[i];
+                    this.values[gap] = this.values[i];
+                    gap = i;
+                }
+                i = (i + 1) & mask;
+            }
+            this.keys[gap] = EMPTY;
+            this.values[gap] = null;
+            this.size--;
+            return result;
+        }
+
     }
 
     /*
@@ -70,23 +238,26 @@ public class Weather<date, condition> {
     public final void addWeather(String date, String condition) {
         assert date != null : "Violation of: date is not null";
         assert condition != null : "Violation of: condition is not null";
-        assert this
-                .isDateFormatted(date) : "Violation of: date is not formatted";
-        this.weather.add(date, condition);
+        int key = dayKey(date);
+        assert key > 0 : "Violation of: date is formatted";
+        assert !this.weather.hasKey(key) : "Violation of: date is not in this";
+        this.weather.add(key, condition);
     }
 
     public final Weather<date, condition> removeWeather(String date) {
         assert date != null : "Violation of: date is not null";
-        assert this.isDateFormatted(date) : "Violation of: date is formatted";
-        assert this.hasDate(date) : "Violation of: date is in this";
-        Map.Pair<String, String> pair = this.weather.remove(date);
-        return new Weather<>(pair.key(), pair.value());
+        int key = dayKey(date);
+        assert key > 0 : "Violation of: date is formatted";
+        assert this.weather.hasKey(key) : "Violation of: date is in this";
+        String value = this.weather.remove(key);
+        return new Weather<>(date, value);
     }
 
     public final boolean hasDate(String date) {
         assert date != null : "Violation of: date is not null";
-        assert this.isDateFormatted(date) : "Violation of: date is formatted";
-        return this.weather.hasKey(date);
+        int key = dayKey(date);
+        assert key > 0 : "Violation of: date is formatted";
+        return this.weather.hasKey(key);
     }
 
     /*
@@ -94,50 +265,96 @@ public class Weather<date, condition> {
      */
     public final boolean isDateFormatted(String date) {
         assert date != null : "Violation of: date is not null";
-        boolean result = date.length() == 10;
-        if (result) {
-            // Check if format is appropriate
-            String space = date.substring(4, 5) + date.substring(7, 8);
-            if (space.equals("--")) {
-                String year = date.substring(0, 4);
-                // Check if year is appropriate number
-                if (FormatChecker.canParseInt(year)) {
-                    String month = date.substring(5, 7);
-                    // Check if month is appropriate number
-                    if (FormatChecker.canParseInt(month)) {
-                        int MM = Integer.parseInt(month);
-                        result = 1 <= MM && MM <= 12; // in range from 1 to 12
-                        String day = date.substring(8, 10);
-                        // Check if day is appropriate number
-                        if (result && FormatChecker.canParseInt(day)) {
-                            int DD = Integer.parseInt(day);
-                            /*
-                             * Not checking if day is truly apporiate for this
-                             * minimum viable product e.g. 02/31 is not possible
-                             */
-                            result = 1 <= DD && DD <= 31; // in range from 1 to 31
-                        } else {
-                            result = false;
-                        }
-                    } else {
-                        result = false;
-                    }
-                } else {
-                    result = false;
+        return dayKey(date) > 0;
+    }
+
+    /**
+     * Parses {@code date} in "YYYY-MM-DD" form into the key YYYYMMDD, checking
+     * that the day exists in that month (including February 29 only in leap
+     * years). Nothing is allocated.
+     *
+     * @param date
+     *            the date to parse
+     * @return YYYYMMDD if date is a real date in "YYYY-MM-DD" form, or -1
+     * @ensures <pre>
+     * if [date is a real date in "YYYY-MM-DD" form] then
+     *   dayKey = YYYY * 10000 + MM * 100 + DD > 0
+     * else
+     *   dayKey = -1
+     * </pre>
+     */
+    public static int dayKey(String date) {
+        assert date != null : "Violation of: date is not null";
+        final int length = 10;
+        final int yearEnd = 4;
+        final int monthEnd = 7;
+        final int months = 12;
+        final int february = 2;
+        final int hundred = 100;
+        int result = -1;
+        if (date.length() == length && date.charAt(yearEnd) == '-'
+                && date.charAt(monthEnd) == '-') {
+            int year = digits(date, 0, yearEnd);
+            int month = digits(date, yearEnd + 1, monthEnd);
+            int day = digits(date, monthEnd + 1, length);
+            if (year >= 0 && 1 <= month && month <= months && day >= 1) {
+                int last = MONTH_LENGTHS[month];
+                if (month == february && isLeapYear(year)) {
+                    last++;
+                }
+                if (day <= last) {
+                    result = (year * hundred + month) * hundred + day;
                 }
-            } else {
-                result = false;
             }
+        }
+        return result;
+    }
 
+    /**
+     * Reads the decimal digits of {@code s} in [{@code from}, {@code to}).
+     *
+     * @param s
+     *            the string to read
+     * @param from
+     *            the first index, inclusive
+     * @param to
+     *            the last index, exclusive
+     * @return the value of the digits, or -1 if any character is not a digit
+     */
+    private static int digits(String s, int from, int to) {
+        final int radix = 10;
+        int result = 0;
+        for (int i = from; i < to && result >= 0; i++) {
+            char c = s.charAt(i);
+            if ('0' <= c && c <= '9') {
+                result = result * radix + (c - '0');
+            } else {
+                result = -1;
+            }
         }
         return result;
+    }
 
+    /**
+     * Reports whether {@code year} is a leap year in the Gregorian calendar.
+     *
+     * @param year
+     *            the year
+     * @return true iff year has a February 29
+     */
+    private static boolean isLeapYear(int year) {
+        final int four = 4;
+        final int century = 100;
+        final int quadCentury = 400;
+        return year % four == 0
+                && (year % century != 0 || year % quadCentury == 0);
     }
 
     public final String condition(String date) {
         assert date != null : "Violation of: date is not null";
-        assert this.isDateFormatted(date) : "Violation of: date is formatted";
-        return this.weather.value(date);
+        int key = dayKey(date);
+        assert key > 0 : "Violation of: date is formatted";
+        return this.weather.value(key);
     }
 
     /**
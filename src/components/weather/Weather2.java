@@ -0,0 +1,265 @@
+package components.weather;
+
+import java.time.Instant;
+import java.util.Date;
+
+/**
+ * Immutable {@code Weather} that keeps its time as epoch milliseconds in a
+ * primitive {@code long}. Every method that would change it throws
+ * {@code UnsupportedOperationException}, so it can be shared freely, used as
+ * a key, and stored by reference in any chart without defensive copies.
+ * {@code time} creates a new {@code Date} on each call; {@code instant} and
+ * {@code epochMilli} report the time without touching {@code Date}.
+ *
+ * @convention <pre>
+ * $this.condition is not null and
+ * $this.low <= $this.high
+ * </pre>
+ * @correspondence this = <new Date($this.time), $this.condition, $this.low,
+ *                 $this.high>
+ */
+public final class Weather2 extends WeatherSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Time in epoch milliseconds.
+     */
+    private final long time;
+
+    /**
+     * Condition.
+     */
+    private final Condition condition;
+
+    /**
+     * Lowest temperature.
+     */
+    private final float low;
+
+    /**
+     * Highest temperature.
+     */
+    private final float high;
+
+    /**
+     * Creates the exception every method that would change {@code this}
+     * throws.
+     *
+     * @return the exception to throw
+     */
+    private static UnsupportedOperationException immutable() {
+        return new UnsupportedOperationException(
+                "a Weather2 cannot be changed");
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor, with the same initial value as
+     * {@code Weather1}: the current time, {@code UNDEFINED}, and
+     * temperatures -200 and 200.
+     */
+    public Weather2() {
+        this(System.currentTimeMillis(), Condition.UNDEFINED, -200f, 200f);
+    }
+
+    /**
+     * Constructor from every component, with the time in epoch milliseconds.
+     *
+     * @param time
+     *            the time in epoch milliseconds
+     * @param condition
+     *            the condition
+     * @param low
+     *            the lowest temperature
+     * @param high
+     *            the highest temperature
+     * @requires low <= high
+     * @ensures this = <new Date(time), condition, low, high>
+     */
+    public Weather2(long time, Condition condition, float low, float high) {
+        assert condition != null : "Violation of: condition is not null";
+        assert low <= high : "Violation of: low <= high";
+
+        this.time = time;
+        this.condition = condition;
+        this.low = low;
+        this.high = high;
+    }
+
+    /**
+     * Constructor from every component, with the time as an {@code Instant}.
+     * The time is truncated to whole milliseconds.
+     *
+     * @param time
+     *            the time
+     * @param condition
+     *            the condition
+     * @param low
+     *            the lowest temperature
+     * @param high
+     *            the highest temperature
+     * @requires low <= high
+     * @ensures this = <Date.from(time), condition, low, high>
+     */
+    public Weather2(Instant time, Condition condition, float low, float high) {
+        this(time.toEpochMilli(), condition, low, high);
+    }
+
+    /**
+     * Reports an immutable copy of {@code w}, or {@code w} itself if it is
+     * already a {@code Weather2}.
+     *
+     * @param w
+     *            the record to copy
+     * @return a Weather2 equal to w
+     * @ensures of = w
+     */
+    public static Weather2 of(Weather w) {
+        assert w != null : "Violation of: w is not null";
+
+        Weather2 result;
+        if (w instanceof Weather2) {
+            result = (Weather2) w;
+        } else {
+            result = new Weather2(epochMillis(w), w.condition(),
+                    w.lowTemp(), w.highTemp());
+        }
+        return result;
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @Override
+    public Weather newInstance() {
+        return new Weather2();
+    }
+
+    /**
+     * Unsupported: a {@code Weather2} cannot be changed.
+     *
+     * @throws UnsupportedOperationException
+     *             always
+     */
+    @Override
+    public void clear() {
+        throw immutable();
+    }
+
+    /**
+     * Unsupported: a {@code Weather2} cannot be changed.
+     *
+     * @param source
+     *            ignored
+     * @throws UnsupportedOperationException
+     *             always
+     */
+    @Override
+    public void transferFrom(Weather source) {
+        throw immutable();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    /**
+     * Unsupported: a {@code Weather2} cannot be changed.
+     *
+     * @param t
+     *            ignored
+     * @throws UnsupportedOperationException
+     *             always
+     */
+    @Override
+    public void setTime(Date t) {
+        throw immutable();
+    }
+
+    /**
+     * Returns the time of {@code this} as a new {@code Date}, which the
+     * caller may change without affecting {@code this}.
+     *
+     * @return the time of {@code this}
+     * @ensures time = this.time
+     */
+    @Override
+    public Date time() {
+        return new Date(this.time);
+    }
+
+    /**
+     * Unsupported: a {@code Weather2} cannot be changed.
+     *
+     * @param c
+     *            ignored
+     * @throws UnsupportedOperationException
+     *             always
+     */
+    @Override
+    public void setCondition(Condition c) {
+        throw immutable();
+    }
+
+    @Override
+    public Condition condition() {
+        return this.condition;
+    }
+
+    /**
+     * Unsupported: a {@code Weather2} cannot be changed.
+     *
+     * @param lowest
+     *            ignored
+     * @param highest
+     *            ignored
+     * @throws UnsupportedOperationException
+     *             always
+     */
+    @Override
+    public void setTemp(float lowest, float highest) {
+        throw immutable();
+    }
+
+    @Override
+    public float lowTemp() {
+        return this.low;
+    }
+
+    @Override
+    public float highTemp() {
+        return this.high;
+    }
+
+    /*
+     * Other methods ----------------------------------------------------------
+     */
+
+    /**
+     * Returns the time of {@code this} in epoch milliseconds.
+     *
+     * @return the time of {@code this}
+     * @ensures epochMilli = this.time.getTime()
+     */
+    public long epochMilli() {
+        return this.time;
+    }
+
+    /**
+     * Returns the time of {@code this} as an {@code Instant}.
+     *
+     * @return the time of {@code this}
+     * @ensures instant = this.time.toInstant()
+     */
+    public Instant instant() {
+        return Instant.ofEpochMilli(this.time);
+    }
+
+}
@@ -1,7 +1,11 @@
 package components.weather;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
 
 import components.set.Set;
 import components.set.Set1L;
@@ -16,9 +20,13 @@ public abstract class WeatherSecondary implements Weather {
      */
 
     /**
-     * Implementation of Chart.
+     * Implementation of Chart over a {@code Set1L}. {@code equals} and
+     * {@code hashCode} come from {@code ChartSecondary}, so they do not depend
+     * on the order the set happens to iterate in, and so does
+     * {@code toString}, which streams the records rather than trimming a
+     * trailing separator.
      */
-    public abstract class Chart1 implements Chart {
+    public class Chart1 extends ChartSecondary {
         /*
          * Private members -------------------------------------------
          */
@@ -28,11 +36,17 @@ public abstract class WeatherSecondary implements Weather {
          */
         private Set<Weather> chart;
 
+        /**
+         * Sum of the fingerprints of the records in {@code chart}.
+         */
+        private long fingerprint;
+
         /**
          * Creator of initial representation.
          */
         private void createNewRep() {
             this.chart = new Set1L<Weather>();
+            this.fingerprint = 0;
         }
 
         /*
@@ -46,71 +60,6 @@ public abstract class WeatherSecondary implements Weather {
             this.createNewRep();
         }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (obj == this) {
-                return true;
-            }
-            if (obj == null) {
-                return false;
-            }
-            if (!(obj instanceof Chart)) {
-                return false;
-            }
-            Chart ct = (Chart) obj;
-            if (this.size() != ct.size()) {
-                return false;
-            }
-            Iterator<Weather> it1 = this.iterator();
-            Iterator<Weather> it2 = ct.iterator();
-            while (it1.hasNext()) {
-                Weather x1 = it1.next();
-                Object x2 = it2.next();
-                if (!x1.equals(x2)) {
-                    return false;
-                }
-            }
-            return true;
-        }
-
-        @Override
-        public int hashCode() {
-            final int samples = 2;
-            final int a = 37;
-            final int b = 17;
-            int result = 0;
-            /*
-             * This code makes hashCode run in O(1) time. It works because of
-             * the iterator order string specification, which guarantees that
-             * the (at most) samples entries returned by the it.next() calls are
-             * the same when the two Queues are equal.
-             */
-            int n = 0;
-            Iterator<Weather> it = this.iterator();
-            while (n < samples && it.hasNext()) {
-                n++;
-                Weather x = it.next();
-                result = a * result + b * x.hashCode();
-            }
-            result = a * result + b * this.hashCode();
-            return result;
-        }
-
-        // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
-        @Override
-        public String toString() {
-            StringBuilder result = new StringBuilder("(");
-            for (Weather w : this.chart) {
-                result.append("<");
-                result.append(w.time() + ", " + w.condition() + ", "
-                        + w.lowTemp() + ", " + w.highTemp());
-                result.append(">, ");
-            }
-            result.delete(result.length() - 2, result.length());
-            result.append(")");
-            return result.toString();
-        }
-
         /**
          * Adds the Weather {@code w} to this.
          *
@@ -128,6 +77,7 @@ public abstract class WeatherSecondary implements Weather {
                     w.time()) : "Violation of w.time is not in DOMAIN(this)";
 
             this.chart.add(w);
+            this.fingerprint += fingerprintOf(w);
         }
 
         /**
@@ -150,18 +100,13 @@ public abstract class WeatherSecondary implements Weather {
             assert t != null : "Violation of: t is not null";
             assert this.hasTime(t) : "Violation of t is in DOMAIN(this)";
 
-            Set<Weather> copy = this.chart.newInstance();
-            copy.transferFrom(this.chart);
-            Weather result = new Weather1();
-            while (copy.size() > 0) {
-                Weather w = copy.removeAny();
+            Weather result = null;
+            for (Weather w : this.chart) {
                 if (w.time().equals(t)) {
                     result = w;
-                } else {
-                    this.chart.add(w);
                 }
-
             }
+            this.fingerprint -= fingerprintOf(result);
             return this.chart.remove(result);
         }
 
@@ -180,7 +125,9 @@ public abstract class WeatherSecondary implements Weather {
         public Weather removeAny() {
             assert this.chart.size() > 0 : "Violation of: |this| > 0";
 
-            return this.chart.removeAny();
+            Weather result = this.chart.removeAny();
+            this.fingerprint -= fingerprintOf(result);
+            return result;
         }
 
         /**
@@ -264,12 +211,185 @@ public abstract class WeatherSecondary implements Weather {
         public Iterator<Weather> iterator() {
             return this.chart.iterator();
         }
+
+        /**
+         * Reports the fingerprint of {@code this}, kept up to date by every
+         * change, in O(1).
+         *
+         * @return the fingerprint of {@code this}
+         */
+        @Override
+        public long fingerprint() {
+            return this.fingerprint;
+        }
+
+        /**
+         * Returns a spliterator over {@code this} in the order of the
+         * underlying set, which is not the order of time.
+         *
+         * @return a spliterator over {@code this}
+         */
+        @Override
+        public Spliterator<Weather> spliterator() {
+            return Spliterators.spliterator(this.chart.iterator(),
+                    this.chart.size(),
+                    Spliterator.DISTINCT | Spliterator.NONNULL);
+        }
+
+        /*
+         * Range methods ----------------------------------------------------
+         */
+
+        /**
+         * Reports the records of {@code this} whose time falls in
+         * [{@code from}, {@code to}], in increasing order of time. The set is
+         * unordered, so each iteration scans and sorts it.
+         *
+         * @param from
+         *            the earliest time to report, inclusive
+         * @param to
+         *            the latest time to report, inclusive
+         * @return the records of {@code this} between {@code from} and
+         *         {@code to}
+         * @requires from <= to
+         * @ensures between = [records w of this such that from <= w.time <=
+         *          to, in increasing order of time]
+         */
+        @Override
+        public Iterable<Weather> between(Date from, Date to) {
+            assert from != null : "Violation of: from is not null";
+            assert to != null : "Violation of: to is not null";
+            assert from.compareTo(to) <= 0 : "Violation of: from <= to";
+
+            return () -> {
+                List<Weather> in = new ArrayList<Weather>();
+                for (Weather w : this.chart) {
+                    if (from.compareTo(w.time()) <= 0
+                            && w.time().compareTo(to) <= 0) {
+                        in.add(w);
+                    }
+                }
+                in.sort((x, y) -> x.time().compareTo(y.time()));
+                return in.iterator();
+            };
+        }
+
+        /**
+         * Reports the latest record of {@code this} at or before {@code t}.
+         *
+         * @param t
+         *            the time to search from
+         * @return the record of {@code this} closest to {@code t} from below
+         * @requires there is a w in this such that w.time <= t
+         * @ensures floor is in this and floor.time <= t and [there is no w
+         *          in this such that floor.time < w.time <= t]
+         */
+        @Override
+        public Weather floor(Date t) {
+            assert t != null : "Violation of: t is not null";
+
+            Weather result = null;
+            for (Weather w : this.chart) {
+                if (w.time().compareTo(t) <= 0 && (result == null
+                        || result.time().compareTo(w.time()) < 0)) {
+                    result = w;
+                }
+            }
+            assert result != null : "Violation of: "
+                    + "there is a w in this such that w.time <= t";
+            return result;
+        }
+
+        /**
+         * Reports the earliest record of {@code this} at or after {@code t}.
+         *
+         * @param t
+         *            the time to search from
+         * @return the record of {@code this} closest to {@code t} from above
+         * @requires there is a w in this such that t <= w.time
+         * @ensures ceiling is in this and t <= ceiling.time and [there is no
+         *          w in this such that t <= w.time < ceiling.time]
+         */
+        @Override
+        public Weather ceiling(Date t) {
+            assert t != null : "Violation of: t is not null";
+
+            Weather result = null;
+            for (Weather w : this.chart) {
+                if (t.compareTo(w.time()) <= 0 && (result == null
+                        || w.time().compareTo(result.time()) < 0)) {
+                    result = w;
+                }
+            }
+            assert result != null : "Violation of: "
+                    + "there is a w in this such that t <= w.time";
+            return result;
+        }
+
+        /**
+         * Reports the earliest record of {@code this}.
+         *
+         * @return the record of {@code this} with the smallest time
+         * @requires |this| > 0
+         * @ensures first is in this and [first.time = min(DOMAIN(this))]
+         */
+        @Override
+        public Weather first() {
+            assert this.chart.size() > 0 : "Violation of: |this| > 0";
+
+            Weather result = null;
+            for (Weather w : this.chart) {
+                if (result == null || w.time().compareTo(result.time()) < 0) {
+                    result = w;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Reports the latest record of {@code this}.
+         *
+         * @return the record of {@code this} with the largest time
+         * @requires |this| > 0
+         * @ensures last is in this and [last.time = max(DOMAIN(this))]
+         */
+        @Override
+        public Weather last() {
+            assert this.chart.size() > 0 : "Violation of: |this| > 0";
+
+            Weather result = null;
+            for (Weather w : this.chart) {
+                if (result == null || result.time().compareTo(w.time()) < 0) {
+                    result = w;
+                }
+            }
+            return result;
+        }
     }
 
     /*
      * Public members ---------------------------------------------------------
      */
 
+    /**
+     * Reports the time of {@code w} in epoch milliseconds, without creating a
+     * {@code Date} when {@code w} keeps its time as a {@code long}.
+     *
+     * @param w
+     *            the record
+     * @return w.time.getTime()
+     * @ensures epochMillis = w.time.getTime()
+     */
+    static long epochMillis(Weather w) {
+        long result;
+        if (w instanceof Weather2) {
+            result = ((Weather2) w).epochMilli();
+        } else {
+            result = w.time().getTime();
+        }
+        return result;
+    }
+
     /*
      * Common methods (from Object) -------------------------------------------
      */
@@ -286,7 +406,7 @@ public abstract class WeatherSecondary implements Weather {
             return false;
         }
         Weather w = (Weather) obj;
-        if (!this.time().equals(w.time())) {
+        if (epochMillis(this) != epochMillis(w)) {
             return false;
         }
         if (!this.condition().equals(w.condition())) {
@@ -303,14 +423,16 @@ public abstract class WeatherSecondary implements Weather {
         return true;
     }
 
-    //CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
     @Override
-    public int hashCode() {
-        final int a = 10;
-        final int b = 17;
-        int result = 0;
-        result = (this.time().hashCode() / a) * b;
-        return result;
+    public final int hashCode() {
+        /*
+         * Only the fields equals compares exactly are hashed: temperatures
+         * within epsilon of each other are equal, so they cannot be hashed.
+         * The mix spreads records minutes apart over unrelated buckets.
+         */
+        long h = ChartSecondary.fingerprintOf(epochMillis(this),
+                this.condition().ordinal());
+        return (int) (h ^ (h >>> Integer.SIZE));
     }
 
     // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN